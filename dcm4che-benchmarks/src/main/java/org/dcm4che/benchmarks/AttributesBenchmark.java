@@ -0,0 +1,149 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2011
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.dcm4che.data.Attributes;
+import org.dcm4che.data.VR;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Lookup and insertion of attributes, exercising the binary search over
+ * the sorted tag array of {@link Attributes}.
+ * 
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class AttributesBenchmark {
+
+    private static final String PRIVATE_CREATOR = "DCM4CHE BENCHMARK";
+
+    @Param({ "16", "256", "4096" })
+    public int size;
+
+    private int[] sortedTags;
+    private int[] shuffledTags;
+    private int[] lookupTags;
+    private Attributes attrs;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(42);
+        sortedTags = new int[size];
+        for (int i = 0; i < size; i++)
+            sortedTags[i] = 0x00080000 | ((i + 1) << 2);
+        shuffledTags = sortedTags.clone();
+        for (int i = size - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int tmp = shuffledTags[i];
+            shuffledTags[i] = shuffledTags[j];
+            shuffledTags[j] = tmp;
+        }
+        lookupTags = new int[1024];
+        for (int i = 0; i < lookupTags.length; i++)
+            lookupTags[i] = sortedTags[rnd.nextInt(size)];
+        attrs = build(sortedTags);
+        for (int i = 0; i < 16; i++)
+            attrs.setString(PRIVATE_CREATOR, 0x00990000 | i, VR.LO, "private");
+    }
+
+    private Attributes build(int[] tags) {
+        Attributes attrs = new Attributes(tags.length);
+        for (int tag : tags)
+            attrs.setInt(tag, VR.UL, tag);
+        return attrs;
+    }
+
+    @Benchmark
+    public Attributes insertAscending() {
+        return build(sortedTags);
+    }
+
+    @Benchmark
+    public Attributes insertRandom() {
+        return build(shuffledTags);
+    }
+
+    @Benchmark
+    public Attributes insertRandomAppendMode() {
+        Attributes attrs = new Attributes(shuffledTags.length);
+        attrs.setAppendMode(true);
+        for (int tag : shuffledTags)
+            attrs.setInt(tag, VR.UL, tag);
+        attrs.setAppendMode(false);
+        return attrs;
+    }
+
+    @Benchmark
+    public void lookup(Blackhole bh) {
+        Attributes attrs = this.attrs;
+        for (int tag : lookupTags)
+            bh.consume(attrs.getInt(tag, 0));
+    }
+
+    @Benchmark
+    public void lookupPrivate(Blackhole bh) {
+        Attributes attrs = this.attrs;
+        for (int i = 0; i < 16; i++)
+            bh.consume(attrs.getString(PRIVATE_CREATOR, 0x00990000 | i));
+    }
+
+    @Benchmark
+    public Attributes copy() {
+        return new Attributes(attrs);
+    }
+}
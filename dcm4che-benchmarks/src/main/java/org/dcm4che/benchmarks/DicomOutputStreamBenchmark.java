@@ -0,0 +1,123 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2011
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.dcm4che.benchmarks.SyntheticDatasets.Type;
+import org.dcm4che.data.Attributes;
+import org.dcm4che.data.UID;
+import org.dcm4che.io.DicomEncodingOptions;
+import org.dcm4che.io.DicomOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding of synthetic CT, MR, SR and enhanced multi-frame objects by
+ * {@link DicomOutputStream#writeDataset(Attributes, Attributes)}, written
+ * into a discarding stream, so only the encoding cost is measured.
+ * 
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DicomOutputStreamBenchmark {
+
+    private static final OutputStream NULL_OUTPUT = new OutputStream() {
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private static final DicomEncodingOptions EXPLICIT_LENGTHS =
+            new DicomEncodingOptions(false, false, false, false, false);
+
+    @Param({ "CT", "MR", "SR", "MULTIFRAME" })
+    public Type type;
+
+    @Param({ UID.ExplicitVRLittleEndian, UID.ExplicitVRBigEndian })
+    public String tsuid;
+
+    private Attributes dataset;
+    private Attributes fmi;
+
+    @Setup
+    public void setup() {
+        dataset = SyntheticDatasets.create(type);
+        fmi = dataset.createFileMetaInformation(tsuid);
+    }
+
+    private void write(DicomEncodingOptions encOpts) throws IOException {
+        DicomOutputStream out = new DicomOutputStream(NULL_OUTPUT,
+                UID.ExplicitVRLittleEndian);
+        out.setEncodingOptions(encOpts);
+        out.writeDataset(fmi, dataset);
+        out.finish();
+    }
+
+    @Benchmark
+    public void writeDataset() throws IOException {
+        write(DicomEncodingOptions.DEFAULT);
+    }
+
+    @Benchmark
+    public void writeDatasetWithExplicitLengths() throws IOException {
+        write(EXPLICIT_LENGTHS);
+    }
+}
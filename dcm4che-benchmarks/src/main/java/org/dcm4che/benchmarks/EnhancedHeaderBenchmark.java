@@ -0,0 +1,117 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2011
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.dcm4che.data.Attributes;
+import org.dcm4che.data.Sequence;
+import org.dcm4che.data.Tag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Flattening of the Functional Group Macros of an Enhanced CT header into
+ * one data set per frame, as performed on conversion to legacy single-frame
+ * objects. The attributes of the functional group items are not in tag
+ * order, so this compares sorted insertion against {@link Attributes}
+ * append mode.
+ * 
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class EnhancedHeaderBenchmark {
+
+    @Param({ "100", "1000" })
+    public int frames;
+
+    @Param({ "false", "true" })
+    public boolean appendMode;
+
+    private Attributes header;
+    private Attributes shared;
+    private Sequence perFrame;
+
+    @Setup
+    public void setup() {
+        Attributes attrs = SyntheticDatasets.createEnhancedCTHeader(frames);
+        shared = attrs.getNestedDataset(Tag.SharedFunctionalGroupsSequence);
+        perFrame = attrs.getSequence(Tag.PerFrameFunctionalGroupsSequence);
+        header = new Attributes(attrs.size());
+        header.addNotSelected(attrs, Tag.SharedFunctionalGroupsSequence,
+                Tag.PerFrameFunctionalGroupsSequence);
+    }
+
+    @Benchmark
+    public void flatten(Blackhole bh) {
+        for (Attributes fg : perFrame) {
+            Attributes frame = new Attributes(header.size() + 64);
+            frame.setAppendMode(appendMode);
+            frame.addAll(header);
+            addFunctionalGroups(frame, shared);
+            addFunctionalGroups(frame, fg);
+            frame.setAppendMode(false);
+            bh.consume(frame);
+        }
+    }
+
+    private static void addFunctionalGroups(Attributes frame, Attributes fgs) {
+        for (int tag : fgs.tags()) {
+            Sequence seq = fgs.getSequence(tag);
+            if (seq != null)
+                for (Attributes item : seq)
+                    frame.addAll(item);
+        }
+    }
+}
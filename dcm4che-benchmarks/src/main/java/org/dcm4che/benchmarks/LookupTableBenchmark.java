@@ -0,0 +1,116 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2011
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.benchmarks;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.dcm4che.data.Attributes;
+import org.dcm4che.data.Tag;
+import org.dcm4che.data.VR;
+import org.dcm4che.image.LookupTable;
+import org.dcm4che.image.LookupTableFactory;
+import org.dcm4che.image.StoredValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Window/level rendering of a 512 x 512 x 16 bit CT slice to 8 bit, as
+ * done by DicomImageReader for each rendered frame.
+ * 
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class LookupTableBenchmark {
+
+    @Param({ "12", "16" })
+    public int bitsStored;
+
+    private Attributes attrs;
+    private WritableRaster src;
+    private WritableRaster dest;
+
+    @Setup
+    public void setup() {
+        attrs = new Attributes();
+        attrs.setInt(Tag.BitsAllocated, VR.US, 16);
+        attrs.setInt(Tag.BitsStored, VR.US, bitsStored);
+        attrs.setInt(Tag.PixelRepresentation, VR.US, bitsStored == 16 ? 1 : 0);
+        attrs.setString(Tag.RescaleIntercept, VR.DS, "-1024");
+        attrs.setString(Tag.RescaleSlope, VR.DS, "1");
+        attrs.setString(Tag.WindowCenter, VR.DS, "40");
+        attrs.setString(Tag.WindowWidth, VR.DS, "400");
+        src = Raster.createBandedRaster(DataBuffer.TYPE_USHORT, 512, 512, 1, null);
+        dest = Raster.createBandedRaster(DataBuffer.TYPE_BYTE, 512, 512, 1, null);
+        short[] data = ((DataBufferUShort) src.getDataBuffer()).getData();
+        Random rnd = new Random(42);
+        for (int i = 0; i < data.length; i++)
+            data[i] = (short) (rnd.nextInt(2048) + (bitsStored == 16 ? -1024 : 0));
+    }
+
+    @Benchmark
+    public Raster windowLevel() {
+        LookupTableFactory factory =
+                new LookupTableFactory(StoredValue.valueOf(attrs));
+        factory.setModalityLUT(attrs);
+        factory.setVOI(attrs, 0, 0, true);
+        factory.setPresentationLUT(attrs);
+        LookupTable lut = factory.createLUT(8);
+        lut.lookup(src, dest);
+        return dest;
+    }
+}
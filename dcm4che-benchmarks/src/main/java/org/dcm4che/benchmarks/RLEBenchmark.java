@@ -0,0 +1,182 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2011
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.benchmarks;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.dcm4che.imageio.plugins.rle.RLEImageReaderSpi;
+import org.dcm4che.imageio.plugins.rle.RLEImageWriterSpi;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * RLE Lossless encoding and decoding of one frame of a synthetic
+ * ultrasound like RGB image - large black areas around a noisy sector -
+ * and of a 16 bit CT like image.
+ * 
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class RLEBenchmark {
+
+    public enum Type { US_RGB, CT_16 }
+
+    @Param({ "US_RGB", "CT_16" })
+    public Type type;
+
+    private BufferedImage image;
+    private BufferedImage destination;
+    private byte[] encoded;
+    private ImageReader reader;
+    private ImageWriter writer;
+    private ImageReadParam readParam;
+    private ByteArrayOutputStream bout;
+
+    @Setup
+    public void setup() throws IOException {
+        image = type == Type.US_RGB
+                ? createUltrasound(640, 480)
+                : createCT(512, 512);
+        destination = type == Type.US_RGB
+                ? createImage(640, 480, 3, DataBuffer.TYPE_BYTE)
+                : createImage(512, 512, 1, DataBuffer.TYPE_USHORT);
+        reader = new RLEImageReaderSpi().createReaderInstance(null);
+        writer = new RLEImageWriterSpi().createWriterInstance(null);
+        readParam = reader.getDefaultReadParam();
+        readParam.setDestination(destination);
+        bout = new ByteArrayOutputStream();
+        encoded = encode().toByteArray();
+    }
+
+    private static BufferedImage createImage(int w, int h, int samples,
+            int dataType) {
+        ComponentColorModel cm = new ComponentColorModel(
+                ColorSpace.getInstance(samples == 1
+                        ? ColorSpace.CS_GRAY
+                        : ColorSpace.CS_sRGB),
+                false, false, Transparency.OPAQUE, dataType);
+        WritableRaster raster = Raster.createBandedRaster(dataType, w, h,
+                samples, null);
+        return new BufferedImage(cm, raster, false, null);
+    }
+
+    private static BufferedImage createUltrasound(int w, int h) {
+        BufferedImage bi = createImage(w, h, 3, DataBuffer.TYPE_BYTE);
+        byte[][] banks = ((DataBufferByte) bi.getRaster().getDataBuffer())
+                .getBankData();
+        Random rnd = new Random(42);
+        for (int y = 0; y < h; y++)
+            for (int x = 0; x < w; x++) {
+                int dx = x - w / 2;
+                if (y > h / 8 && Math.abs(dx) < y * 2 / 3) {
+                    byte v = (byte) (rnd.nextInt(64) + y / 4);
+                    for (byte[] bank : banks)
+                        bank[y * w + x] = v;
+                }
+            }
+        return bi;
+    }
+
+    private static BufferedImage createCT(int w, int h) {
+        BufferedImage bi = createImage(w, h, 1, DataBuffer.TYPE_USHORT);
+        short[] data = ((DataBufferUShort) bi.getRaster().getDataBuffer())
+                .getData();
+        Random rnd = new Random(42);
+        int r2 = (w * w) / 5;
+        for (int y = 0; y < h; y++)
+            for (int x = 0; x < w; x++) {
+                int dx = x - w / 2, dy = y - h / 2;
+                data[y * w + x] = (short) (dx * dx + dy * dy < r2
+                        ? 1000 + rnd.nextInt(80)
+                        : 0);
+            }
+        return bi;
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream encode() throws IOException {
+        bout.reset();
+        MemoryCacheImageOutputStream ios = new MemoryCacheImageOutputStream(bout);
+        writer.setOutput(ios);
+        writer.write(null, new IIOImage(image, null, null), null);
+        ios.close();
+        return bout;
+    }
+
+    @Benchmark
+    public BufferedImage decode() throws IOException {
+        reader.setInput(new MemoryCacheImageInputStream(
+                new ByteArrayInputStream(encoded)));
+        return reader.read(0, readParam);
+    }
+}
@@ -0,0 +1,109 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2011
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.dcm4che.data.SpecificCharacterSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding and encoding of Person Names by {@link SpecificCharacterSet},
+ * including ISO 2022 code extension techniques.
+ * 
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SpecificCharacterSetBenchmark {
+
+    public enum Charset {
+        DEFAULT("Doe^John"),
+        ISO_IR_100("Äneas^Rüdiger", "ISO_IR 100"),
+        ISO_IR_192("Wang^XiaoDong=王^小東=", "ISO_IR 192"),
+        ISO_2022_IR_87("Yamada^Tarou=山田^太郎=やまだ^たろう",
+                null, "ISO 2022 IR 87"),
+        ISO_2022_IR_149("Hong^Gildong=洪^吉洞=홍^길동",
+                null, "ISO 2022 IR 149");
+
+        final String personName;
+        final String[] codes;
+
+        Charset(String personName, String... codes) {
+            this.personName = personName;
+            this.codes = codes;
+        }
+    }
+
+    @Param
+    public Charset charset;
+
+    private SpecificCharacterSet cs;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() {
+        cs = SpecificCharacterSet.valueOf(charset.codes);
+        encoded = cs.encode(charset.personName, "^=");
+    }
+
+    @Benchmark
+    public String decode() {
+        return cs.decode(encoded);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return cs.encode(charset.personName, "^=");
+    }
+}
@@ -0,0 +1,373 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2011
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.dcm4che.data.Attributes;
+import org.dcm4che.data.Sequence;
+import org.dcm4che.data.Tag;
+import org.dcm4che.data.UID;
+import org.dcm4che.data.VR;
+import org.dcm4che.io.DicomEncodingOptions;
+import org.dcm4che.io.DicomOutputStream;
+
+/**
+ * Synthetic data sets used by the benchmarks, so results do not depend on
+ * test files which cannot be distributed with the source.
+ * 
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+public class SyntheticDatasets {
+
+    public enum Type { CT, MR, SR, MULTIFRAME }
+
+    private static final String STUDY_IUID = "1.2.40.0.13.1.1.99.20120101.1";
+    private static final String SERIES_IUID = STUDY_IUID + ".1";
+    private static final String SOP_IUID = SERIES_IUID + ".1";
+
+    public static Attributes create(Type type) {
+        switch (type) {
+        case CT:
+            return createCT();
+        case MR:
+            return createMR();
+        case SR:
+            return createSR(4, 6);
+        default:
+            return createMultiframe(100, 256, 256);
+        }
+    }
+
+    public static byte[] encode(Attributes attrs, String tsuid)
+            throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(
+                attrs.calcLength(DicomEncodingOptions.DEFAULT, true) + 512);
+        DicomOutputStream dos = new DicomOutputStream(bout,
+                UID.ExplicitVRLittleEndian);
+        try {
+            dos.writeDataset(attrs.createFileMetaInformation(tsuid), attrs);
+        } finally {
+            dos.close();
+        }
+        return bout.toByteArray();
+    }
+
+    private static Attributes createImage(String cuid, String modality,
+            int rows, int columns) {
+        Attributes attrs = new Attributes(80);
+        attrs.setString(Tag.SpecificCharacterSet, VR.CS, "ISO_IR 100");
+        attrs.setString(Tag.ImageType, VR.CS, "ORIGINAL", "PRIMARY", "AXIAL");
+        attrs.setString(Tag.SOPClassUID, VR.UI, cuid);
+        attrs.setString(Tag.SOPInstanceUID, VR.UI, SOP_IUID);
+        attrs.setString(Tag.StudyDate, VR.DA, "20120101");
+        attrs.setString(Tag.SeriesDate, VR.DA, "20120101");
+        attrs.setString(Tag.ContentDate, VR.DA, "20120101");
+        attrs.setString(Tag.StudyTime, VR.TM, "101010.000000");
+        attrs.setString(Tag.SeriesTime, VR.TM, "101010.000000");
+        attrs.setString(Tag.ContentTime, VR.TM, "101012.123456");
+        attrs.setString(Tag.AccessionNumber, VR.SH, "A123456789");
+        attrs.setString(Tag.Modality, VR.CS, modality);
+        attrs.setString(Tag.Manufacturer, VR.LO, "dcm4che.org");
+        attrs.setString(Tag.InstitutionName, VR.LO, "Hôpital Général");
+        attrs.setString(Tag.ReferringPhysicianName, VR.PN, "Müller^Hans^^Dr.");
+        attrs.setString(Tag.StudyDescription, VR.LO, "Synthetic Study");
+        attrs.setString(Tag.SeriesDescription, VR.LO, "Synthetic Series");
+        attrs.setString(Tag.PatientName, VR.PN, "Sørensen^Åse");
+        attrs.setString(Tag.PatientID, VR.LO, "P-123456");
+        attrs.setString(Tag.IssuerOfPatientID, VR.LO, "dcm4che");
+        attrs.setString(Tag.PatientBirthDate, VR.DA, "19700101");
+        attrs.setString(Tag.PatientSex, VR.CS, "F");
+        attrs.setString(Tag.PatientAge, VR.AS, "042Y");
+        attrs.setString(Tag.BodyPartExamined, VR.CS, "CHEST");
+        attrs.setString(Tag.SliceThickness, VR.DS, "1.25");
+        attrs.setString(Tag.StudyInstanceUID, VR.UI, STUDY_IUID);
+        attrs.setString(Tag.SeriesInstanceUID, VR.UI, SERIES_IUID);
+        attrs.setString(Tag.StudyID, VR.SH, "1");
+        attrs.setString(Tag.SeriesNumber, VR.IS, "1");
+        attrs.setString(Tag.InstanceNumber, VR.IS, "1");
+        attrs.setString(Tag.ImagePositionPatient, VR.DS,
+                "-125.000", "-125.000", "-42.500");
+        attrs.setString(Tag.ImageOrientationPatient, VR.DS,
+                "1", "0", "0", "0", "1", "0");
+        attrs.setString(Tag.FrameOfReferenceUID, VR.UI, STUDY_IUID + ".0");
+        attrs.setString(Tag.PositionReferenceIndicator, VR.LO, "SN");
+        attrs.setString(Tag.SliceLocation, VR.DS, "-42.5");
+        attrs.setInt(Tag.SamplesPerPixel, VR.US, 1);
+        attrs.setString(Tag.PhotometricInterpretation, VR.CS, "MONOCHROME2");
+        attrs.setInt(Tag.Rows, VR.US, rows);
+        attrs.setInt(Tag.Columns, VR.US, columns);
+        attrs.setString(Tag.PixelSpacing, VR.DS, "0.48828125", "0.48828125");
+        attrs.setInt(Tag.BitsAllocated, VR.US, 16);
+        attrs.setInt(Tag.BitsStored, VR.US, 12);
+        attrs.setInt(Tag.HighBit, VR.US, 11);
+        attrs.setInt(Tag.PixelRepresentation, VR.US, 0);
+        attrs.setString(Tag.WindowCenter, VR.DS, "40");
+        attrs.setString(Tag.WindowWidth, VR.DS, "400");
+        attrs.setString(Tag.RescaleIntercept, VR.DS, "-1024");
+        attrs.setString(Tag.RescaleSlope, VR.DS, "1");
+        attrs.setBytes(Tag.PixelData, VR.OW, new byte[rows * columns * 2]);
+        return attrs;
+    }
+
+    public static Attributes createCT() {
+        Attributes attrs = createImage(UID.CTImageStorage, "CT", 512, 512);
+        attrs.setString(Tag.ScanOptions, VR.CS, "HELICAL MODE");
+        attrs.setString(Tag.KVP, VR.DS, "120");
+        attrs.setString(Tag.DataCollectionDiameter, VR.DS, "500");
+        attrs.setString(Tag.ReconstructionDiameter, VR.DS, "250");
+        attrs.setString(Tag.GantryDetectorTilt, VR.DS, "0");
+        attrs.setString(Tag.TableHeight, VR.DS, "160");
+        attrs.setString(Tag.RotationDirection, VR.CS, "CW");
+        attrs.setString(Tag.ExposureTime, VR.IS, "1000");
+        attrs.setString(Tag.XRayTubeCurrent, VR.IS, "250");
+        attrs.setString(Tag.Exposure, VR.IS, "250");
+        attrs.setString(Tag.FilterType, VR.SH, "BODY FILTER");
+        attrs.setString(Tag.ConvolutionKernel, VR.SH, "STANDARD");
+        attrs.setString(Tag.PatientPosition, VR.CS, "FFS");
+        return attrs;
+    }
+
+    public static Attributes createMR() {
+        Attributes attrs = createImage(UID.MRImageStorage, "MR", 256, 256);
+        attrs.setString(Tag.ScanningSequence, VR.CS, "SE");
+        attrs.setString(Tag.SequenceVariant, VR.CS, "SK", "SP");
+        attrs.setString(Tag.ScanOptions, VR.CS, "FS");
+        attrs.setString(Tag.MRAcquisitionType, VR.CS, "2D");
+        attrs.setString(Tag.RepetitionTime, VR.DS, "500");
+        attrs.setString(Tag.EchoTime, VR.DS, "15");
+        attrs.setString(Tag.EchoTrainLength, VR.IS, "1");
+        attrs.setString(Tag.MagneticFieldStrength, VR.DS, "1.5");
+        attrs.setString(Tag.ImagingFrequency, VR.DS, "63.8");
+        attrs.setString(Tag.ImagedNucleus, VR.SH, "1H");
+        attrs.setString(Tag.NumberOfAverages, VR.DS, "2");
+        attrs.setString(Tag.FlipAngle, VR.DS, "90");
+        attrs.setString(Tag.PatientPosition, VR.CS, "HFS");
+        return attrs;
+    }
+
+    public static Attributes createSR(int numContainers, int numItems) {
+        Attributes attrs = new Attributes(40);
+        attrs.setString(Tag.SpecificCharacterSet, VR.CS, "ISO_IR 192");
+        attrs.setString(Tag.SOPClassUID, VR.UI, UID.ComprehensiveSRStorage);
+        attrs.setString(Tag.SOPInstanceUID, VR.UI, SOP_IUID);
+        attrs.setString(Tag.StudyDate, VR.DA, "20120101");
+        attrs.setString(Tag.ContentDate, VR.DA, "20120101");
+        attrs.setString(Tag.StudyTime, VR.TM, "101010");
+        attrs.setString(Tag.ContentTime, VR.TM, "101012");
+        attrs.setString(Tag.AccessionNumber, VR.SH, "A123456789");
+        attrs.setString(Tag.Modality, VR.CS, "SR");
+        attrs.setString(Tag.PatientName, VR.PN, "Wang^XiaoDong=王^小東=");
+        attrs.setString(Tag.PatientID, VR.LO, "P-123456");
+        attrs.setString(Tag.StudyInstanceUID, VR.UI, STUDY_IUID);
+        attrs.setString(Tag.SeriesInstanceUID, VR.UI, SERIES_IUID + "9");
+        attrs.setString(Tag.ValueType, VR.CS, "CONTAINER");
+        attrs.newSequence(Tag.ConceptNameCodeSequence, 1).add(
+                code("11528-7", "LN", "Radiology Report"));
+        attrs.setString(Tag.ContinuityOfContent, VR.CS, "SEPARATE");
+        attrs.setString(Tag.CompletionFlag, VR.CS, "COMPLETE");
+        attrs.setString(Tag.VerificationFlag, VR.CS, "UNVERIFIED");
+        Sequence content = attrs.newSequence(Tag.ContentSequence, numContainers);
+        for (int i = 0; i < numContainers; i++) {
+            Attributes container = new Attributes(5);
+            container.setString(Tag.RelationshipType, VR.CS, "CONTAINS");
+            container.setString(Tag.ValueType, VR.CS, "CONTAINER");
+            container.newSequence(Tag.ConceptNameCodeSequence, 1).add(
+                    code("121070", "DCM", "Findings"));
+            container.setString(Tag.ContinuityOfContent, VR.CS, "SEPARATE");
+            Sequence items = container.newSequence(Tag.ContentSequence, numItems);
+            for (int j = 0; j < numItems; j++) {
+                Attributes text = new Attributes(4);
+                text.setString(Tag.RelationshipType, VR.CS, "CONTAINS");
+                text.setString(Tag.ValueType, VR.CS, "TEXT");
+                text.newSequence(Tag.ConceptNameCodeSequence, 1).add(
+                        code("121071", "DCM", "Finding"));
+                text.setString(Tag.TextValue, VR.UT,
+                        "Finding #" + j + ": Unauffälliger Befund, 無異常");
+                items.add(text);
+            }
+            content.add(container);
+        }
+        return attrs;
+    }
+
+    public static Attributes createMultiframe(int frames, int rows,
+            int columns) {
+        Attributes attrs = createImage(UID.EnhancedMRImageStorage, "MR",
+                rows, columns);
+        attrs.setInt(Tag.NumberOfFrames, VR.IS, frames);
+        Attributes shared = new Attributes(2);
+        Attributes pixelMeasures = new Attributes(2);
+        pixelMeasures.setString(Tag.PixelSpacing, VR.DS,
+                "0.9765625", "0.9765625");
+        pixelMeasures.setString(Tag.SliceThickness, VR.DS, "5");
+        shared.newSequence(Tag.PixelMeasuresSequence, 1).add(pixelMeasures);
+        attrs.newSequence(Tag.SharedFunctionalGroupsSequence, 1).add(shared);
+        Sequence perFrame = attrs.newSequence(
+                Tag.PerFrameFunctionalGroupsSequence, frames);
+        for (int i = 0; i < frames; i++) {
+            Attributes fg = new Attributes(3);
+            Attributes frameContent = new Attributes(2);
+            frameContent.setInt(Tag.InStackPositionNumber, VR.UL, i + 1);
+            frameContent.setInt(Tag.DimensionIndexValues, VR.UL, 1, i + 1);
+            fg.newSequence(Tag.FrameContentSequence, 1).add(frameContent);
+            Attributes planePosition = new Attributes(1);
+            planePosition.setString(Tag.ImagePositionPatient, VR.DS,
+                    "-125", "-125", String.valueOf(i * 5));
+            fg.newSequence(Tag.PlanePositionSequence, 1).add(planePosition);
+            Attributes voi = new Attributes(2);
+            voi.setString(Tag.WindowCenter, VR.DS, "600");
+            voi.setString(Tag.WindowWidth, VR.DS, "1200");
+            fg.newSequence(Tag.FrameVOILUTSequence, 1).add(voi);
+            perFrame.add(fg);
+        }
+        attrs.setBytes(Tag.PixelData, VR.OW,
+                new byte[frames * rows * columns * 2]);
+        return attrs;
+    }
+
+    public static Attributes createEnhancedCTHeader(int frames) {
+        Attributes attrs = createImage(UID.EnhancedCTImageStorage, "CT",
+                512, 512);
+        attrs.remove(Tag.PixelData);
+        attrs.setInt(Tag.NumberOfFrames, VR.IS, frames);
+        Attributes shared = new Attributes(9);
+        Attributes pixelMeasures = new Attributes(2);
+        pixelMeasures.setString(Tag.PixelSpacing, VR.DS,
+                "0.48828125", "0.48828125");
+        pixelMeasures.setString(Tag.SliceThickness, VR.DS, "1.25");
+        shared.newSequence(Tag.PixelMeasuresSequence, 1).add(pixelMeasures);
+        Attributes planeOrientation = new Attributes(1);
+        planeOrientation.setString(Tag.ImageOrientationPatient, VR.DS,
+                "1", "0", "0", "0", "1", "0");
+        shared.newSequence(Tag.PlaneOrientationSequence, 1)
+                .add(planeOrientation);
+        Attributes acqType = new Attributes(1);
+        acqType.setString(Tag.AcquisitionType, VR.CS, "SPIRAL");
+        shared.newSequence(Tag.CTAcquisitionTypeSequence, 1).add(acqType);
+        Attributes acqDetails = new Attributes(8);
+        acqDetails.setString(Tag.RotationDirection, VR.CS, "CW");
+        acqDetails.setString(Tag.RevolutionTime, VR.FD, "0.5");
+        acqDetails.setString(Tag.SingleCollimationWidth, VR.FD, "0.625");
+        acqDetails.setString(Tag.TotalCollimationWidth, VR.FD, "40");
+        acqDetails.setString(Tag.TableHeight, VR.DS, "160");
+        acqDetails.setString(Tag.GantryDetectorTilt, VR.DS, "0");
+        acqDetails.setString(Tag.DataCollectionDiameter, VR.DS, "500");
+        shared.newSequence(Tag.CTAcquisitionDetailsSequence, 1).add(acqDetails);
+        Attributes tableDynamics = new Attributes(3);
+        tableDynamics.setString(Tag.TableSpeed, VR.FD, "80");
+        tableDynamics.setString(Tag.TableFeedPerRotation, VR.FD, "40");
+        tableDynamics.setString(Tag.SpiralPitchFactor, VR.FD, "1");
+        shared.newSequence(Tag.CTTableDynamicsSequence, 1).add(tableDynamics);
+        Attributes geometry = new Attributes(2);
+        geometry.setString(Tag.DistanceSourceToDetector, VR.DS, "1085.6");
+        geometry.setString(Tag.DistanceSourceToDataCollectionCenter, VR.FD,
+                "595");
+        shared.newSequence(Tag.CTGeometrySequence, 1).add(geometry);
+        Attributes reconstruction = new Attributes(4);
+        reconstruction.setString(Tag.ReconstructionAlgorithm, VR.CS,
+                "FILTER_BACK_PROJ");
+        reconstruction.setString(Tag.ConvolutionKernel, VR.SH, "STANDARD");
+        reconstruction.setString(Tag.ReconstructionDiameter, VR.DS, "250");
+        reconstruction.setString(Tag.ReconstructionPixelSpacing, VR.FL,
+                "0.48828125", "0.48828125");
+        shared.newSequence(Tag.CTReconstructionSequence, 1)
+                .add(reconstruction);
+        Attributes pixelValueTransformation = new Attributes(3);
+        pixelValueTransformation.setString(Tag.RescaleIntercept, VR.DS, "-1024");
+        pixelValueTransformation.setString(Tag.RescaleSlope, VR.DS, "1");
+        pixelValueTransformation.setString(Tag.RescaleType, VR.LO, "HU");
+        shared.newSequence(Tag.PixelValueTransformationSequence, 1)
+                .add(pixelValueTransformation);
+        Attributes frameAnatomy = new Attributes(2);
+        frameAnatomy.setString(Tag.FrameLaterality, VR.CS, "U");
+        frameAnatomy.newSequence(Tag.AnatomicRegionSequence, 1).add(
+                code("T-D3000", "SRT", "Chest"));
+        shared.newSequence(Tag.FrameAnatomySequence, 1).add(frameAnatomy);
+        attrs.newSequence(Tag.SharedFunctionalGroupsSequence, 1).add(shared);
+        Sequence perFrame = attrs.newSequence(
+                Tag.PerFrameFunctionalGroupsSequence, frames);
+        for (int i = 0; i < frames; i++) {
+            String z = String.valueOf(-42.5 + i * 1.25);
+            Attributes fg = new Attributes(5);
+            Attributes frameContent = new Attributes(5);
+            frameContent.setInt(Tag.FrameAcquisitionNumber, VR.US, 1);
+            frameContent.setString(Tag.FrameReferenceDateTime, VR.DT,
+                    "20120101101010.000000");
+            frameContent.setString(Tag.FrameAcquisitionDateTime, VR.DT,
+                    "20120101101010.000000");
+            frameContent.setInt(Tag.InStackPositionNumber, VR.UL, i + 1);
+            frameContent.setInt(Tag.DimensionIndexValues, VR.UL, 1, i + 1);
+            fg.newSequence(Tag.FrameContentSequence, 1).add(frameContent);
+            Attributes planePosition = new Attributes(1);
+            planePosition.setString(Tag.ImagePositionPatient, VR.DS,
+                    "-125", "-125", z);
+            fg.newSequence(Tag.PlanePositionSequence, 1).add(planePosition);
+            Attributes ctPosition = new Attributes(3);
+            ctPosition.setString(Tag.TablePosition, VR.FD, z);
+            ctPosition.setString(Tag.DataCollectionCenterPatient, VR.FD,
+                    "0", "0", z);
+            ctPosition.setString(Tag.ReconstructionTargetCenterPatient, VR.FD,
+                    "0", "0", z);
+            fg.newSequence(Tag.CTPositionSequence, 1).add(ctPosition);
+            Attributes exposure = new Attributes(4);
+            exposure.setString(Tag.ExposureTimeInms, VR.FD, "500");
+            exposure.setString(Tag.XRayTubeCurrentInmA, VR.FD, "250");
+            exposure.setString(Tag.ExposureInmAs, VR.FD, "125");
+            exposure.setString(Tag.CTDIvol, VR.FD, "12.5");
+            fg.newSequence(Tag.CTExposureSequence, 1).add(exposure);
+            Attributes voi = new Attributes(2);
+            voi.setString(Tag.WindowCenter, VR.DS, "40");
+            voi.setString(Tag.WindowWidth, VR.DS, "400");
+            fg.newSequence(Tag.FrameVOILUTSequence, 1).add(voi);
+            perFrame.add(fg);
+        }
+        return attrs;
+    }
+
+    private static Attributes code(String value, String designator,
+            String meaning) {
+        Attributes code = new Attributes(3);
+        code.setString(Tag.CodeValue, VR.SH, value);
+        code.setString(Tag.CodingSchemeDesignator, VR.SH, designator);
+        code.setString(Tag.CodeMeaning, VR.LO, meaning);
+        return code;
+    }
+}
@@ -78,6 +78,8 @@ public class Attributes implements Serializable {
     private transient VR[] vrs;
     private transient Object[] values;
     private transient int size;
+    private transient boolean appendMode;
+    private transient boolean unsorted;
     private transient SpecificCharacterSet cs;
     private transient TimeZone tz;
     private transient int length = -1;
@@ -197,18 +199,78 @@ public class Attributes implements Serializable {
     }
 
     public final int size() {
+        ensureSorted();
         return size;
     }
 
     public int[] tags() {
+        ensureSorted();
         return Arrays.copyOf(tags, size);
     }
 
+    public final boolean isAppendMode() {
+        return appendMode;
+    }
+
+    /**
+     * Enables or disables the append mode. In append mode, attributes set
+     * out of tag order are appended to the end instead of being inserted at
+     * their sorted position, and the attributes are sorted once on the
+     * next access. If an attribute is set multiple times, the last value
+     * wins, but the previous value is not returned by the setter.
+     * 
+     * Append mode speeds up the creation of large data sets from sources
+     * which do not provide the attributes in tag order - e.g. flattening of
+     * Functional Group Macros of Enhanced Multi-frame objects - by
+     * avoiding to move the attributes already contained on each insert.
+     * 
+     * Disabling append mode sorts the attributes immediately.
+     * 
+     * @param appendMode <tt>true</tt> to enable append mode
+     */
+    public void setAppendMode(boolean appendMode) {
+        this.appendMode = appendMode;
+        if (!appendMode)
+            ensureSorted();
+    }
+
+    private void ensureSorted() {
+        if (unsorted)
+            sort();
+    }
+
+    private void sort() {
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++)
+            keys[i] = ((long) tags[i] << 32) | i;
+        Arrays.sort(keys);
+        int[] newTags = new int[tags.length];
+        VR[] newVRs = new VR[tags.length];
+        Object[] newValues = new Object[tags.length];
+        int n = 0;
+        for (long key : keys) {
+            int tag = (int) (key >> 32);
+            int index = (int) key;
+            if (n > 0 && newTags[n-1] == tag)
+                n--; // later set value replaces previous value
+            newTags[n] = tag;
+            newVRs[n] = vrs[index];
+            newValues[n] = values[index];
+            n++;
+        }
+        tags = newTags;
+        vrs = newVRs;
+        values = newValues;
+        size = n;
+        unsorted = false;
+    }
+
     public void trimToSize() {
         trimToSize(false);
     }
 
     public void trimToSize(boolean recursive) {
+        ensureSorted();
         int oldCapacity = tags.length;
         if (size < oldCapacity) {
             tags = Arrays.copyOf(tags, size);
@@ -226,10 +288,15 @@ public class Attributes implements Serializable {
 
     public void internalizeStringValues(boolean decode) {
         SpecificCharacterSet cs = getSpecificCharacterSet();
-        for (int i = 0; i < values.length; i++) {
+        for (int i = 0; i < size; i++) {
             VR vr = vrs[i];
             Object value = values[i];
             if (vr.isStringType()) {
+                if (value instanceof LazyValue) {
+                    if (!decode)
+                        continue;
+                    value = loadValue(i);
+                }
                 if (value instanceof byte[]) {
                     if (!decode)
                         continue;
@@ -252,13 +319,13 @@ public class Attributes implements Serializable {
         Object value;
         VR vr;
         SpecificCharacterSet cs = getSpecificCharacterSet();
-        for (int i = 0; i < values.length; i++) {
+        for (int i = 0; i < size; i++) {
             value = values[i];
             if (value instanceof Sequence) {
                 for (Attributes item : (Sequence) value)
                     item.decodeStringValues();
             } else if ((vr = vrs[i]).isStringType())
-                if (value instanceof byte[])
+                if ((value = loadValue(i)) instanceof byte[])
                     values[i] =
                         vr.toStrings((byte[]) value, bigEndian, cs);
         }
@@ -315,12 +382,21 @@ public class Attributes implements Serializable {
     }
 
     private int indexForInsertOf(int tag) {
-        return size == 0 ? -1
-                : tags[size-1] < tag ? -(size+1)
-                        : indexOf(tag);
+        if (size == 0)
+            return -1;
+
+        if (tags[size-1] < tag)
+            return -(size+1);
+
+        if (appendMode) {
+            unsorted = true;
+            return -(size+1);
+        }
+        return indexOf(tag);
     }
 
     private int indexOf(int tag) {
+        ensureSorted();
         return Arrays.binarySearch(tags, 0, size, tag);
     }
 
@@ -364,20 +440,70 @@ public class Attributes implements Serializable {
         return creatorTag;
     }
 
-    private Object decodeStringValue(int index) {
+    /**
+     * Returns the value at the specified index, loading a lazy value from
+     * its file and replacing it by the loaded value.
+     * 
+     * @throws LazyValueException if the lazy value cannot be loaded; the
+     *         lazy value is kept
+     */
+    private Object loadValue(int index) {
+        Object value = values[index];
+        if (value instanceof LazyValue) {
+            value = ((LazyValue) value).load(tags[index], vrs[index], bigEndian);
+            if (value != null)
+                values[index] = value;
+            else
+                value = Value.NULL;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the value at the specified index, loading a lazy value from
+     * its file without replacing it. Used by {@link #equals(Object)}, which
+     * shall neither load lazy values nor bulk data of compared objects.
+     */
+    private Object peekValue(int index) {
         Object value = values[index];
+        if (value instanceof LazyValue) {
+            value = ((LazyValue) value).load(tags[index], vrs[index], bigEndian);
+            if (value == null)
+                value = Value.NULL;
+        }
+        return value;
+    }
+
+    private Object decodeStringValue(int index) {
+        Object value = loadValue(index);
+        if (value instanceof byte[]) {
+            value = toStringValue(vrs[index], value);
+            values[index] = value;
+        }
+        return value;
+    }
+
+    private Object toStringValue(VR vr, Object value) {
         if (value instanceof byte[]) {
-            value = vrs[index].toStrings((byte[]) value, bigEndian,
+            value = vr.toStrings((byte[]) value, bigEndian,
                         getSpecificCharacterSet());
             if (value instanceof String && ((String) value).isEmpty())
                 value = Value.NULL;
-            values[index] = value;
         }
         return value;
     }
 
     private double[] decodeDSValue(int index) {
-        Object value = values[index];
+        Object value = loadValue(index);
+        if (value instanceof double[])
+            return (double[]) value;
+
+        double[] ds = toDSValue(vrs[index], value);
+        values[index] = ds.length == 0 ? Value.NULL : ds;
+        return ds;
+    }
+
+    private double[] toDSValue(VR vr, Object value) {
         if (value == Value.NULL)
             return ByteUtils.EMPTY_DOUBLES;
 
@@ -386,14 +512,12 @@ public class Attributes implements Serializable {
 
         double[] ds;
         if (value instanceof byte[])
-            value = vrs[index].toStrings((byte[]) value, bigEndian,
+            value = vr.toStrings((byte[]) value, bigEndian,
                         getSpecificCharacterSet());
         if (value instanceof String) {
             String s = (String) value;
-            if (s.isEmpty()) {
-                values[index] = Value.NULL;
+            if (s.isEmpty())
                 return ByteUtils.EMPTY_DOUBLES;
-            }
             ds = new double[] { StringUtils.parseDS(s) };
         } else { // value instanceof String[]
             String[] ss = (String[]) value;
@@ -405,12 +529,20 @@ public class Attributes implements Serializable {
                         : Double.NaN;
             }
         }
-        values[index] = ds;
         return ds;
     }
 
     private int[] decodeISValue(int index) {
-        Object value = values[index];
+        Object value = loadValue(index);
+        if (value instanceof int[])
+            return (int[]) value;
+
+        int[] is = toISValue(vrs[index], value);
+        values[index] = is.length == 0 ? Value.NULL : is;
+        return is;
+    }
+
+    private int[] toISValue(VR vr, Object value) {
         if (value == Value.NULL)
             return ByteUtils.EMPTY_INTS;
 
@@ -419,14 +551,12 @@ public class Attributes implements Serializable {
 
         int[] is;
         if (value instanceof byte[])
-            value = vrs[index].toStrings((byte[]) value, bigEndian,
+            value = vr.toStrings((byte[]) value, bigEndian,
                         getSpecificCharacterSet());
         if (value instanceof String) {
             String s = (String) value;
-            if (s.isEmpty()) {
-                values[index] = Value.NULL;
+            if (s.isEmpty())
                 return ByteUtils.EMPTY_INTS;
-            }
             is = new int[] { StringUtils.parseIS(s) };
         } else { // value instanceof String[]
             String[] ss = (String[]) value;
@@ -438,7 +568,6 @@ public class Attributes implements Serializable {
                             : Integer.MIN_VALUE;
             }
         }
-        values[index] = is;
         return is;
     }
 
@@ -447,7 +576,7 @@ public class Attributes implements Serializable {
         if (vr == prev)
             return;
 
-        Object value = values[index];
+        Object value = loadValue(index);
         if (!(value instanceof byte[] || value == Value.NULL))
             throw new IllegalStateException("value instanceof " + value.getClass());
 
@@ -513,7 +642,7 @@ public class Attributes implements Serializable {
         
         if (vr != null)
             vr.vr = vrs[index];
-        return values[index];
+        return loadValue(index);
     }
 
     public VR getVR(int tag) {
@@ -552,7 +681,7 @@ public class Attributes implements Serializable {
         if (index < 0)
             return null;
         
-        Object value = values[index];
+        Object value = loadValue(index);
         VR vr = vrs[index];
         
         try {
@@ -629,7 +758,7 @@ public class Attributes implements Serializable {
         if (index < 0)
             return defVal;
 
-        Object value = values[index];
+        Object value = loadValue(index);
         if (value == Value.NULL)
             return defVal;
 
@@ -664,7 +793,7 @@ public class Attributes implements Serializable {
         if (index < 0)
             return null;
 
-        Object value = values[index];
+        Object value = loadValue(index);
         if (value == Value.NULL)
             return StringUtils.EMPTY_STRING;
 
@@ -716,7 +845,7 @@ public class Attributes implements Serializable {
         if (index < 0)
             return defVal;
 
-        Object value = values[index];
+        Object value = loadValue(index);
         if (value == Value.NULL)
             return defVal;
 
@@ -751,7 +880,7 @@ public class Attributes implements Serializable {
         if (index < 0)
             return null;
 
-        Object value = values[index];
+        Object value = loadValue(index);
         if (value == Value.NULL)
             return ByteUtils.EMPTY_INTS;
 
@@ -798,7 +927,7 @@ public class Attributes implements Serializable {
         if (index < 0)
             return defVal;
 
-        Object value = values[index];
+        Object value = loadValue(index);
         if (value == Value.NULL)
             return defVal;
 
@@ -833,7 +962,7 @@ public class Attributes implements Serializable {
         if (index < 0)
             return null;
 
-        Object value = values[index];
+        Object value = loadValue(index);
         if (value == Value.NULL)
             return ByteUtils.EMPTY_FLOATS;
 
@@ -880,7 +1009,7 @@ public class Attributes implements Serializable {
         if (index < 0)
             return defVal;
 
-        Object value = values[index];
+        Object value = loadValue(index);
         if (value == Value.NULL)
             return defVal;
 
@@ -915,7 +1044,7 @@ public class Attributes implements Serializable {
         if (index < 0)
             return null;
 
-        Object value = values[index];
+        Object value = loadValue(index);
         if (value == Value.NULL)
             return ByteUtils.EMPTY_DOUBLES;
 
@@ -985,7 +1114,7 @@ public class Attributes implements Serializable {
         if (index < 0)
             return defVal;
 
-        Object value = values[index];
+        Object value = loadValue(index);
         if (value == Value.NULL)
             return defVal;
 
@@ -1055,7 +1184,7 @@ public class Attributes implements Serializable {
         if (index < 0)
             return null;
 
-        Object value = values[index];
+        Object value = loadValue(index);
         if (value == Value.NULL)
             return DateUtils.EMPTY_DATES;
 
@@ -1104,7 +1233,7 @@ public class Attributes implements Serializable {
         if (index < 0)
             return defVal;
 
-        Object value = values[index];
+        Object value = loadValue(index);
         if (value == Value.NULL)
             return defVal;
 
@@ -1246,7 +1375,7 @@ public class Attributes implements Serializable {
         if (index < 0)
             return null;
 
-        Object value = values[index];
+        Object value = loadValue(index);
 //        if (value instanceof Sequence)
 //            ((Sequence) value).clear();
 
@@ -1378,6 +1507,25 @@ public class Attributes implements Serializable {
         return set(privateCreator, tag, vr, value != null ? value : Value.NULL);
     }
 
+    /**
+     * Sets a value, which is not held in memory, but loaded from the
+     * specified location on first access. In contrast to a value set as
+     * {@link BulkDataLocator}, the loaded value replaces the lazy value and
+     * all accessors and writers behave as if the value was set directly.
+     * If the value cannot be loaded, accessors and writers throw a
+     * {@link LazyValueException} and the lazy value is kept.
+     * 
+     * @param tag tag of the attribute
+     * @param vr VR of the attribute
+     * @param location location of the value in the file
+     * @return previous value
+     */
+    public Object setLazyValue(int tag, VR vr, BulkDataLocator location) {
+        if (location == null)
+            throw new NullPointerException("location");
+        return set(null, tag, vr, new LazyValue(location));
+    }
+
     public Sequence newSequence(int tag, int initialCapacity) {
         return newSequence(null, tag, initialCapacity);
     }
@@ -1451,7 +1599,7 @@ public class Attributes implements Serializable {
     private Object set(int tag, VR vr, Object value) {
         int index = indexForInsertOf(tag);
         if (index >= 0) {
-            Object oldValue = values[index];
+            Object oldValue = loadValue(index);
             vrs[index] = vr;
             values[index] = value;
             return oldValue;
@@ -1484,6 +1632,7 @@ public class Attributes implements Serializable {
     }
 
     public boolean addSelected(Attributes other, Attributes selection) {
+        selection.ensureSorted();
         return add(other, selection.tags, null, 0, selection.size, false, false, null);
     }
 
@@ -1548,6 +1697,7 @@ public class Attributes implements Serializable {
     }
 
     public boolean addNotSelected(Attributes other, Attributes selection) {
+        selection.ensureSorted();
         return add(other, null, selection.tags, 0, selection.size, false, false, null);
     }
 
@@ -1583,6 +1733,7 @@ public class Attributes implements Serializable {
     private boolean add(Attributes other, int[] include, int[] exclude,
             int fromIndex, int toIndex, boolean merge, boolean update,
             Attributes modified) {
+        other.ensureSorted();
         boolean toggleEndian = bigEndian != other.bigEndian;
         boolean modifiedToggleEndian = modified != null
                 && bigEndian != modified.bigEndian;
@@ -1699,6 +1850,8 @@ public class Attributes implements Serializable {
             return false;
 
         final Attributes other = (Attributes) o;
+        ensureSorted();
+        other.ensureSorted();
         if (size != other.size)
             return false;
 
@@ -1736,8 +1889,8 @@ public class Attributes implements Serializable {
                 return equalDSValues(other, index, otherIndex);
             else
                 return equalStringValues(other, index, otherIndex);
-        Object v1 = values[index];
-        Object v2 = other.values[otherIndex];
+        Object v1 = peekValue(index);
+        Object v2 = other.peekValue(otherIndex);
         if (v1 instanceof byte[]) {
             if (v2 instanceof byte[] && ((byte[]) v1).length == ((byte[]) v2).length) {
                 if (bigEndian != other.bigEndian)
@@ -1751,7 +1904,7 @@ public class Attributes implements Serializable {
 
     private boolean equalISValues(Attributes other, int index, int otherIndex) {
         try {
-            return Arrays.equals(decodeISValue(index), other.decodeISValue(otherIndex));
+            return Arrays.equals(peekISValue(index), other.peekISValue(otherIndex));
         } catch (NumberFormatException e) {
             return equalStringValues(other, index, otherIndex);
         }
@@ -1759,15 +1912,15 @@ public class Attributes implements Serializable {
 
     private boolean equalDSValues(Attributes other, int index, int otherIndex) {
         try {
-            return Arrays.equals(decodeDSValue(index), other.decodeDSValue(otherIndex));
+            return Arrays.equals(peekDSValue(index), other.peekDSValue(otherIndex));
         } catch (NumberFormatException e) {
             return equalStringValues(other, index, otherIndex);
         }
     }
 
     private boolean equalStringValues(Attributes other, int index, int otherIndex) {
-        Object v1 = decodeStringValue(index);
-        Object v2 = other.decodeStringValue(otherIndex);
+        Object v1 = peekStringValue(index);
+        Object v2 = other.peekStringValue(otherIndex);
         if (v1 instanceof String[]) {
             if (v2 instanceof String[])
                 return Arrays.equals((String[]) v1, (String[]) v2);
@@ -1776,8 +1929,31 @@ public class Attributes implements Serializable {
         return false;
     }
 
+    /*
+     * The peek methods decode lazy values without keeping them, so that
+     * comparing attributes does not load their values into memory.
+     */
+    private int[] peekISValue(int index) {
+        return values[index] instanceof LazyValue
+                ? toISValue(vrs[index], peekValue(index))
+                : decodeISValue(index);
+    }
+
+    private double[] peekDSValue(int index) {
+        return values[index] instanceof LazyValue
+                ? toDSValue(vrs[index], peekValue(index))
+                : decodeDSValue(index);
+    }
+
+    private Object peekStringValue(int index) {
+        return values[index] instanceof LazyValue
+                ? toStringValue(vrs[index], peekValue(index))
+                : decodeStringValue(index);
+    }
+
     @Override
     public int hashCode() {
+        ensureSorted();
         int h = 0;
         for (int i = 0; i < size; i++) {
             int tag = tags[i];
@@ -1822,6 +1998,7 @@ public class Attributes implements Serializable {
     }
 
     private int appendAttributes(int limit, int maxWidth, StringBuilder sb, String prefix) {
+        ensureSorted();
         int lines = 0;
         int creatorTag = 0;
         String privateCreator = null;
@@ -1839,7 +2016,7 @@ public class Attributes implements Serializable {
                 creatorTag = 0;
                 privateCreator = null;
             }
-            Object value = values[i];
+            Object value = loadValue(i);
             appendAttribute(privateCreator, tag, vrs[i], value,
                     sb.length() + maxWidth, sb, prefix);
             if (value instanceof Sequence)
@@ -1878,6 +2055,8 @@ public class Attributes implements Serializable {
         if (isEmpty())
             return 0;
 
+        ensureSorted();
+
         this.groupLengths = encOpts.groupLength 
                 ? new int[countGroups()]
                 : null;
@@ -1895,7 +2074,7 @@ public class Attributes implements Serializable {
         Object val;
         for (int i = 0; i < size; i++) {
             vr = vrs[i];
-            val = values[i];
+            val = loadValue(i);
             len = explicitVR ? vr.headerLength() : 8;
             if (val instanceof Value)
                 len += ((Value) val).calcLength(encOpts, explicitVR, vr);
@@ -1942,6 +2121,7 @@ public class Attributes implements Serializable {
             throw new IllegalStateException(
                     "groupLengths not initialized by calcLength()");
 
+        ensureSorted();
         SpecificCharacterSet cs = getSpecificCharacterSet();
         if (tags[0] < 0) {
             int index0 = -(1 + indexOf(0));
@@ -1976,7 +2156,7 @@ public class Attributes implements Serializable {
                             groupLengths[groupLengthIndex++]);
                 }
             }
-            out.writeAttribute(tag, vrs[i], values[i], cs);
+            out.writeAttribute(tag, vrs[i], loadValue(i), cs);
         }
     }
 
@@ -1985,6 +2165,7 @@ public class Attributes implements Serializable {
         if (isEmpty())
             throw new IllegalStateException("No attributes");
         
+        ensureSorted();
         checkInGroup(0, groupLengthTag);
         checkInGroup(size-1, groupLengthTag);
         SpecificCharacterSet cs = getSpecificCharacterSet();
@@ -2009,6 +2190,7 @@ public class Attributes implements Serializable {
         if (isEmpty())
             return;
 
+        ensureSorted();
         SpecificCharacterSet cs = getSpecificCharacterSet();
         if (tags[0] < 0) {
             int index0 = -(1 + indexOf(0));
@@ -2023,7 +2205,7 @@ public class Attributes implements Serializable {
             int start, int end) throws SAXException {
         for (int i = start; i < end; i++) {
             VR vr = vrs[i];
-            Object value = values[i];
+            Object value = loadValue(i);
             if (vr.isStringType() && value instanceof byte[])
                 values[i] = value = vr.toStrings((byte[]) value, bigEndian, cs);
             out.writeAttribute(tags[i], vr, value, cs, this);
@@ -2057,6 +2239,7 @@ public class Attributes implements Serializable {
 
     public boolean matches(Attributes keys, boolean ignorePNCase,
             boolean matchNoValue) {
+        keys.ensureSorted();
         int[] keyTags = keys.tags;
         VR[] keyVrs = keys.vrs;
         Object[] keyValues = keys.values;
@@ -2169,6 +2352,7 @@ public class Attributes implements Serializable {
 
     private void writeObject(ObjectOutputStream out) throws IOException {
         out.defaultWriteObject();
+        ensureSorted();
         out.writeInt(size);
         @SuppressWarnings("resource")
         DicomOutputStream dout = new DicomOutputStream(out,
@@ -2228,7 +2412,7 @@ public class Attributes implements Serializable {
             result.addNotAllowedAttribute(el);
             return;
         }
-        Object value = values[index];
+        Object value = loadValue(index);
         VR vr = vrs[index];
         if (vr.isStringType()) {
             value = decodeStringValue(index);
@@ -2338,4 +2522,27 @@ public class Attributes implements Serializable {
                 return true;
         return false;
     }
+
+    private static final class LazyValue {
+
+        final BulkDataLocator location;
+
+        LazyValue(BulkDataLocator location) {
+            this.location = location;
+        }
+
+        Object load(int tag, VR vr, boolean bigEndian) {
+            try {
+                return vr.toValue(location.toBytes(vr, bigEndian));
+            } catch (IOException e) {
+                throw new LazyValueException("Failed to load value of "
+                        + TagUtils.toString(tag) + " from " + location, e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "LazyValue[" + location + "]";
+        }
+    }
 }
@@ -38,12 +38,19 @@
 
 package org.dcm4che.data;
 
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 
 import org.dcm4che.io.DicomEncodingOptions;
 import org.dcm4che.io.DicomOutputStream;
@@ -93,6 +100,114 @@ public class BulkDataLocator implements Value {
         }
     }
 
+    /**
+     * Returns the referenced file, if the URI of the bulk data refers to
+     * a local file.
+     * 
+     * @return referenced file or <code>null</code>, if the URI does not
+     *         refer to a local file
+     */
+    public File getFile() {
+        if (!uri.startsWith("file:"))
+            return null;
+        try {
+            return new File(new URI(uri));
+        } catch (URISyntaxException e) {
+            throw new AssertionError(e);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private boolean bigEndian() {
+        return transferSyntax.equals(UID.ExplicitVRBigEndian);
+    }
+
+    /**
+     * Returns the bulk data as read-only buffer with the byte order of the
+     * transfer syntax of the bulk data. If the bulk data is contained in a
+     * local file, the returned buffer is a memory-mapped view of the
+     * corresponding region of the file, without copying the bulk data into
+     * the Java heap. Each invocation maps the region anew; the mapping is
+     * released when the returned buffer is garbage collected.
+     * 
+     * @return read-only buffer containing the bulk data
+     * @throws IOException if an I/O error occurs
+     */
+    public ByteBuffer toByteBuffer() throws IOException {
+        ByteBuffer bb;
+        File file = getFile();
+        if (file == null) {
+            byte[] b = new byte[length];
+            InputStream in = openStream();
+            try {
+                StreamUtils.skipFully(in, offset);
+                StreamUtils.readFully(in, b, 0, length);
+            } finally {
+                in.close();
+            }
+            bb = ByteBuffer.wrap(b).asReadOnlyBuffer();
+        } else {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                bb = raf.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                        offset, length);
+            } finally {
+                raf.close();
+            }
+        }
+        return order(bb);
+    }
+
+    private ByteBuffer order(ByteBuffer bb) {
+        return bb.order(bigEndian() ? ByteOrder.BIG_ENDIAN
+                                    : ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private InputStream openStreamAtOffset() throws IOException {
+        File file = getFile();
+        if (file == null) {
+            InputStream in = openStream();
+            try {
+                StreamUtils.skipFully(in, offset);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+            return in;
+        }
+        FileInputStream in = new FileInputStream(file);
+        in.getChannel().position(offset);
+        return in;
+    }
+
+    private void readFully(byte[] b) throws IOException {
+        File file = getFile();
+        if (file == null) {
+            InputStream in = openStreamAtOffset();
+            try {
+                StreamUtils.readFully(in, b, 0, b.length);
+            } finally {
+                in.close();
+            }
+            return;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer bb = ByteBuffer.wrap(b);
+            long pos = offset;
+            while (bb.hasRemaining()) {
+                int read = channel.read(bb, pos);
+                if (read < 0)
+                    throw new EOFException();
+                pos += read;
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
     @Override
     public int calcLength(DicomEncodingOptions encOpts, boolean explicitVR, VR vr) {
         return getEncodedLength(encOpts, vr);
@@ -108,31 +223,18 @@ public class BulkDataLocator implements Value {
         if (length == 0)
             return ByteUtils.EMPTY_BYTES;
 
-        InputStream in = openStream();
-        try {
-            StreamUtils.skipFully(in, offset);
-            byte[] b = new byte[length];
-            StreamUtils.readFully(in, b, 0, b.length);
-            if (transferSyntax.equals(UID.ExplicitVRBigEndian) 
-                    ? !bigEndian
-                    : bigEndian) {
-                vr.toggleEndian(b, false);
-            }
-            return b;
-        } finally {
-            in.close();
-        }
-
+        byte[] b = new byte[length];
+        readFully(b);
+        if (bigEndian() != bigEndian)
+            vr.toggleEndian(b, false);
+        return b;
     }
 
     @Override
     public void writeTo(DicomOutputStream out, VR vr) throws IOException {
-        InputStream in = openStream();
+        InputStream in = openStreamAtOffset();
         try {
-            StreamUtils.skipFully(in, offset);
-            if (transferSyntax.equals(UID.ExplicitVRBigEndian)
-                    ? !out.isBigEndian()
-                    : out.isBigEndian())
+            if (bigEndian() != out.isBigEndian())
                 StreamUtils.copy(in, out, length, vr.numEndianBytes());
             else
                 StreamUtils.copy(in, out, length);
@@ -100,6 +100,7 @@ public class DicomInputStream extends FilterInputStream
     private static final int DEF_ALLOCATE_LIMIT = 0x4000000; // 64MiB
 
     private int allocateLimit = DEF_ALLOCATE_LIMIT;
+    private int lazyValueThreshold = -1;
     private String uri;
     private String tsuid;
     private byte[] preamble;
@@ -159,6 +160,24 @@ public class DicomInputStream extends FilterInputStream
         uri = file.toURI().toString();
     }
 
+    /**
+     * Creates a <code>DicomInputStream</code> reading from the specified
+     * file. If <code>mapped</code> is <code>true</code>, the file is
+     * accessed by a {@link MappedFileInputStream}, so skipping bulk data or
+     * {@linkplain #setLazyValueThreshold(int) lazy loaded values} is
+     * without cost. Parsed values are still copied from the mapped file
+     * into byte arrays.
+     * 
+     * @param file the file to read
+     * @param mapped <code>true</code> to read from the memory-mapped file
+     * @throws IOException if an I/O error occurs
+     */
+    public DicomInputStream(File file, boolean mapped) throws IOException {
+        this(mapped ? new MappedFileInputStream(file)
+                    : new FileInputStream(file));
+        uri = file.toURI().toString();
+    }
+
     public final String getTransferSyntax() {
         return tsuid;
     }
@@ -197,6 +216,40 @@ public class DicomInputStream extends FilterInputStream
         this.allocateLimit = allocateLimit;
     }
 
+    /**
+     * Returns the minimal value length of elements, which values are not
+     * read on parsing, but loaded on first access.
+     * 
+     * By default, the threshold is set to -1 (= read all values).
+     * 
+     * @return minimal value length of lazy loaded values or -1 for no lazy
+     *         loading
+     * @see #setLazyValueThreshold(int)
+     */
+    public final int getLazyValueThreshold() {
+        return lazyValueThreshold;
+    }
+
+    /**
+     * Sets the minimal value length of elements, which values are not read
+     * into memory on parsing. Instead only the position and length of the
+     * value are recorded, and the value is loaded from the file on first
+     * access, e.g. by {@link Attributes#getString(int)},
+     * {@link Attributes#getValue(int)} or on writing the attributes (see
+     * {@link Attributes#setLazyValue(int, VR, BulkDataLocator)}).
+     * 
+     * Lazy loading requires that the URI of the parsed file is known and
+     * that the stream is not deflated; otherwise all values are read.
+     * 
+     * By default, the threshold is set to -1 (= read all values).
+     * 
+     * @param lazyValueThreshold minimal value length of lazy loaded values
+     *        or -1 for no lazy loading
+     */
+    public final void setLazyValueThreshold(int lazyValueThreshold) {
+        this.lazyValueThreshold = lazyValueThreshold;
+    }
+
     public final String getURI() {
         return uri;
     }
@@ -509,6 +562,9 @@ public class DicomInputStream extends FilterInputStream
                     (ObjectInputStream) super.in));
         } else if (includeBulkData == IncludeBulkData.LOCATOR && isBulkData(attrs)) {
             attrs.setValue(tag, vr, createBulkDataLocator());
+        } else if (isLazyValue()) {
+            attrs.setLazyValue(tag, vr, new BulkDataLocator(uri, tsuid, pos, length));
+            skipFully(length);
         } else {
             byte[] b = readValue();
             if (!TagUtils.isGroupLength(tag)) {
@@ -554,6 +610,17 @@ public class DicomInputStream extends FilterInputStream
         return locator;
     }
 
+    private boolean isLazyValue() {
+        return lazyValueThreshold >= 0
+                && length >= lazyValueThreshold
+                && uri != null
+                && !(super.in instanceof InflaterInputStream)
+                && bigEndian == tsuid.equals(UID.ExplicitVRBigEndian)
+                && TagUtils.groupNumber(tag) >= 8
+                && !TagUtils.isGroupLength(tag)
+                && !TagUtils.isPrivateCreator(tag);
+    }
+
     public boolean isBulkData(Attributes attrs) {
         if (TagUtils.isPrivateCreator(tag))
             return false;
@@ -0,0 +1,168 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2011
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Input stream reading from a memory-mapped file. Files larger than the
+ * window size are mapped successively in windows of that size, so files
+ * exceeding 2 GiB are supported as well.
+ * 
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+public class MappedFileInputStream extends InputStream {
+
+    private static final int DEF_WINDOW_SIZE = 0x40000000; // 1 GiB
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final long length;
+    private final int windowSize;
+    private MappedByteBuffer window;
+    private long windowPos;
+    private long markedPos;
+
+    public MappedFileInputStream(File file) throws IOException {
+        this(file, DEF_WINDOW_SIZE);
+    }
+
+    public MappedFileInputStream(File file, int windowSize)
+            throws IOException {
+        if (windowSize <= 0)
+            throw new IllegalArgumentException("windowSize: " + windowSize);
+        this.raf = new RandomAccessFile(file, "r");
+        this.channel = raf.getChannel();
+        this.length = channel.size();
+        this.windowSize = windowSize;
+        map(0L);
+    }
+
+    public final long length() {
+        return length;
+    }
+
+    public final long getPosition() {
+        return windowPos + window.position();
+    }
+
+    public void setPosition(long pos) throws IOException {
+        if (pos < 0 || pos > length)
+            throw new IllegalArgumentException("pos: " + pos);
+        long off = pos - windowPos;
+        if (off >= 0 && off <= window.limit())
+            window.position((int) off);
+        else
+            map(pos);
+    }
+
+    private void map(long pos) throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_ONLY, pos,
+                Math.min(windowSize, length - pos));
+        windowPos = pos;
+    }
+
+    private boolean ensureRemaining() throws IOException {
+        if (window.hasRemaining())
+            return true;
+        long pos = windowPos + window.limit();
+        if (pos >= length)
+            return false;
+        map(pos);
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return ensureRemaining() ? window.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return 0;
+        if (!ensureRemaining())
+            return -1;
+        int read = Math.min(len, window.remaining());
+        window.get(b, off, read);
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0)
+            return 0;
+        long pos = getPosition();
+        long skip = Math.min(n, length - pos);
+        setPosition(pos + skip);
+        return skip;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(Integer.MAX_VALUE, length - getPosition());
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        markedPos = getPosition();
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        setPosition(markedPos);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+}
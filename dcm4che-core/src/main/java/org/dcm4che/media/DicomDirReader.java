@@ -41,18 +41,31 @@ package org.dcm4che.media;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
 
 import org.dcm4che.data.Attributes;
 import org.dcm4che.data.Tag;
 import org.dcm4che.data.VR;
 import org.dcm4che.io.DicomInputStream;
 import org.dcm4che.io.RAFInputStreamAdapter;
-import org.dcm4che.util.IntHashMap;
 import org.dcm4che.util.SafeClose;
 import org.dcm4che.util.StringUtils;
 
 /**
+ * Reads Directory Records from a DICOMDIR. Records are read by positional
+ * reads from a separate read-only file channel, so several threads may read
+ * records concurrently with each other and with a {@link DicomDirWriter}
+ * appending records to the DICOMDIR.
+ * <p>
+ * Returned records are shared between all readers and must not be modified.
+ * A {@link DicomDirWriter} never modifies a record once it was returned, but
+ * replaces it by an updated copy, so each record is a consistent snapshot.
+ * 
  * @author Gunter Zeilinger <gunterze@gmail.com>
  */
 public class DicomDirReader implements Closeable {
@@ -62,7 +75,9 @@ public class DicomDirReader implements Closeable {
     protected final DicomInputStream in;
     protected final Attributes fmi;
     protected final Attributes fsInfo;
-    protected final IntHashMap<Attributes> cache = new IntHashMap<Attributes>();
+    protected final RecordCache cache = new RecordCache();
+    private volatile FileChannel readChannel;
+    private volatile boolean closed;
 
     public DicomDirReader(File file) throws IOException {
         this(file, "r");
@@ -96,7 +111,14 @@ public class DicomDirReader implements Closeable {
     }
 
     public void close() throws IOException {
-        raf.close();
+        closed = true;
+        try {
+            FileChannel ch = readChannel;
+            if (ch != null)
+                ch.close();
+        } finally {
+            raf.close();
+        }
     }
 
     public String getFileSetUID() {
@@ -166,6 +188,31 @@ public class DicomDirReader implements Closeable {
         return getOffsetOfFirstRootDirectoryRecord() == 0;
     }
 
+    /**
+     * Returns the cache of read Directory Records, which provides the
+     * number of cache hits, misses and evictions.
+     * 
+     * @return cache of read Directory Records
+     */
+    public final RecordCache getRecordCache() {
+        return cache;
+    }
+
+    public final int getRecordCacheSize() {
+        return cache.getMaxSize();
+    }
+
+    /**
+     * Limit the number of cached Directory Records. Least recently used
+     * records are evicted from the cache. If <code>0</code> - the default -
+     * all read records are cached until {@link #clearCache()} is called.
+     * 
+     * @param maxSize maximal number of cached records or <code>0</code>
+     */
+    public final void setRecordCacheSize(int maxSize) {
+        cache.setMaxSize(maxSize);
+    }
+
     public void clearCache() {
         cache.clear();
     }
@@ -181,13 +228,13 @@ public class DicomDirReader implements Closeable {
     public Attributes readNextDirectoryRecord(Attributes rec)
             throws IOException {
         return readRecord(
-                rec.getInt(Tag.OffsetOfTheNextDirectoryRecord, 0));
+                current(rec).getInt(Tag.OffsetOfTheNextDirectoryRecord, 0));
     }
 
     public Attributes readLowerDirectoryRecord(Attributes rec)
             throws IOException {
-        return readRecord(
-                rec.getInt(Tag.OffsetOfReferencedLowerLevelDirectoryEntity, 0));
+        return readRecord(current(rec)
+                .getInt(Tag.OffsetOfReferencedLowerLevelDirectoryEntity, 0));
     }
 
     protected Attributes findLastLowerDirectoryRecord(Attributes rec)
@@ -226,7 +273,7 @@ public class DicomDirReader implements Closeable {
     public Attributes findNextDirectoryRecord(Attributes rec, boolean ignorePrivate,
             Attributes keys, boolean ignoreCaseOfPN, boolean matchNoValue) throws IOException {
         return findRecordInUse(
-                rec.getInt(Tag.OffsetOfTheNextDirectoryRecord, 0), ignorePrivate,
+                current(rec).getInt(Tag.OffsetOfTheNextDirectoryRecord, 0), ignorePrivate,
                 keys, ignoreCaseOfPN, matchNoValue);
     }
 
@@ -239,7 +286,7 @@ public class DicomDirReader implements Closeable {
             Attributes keys, boolean ignoreCaseOfPN, boolean matchNoValue)
             throws IOException {
         return findRecordInUse(
-                rec.getInt(Tag.OffsetOfReferencedLowerLevelDirectoryEntity, 0), ignorePrivate,
+                current(rec).getInt(Tag.OffsetOfReferencedLowerLevelDirectoryEntity, 0), ignorePrivate,
                 keys, ignoreCaseOfPN, matchNoValue);
     }
 
@@ -326,21 +373,103 @@ public class DicomDirReader implements Closeable {
         return null;
     }
 
-    private synchronized Attributes readRecord(int offset) throws IOException {
+    /**
+     * Returns the version of <code>rec</code> whose links are followed.
+     * Overridden by {@link DicomDirWriter} to resolve records, which were
+     * replaced by an updated copy after <code>rec</code> was read.
+     */
+    protected Attributes current(Attributes rec) throws IOException {
+        return rec;
+    }
+
+    Attributes readRecord(int offset) throws IOException {
         if (offset == 0)
             return null;
 
         Attributes item = cache.get(offset);
         if (item == null) {
             long off = offset & 0xffffffffL;
-            raf.seek(off);
-            in.setPosition(off);
-            item = in.readItem();
-            cache.put(offset, item);
+            try {
+                item = readRecord(readChannel(), off);
+            } catch (AsynchronousCloseException e) {
+                // channel closed by interrupt of another thread
+                if (e instanceof ClosedByInterruptException || closed)
+                    throw e;
+                item = readRecord(readChannel(), off);
+            }
+            item.decodeStringValues();
+            Attributes cached = cache.putIfAbsent(offset, item);
+            if (cached != null)
+                item = cached;
         }
         return item;
     }
 
+    private Attributes readRecord(FileChannel ch, long off)
+            throws IOException {
+        DicomInputStream din = new DicomInputStream(
+                new ChannelInputStream(ch, off), getTransferSyntaxUID());
+        din.setPosition(off);
+        return din.readItem();
+    }
+
+    private FileChannel readChannel() throws IOException {
+        FileChannel ch = readChannel;
+        if (ch == null || !ch.isOpen()) {
+            synchronized (cache) {
+                ch = readChannel;
+                if (ch == null || !ch.isOpen()) {
+                    if (closed)
+                        throw new IOException("Stream closed");
+                    readChannel = ch =
+                            new RandomAccessFile(file, "r").getChannel();
+                }
+            }
+        }
+        return ch;
+    }
+
+    private static final class ChannelInputStream extends InputStream {
+
+        private final FileChannel ch;
+        private final ByteBuffer buf = ByteBuffer.allocate(512);
+        private long pos;
+
+        ChannelInputStream(FileChannel ch, long pos) {
+            this.ch = ch;
+            this.pos = pos;
+            buf.flip();
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? buf.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (!fill())
+                return -1;
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        private boolean fill() throws IOException {
+            if (buf.hasRemaining())
+                return true;
+            buf.clear();
+            int n = ch.read(buf, pos);
+            buf.flip();
+            if (n <= 0)
+                return false;
+            pos += n;
+            return true;
+        }
+    }
+
     public static boolean inUse(Attributes rec) {
         return rec.getInt(Tag.RecordInUseFlag, 0) != 0;
     }
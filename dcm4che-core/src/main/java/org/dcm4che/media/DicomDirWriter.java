@@ -38,13 +38,16 @@
 
 package org.dcm4che.media;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 
 import org.dcm4che.data.Attributes;
 import org.dcm4che.data.Tag;
@@ -54,6 +57,7 @@ import org.dcm4che.io.DicomEncodingOptions;
 import org.dcm4che.io.DicomOutputStream;
 import org.dcm4che.io.RAFOutputStreamAdapter;
 import org.dcm4che.util.ByteUtils;
+import org.dcm4che.util.IntHashMap;
 import org.dcm4che.util.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -86,8 +90,8 @@ public class DicomDirWriter extends DicomDirReader {
     private final int firstRecordPos;
     private int nextRecordPos;
     private int rollbackLen = -1;
-    private IdentityHashMap<Attributes,Attributes> lastChildRecords =
-            new IdentityHashMap<Attributes,Attributes>();
+    private final IntHashMap<Attributes> lastChildRecords =
+            new IntHashMap<Attributes>();
     private final ArrayList<Attributes> dirtyRecords =
             new ArrayList<Attributes>();
 
@@ -108,7 +112,7 @@ public class DicomDirWriter extends DicomDirReader {
             if (seqLen > 0)
                 this.nextRecordPos += seqLen;
             else
-                this.nextRecordPos = (int) (raf.length() - 12); 
+                this.nextRecordPos = (int) (raf.length() - 8);
         }
         updateDirInfoHeader();
     }
@@ -185,7 +189,8 @@ public class DicomDirWriter extends DicomDirReader {
 
     public synchronized Attributes addLowerDirectoryRecord(
             Attributes parentRec, Attributes rec) throws IOException {
-        Attributes prevRec = lastChildRecords.get(parentRec);
+        Attributes prevRec =
+                lastChildRecords.get((int) parentRec.getItemPosition());
         if (prevRec == null)
             prevRec = findLastLowerDirectoryRecord(parentRec);
 
@@ -195,7 +200,7 @@ public class DicomDirWriter extends DicomDirReader {
             addRecord(Tag.OffsetOfReferencedLowerLevelDirectoryEntity,
                     parentRec, rec);
 
-        lastChildRecords.put(parentRec, rec);
+        lastChildRecords.put((int) parentRec.getItemPosition(), rec);
         return rec;
     }
  
@@ -216,9 +221,19 @@ public class DicomDirWriter extends DicomDirReader {
         return seriesRec != null ? seriesRec : addLowerDirectoryRecord(studyRec, rec);
     }
 
+    /**
+     * Returns a new {@link Builder} for adding a large number of Directory
+     * Records to this DICOMDIR.
+     * 
+     * @return new {@link Builder}
+     */
+    public Builder builder() {
+        return new Builder();
+    }
+
    public synchronized boolean deleteRecord(Attributes rec)
             throws IOException {
-        if (rec.getInt(Tag.RecordInUseFlag, 0) == INACTIVE)
+        if (current(rec).getInt(Tag.RecordInUseFlag, 0) == INACTIVE)
             return false; // already disabled
 
         for (Attributes lowerRec = readLowerDirectoryRecord(rec);
@@ -226,13 +241,12 @@ public class DicomDirWriter extends DicomDirReader {
                 lowerRec = readNextDirectoryRecord(lowerRec))
             deleteRecord(lowerRec);
 
-        rec.setInt(Tag.RecordInUseFlag, VR.US, INACTIVE);
-        markAsDirty(rec);
+        update(rec, Tag.RecordInUseFlag, VR.US, INACTIVE);
         return true;
     }
 
     public synchronized void rollback() throws IOException {
-        if (dirtyRecords.isEmpty())
+        if (dirtyRecords.isEmpty() && rollbackLen == -1)
             return;
 
         clearCache();
@@ -257,7 +271,7 @@ public class DicomDirWriter extends DicomDirReader {
     }
 
     public synchronized void commit() throws IOException {
-        if (dirtyRecords.isEmpty())
+        if (dirtyRecords.isEmpty() && rollbackLen == -1)
             return;
 
         if (rollbackLen == -1)
@@ -267,6 +281,9 @@ public class DicomDirWriter extends DicomDirReader {
             writeDirRecordHeader(rec);
 
         dirtyRecords.clear();
+        cache.unpinAll();
+        if (cache.getMaxSize() > 0)
+            lastChildRecords.clear();
 
         if (rollbackLen != -1 && getEncodingOptions().undefSequenceLength)
             writeSequenceDelimitationItem();
@@ -344,9 +361,11 @@ public class DicomDirWriter extends DicomDirReader {
 
     private void addRecord(int tag, Attributes prevRec, Attributes rec)
             throws IOException {
-        prevRec.setInt(tag, VR.UL, nextRecordPos);
-        markAsDirty(prevRec);
-        writeRecord(nextRecordPos, rec);
+        int offset = nextRecordPos;
+        // write record before linking it, so concurrent readers do not
+        // follow the link before the record is written
+        writeRecord(offset, rec);
+        update(prevRec, tag, VR.UL, offset);
     }
 
     private void writeRecord(int offset, Attributes rec) throws IOException {
@@ -363,8 +382,10 @@ public class DicomDirWriter extends DicomDirReader {
         rec.setInt(Tag.OffsetOfTheNextDirectoryRecord, VR.UL, 0);
         rec.setInt(Tag.RecordInUseFlag, VR.US, IN_USE);
         rec.setInt(Tag.OffsetOfReferencedLowerLevelDirectoryEntity, VR.UL, 0);
+        rec.calcLength(out.getEncodingOptions(), out.isExplicitVR());
         rec.writeItemTo(out);
         nextRecordPos = (int) raf.getFilePointer();
+        rec.decodeStringValues();
         cache.put(offset, rec);
     }
 
@@ -382,10 +403,44 @@ public class DicomDirWriter extends DicomDirReader {
         }
     };
 
+    /**
+     * Replaces the current version of a written record by a copy with the
+     * updated value, which is written on {@link #commit()}. Records are never
+     * modified after they were added to the record cache, so concurrent
+     * readers either see the previous or the updated copy, but never a
+     * partially modified record.
+     */
+    private Attributes update(Attributes rec, int tag, VR vr, int value)
+            throws IOException {
+        Attributes cur = current(rec);
+        Attributes upd = new Attributes(cur);
+        upd.setItemPosition(cur.getItemPosition());
+        upd.setInt(tag, vr, value);
+        markAsDirty(upd);
+        return upd;
+    }
+
     private void markAsDirty(Attributes rec) {
         int index = Collections.binarySearch(dirtyRecords, rec, offsetComparator);
         if (index < 0)
             dirtyRecords.add(-(index + 1), rec);
+        else
+            dirtyRecords.set(index, rec);
+        cache.pin((int) rec.getItemPosition(), rec);
+    }
+
+    /**
+     * Returns the current version of a written record, which may have been
+     * replaced by an updated copy since <code>rec</code> was read.
+     */
+    @Override
+    protected Attributes current(Attributes rec) throws IOException {
+        long pos = rec.getItemPosition();
+        if (pos <= 0)
+            return rec;
+
+        Attributes cur = readRecord((int) pos);
+        return cur != null ? cur : rec;
     }
 
     public synchronized int purge() throws IOException {
@@ -407,4 +462,290 @@ public class DicomDirWriter extends DicomDirReader {
         }
         return purge;
     }
+
+    /**
+     * Collects Directory Records in memory and writes them on
+     * {@link #commit()} in one sequential pass, grouped by hierarchy:
+     * each record is directly followed by its lower level records. Records
+     * of existing entities are looked up by their key attributes - Patient
+     * ID, Study Instance UID, Series Instance UID or Referenced SOP Instance
+     * UID in File - in hash tables, which are filled by reading the records
+     * of each existing directory entity only once.
+     * <p>
+     * A <code>Builder</code> is not thread-safe. Records shall not be added
+     * directly to the {@link DicomDirWriter} while a <code>Builder</code> is
+     * in use.
+     */
+    public final class Builder {
+
+        private final Entity root = new Entity(null);
+        private final IdentityHashMap<Attributes, Entity> entities =
+                new IdentityHashMap<Attributes, Entity>();
+        private final LinkedHashMap<Entity, Entity> modified =
+                new LinkedHashMap<Entity, Entity>();
+        private final IdentityHashMap<Attributes, Attributes> pending =
+                new IdentityHashMap<Attributes, Attributes>();
+
+        private Builder() {}
+
+        public Attributes findPatientRecord(String id) throws IOException {
+            return root.find(keyOf(RecordType.PATIENT, id));
+        }
+
+        public Attributes findStudyRecord(Attributes patRec, String iuid)
+                throws IOException {
+            return entityOf(patRec).find(keyOf(RecordType.STUDY, iuid));
+        }
+
+        public Attributes findSeriesRecord(Attributes studyRec, String iuid)
+                throws IOException {
+            return entityOf(studyRec).find(keyOf(RecordType.SERIES, iuid));
+        }
+
+        public Attributes findLowerInstanceRecord(Attributes seriesRec,
+                String iuid) throws IOException {
+            return entityOf(seriesRec).find(keyOf(null, iuid));
+        }
+
+        public Attributes findRootInstanceRecord(String iuid)
+                throws IOException {
+            return root.find(keyOf(null, iuid));
+        }
+
+        public Attributes findOrAddPatientRecord(Attributes rec)
+                throws IOException {
+            Attributes patRec = findPatientRecord(rec.getString(Tag.PatientID));
+            return patRec != null ? patRec : addRootDirectoryRecord(rec);
+        }
+
+        public Attributes findOrAddStudyRecord(Attributes patRec,
+                Attributes rec) throws IOException {
+            Attributes studyRec = findStudyRecord(patRec,
+                    rec.getString(Tag.StudyInstanceUID));
+            return studyRec != null ? studyRec
+                    : addLowerDirectoryRecord(patRec, rec);
+        }
+
+        public Attributes findOrAddSeriesRecord(Attributes studyRec,
+                Attributes rec) throws IOException {
+            Attributes seriesRec = findSeriesRecord(studyRec,
+                    rec.getString(Tag.SeriesInstanceUID));
+            return seriesRec != null ? seriesRec
+                    : addLowerDirectoryRecord(studyRec, rec);
+        }
+
+        public Attributes addRootDirectoryRecord(Attributes rec)
+                throws IOException {
+            root.add(rec);
+            return rec;
+        }
+
+        public Attributes addLowerDirectoryRecord(Attributes parentRec,
+                Attributes rec) throws IOException {
+            entityOf(parentRec).add(rec);
+            return rec;
+        }
+
+        /**
+         * Write all added Directory Records and commit the changes of the
+         * DICOMDIR.
+         * 
+         * @return number of written Directory Records
+         * @throws IOException if writing the records failed
+         */
+        public int commit() throws IOException {
+            synchronized (DicomDirWriter.this) {
+                ArrayList<Attributes> recs = new ArrayList<Attributes>();
+                for (Entity entity : modified.keySet())
+                    entity.collectAdded(recs);
+                if (!recs.isEmpty()) {
+                    int pos = nextRecordPos;
+                    DicomEncodingOptions encOpts = getEncodingOptions();
+                    boolean explicitVR = out.isExplicitVR();
+                    for (Attributes rec : recs) {
+                        rec.setInt(Tag.OffsetOfTheNextDirectoryRecord, VR.UL, 0);
+                        rec.setInt(Tag.RecordInUseFlag, VR.US, IN_USE);
+                        rec.setInt(Tag.OffsetOfReferencedLowerLevelDirectoryEntity,
+                                VR.UL, 0);
+                        rec.setItemPosition(pos);
+                        pos += 8 + rec.calcLength(encOpts, explicitVR);
+                        if (encOpts.undefItemLength)
+                            pos += 8;
+                    }
+                    for (Entity entity : modified.keySet())
+                        entity.link();
+                    writeRecords(recs);
+                    for (Entity entity : modified.keySet())
+                        entity.attach();
+                    modified.clear();
+                    pending.clear();
+                }
+                DicomDirWriter.this.commit();
+                return recs.size();
+            }
+        }
+
+        private void writeRecords(ArrayList<Attributes> recs)
+                throws IOException {
+            int offset = (int) recs.get(0).getItemPosition();
+            if (rollbackLen == -1) {
+                rollbackLen = offset;
+                writeFileSetConsistencyFlag(KNOWN_INCONSISTENCIES);
+            }
+            LOG.info("M-UPDATE {}: add {} Records", file, recs.size());
+            raf.seek(offset);
+            DicomOutputStream bout = new DicomOutputStream(
+                    new BufferedOutputStream(new RAFOutputStreamAdapter(raf),
+                            0x10000),
+                    getTransferSyntaxUID());
+            bout.setEncodingOptions(getEncodingOptions());
+            for (Attributes rec : recs) {
+                LOG.debug("Directory Record:\n{}", rec);
+                rec.writeItemTo(bout);
+                rec.decodeStringValues();
+                cache.put((int) rec.getItemPosition(), rec);
+            }
+            bout.flush();
+            nextRecordPos = (int) raf.getFilePointer();
+        }
+
+        private Entity entityOf(Attributes rec) {
+            Entity entity = entities.get(rec);
+            if (entity == null)
+                entities.put(rec, entity = new Entity(rec));
+            return entity;
+        }
+
+        private final class Entity {
+            final Attributes rec;
+            final ArrayList<Attributes> added = new ArrayList<Attributes>();
+            HashMap<String, Attributes> lowerRecs;
+            Attributes lastRec;
+
+            Entity(Attributes rec) {
+                this.rec = rec;
+            }
+
+            Attributes find(String key) throws IOException {
+                if (key == null)
+                    return null;
+                if (lowerRecs == null)
+                    load();
+                return lowerRecs.get(key);
+            }
+
+            void load() throws IOException {
+                lowerRecs = new HashMap<String, Attributes>();
+                if (rec != null && !isWritten(rec))
+                    return;
+
+                Attributes lower = rec == null
+                        ? readFirstRootDirectoryRecord()
+                        : readLowerDirectoryRecord(rec);
+                while (lower != null) {
+                    if (inUse(lower))
+                        index(lower);
+                    lastRec = lower;
+                    lower = readNextDirectoryRecord(lower);
+                }
+            }
+
+            void index(Attributes lower) {
+                String key = keyOf(lower);
+                if (key != null && !lowerRecs.containsKey(key))
+                    lowerRecs.put(key, lower);
+            }
+
+            void add(Attributes lower) throws IOException {
+                if (lowerRecs == null)
+                    load();
+                index(lower);
+                added.add(lower);
+                pending.put(lower, lower);
+                if (rec == null || isWritten(rec))
+                    modified.put(this, this);
+            }
+
+            void collectAdded(ArrayList<Attributes> recs) {
+                for (Attributes lower : added) {
+                    recs.add(lower);
+                    Entity entity = entities.get(lower);
+                    if (entity != null)
+                        entity.collectAdded(recs);
+                }
+            }
+
+            void link() throws IOException {
+                Attributes prev = null;
+                for (Attributes lower : added) {
+                    if (prev != null)
+                        prev.setInt(Tag.OffsetOfTheNextDirectoryRecord,
+                                VR.UL, (int) lower.getItemPosition());
+                    Entity entity = entities.get(lower);
+                    if (entity != null) {
+                        entity.link();
+                        entity.attach();
+                    }
+                    prev = lower;
+                }
+            }
+
+            void attach() throws IOException {
+                if (added.isEmpty())
+                    return;
+
+                int firstPos = (int) added.get(0).getItemPosition();
+                if (lastRec != null) {
+                    if (isWritten(lastRec))
+                        update(lastRec, Tag.OffsetOfTheNextDirectoryRecord,
+                                VR.UL, firstPos);
+                    else
+                        lastRec.setInt(Tag.OffsetOfTheNextDirectoryRecord,
+                                VR.UL, firstPos);
+                } else if (rec != null) {
+                    if (isWritten(rec))
+                        update(rec,
+                                Tag.OffsetOfReferencedLowerLevelDirectoryEntity,
+                                VR.UL, firstPos);
+                    else
+                        rec.setInt(
+                                Tag.OffsetOfReferencedLowerLevelDirectoryEntity,
+                                VR.UL, firstPos);
+                } else {
+                    setOffsetOfFirstRootDirectoryRecord(firstPos);
+                }
+                Attributes prev = added.get(added.size() - 1);
+                lastRec = prev;
+                if (rec == null)
+                    setOffsetOfLastRootDirectoryRecord(
+                            (int) prev.getItemPosition());
+                else
+                    lastChildRecords.put((int) rec.getItemPosition(), prev);
+                added.clear();
+            }
+        }
+
+        private boolean isWritten(Attributes rec) {
+            return !pending.containsKey(rec);
+        }
+    }
+
+    private static String keyOf(RecordType type, String id) {
+        return id == null ? null : type == null ? id : type.code() + '\\' + id;
+    }
+
+    private static String keyOf(Attributes rec) {
+        String type = rec.getString(Tag.DirectoryRecordType, null);
+        if (RecordType.PATIENT.code().equals(type))
+            return keyOf(RecordType.PATIENT, rec.getString(Tag.PatientID, null));
+        if (RecordType.STUDY.code().equals(type))
+            return keyOf(RecordType.STUDY,
+                    rec.getString(Tag.StudyInstanceUID, null));
+        if (RecordType.SERIES.code().equals(type))
+            return keyOf(RecordType.SERIES,
+                    rec.getString(Tag.SeriesInstanceUID, null));
+        return keyOf(null,
+                rec.getString(Tag.ReferencedSOPInstanceUIDInFile, null));
+    }
+
 }
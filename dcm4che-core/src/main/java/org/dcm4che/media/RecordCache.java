@@ -0,0 +1,212 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2011
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.media;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.dcm4che.data.Attributes;
+import org.dcm4che.util.IntHashMap;
+
+/**
+ * Cache of Directory Records read from or written to a DICOMDIR, keyed by
+ * their offset. If a maximal size is set, least recently used records are
+ * evicted from the cache. Records modified by a {@link DicomDirWriter} are
+ * pinned in the cache until the modification is committed.
+ * 
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+public class RecordCache {
+
+    private final LinkedHashMap<Integer, Attributes> lru =
+            new LinkedHashMap<Integer, Attributes>(64, 0.75f, true) {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<Integer, Attributes> eldest) {
+                    if (maxSize <= 0 || size() <= maxSize)
+                        return false;
+
+                    evictions++;
+                    return true;
+                }
+            };
+    private final IntHashMap<Attributes> pinned = new IntHashMap<Attributes>();
+    private int maxSize;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public RecordCache() {
+    }
+
+    public RecordCache(int maxSize) {
+        setMaxSize(maxSize);
+    }
+
+    public final synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Set maximal number of cached records. If <code>0</code>, the number of
+     * cached records is not limited.
+     * 
+     * @param maxSize maximal number of cached records or <code>0</code>
+     */
+    public final synchronized void setMaxSize(int maxSize) {
+        if (maxSize < 0)
+            throw new IllegalArgumentException("maxSize: " + maxSize);
+
+        this.maxSize = maxSize;
+        evict();
+    }
+
+    public synchronized int size() {
+        return lru.size() + pinned.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized void resetStatistics() {
+        hits = 0L;
+        misses = 0L;
+        evictions = 0L;
+    }
+
+    public synchronized Attributes get(int offset) {
+        Attributes rec = pinned.get(offset);
+        if (rec == null)
+            rec = lru.get(offset);
+        if (rec != null)
+            hits++;
+        else
+            misses++;
+        return rec;
+    }
+
+    public synchronized void put(int offset, Attributes rec) {
+        if (pinned.containsKey(offset))
+            pinned.put(offset, rec);
+        else
+            lru.put(offset, rec);
+    }
+
+    /**
+     * Add the record to the cache, if no record with the same offset is
+     * already cached.
+     * 
+     * @param offset offset of the record
+     * @param rec the record
+     * @return the already cached record or <code>null</code>
+     */
+    public synchronized Attributes putIfAbsent(int offset, Attributes rec) {
+        Attributes cached = pinned.get(offset);
+        if (cached == null)
+            cached = lru.get(offset);
+        if (cached == null)
+            lru.put(offset, rec);
+        return cached;
+    }
+
+    /**
+     * Keep the record in the cache until {@link #unpinAll()} is called.
+     * Replaces any other cached instance of the record with the same offset.
+     * 
+     * @param offset offset of the record
+     * @param rec the record
+     */
+    public synchronized void pin(int offset, Attributes rec) {
+        lru.remove(offset);
+        pinned.put(offset, rec);
+    }
+
+    public synchronized void unpinAll() {
+        pinned.accept(new IntHashMap.Visitor<Attributes>() {
+
+            @Override
+            public boolean visit(int key, Attributes value) {
+                lru.put(key, value);
+                return true;
+            }
+        });
+        pinned.clear();
+        evict();
+    }
+
+    public synchronized void clear() {
+        lru.clear();
+        pinned.clear();
+    }
+
+    private void evict() {
+        if (maxSize <= 0)
+            return;
+
+        Iterator<Attributes> iter = lru.values().iterator();
+        for (int n = lru.size() - maxSize; n > 0; n--) {
+            iter.next();
+            iter.remove();
+            evictions++;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "RecordCache[size=" + size()
+                + ", maxSize=" + maxSize
+                + ", hits=" + hits
+                + ", misses=" + misses
+                + ", evictions=" + evictions
+                + "]";
+    }
+}
@@ -0,0 +1,199 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe map of <code>int</code> keys to values, partitioned into
+ * stripes of {@link IntHashMap}s, each guarded by its own lock. Threads
+ * accessing different stripes do not contend. The number of times a thread
+ * had to wait for the lock of a stripe held by another thread is counted.
+ * 
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+public class StripedIntHashMap<V> {
+
+    private static final int DEFAULT_STRIPES = 16;
+
+    private final ReentrantLock[] locks;
+    private final IntHashMap<V>[] maps;
+    private final int mask;
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong contentions = new AtomicLong();
+
+    public StripedIntHashMap() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * Creates map with specified minimal number of stripes. The actual
+     * number of stripes is the next power of two.
+     * 
+     * @param stripes minimal number of stripes
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public StripedIntHashMap(int stripes) {
+        if (stripes <= 0)
+            throw new IllegalArgumentException("stripes: " + stripes);
+
+        int n = 1;
+        while (n < stripes)
+            n <<= 1;
+        locks = new ReentrantLock[n];
+        maps = new IntHashMap[n];
+        for (int i = 0; i < n; i++) {
+            locks[i] = new ReentrantLock();
+            maps[i] = new IntHashMap<V>();
+        }
+        mask = n - 1;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    /**
+     * Returns the number of times a thread had to wait for the lock of a
+     * stripe, which was held by another thread.
+     * 
+     * @return number of lock contentions
+     */
+    public long getContentions() {
+        return contentions.get();
+    }
+
+    public void resetContentions() {
+        contentions.set(0L);
+    }
+
+    public V get(int key) {
+        int i = stripe(key);
+        lock(i);
+        try {
+            return maps[i].get(key);
+        } finally {
+            locks[i].unlock();
+        }
+    }
+
+    public V put(int key, V value) {
+        int i = stripe(key);
+        lock(i);
+        try {
+            V prev = maps[i].put(key, value);
+            if (prev == null)
+                size.incrementAndGet();
+            return prev;
+        } finally {
+            locks[i].unlock();
+        }
+    }
+
+    public V remove(int key) {
+        int i = stripe(key);
+        lock(i);
+        try {
+            V prev = maps[i].remove(key);
+            if (prev != null)
+                size.decrementAndGet();
+            return prev;
+        } finally {
+            locks[i].unlock();
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < maps.length; i++) {
+            lock(i);
+            try {
+                size.addAndGet(-maps[i].size());
+                maps[i].clear();
+            } finally {
+                locks[i].unlock();
+            }
+        }
+    }
+
+    /**
+     * Visits the entries of each stripe while holding the lock of the
+     * stripe. The visitor must not modify this map.
+     * 
+     * @param visitor the visitor
+     * @return <code>false</code> if the visitor stopped the iteration
+     */
+    public boolean accept(IntHashMap.Visitor<V> visitor) {
+        for (int i = 0; i < maps.length; i++) {
+            lock(i);
+            try {
+                if (!maps[i].accept(visitor))
+                    return false;
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        return true;
+    }
+
+    private int stripe(int key) {
+        return (key ^ (key >>> 16)) & mask;
+    }
+
+    private void lock(int i) {
+        ReentrantLock lock = locks[i];
+        if (!lock.tryLock()) {
+            contentions.incrementAndGet();
+            lock.lock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StripedIntHashMap[size=" + size.get()
+                + ", stripes=" + maps.length
+                + ", contentions=" + contentions.get()
+                + "]";
+    }
+}
@@ -201,4 +201,39 @@ public class AttributesTest {
         assertArrayEquals(ByteUtils.EMPTY_FLOATS, a.getFloats(Tag.PixelSpacing), 0);
    }
 
+    @Test
+    public void testAppendMode() {
+        Attributes a = new Attributes();
+        a.setAppendMode(true);
+        a.setString(Tag.PatientName, VR.PN, "Doe^John");
+        a.setString(Tag.StudyInstanceUID, VR.UI, "1.2.3");
+        a.setString(Tag.Modality, VR.CS, "CT");
+        a.setString(Tag.PatientID, VR.LO, "P1");
+        a.setString(Tag.PatientName, VR.PN, "Doe^Jane");
+        assertEquals(4, a.size());
+        assertArrayEquals(new int[] { Tag.Modality, Tag.PatientName,
+                Tag.PatientID, Tag.StudyInstanceUID }, a.tags());
+        assertEquals("Doe^Jane", a.getString(Tag.PatientName));
+        a.setString(Tag.AccessionNumber, VR.SH, "A1");
+        a.setAppendMode(false);
+        assertEquals("A1", a.getString(Tag.AccessionNumber));
+        assertEquals(Tag.AccessionNumber, a.tags()[0]);
+    }
+
+    @Test
+    public void testDecodeStringValues() {
+        Attributes a = new Attributes(16);
+        a.setBytes(Tag.PatientName, VR.PN, "Doe^John".getBytes());
+        a.setBytes(Tag.Modality, VR.CS, "CT".getBytes());
+        a.setInt(Tag.Rows, VR.US, 512);
+        Attributes item = new Attributes(8);
+        item.setBytes(Tag.CodeValue, VR.SH, "T-D1100".getBytes());
+        a.newSequence(Tag.AnatomicRegionSequence, 1).add(item);
+        a.decodeStringValues();
+        assertEquals("Doe^John", a.getValue(Tag.PatientName));
+        assertEquals("CT", a.getValue(Tag.Modality));
+        assertEquals("T-D1100", item.getValue(Tag.CodeValue));
+        assertEquals(512, a.getInt(Tag.Rows, 0));
+    }
+
 }
@@ -1,10 +1,21 @@
 package org.dcm4che.io;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import org.dcm4che.data.Attributes;
+import org.dcm4che.data.BulkDataLocator;
+import org.dcm4che.data.LazyValueException;
 import org.dcm4che.data.Sequence;
 import org.dcm4che.data.Tag;
 import org.dcm4che.io.DicomInputStream.IncludeBulkData;
@@ -41,14 +52,118 @@ public class DicomInputStreamTest {
         assertEquals(1, attrs.getInt(Tag.SamplesPerPixel, 0));
     }
 
+    @Test
+    public void testLazyValues() throws Exception {
+        Attributes expected = readFromResource("US-RGB-8-epicard",
+                IncludeBulkData.YES, -1);
+        Attributes attrs = readFromResource("US-RGB-8-epicard",
+                IncludeBulkData.YES, 0);
+        assertEquals(expected, attrs);
+        assertEquals(expected.getString(Tag.SOPInstanceUID),
+                attrs.getString(Tag.SOPInstanceUID));
+        assertEquals(expected.getInt(Tag.Rows, 0), attrs.getInt(Tag.Rows, 0));
+        assertArrayEquals(expected.getBytes(Tag.PixelData),
+                (byte[]) attrs.getValue(Tag.PixelData));
+    }
+
+    @Test
+    public void testLazyValueOfDeletedFile() throws Exception {
+        File file = File.createTempFile("lazy", ".dcm");
+        try {
+            copyResource("US-RGB-8-epicard", file);
+            DicomInputStream in = new DicomInputStream(file);
+            Attributes attrs;
+            try {
+                in.setLazyValueThreshold(0);
+                attrs = in.readDataset(-1, -1);
+            } finally {
+                in.close();
+            }
+            assertTrue(file.delete());
+            for (int i = 0; i < 2; i++) {
+                try {
+                    attrs.getBytes(Tag.PixelData);
+                    fail("LazyValueException expected");
+                } catch (LazyValueException e) {
+                    assertTrue(e.getCause() instanceof IOException);
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testEqualsKeepsBulkDataLocator() throws Exception {
+        Attributes lazy = readFromResource("US-RGB-8-epicard",
+                IncludeBulkData.YES, 0);
+        Attributes attrs = readFromResource("US-RGB-8-epicard",
+                IncludeBulkData.LOCATOR);
+        Object pixelData = attrs.getValue(Tag.PixelData);
+        assertTrue(pixelData instanceof BulkDataLocator);
+        assertFalse(lazy.equals(attrs));
+        assertFalse(attrs.equals(lazy));
+        assertSame(pixelData, attrs.getValue(Tag.PixelData));
+    }
+
+    @Test
+    public void testMappedFile() throws Exception {
+        Attributes expected = readFromResource("OT-PAL-8-face",
+                IncludeBulkData.YES);
+        ClassLoader cl = Thread.currentThread().getContextClassLoader();
+        DicomInputStream in = new DicomInputStream(
+                new File(cl.getResource("OT-PAL-8-face").toURI()), true);
+        Attributes attrs;
+        try {
+            in.setIncludeBulkData(IncludeBulkData.LOCATOR);
+            attrs = in.readDataset(-1, -1);
+        } finally {
+            in.close();
+        }
+        BulkDataLocator pixelData =
+                (BulkDataLocator) attrs.remove(Tag.PixelData);
+        ByteBuffer bb = pixelData.toByteBuffer();
+        byte[] b = new byte[bb.remaining()];
+        bb.get(b);
+        assertArrayEquals((byte[]) expected.remove(Tag.PixelData), b);
+        assertEquals(b.length, pixelData.toByteBuffer().remaining());
+        assertEquals(expected, attrs);
+    }
+
+    private static void copyResource(String name, File file)
+            throws IOException {
+        ClassLoader cl = Thread.currentThread().getContextClassLoader();
+        InputStream in = cl.getResourceAsStream(name);
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                byte[] b = new byte[8192];
+                int n;
+                while ((n = in.read(b)) > 0)
+                    out.write(b, 0, n);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
     private static Attributes readFromResource(String name, 
             IncludeBulkData includeBulkData)
             throws Exception {
+        return readFromResource(name, includeBulkData, -1);
+    }
+
+    private static Attributes readFromResource(String name, 
+            IncludeBulkData includeBulkData, int lazyValueThreshold)
+            throws Exception {
         ClassLoader cl = Thread.currentThread().getContextClassLoader();
         DicomInputStream in = new DicomInputStream(
                 new File(cl.getResource(name).toURI()));
         try {
             in.setIncludeBulkData(includeBulkData);
+            in.setLazyValueThreshold(lazyValueThreshold);
             return in.readDataset(-1, -1);
         } finally {
             in.close();
@@ -42,6 +42,22 @@ public class DicomDirReaderTest {
         }
     }
 
+    @Test
+    public void testReadAllWithBoundedCache() throws Exception {
+        DicomDirReader r = new DicomDirReader(toFile("DICOMDIR"));
+        try {
+            r.setRecordCacheSize(10);
+            assertEquals(44, readNext(r, r.readFirstRootDirectoryRecord()));
+            RecordCache cache = r.getRecordCache();
+            assertEquals(10, cache.size());
+            assertEquals(34, cache.getEvictions());
+            assertEquals(44, readNext(r, r.readFirstRootDirectoryRecord()));
+            assertEquals(88, cache.getMisses());
+        } finally {
+            r.close();
+        }
+    }
+
     private int readNext(DicomDirReader r, Attributes rec) throws IOException {
         int count = 0;
         while (rec != null) {
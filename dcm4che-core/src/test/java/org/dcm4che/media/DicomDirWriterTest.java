@@ -0,0 +1,338 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.media;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dcm4che.data.Attributes;
+import org.dcm4che.data.Tag;
+import org.dcm4che.data.VR;
+import org.dcm4che.io.DicomEncodingOptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+public class DicomDirWriterTest {
+
+    private interface RecordAdder {
+        Attributes findOrAddPatientRecord(Attributes rec) throws IOException;
+        Attributes findOrAddStudyRecord(Attributes patRec, Attributes rec)
+                throws IOException;
+        Attributes findOrAddSeriesRecord(Attributes studyRec, Attributes rec)
+                throws IOException;
+        Attributes addLowerDirectoryRecord(Attributes parentRec,
+                Attributes rec) throws IOException;
+        void commit() throws IOException;
+    }
+
+    private File single;
+    private File bulk;
+    private DicomEncodingOptions encOpts;
+
+    @Before
+    public void setUp() throws Exception {
+        single = File.createTempFile("single", "DICOMDIR");
+        bulk = File.createTempFile("bulk", "DICOMDIR");
+        DicomDirWriter.createEmptyDirectory(single, "1.2.40.0.13.1.1",
+                "TEST", null, null);
+        DicomDirWriter.createEmptyDirectory(bulk, "1.2.40.0.13.1.1",
+                "TEST", null, null);
+    }
+
+    @After
+    public void tearDown() {
+        single.delete();
+        bulk.delete();
+    }
+
+    @Test
+    public void testBuilderCreate() throws Exception {
+        addRecords(single, false, 0, 3, 2, 2, 3);
+        addRecords(bulk, true, 0, 3, 2, 2, 3);
+        assertSameRecords(3 * (1 + 2 * (1 + 2 * (1 + 3))));
+    }
+
+    @Test
+    public void testBuilderUpdate() throws Exception {
+        addRecords(single, false, 0, 2, 2, 2, 2);
+        addRecords(bulk, false, 0, 2, 2, 2, 2);
+        // add instances to existing series, series to existing studies,
+        // studies to existing patients and new patients
+        addRecords(single, false, 2, 3, 3, 3, 3);
+        addRecords(bulk, true, 2, 3, 3, 3, 3);
+        assertSameRecords(3 + 3 * 3 + 3 * 3 * 3 + 3 * 3 * 3 * 3);
+    }
+
+    @Test
+    public void testBuilderUpdateExplicitLength() throws Exception {
+        encOpts = new DicomEncodingOptions(false, false, false, false, false);
+        testBuilderUpdate();
+    }
+
+    @Test
+    public void testReturnedRecordsNotModified() throws Exception {
+        DicomDirWriter w = DicomDirWriter.open(single);
+        try {
+            Attributes patRec = w.addRootDirectoryRecord(
+                    rec(RecordType.PATIENT, Tag.PatientID, VR.LO, "P0"));
+            Attributes study1 = w.addLowerDirectoryRecord(patRec,
+                    rec(RecordType.STUDY, Tag.StudyInstanceUID, VR.UI, "1.2.1"));
+            Attributes study2 = w.addLowerDirectoryRecord(patRec,
+                    rec(RecordType.STUDY, Tag.StudyInstanceUID, VR.UI, "1.2.2"));
+            assertEquals(0, patRec.getInt(
+                    Tag.OffsetOfReferencedLowerLevelDirectoryEntity, 0));
+            assertEquals(0, study1.getInt(
+                    Tag.OffsetOfTheNextDirectoryRecord, 0));
+            // links are followed in the updated copies
+            Attributes study1Upd = w.readLowerDirectoryRecord(patRec);
+            assertNotSame(study1, study1Upd);
+            assertEquals(study1.getItemPosition(), study1Upd.getItemPosition());
+            assertEquals(study2.getItemPosition(), study1Upd.getInt(
+                    Tag.OffsetOfTheNextDirectoryRecord, 0));
+            assertSame(study2, w.readNextDirectoryRecord(study1));
+
+            assertTrue(w.deleteRecord(study1));
+            assertEquals(0xFFFF,
+                    study1.getInt(Tag.RecordInUseFlag, 0));
+            assertSame(study2, w.findLowerDirectoryRecordInUse(patRec, false));
+            assertFalse(w.deleteRecord(study1));
+            w.commit();
+        } finally {
+            w.close();
+        }
+    }
+
+    private void assertSameRecords(int expectedCount) throws IOException {
+        List<String> expected = readRecords(single);
+        assertEquals(expectedCount, expected.size());
+        assertEquals(expected, readRecords(bulk));
+        assertArrayEquals(readBytes(single), readBytes(bulk));
+    }
+
+    /**
+     * Adds a grid of Patient, Study, Series and Image records, skipping
+     * Image records already added by a previous invocation with
+     * <code>existing</code> patients, studies, series and instances.
+     */
+    private void addRecords(File file, boolean useBuilder,
+            int existing, int patients, int studies, int series,
+            int instances) throws IOException {
+        DicomDirWriter w = DicomDirWriter.open(file);
+        try {
+            if (encOpts != null)
+                w.setEncodingOptions(encOpts);
+            RecordAdder adder = useBuilder ? builderOf(w) : singleOf(w);
+            for (int p = 0; p < patients; p++) {
+                Attributes patRec = adder.findOrAddPatientRecord(
+                        rec(RecordType.PATIENT, Tag.PatientID, VR.LO, "P" + p));
+                for (int st = 0; st < studies; st++) {
+                    String studyIUID = "1.2." + p + '.' + st;
+                    Attributes studyRec = adder.findOrAddStudyRecord(patRec,
+                            rec(RecordType.STUDY, Tag.StudyInstanceUID,
+                                    VR.UI, studyIUID));
+                    for (int se = 0; se < series; se++) {
+                        String seriesIUID = studyIUID + '.' + se;
+                        Attributes seriesRec = adder.findOrAddSeriesRecord(
+                                studyRec,
+                                rec(RecordType.SERIES, Tag.SeriesInstanceUID,
+                                        VR.UI, seriesIUID));
+                        for (int i = 0; i < instances; i++) {
+                            if (p < existing && st < existing
+                                    && se < existing && i < existing)
+                                continue;
+
+                            Attributes instRec = rec(RecordType.IMAGE,
+                                    Tag.ReferencedSOPInstanceUIDInFile, VR.UI,
+                                    seriesIUID + '.' + i);
+                            instRec.setString(Tag.ReferencedFileID, VR.CS,
+                                    "P" + p, "ST" + st, "SE" + se, "I" + i);
+                            adder.addLowerDirectoryRecord(seriesRec, instRec);
+                        }
+                    }
+                }
+            }
+            adder.commit();
+        } finally {
+            w.close();
+        }
+    }
+
+    private static RecordAdder singleOf(final DicomDirWriter w) {
+        return new RecordAdder() {
+
+            @Override
+            public Attributes findOrAddPatientRecord(Attributes rec)
+                    throws IOException {
+                return w.findOrAddPatientRecord(rec);
+            }
+
+            @Override
+            public Attributes findOrAddStudyRecord(Attributes patRec,
+                    Attributes rec) throws IOException {
+                return w.findOrAddStudyRecord(patRec, rec);
+            }
+
+            @Override
+            public Attributes findOrAddSeriesRecord(Attributes studyRec,
+                    Attributes rec) throws IOException {
+                return w.findOrAddSeriesRecord(studyRec, rec);
+            }
+
+            @Override
+            public Attributes addLowerDirectoryRecord(Attributes parentRec,
+                    Attributes rec) throws IOException {
+                return w.addLowerDirectoryRecord(parentRec, rec);
+            }
+
+            @Override
+            public void commit() throws IOException {
+                w.commit();
+            }
+        };
+    }
+
+    private static RecordAdder builderOf(DicomDirWriter w) {
+        final DicomDirWriter.Builder b = w.builder();
+        return new RecordAdder() {
+
+            @Override
+            public Attributes findOrAddPatientRecord(Attributes rec)
+                    throws IOException {
+                return b.findOrAddPatientRecord(rec);
+            }
+
+            @Override
+            public Attributes findOrAddStudyRecord(Attributes patRec,
+                    Attributes rec) throws IOException {
+                return b.findOrAddStudyRecord(patRec, rec);
+            }
+
+            @Override
+            public Attributes findOrAddSeriesRecord(Attributes studyRec,
+                    Attributes rec) throws IOException {
+                return b.findOrAddSeriesRecord(studyRec, rec);
+            }
+
+            @Override
+            public Attributes addLowerDirectoryRecord(Attributes parentRec,
+                    Attributes rec) throws IOException {
+                return b.addLowerDirectoryRecord(parentRec, rec);
+            }
+
+            @Override
+            public void commit() throws IOException {
+                b.commit();
+            }
+        };
+    }
+
+    private static Attributes rec(RecordType type, int tag, VR vr,
+            String value) {
+        Attributes rec = new Attributes(3);
+        rec.setString(Tag.DirectoryRecordType, VR.CS, type.code());
+        rec.setString(tag, vr, value);
+        return rec;
+    }
+
+    private static List<String> readRecords(File file) throws IOException {
+        ArrayList<String> result = new ArrayList<String>();
+        DicomDirReader r = new DicomDirReader(file);
+        try {
+            Attributes rec = r.readFirstRootDirectoryRecord();
+            assertEquals(r.getOffsetOfFirstRootDirectoryRecord(),
+                    (int) rec.getItemPosition());
+            Attributes last = readRecords(r, rec, 0, result);
+            assertEquals(r.getOffsetOfLastRootDirectoryRecord(),
+                    (int) last.getItemPosition());
+            assertFalse(r.knownInconsistencies());
+        } finally {
+            r.close();
+        }
+        return result;
+    }
+
+    private static Attributes readRecords(DicomDirReader r, Attributes rec,
+            int level, List<String> result) throws IOException {
+        Attributes last = null;
+        while (rec != null) {
+            result.add(level + ":" + rec.getItemPosition() + ":"
+                    + rec.getString(Tag.DirectoryRecordType) + ":"
+                    + rec.getString(keyOf(level)) + ":"
+                    + rec.getInt(Tag.OffsetOfTheNextDirectoryRecord, -1) + ":"
+                    + rec.getInt(
+                        Tag.OffsetOfReferencedLowerLevelDirectoryEntity, -1));
+            readRecords(r, r.readLowerDirectoryRecord(rec), level + 1, result);
+            last = rec;
+            rec = r.readNextDirectoryRecord(rec);
+        }
+        return last;
+    }
+
+    private static int keyOf(int level) {
+        switch (level) {
+        case 0:
+            return Tag.PatientID;
+        case 1:
+            return Tag.StudyInstanceUID;
+        case 2:
+            return Tag.SeriesInstanceUID;
+        }
+        return Tag.ReferencedSOPInstanceUIDInFile;
+    }
+
+    private static byte[] readBytes(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] b = new byte[(int) raf.length()];
+            raf.readFully(b);
+            return b;
+        } finally {
+            raf.close();
+        }
+    }
+}
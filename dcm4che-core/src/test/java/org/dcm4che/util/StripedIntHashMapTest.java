@@ -0,0 +1,115 @@
+package org.dcm4che.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+public class StripedIntHashMapTest {
+
+    private StripedIntHashMap<Integer> map;
+
+    @Before
+    public void setUp() throws Exception {
+        map = new StripedIntHashMap<Integer>(4);
+        for (int i = 1; i < 45; i += 3)
+            map.put(i, Integer.valueOf(i));
+    }
+
+    private void removeOdd() {
+        for (int i = 1; i < 45; i += 2)
+            map.remove(i);
+    }
+
+    @Test
+    public void testSize() {
+        assertEquals(15, map.size());
+        removeOdd();
+        assertEquals(7, map.size());
+    }
+
+    @Test
+    public void testGet() {
+        removeOdd();
+        for (int i = 1; i < 45; i++)
+            if ((i & 1) == 0 && (i % 3) == 1)
+                assertEquals(Integer.valueOf(i), map.get(i));
+            else
+                assertNull(map.get(i));
+    }
+
+    @Test
+    public void testPut() {
+        removeOdd();
+        assertEquals(Integer.valueOf(4), map.put(4, Integer.valueOf(4)));
+        for (int i = 0; i < 45; i++)
+            map.put(i, Integer.valueOf(i));
+        assertEquals(45, map.size());
+        for (int i = 0; i < 45; i++)
+            assertEquals(Integer.valueOf(i), map.get(i));
+    }
+
+    @Test
+    public void testRemove() {
+        for (int i = 1; i < 45; i += 2)
+            if ((i % 3) == 1)
+                assertEquals(Integer.valueOf(i), map.remove(i));
+            else
+                assertNull(map.remove(i));
+        assertEquals(7, map.size());
+    }
+
+    @Test
+    public void testClear() {
+        assertFalse(map.isEmpty());
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(1));
+    }
+
+    @Test
+    public void testAccept() {
+        final List<Integer> visited = new ArrayList<Integer>();
+        assertTrue(map.accept(new IntHashMap.Visitor<Integer>() {
+
+            @Override
+            public boolean visit(int key, Integer value) {
+                assertEquals(key, value.intValue());
+                visited.add(value);
+                return true;
+            }
+        }));
+        assertEquals(15, visited.size());
+    }
+
+    @Test
+    public void testConcurrentPutRemove() throws Exception {
+        map.clear();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int base = t * 1000;
+            threads[t] = new Thread() {
+
+                @Override
+                public void run() {
+                    for (int i = 0; i < 1000; i++)
+                        map.put(base + i, Integer.valueOf(base + i));
+                    for (int i = 0; i < 1000; i += 2)
+                        map.remove(base + i);
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(2000, map.size());
+        for (int i = 0; i < 4000; i++)
+            assertEquals((i & 1) != 0 ? Integer.valueOf(i) : null, map.get(i));
+    }
+}
@@ -38,9 +38,16 @@
 
 package org.dcm4che.emf;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 import org.dcm4che.data.Attributes;
 import org.dcm4che.data.BulkDataLocator;
@@ -59,8 +66,9 @@ public class MultiframeExtractor {
     private enum Impl {
         EnhancedCTImageExtractor(UID.CTImageStorage),
         EnhancedMRImageExtractor(UID.MRImageStorage) {
-            Attributes extract(MultiframeExtractor mfe, Attributes emf, int frame) {
-                Attributes sf = super.extract(mfe, emf, frame);
+            Attributes extract(MultiframeExtractor mfe, Attributes emf,
+                    Attributes base, int frame) {
+                Attributes sf = super.extract(mfe, emf, base, frame);
                 setEchoTime(sf);
                 setScanningSequence(sf);
                 setSequenceVariant(sf);
@@ -153,8 +161,9 @@ public class MultiframeExtractor {
             this.sfcuid = sfcuid;
         }
 
-        Attributes extract(MultiframeExtractor mfe, Attributes emf, int frame) {
-            return mfe.extract(emf, frame, sfcuid);
+        Attributes extract(MultiframeExtractor mfe, Attributes emf,
+                Attributes base, int frame) {
+            return mfe.extract(emf, base, frame, sfcuid);
         }
     }
 
@@ -235,7 +244,109 @@ public class MultiframeExtractor {
      */
     public Attributes extract(Attributes emf, int frame) {
         return implFor(emf.getString(Tag.SOPClassUID))
-                .extract(this, emf, frame);
+                .extract(this, emf, createBase(emf), frame);
+    }
+
+    /** Extract specified frames from Enhanced Multi-frame image and pass them
+     * as corresponding legacy Single-frame images to <code>sink</code>.
+     * Attributes shared by all frames - including the Shared Functional
+     * Groups - are collected only once. If the Enhanced Multi-frame image was
+     * read with {@link BulkDataLocator} Pixel Data, the frames refer to
+     * their region of the Pixel Data, so no Pixel Data is held in memory.
+     * 
+     * @param emf Enhanced Multi-frame image
+     * @param frames 0 based frame indices or <code>null</code> for all frames
+     * @param sink receives the legacy Single-frame images
+     * @throws IOException if <code>sink</code> failed to write an image
+     */
+    public void extract(Attributes emf, int[] frames, SingleFrameSink sink)
+            throws IOException {
+        extract(emf, frames, sink, null, 1);
+    }
+
+    /** Extract specified frames from Enhanced Multi-frame image and pass them
+     * as corresponding legacy Single-frame images to <code>sink</code>, using
+     * up to <code>parallelism</code> tasks executed by <code>executor</code>.
+     * Frames are passed to <code>sink</code> concurrently and not in order.
+     * 
+     * @param emf Enhanced Multi-frame image
+     * @param frames 0 based frame indices or <code>null</code> for all frames
+     * @param sink receives the legacy Single-frame images
+     * @param executor executes the extraction of frames or <code>null</code>
+     * @param parallelism maximal number of frames extracted in parallel
+     * @throws IOException if <code>sink</code> failed to write an image
+     * 
+     * @see #extract(Attributes, int[], SingleFrameSink)
+     */
+    public void extract(Attributes emf, int[] frames, SingleFrameSink sink,
+            Executor executor, int parallelism) throws IOException {
+        Impl impl = implFor(emf.getString(Tag.SOPClassUID));
+        Attributes base = createBase(emf);
+        int n = frames != null ? frames.length
+                               : emf.getInt(Tag.NumberOfFrames, 1);
+        if (executor == null || parallelism <= 1) {
+            for (int i = 0; i < n; i++) {
+                int frame = frames != null ? frames[i] : i;
+                sink.write(impl.extract(this, emf, base, frame), frame);
+            }
+            return;
+        }
+
+        // avoid lazy decoding of string values by concurrent threads
+        emf.decodeStringValues();
+        base.decodeStringValues();
+        ArrayDeque<FutureTask<Void>> pending =
+                new ArrayDeque<FutureTask<Void>>(parallelism);
+        try {
+            for (int i = 0; i < n; i++) {
+                if (pending.size() == parallelism)
+                    get(pending.poll());
+                pending.add(submit(executor, impl, emf, base,
+                        frames != null ? frames[i] : i, sink));
+            }
+            while (!pending.isEmpty())
+                get(pending.poll());
+        } finally {
+            for (FutureTask<Void> task : pending)
+                task.cancel(false);
+            for (FutureTask<Void> task : pending)
+                try {
+                    task.get();
+                } catch (Exception ignore) {}
+        }
+    }
+
+    private FutureTask<Void> submit(Executor executor, final Impl impl,
+            final Attributes emf, final Attributes base, final int frame,
+            final SingleFrameSink sink) {
+        FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                sink.write(impl.extract(MultiframeExtractor.this,
+                        emf, base, frame), frame);
+                return null;
+            }
+        });
+        executor.execute(task);
+        return task;
+    }
+
+    private static void get(FutureTask<Void> task) throws IOException {
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException(cause);
+        }
     }
 
     private static Impl implFor(String mfcuid) {
@@ -246,18 +357,25 @@ public class MultiframeExtractor {
         return impl;
     }
 
-    private Attributes extract(Attributes emf, int frame, String cuid) {
+    private Attributes createBase(Attributes emf) {
         Attributes sfgs = emf.getNestedDataset(Tag.SharedFunctionalGroupsSequence);
         if (sfgs == null)
             throw new IllegalArgumentException(
                     "Missing (5200,9229) Shared Functional Groups Sequence");
+        Attributes base = new Attributes(emf.size() * 2);
+        base.addNotSelected(emf, EXCLUDE_TAGS);
+        addFunctionGroups(base, sfgs);
+        return base;
+    }
+
+    private Attributes extract(Attributes emf, Attributes base, int frame,
+            String cuid) {
         Attributes fgs = emf.getNestedDataset(Tag.PerFrameFunctionalGroupsSequence, frame);
         if (fgs == null)
             throw new IllegalArgumentException(
                     "Missing (5200,9230) Per-frame Functional Groups Sequence Item for frame #" + (frame + 1));
-        Attributes dest = new Attributes(emf.size() * 2);
-        dest.addNotSelected(emf, EXCLUDE_TAGS);
-        addFunctionGroups(dest, sfgs);
+        Attributes dest = new Attributes(base.size() + fgs.size() * 4 + 8);
+        dest.addAll(base);
         addFunctionGroups(dest, fgs);
         addPixelData(dest, emf, frame);
         dest.setString(Tag.SOPClassUID, VR.UI, cuid);
@@ -331,7 +449,7 @@ public class MultiframeExtractor {
     private BulkDataLocator extractPixelData(BulkDataLocator src, int frame,
             int length) {
         return new BulkDataLocator(src.uri, src.transferSyntax,
-                src.offset + frame * length, length);
+                src.offset + (long) frame * length, length);
     }
 
     private byte[] extractPixelData(byte[] src, int frame, int length) {
@@ -344,7 +462,7 @@ public class MultiframeExtractor {
         return src.getInt(Tag.Rows, 0)
              * src.getInt(Tag.Columns, 0)
              * (src.getInt(Tag.BitsAllocated, 8) >> 3)
-             * src.getInt(Tag.NumberOfSamples, 1);
+             * src.getInt(Tag.SamplesPerPixel, 1);
     }
 
     private String createInstanceNumber(String mfinstno, int frame) {
@@ -0,0 +1,170 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.emf;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.dcm4che.data.Attributes;
+import org.dcm4che.data.BulkDataLocator;
+import org.dcm4che.data.Sequence;
+import org.dcm4che.data.Tag;
+import org.dcm4che.data.UID;
+import org.dcm4che.data.VR;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+public class MultiframeExtractorTest {
+
+    private static final int ROWS = 4;
+    private static final int COLUMNS = 5;
+    private static final int FRAMES = 17;
+    private static final int FRAME_LENGTH = ROWS * COLUMNS * 2;
+    private static final long PIXEL_DATA_OFFSET = 3000000000L;
+    private static final String URI = "file:/emf.dcm";
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testExtractSequential() throws Exception {
+        assertExtract(null, 1, null);
+    }
+
+    @Test
+    public void testExtractParallel() throws Exception {
+        for (int parallelism = 2; parallelism <= FRAMES + 1; parallelism++)
+            assertExtract(executor, parallelism, null);
+    }
+
+    @Test
+    public void testExtractSelectedFrames() throws Exception {
+        int[] frames = { 16, 0, 7, 3 };
+        assertExtract(null, 1, frames);
+        assertExtract(executor, 3, frames);
+    }
+
+    private static void assertExtract(ExecutorService executor,
+            int parallelism, int[] frames) throws IOException {
+        final ConcurrentHashMap<Integer, Attributes> received =
+                new ConcurrentHashMap<Integer, Attributes>();
+        SingleFrameSink sink = new SingleFrameSink() {
+
+            @Override
+            public void write(Attributes sf, int frame) throws IOException {
+                assertNull("frame #" + frame + " passed twice",
+                        received.putIfAbsent(frame, sf));
+            }
+        };
+        new MultiframeExtractor().extract(createEnhancedCT(), frames, sink,
+                executor, parallelism);
+        int n = frames != null ? frames.length : FRAMES;
+        assertEquals(n, received.size());
+        for (int i = 0; i < n; i++) {
+            int frame = frames != null ? frames[i] : i;
+            Attributes sf = received.get(frame);
+            assertNotNull("frame #" + frame + " missing", sf);
+            assertEquals(UID.CTImageStorage, sf.getString(Tag.SOPClassUID));
+            assertTrue(sf.getString(Tag.SOPInstanceUID)
+                    .endsWith("." + (frame + 1)));
+            assertEquals(frame, sf.getInt(Tag.FrameAcquisitionNumber, -1));
+            assertEquals("1.5", sf.getString(Tag.SliceThickness));
+            BulkDataLocator bdl = (BulkDataLocator) sf.getValue(Tag.PixelData);
+            assertEquals(URI, bdl.uri);
+            assertEquals(PIXEL_DATA_OFFSET + (long) frame * FRAME_LENGTH,
+                    bdl.offset);
+            assertEquals(FRAME_LENGTH, bdl.length);
+        }
+    }
+
+    private static Attributes createEnhancedCT() {
+        Attributes emf = new Attributes();
+        emf.setString(Tag.SOPClassUID, VR.UI, UID.EnhancedCTImageStorage);
+        emf.setString(Tag.SOPInstanceUID, VR.UI, "1.2.3.4");
+        emf.setString(Tag.SeriesInstanceUID, VR.UI, "1.2.3");
+        emf.setString(Tag.InstanceNumber, VR.IS, "1");
+        emf.setInt(Tag.Rows, VR.US, ROWS);
+        emf.setInt(Tag.Columns, VR.US, COLUMNS);
+        emf.setInt(Tag.SamplesPerPixel, VR.US, 1);
+        emf.setInt(Tag.BitsAllocated, VR.US, 16);
+        emf.setInt(Tag.NumberOfFrames, VR.IS, FRAMES);
+        Attributes sfgs = new Attributes();
+        sfgs.newSequence(Tag.CTImageFrameTypeSequence, 1)
+                .add(item(Tag.FrameType, VR.CS, "ORIGINAL\\PRIMARY\\AXIAL"));
+        sfgs.newSequence(Tag.PixelMeasuresSequence, 1)
+                .add(item(Tag.SliceThickness, VR.DS, "1.5"));
+        emf.newSequence(Tag.SharedFunctionalGroupsSequence, 1).add(sfgs);
+        Sequence pffgs = emf.newSequence(
+                Tag.PerFrameFunctionalGroupsSequence, FRAMES);
+        for (int i = 0; i < FRAMES; i++) {
+            Attributes fgs = new Attributes();
+            fgs.newSequence(Tag.FrameContentSequence, 1).add(
+                    item(Tag.FrameAcquisitionNumber, VR.US,
+                            Integer.toString(i)));
+            pffgs.add(fgs);
+        }
+        emf.setValue(Tag.PixelData, VR.OW, new BulkDataLocator(URI,
+                UID.ExplicitVRLittleEndian, PIXEL_DATA_OFFSET,
+                FRAME_LENGTH * FRAMES));
+        return emf;
+    }
+
+    private static Attributes item(int tag, VR vr, String value) {
+        Attributes item = new Attributes();
+        item.setString(tag, vr, value);
+        return item;
+    }
+}
@@ -3,10 +3,17 @@ package org.dcm4che.image;
 public class ByteLookupTable extends LookupTable {
 
     private final byte[] lut;
+    private final int mask;
 
     ByteLookupTable(StoredValue inBits, int outBits, int offset, byte[] lut) {
+        this(inBits, outBits, offset, lut, 0);
+    }
+
+    private ByteLookupTable(StoredValue inBits, int outBits, int offset,
+            byte[] lut, int mask) {
         super(inBits, outBits, offset);
         this.lut = lut;
+        this.mask = mask;
     }
 
     ByteLookupTable(StoredValue inBits, int outBits, int offset, int size, boolean flip) {
@@ -34,12 +41,33 @@ public class ByteLookupTable extends LookupTable {
     }
 
     private int index(int pixel) {
+        if (mask != 0)
+            return pixel & mask;
+
         int index = inBits.valueOf(pixel) - offset;
         return Math.min(Math.max(0, index), lut.length-1);
     }
 
+    @Override
+    LookupTable toDirectLUT(int mask) {
+        if (this.mask != 0)
+            return this;
+
+        byte[] direct = new byte[mask + 1];
+        for (int i = 0; i < direct.length; i++)
+            direct[i] = lut[index(i)];
+        return new ByteLookupTable(inBits, outBits, offset, direct, mask);
+    }
+
     @Override
     public void lookup(short[] src, int srcPos, byte[] dest, int destPos, int length) {
+        if (mask != 0) {
+            byte[] lut = this.lut;
+            int mask = this.mask;
+            for (int i = srcPos, endPos = srcPos + length, j = destPos; i < endPos;)
+                dest[j++] = lut[src[i++] & mask];
+            return;
+        }
         for (int i = srcPos, endPos = srcPos + length, j = destPos; i < endPos;)
             dest[j++] = lut[index(src[i++])];
     }
@@ -52,12 +80,20 @@ public class ByteLookupTable extends LookupTable {
 
     @Override
     public void lookup(short[] src, int srcPos, short[] dest, int destPos, int length) {
+        if (mask != 0) {
+            byte[] lut = this.lut;
+            int mask = this.mask;
+            for (int i = srcPos, endPos = srcPos + length, j = destPos; i < endPos;)
+                dest[j++] = (short) (lut[src[i++] & mask] & 0xff);
+            return;
+        }
         for (int i = srcPos, endPos = srcPos + length, j = destPos; i < endPos;)
             dest[j++] = (short) (lut[index(src[i++])] & 0xff);
     }
 
     @Override
     public LookupTable adjustOutBits(int outBits) {
+        modified();
         int diff = outBits - this.outBits;
         if (diff != 0) {
             byte[] lut = this.lut;
@@ -81,6 +117,7 @@ public class ByteLookupTable extends LookupTable {
 
     @Override
     public void inverse() {
+        modified();
         byte[] lut = this.lut;
         int maxOut = (1<<outBits)-1;
         for (int i = 0; i < lut.length; i++)
@@ -90,6 +127,7 @@ public class ByteLookupTable extends LookupTable {
 
     @Override
     public LookupTable combine(LookupTable other) {
+        modified();
         byte[] lut = this.lut;
         if (other.outBits > 8) {
             short[] ss = new short[lut.length];
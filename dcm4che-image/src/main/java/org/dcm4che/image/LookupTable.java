@@ -54,6 +54,7 @@ public abstract class LookupTable {
     protected StoredValue inBits;
     protected int outBits;
     protected int offset;
+    private volatile LookupTable directLUT;
 
     public LookupTable(StoredValue inBits, int outBits, int offset) {
         this.inBits = inBits;
@@ -63,6 +64,12 @@ public abstract class LookupTable {
 
     public abstract int length();
 
+    /**
+     * Apply the table to all pixels of <code>srcRaster</code>. For 16 bit
+     * rasters with more pixels than possible stored values, the table is
+     * first expanded to a table indexed by the stored bits of the pixel,
+     * so the stored value need not to be evaluated and clamped per pixel.
+     */
     public void lookup(Raster srcRaster, Raster destRaster) {
         ComponentSampleModel sm =
                 (ComponentSampleModel) srcRaster.getSampleModel();
@@ -70,6 +77,41 @@ public abstract class LookupTable {
                 (ComponentSampleModel) destRaster.getSampleModel();
         DataBuffer src = srcRaster.getDataBuffer();
         DataBuffer dest = destRaster.getDataBuffer();
+        if (src.getDataType() != DataBuffer.TYPE_BYTE
+                && (long) sm.getWidth() * sm.getHeight() > storedValues())
+            toDirectLUT().lookup(sm, src, destsm, dest);
+        else
+            lookup(sm, src, destsm, dest);
+    }
+
+    private int storedValues() {
+        return inBits.maxValue() - inBits.minValue() + 1;
+    }
+
+    /**
+     * Returns table with one entry for each bit pattern of the stored value,
+     * indexed by the pixel masked to its stored bits, or this table, if
+     * it is already such table or the stored value exceeds 16 bits. The
+     * expanded table is kept until this table is modified, so tables shared
+     * by a {@link LookupTableCache} are expanded only once.
+     */
+    LookupTable toDirectLUT() {
+        LookupTable lut = directLUT;
+        if (lut == null) {
+            int size = storedValues();
+            directLUT = lut = size > 0x10000 ? this : toDirectLUT(size - 1);
+        }
+        return lut;
+    }
+
+    void modified() {
+        directLUT = null;
+    }
+
+    abstract LookupTable toDirectLUT(int mask);
+
+    private void lookup(ComponentSampleModel sm, DataBuffer src,
+            ComponentSampleModel destsm, DataBuffer dest) {
         switch (src.getDataType()) {
         case DataBuffer.TYPE_BYTE:
             switch (dest.getDataType()) {
@@ -0,0 +1,154 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.image;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of combined Modality, VOI and Presentation LUTs created by
+ * {@link LookupTableFactory#createLUT(int, LookupTableCache)}, so images of
+ * a series with identical rescale and VOI parameters share one table.
+ * If the number of cached tables exceeds the maximal size, least recently
+ * used tables are evicted from the cache. The cache is thread-safe and may
+ * be shared by several image readers.
+ * 
+ * <p>
+ * Cached tables are shared and must not be modified by
+ * {@link LookupTable#adjustOutBits}, {@link LookupTable#inverse} or
+ * {@link LookupTable#combine}.
+ * 
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+public class LookupTableCache {
+
+    public static final int DEFAULT_MAX_SIZE = 32;
+
+    private final LinkedHashMap<Object, LookupTable> lru =
+            new LinkedHashMap<Object, LookupTable>(16, 0.75f, true) {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<Object, LookupTable> eldest) {
+                    if (size() <= maxSize)
+                        return false;
+
+                    evictions++;
+                    return true;
+                }
+            };
+    private int maxSize;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public LookupTableCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public LookupTableCache(int maxSize) {
+        setMaxSize(maxSize);
+    }
+
+    public final synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    public final synchronized void setMaxSize(int maxSize) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("maxSize: " + maxSize);
+
+        this.maxSize = maxSize;
+        for (int n = lru.size() - maxSize; n > 0; n--) {
+            lru.remove(lru.keySet().iterator().next());
+            evictions++;
+        }
+    }
+
+    public synchronized int size() {
+        return lru.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized void resetStatistics() {
+        hits = 0L;
+        misses = 0L;
+        evictions = 0L;
+    }
+
+    synchronized LookupTable get(Object key) {
+        LookupTable lut = lru.get(key);
+        if (lut != null)
+            hits++;
+        else
+            misses++;
+        return lut;
+    }
+
+    synchronized void put(Object key, LookupTable lut) {
+        lru.put(key, lut);
+    }
+
+    public synchronized void clear() {
+        lru.clear();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "LookupTableCache[size=" + lru.size()
+                + ", maxSize=" + maxSize
+                + ", hits=" + hits
+                + ", misses=" + misses
+                + ", evictions=" + evictions
+                + "]";
+    }
+}
@@ -45,6 +45,8 @@ import java.awt.image.DataBufferShort;
 import java.awt.image.DataBufferUShort;
 import java.awt.image.Raster;
 
+import java.util.Arrays;
+
 import org.dcm4che.data.Attributes;
 import org.dcm4che.data.Tag;
 import org.dcm4che.util.ByteUtils;
@@ -65,6 +67,9 @@ public class LookupTableFactory {
     private LookupTable voiLUT;
     private LookupTable presentationLUT;
     private boolean inverse;
+    private LUTSource modalityLUTSource;
+    private LUTSource voiLUTSource;
+    private LUTSource presentationLUTSource;
 
     public LookupTableFactory(StoredValue storedValue) {
         this.storedValue = storedValue;
@@ -73,8 +78,9 @@ public class LookupTableFactory {
     public void setModalityLUT(Attributes attrs) {
         rescaleIntercept = attrs.getFloat(Tag.RescaleIntercept, 0);
         rescaleSlope = attrs.getFloat(Tag.RescaleSlope, 1);
-        modalityLUT = createLUT(storedValue,
-                attrs.getNestedDataset(Tag.ModalityLUTSequence));
+        Attributes mLUT = attrs.getNestedDataset(Tag.ModalityLUTSequence);
+        modalityLUT = createLUT(storedValue, mLUT);
+        modalityLUTSource = LUTSource.valueOf(modalityLUT, mLUT);
     }
 
     public void setPresentationLUT(Attributes attrs) {
@@ -86,6 +92,7 @@ public class LookupTableFactory {
                 presentationLUT = createLUT(new StoredValue.Unsigned(log2(len)), 
                         resetOffset(desc), 
                         pLUT.getSafeBytes(Tag.LUTData), pLUT.bigEndian());
+                presentationLUTSource = LUTSource.valueOf(presentationLUT, pLUT);
             }
         } else {
             String pShape = attrs.getString(Tag.PresentationLUTShape);
@@ -129,11 +136,13 @@ public class LookupTableFactory {
                 return;
             }
         }
-        if (vLUT != null)
+        if (vLUT != null) {
             voiLUT = createLUT(modalityLUT != null
                           ? new StoredValue.Unsigned(modalityLUT.outBits)
                           : storedValue,
                       vLUT);
+            voiLUTSource = LUTSource.valueOf(voiLUT, vLUT);
+        }
     }
 
     private LookupTable createLUT(StoredValue inBits, Attributes attrs) {
@@ -205,6 +214,30 @@ public class LookupTableFactory {
         return lut;
     }
 
+    /**
+     * Returns the combined LUT from <code>cache</code>, if a LUT with equal
+     * stored value, rescale, window and LUT data was created before;
+     * otherwise creates the LUT and adds it to <code>cache</code>. The
+     * returned LUT may be shared and must not be modified.
+     * 
+     * @param outBits bits of output values
+     * @param cache cache of created LUTs or <code>null</code>
+     * @return combined Modality, VOI and Presentation LUT
+     */
+    public LookupTable createLUT(int outBits, LookupTableCache cache) {
+        if (cache == null)
+            return createLUT(outBits);
+
+        Object key = Arrays.<Object>asList(storedValue,
+                rescaleSlope, rescaleIntercept, modalityLUTSource,
+                windowCenter, windowWidth, voiLUTFunction, voiLUTSource,
+                presentationLUTSource, inverse, outBits);
+        LookupTable lut = cache.get(key);
+        if (lut == null)
+            cache.put(key, lut = createLUT(outBits));
+        return lut;
+    }
+
     private static int log2(int value) {
         int i = 0;
         while ((value>>>i) != 0)
@@ -312,4 +345,43 @@ public class LookupTableFactory {
         return new int[] { min, max };
     }
 
+    /**
+     * Identifies the Modality, VOI or Presentation LUT Sequence item a
+     * LUT was created from by its LUT Descriptor and LUT Data.
+     */
+    private static final class LUTSource {
+        final int[] desc;
+        final byte[] data;
+        final boolean bigEndian;
+
+        LUTSource(int[] desc, byte[] data, boolean bigEndian) {
+            this.desc = desc;
+            this.data = data;
+            this.bigEndian = bigEndian;
+        }
+
+        static LUTSource valueOf(LookupTable lut, Attributes item) {
+            return lut != null
+                    ? new LUTSource(item.getInts(Tag.LUTDescriptor),
+                            item.getSafeBytes(Tag.LUTData), item.bigEndian())
+                    : null;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(desc) * 31 + Arrays.hashCode(data);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof LUTSource))
+                return false;
+
+            LUTSource other = (LUTSource) o;
+            return bigEndian == other.bigEndian
+                    && Arrays.equals(desc, other.desc)
+                    && Arrays.equals(data, other.data);
+        }
+    }
+
 }
@@ -38,6 +38,7 @@
 
 package org.dcm4che.image;
 
+import java.awt.Rectangle;
 import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
 import java.awt.image.DataBufferUShort;
@@ -171,6 +172,17 @@ public class Overlays {
 
     public static void applyOverlay(int frameIndex, WritableRaster raster,
             Attributes attrs, int gg0000, int pixelValue) {
+        applyOverlay(frameIndex, raster, attrs, gg0000, pixelValue,
+                new Rectangle(raster.getWidth(), raster.getHeight()), 1, 1);
+    }
+
+    /**
+     * Apply overlay to a raster containing the specified region of the frame,
+     * sub-sampled by the specified factors.
+     */
+    public static void applyOverlay(int frameIndex, WritableRaster raster,
+            Attributes attrs, int gg0000, int pixelValue,
+            Rectangle sourceRegion, int xSubsampling, int ySubsampling) {
 
         int imageFrameOrigin = attrs.getInt(Tag.ImageFrameOrigin | gg0000, 1);
         int framesInOverlay = attrs.getInt(Tag.NumberOfFramesInOverlay | gg0000, 1);
@@ -225,8 +237,13 @@ public class Overlays {
                 if (ovlyIndex >= ovlyLen)
                     continue;
 
-                int y = y0 + ovlyIndex / ovlyColumns;
-                int x = x0 + ovlyIndex % ovlyColumns;
+                int y = y0 + ovlyIndex / ovlyColumns - sourceRegion.y;
+                int x = x0 + ovlyIndex % ovlyColumns - sourceRegion.x;
+                if (x % xSubsampling != 0 || y % ySubsampling != 0)
+                    continue;
+
+                x /= xSubsampling;
+                y /= ySubsampling;
                 try {
                     raster.setSample(x, y, 0, pixelValue);
                 } catch (ArrayIndexOutOfBoundsException ignore) {}
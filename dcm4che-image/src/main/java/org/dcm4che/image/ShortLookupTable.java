@@ -3,10 +3,17 @@ package org.dcm4che.image;
 public class ShortLookupTable extends LookupTable {
 
     private final short[] lut;
+    private final int mask;
 
     ShortLookupTable(StoredValue inBits, int outBits, int offset, short[] lut) {
+        this(inBits, outBits, offset, lut, 0);
+    }
+
+    private ShortLookupTable(StoredValue inBits, int outBits, int offset,
+            short[] lut, int mask) {
         super(inBits, outBits, offset);
         this.lut = lut;
+        this.mask = mask;
     }
 
     ShortLookupTable(StoredValue inBits, int outBits, int offset, int size, boolean flip) {
@@ -34,12 +41,33 @@ public class ShortLookupTable extends LookupTable {
     }
 
     private int index(int pixel) {
+        if (mask != 0)
+            return pixel & mask;
+
         int index = inBits.valueOf(pixel) - offset;
         return Math.min(Math.max(0, index), lut.length-1);
     }
 
+    @Override
+    LookupTable toDirectLUT(int mask) {
+        if (this.mask != 0)
+            return this;
+
+        short[] direct = new short[mask + 1];
+        for (int i = 0; i < direct.length; i++)
+            direct[i] = lut[index(i)];
+        return new ShortLookupTable(inBits, outBits, offset, direct, mask);
+    }
+
     @Override
     public void lookup(short[] src, int srcPos, byte[] dest, int destPos, int length) {
+        if (mask != 0) {
+            short[] lut = this.lut;
+            int mask = this.mask;
+            for (int i = srcPos, endPos = srcPos + length, j = destPos; i < endPos;)
+                dest[j++] = (byte) lut[src[i++] & mask];
+            return;
+        }
         for (int i = srcPos, endPos = srcPos + length, j = destPos; i < endPos;)
             dest[j++] = (byte) lut[index(src[i++] & 0xffff)];
     }
@@ -52,12 +80,20 @@ public class ShortLookupTable extends LookupTable {
 
     @Override
     public void lookup(short[] src, int srcPos, short[] dest, int destPos, int length) {
+        if (mask != 0) {
+            short[] lut = this.lut;
+            int mask = this.mask;
+            for (int i = srcPos, endPos = srcPos + length, j = destPos; i < endPos;)
+                dest[j++] = lut[src[i++] & mask];
+            return;
+        }
         for (int i = srcPos, endPos = srcPos + length, j = destPos; i < endPos;)
             dest[j++] = lut[index(src[i++] & 0xffff)];
     }
 
     @Override
     public LookupTable adjustOutBits(int outBits) {
+        modified();
         int diff = outBits - this.outBits;
         if (diff != 0) {
             short[] lut = this.lut;
@@ -75,6 +111,7 @@ public class ShortLookupTable extends LookupTable {
 
     @Override
     public void inverse() {
+        modified();
         short[] lut = this.lut;
         int maxOut = (1<<outBits)-1;
         for (int i = 0; i < lut.length; i++)
@@ -83,6 +120,7 @@ public class ShortLookupTable extends LookupTable {
 
     @Override
     public LookupTable combine(LookupTable other) {
+        modified();
         short[] lut = this.lut;
         other.lookup(lut, 0, lut, 0, lut.length);
         this.outBits = other.outBits;
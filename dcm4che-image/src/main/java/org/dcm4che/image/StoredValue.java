@@ -73,6 +73,16 @@ public abstract class StoredValue {
         public int maxValue() {
             return mask;
         }
+
+        @Override
+        public int hashCode() {
+            return mask;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Unsigned && ((Unsigned) o).mask == mask;
+        }
     }
 
     public static class Signed extends StoredValue {
@@ -99,6 +109,16 @@ public abstract class StoredValue {
         public int maxValue() {
             return (1 << (bitsStored-1)) - 1;
         }
+
+        @Override
+        public int hashCode() {
+            return -bitsStored;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Signed && ((Signed) o).bitsStored == bitsStored;
+        }
     }
 
     public static StoredValue valueOf(Attributes attrs) {
@@ -48,6 +48,7 @@ import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
 import java.io.EOFException;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Iterator;
 
 import javax.imageio.ImageReadParam;
@@ -80,15 +81,9 @@ public class RLEImageReader extends ImageReader {
 
     private final int[] header = new int[16];
 
-    private final byte[] buf = new byte[8192];
+    private byte[] buf = new byte[8192];
 
-    private long headerPos;
-
-    private long bufOff;
-
-    private int bufPos;
-
-    private int bufLen;
+    private int len;
 
     private ImageInputStream iis;
 
@@ -246,130 +241,195 @@ public class RLEImageReader extends ImageReader {
         unrle(2, data);
     }
 
-    private void seekSegment(int seg) throws IOException {
-        long streamPos = headerPos + (header[seg] & 0xffffffffL);
-        int bufPos = (int) (streamPos - bufOff);
-        if (bufPos >= 0 && bufPos <= bufLen)
-            this.bufPos = bufPos;
-        else {
-            iis.seek(streamPos);
-            this.bufPos = bufLen; // force fillBuffer on nextByte()
-        }
-    }
-
-
     private void readRLEHeader(int numSegments) throws IOException {
-        fillBuffer();
-        if (bufLen < 64)
+        len = 0;
+        readData(64);
+        if (len < 64)
             throw new EOFException();
         for (int i = 0, off = 0; i < header.length; i++, off += 4)
             header[i] = ByteUtils.bytesToIntLE(buf, off);
-        bufPos = 64;
         if (header[0] != numSegments)
             throw new IOException(MISMATCH_NUM_RLE_SEGMENTS + header[0]);
+        readData(lastSegmentStart(numSegments) + maxSegmentLength());
     }
 
-    private void unrle(int seg, byte[] data) throws IOException {
-        seekSegment(seg);
-        int pos = 0;
-        try {
-            int n;
-            int end;
-            byte val;
-            while (pos < data.length) {
-                n = nextByte();
-                if (n >= 0) {
-                    read(data, pos, ++n);
-                    pos += n;
-                } else if (n != -128) {
-                    end = pos + 1 - n;
-                    val = nextByte();
-                    while (pos < end)
-                        data[pos++] = val;
-                }
-            }
-        } catch (EOFException e) {
+    private long lastSegmentStart(int numSegments) {
+        long start = 64L;
+        for (int seg = 1; seg <= numSegments; seg++)
+            start = Math.max(start, header[seg] & 0xffffffffL);
+        return start;
+    }
+
+    /**
+     * Returns the maximal length of a RLE Segment containing one byte per
+     * pixel, assuming the worst case of a separate Literal Run per byte.
+     */
+    private long maxSegmentLength() {
+        return 2L * width * height + 1;
+    }
+
+    /**
+     * Reads the RLE data up to the specified position or the end of the
+     * frame, whichever comes first, so the stream is not read beyond the
+     * last RLE Segment.
+     */
+    private void readData(long end) throws IOException {
+        int limit = (int) Math.min(end, Integer.MAX_VALUE - 8);
+        int n;
+        while (len < limit) {
+            if (len == buf.length)
+                buf = Arrays.copyOf(buf, (int) Math.min(
+                        (long) buf.length << 1, limit));
+            if ((n = iis.read(buf, len, Math.min(buf.length, limit) - len)) <= 0)
+                break;
+            len += n;
+        }
+    }
+
+    private int segmentStart(int seg) {
+        return (int) Math.min(header[seg] & 0xffffffffL, len);
+    }
+
+    private int segmentEnd(int seg) {
+        if (seg < header[0]) {
+            long next = header[seg+1] & 0xffffffffL;
+            if (next > (header[seg] & 0xffffffffL))
+                return (int) Math.min(next, len);
+        }
+        return len;
+    }
+
+    private void unrle(int seg, byte[] data) {
+        int pos = unrle(buf, segmentStart(seg), segmentEnd(seg), data);
+        if (pos < 0) {
+            LOG.info("RLE Segment #{} too long, truncate surplus bytes", seg);
+        } else if (pos < data.length) {
             LOG.info("RLE Segment #{} too short, set missing {} bytes to 0",
                     seg, data.length - pos);
-        } catch (IndexOutOfBoundsException e) {
-            LOG.info("RLE Segment #{} too long, truncate surplus bytes", seg);
+            Arrays.fill(data, pos, data.length, (byte) 0);
         }
     }
 
-    private void read(byte[] data, int pos, int len) throws IOException {
-        int remaining = len;
+    /**
+     * Decodes RLE Segment into specified array.
+     * 
+     * @return number of decoded bytes or -1 if the segment exceeds the
+     *         length of <code>data</code>
+     */
+    static int unrle(byte[] src, int off, int end, byte[] data) {
+        int pos = 0;
         int n;
-        while (remaining > 0) {
-            n = bufLen - bufPos;
-            if (n <= 0) {
-                fillBuffer();
-                n = bufLen - bufPos;
+        while (off < end) {
+            n = src[off++];
+            if (n >= 0) {
+                if (++n > end - off)
+                    n = end - off;
+                if (n > data.length - pos) {
+                    System.arraycopy(src, off, data, pos, data.length - pos);
+                    return -1;
+                }
+                System.arraycopy(src, off, data, pos, n);
+                off += n;
+                pos += n;
+            } else if (n != -128) {
+                if (off == end)
+                    break;
+                n = 1 - n;
+                if (n > data.length - pos) {
+                    Arrays.fill(data, pos, data.length, src[off]);
+                    return -1;
+                }
+                Arrays.fill(data, pos, pos + n, src[off++]);
+                pos += n;
             }
-            if ((remaining -= n) < 0)
-                n += remaining;
-            System.arraycopy(buf, bufPos, data, pos, n);
-            bufPos += n;
-            pos += n;
+            if (pos == data.length)
+                break;
         }
+        return pos;
     }
 
-    private void unrle(int seg, short[] data) throws IOException {
-        seekSegment(seg);
-        int pos = 0;
-        try {
-            int shift = seg == 1 ? 8 : 0;
-            int n;
-            int end;
-            int val;
-            while (pos < data.length) {
-                n = nextByte();
-                if (n >= 0) {
-                    read(data, pos, ++n, shift);
-                    pos += n;
-                } else if (n != -128) {
-                    end = pos + 1 - n;
-                    val = (nextByte() & 0xff) << shift;
-                    while (pos < end)
-                        data[pos++] |= val;
-                }
-            }
-        } catch (EOFException e) {
+    private void unrle(int seg, short[] data) {
+        int pos = seg == 1
+                ? unrleHighBytes(buf, segmentStart(seg), segmentEnd(seg), data)
+                : unrleLowBytes(buf, segmentStart(seg), segmentEnd(seg), data);
+        if (pos < 0) {
+            LOG.info("RLE Segment #{} too long, truncate surplus bytes", seg);
+        } else if (pos < data.length) {
             LOG.info("RLE Segment #{} too short, set missing {} bytes to 0",
                     seg, data.length - pos);
-        } catch (IndexOutOfBoundsException e) {
-            LOG.info("RLE Segment #{} to long, truncate surplus bytes", seg);
+            if (seg == 1)
+                Arrays.fill(data, pos, data.length, (short) 0);
         }
     }
 
-    private void read(short[] data, int pos, int len, int shift) throws IOException {
-        int remaining = len;
+    static int unrleHighBytes(byte[] src, int off, int end, short[] data) {
+        int pos = 0;
         int n;
-        while (remaining > 0) {
-            n = bufLen - bufPos;
-            if (n <= 0) {
-                fillBuffer();
-                n = bufLen - bufPos;
+        short val;
+        while (off < end) {
+            n = src[off++];
+            if (n >= 0) {
+                if (++n > end - off)
+                    n = end - off;
+                boolean truncate = n > data.length - pos;
+                if (truncate)
+                    n = data.length - pos;
+                while (n-- > 0)
+                    data[pos++] = (short) (src[off++] << 8);
+                if (truncate)
+                    return -1;
+            } else if (n != -128) {
+                if (off == end)
+                    break;
+                n = 1 - n;
+                boolean truncate = n > data.length - pos;
+                if (truncate)
+                    n = data.length - pos;
+                val = (short) (src[off++] << 8);
+                Arrays.fill(data, pos, pos + n, val);
+                pos += n;
+                if (truncate)
+                    return -1;
             }
-            if ((remaining -= n) < 0)
-                n += remaining;
-            while (n-- > 0)
-                data[pos++] |= (buf[bufPos++] & 0xff) << shift;
+            if (pos == data.length)
+                break;
         }
+        return pos;
     }
 
-    private void fillBuffer() throws IOException {
-        bufOff = iis.getStreamPosition();
-        bufPos = 0;
-        bufLen = iis.read(buf);
-        if (bufLen <= 0)
-            throw new EOFException();
-    }
-
-    private byte nextByte() throws IOException {
-        if (bufPos >= bufLen)
-            fillBuffer();
-
-        return buf[bufPos++];
+    static int unrleLowBytes(byte[] src, int off, int end, short[] data) {
+        int pos = 0;
+        int n;
+        int val;
+        while (off < end) {
+            n = src[off++];
+            if (n >= 0) {
+                if (++n > end - off)
+                    n = end - off;
+                boolean truncate = n > data.length - pos;
+                if (truncate)
+                    n = data.length - pos;
+                while (n-- > 0)
+                    data[pos++] |= src[off++] & 0xff;
+                if (truncate)
+                    return -1;
+            } else if (n != -128) {
+                if (off == end)
+                    break;
+                n = 1 - n;
+                boolean truncate = n > data.length - pos;
+                if (truncate)
+                    n = data.length - pos;
+                val = src[off++] & 0xff;
+                while (n-- > 0)
+                    data[pos++] |= val;
+                if (truncate)
+                    return -1;
+            }
+            if (pos == data.length)
+                break;
+        }
+        return pos;
     }
 
 }
@@ -0,0 +1,255 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.imageio.plugins.rle;
+
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.spi.ImageWriterSpi;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.dcm4che.util.ByteUtils;
+
+/**
+ * Encodes images into RLE Lossless format as specified by DICOM PS 3.5,
+ * Annex G. Each sample of 8 bit images, or the high and the low byte of
+ * 16 bit single sample images are encoded into separate RLE Segments,
+ * directly from the {@link Raster} of the image. Each row is encoded
+ * separately.
+ * 
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ *
+ */
+public class RLEImageWriter extends ImageWriter {
+
+    private static final String UNSUPPORTED_DATA_TYPE =
+            "Unsupported Data Type of Raster: ";
+    private static final String UNSUPPORTED_NUM_BANDS =
+            "Unsupported Number of Bands of Raster: ";
+
+    private final byte[] header = new byte[64];
+
+    private byte[] row = {};
+
+    private byte[] seg = {};
+
+    protected RLEImageWriter(ImageWriterSpi originatingProvider) {
+        super(originatingProvider);
+    }
+
+    @Override
+    public IIOMetadata getDefaultStreamMetadata(ImageWriteParam param) {
+        return null;
+    }
+
+    @Override
+    public IIOMetadata getDefaultImageMetadata(ImageTypeSpecifier imageType,
+            ImageWriteParam param) {
+        return null;
+    }
+
+    @Override
+    public IIOMetadata convertStreamMetadata(IIOMetadata inData,
+            ImageWriteParam param) {
+        return null;
+    }
+
+    @Override
+    public IIOMetadata convertImageMetadata(IIOMetadata inData,
+            ImageTypeSpecifier imageType, ImageWriteParam param) {
+        return null;
+    }
+
+    @Override
+    public boolean canWriteRasters() {
+        return true;
+    }
+
+    @Override
+    public void write(IIOMetadata streamMetadata, IIOImage image,
+            ImageWriteParam param) throws IOException {
+        ImageOutputStream ios = (ImageOutputStream) getOutput();
+        if (ios == null)
+            throw new IllegalStateException("output not set");
+
+        Raster raster;
+        if (image.hasRaster()) {
+            raster = image.getRaster();
+        } else {
+            RenderedImage ri = image.getRenderedImage();
+            raster = ri.getData();
+        }
+        write(raster, ios);
+    }
+
+    private void write(Raster raster, ImageOutputStream ios)
+            throws IOException {
+        int w = raster.getWidth();
+        int h = raster.getHeight();
+        int numBands = raster.getNumBands();
+        int dataType = raster.getDataBuffer().getDataType();
+        int bytesPerSample;
+        switch (dataType) {
+        case DataBuffer.TYPE_BYTE:
+            bytesPerSample = 1;
+            break;
+        case DataBuffer.TYPE_USHORT:
+        case DataBuffer.TYPE_SHORT:
+            if (numBands != 1)
+                throw new IllegalArgumentException(
+                        UNSUPPORTED_NUM_BANDS + numBands);
+            bytesPerSample = 2;
+            break;
+        default:
+            throw new IllegalArgumentException(
+                    UNSUPPORTED_DATA_TYPE + dataType);
+        }
+        int numSegments = numBands * bytesPerSample;
+        if (numSegments > 15)
+            throw new IllegalArgumentException(
+                    UNSUPPORTED_NUM_BANDS + numBands);
+
+        if (row.length < w)
+            row = new byte[w];
+        // each packet encodes n >= 1 bytes into at most n + 1 bytes
+        int maxSegLen = h * w * 2 + 1;
+        if (seg.length < maxSegLen * numSegments)
+            seg = new byte[maxSegLen * numSegments];
+
+        Arrays.fill(header, (byte) 0);
+        ByteUtils.intToBytesLE(numSegments, header, 0);
+        int pos = 0;
+        for (int band = 0, i = 0; band < numBands; band++)
+            for (int shift = (bytesPerSample - 1) << 3; shift >= 0;
+                    shift -= 8, i++) {
+                ByteUtils.intToBytesLE(64 + pos, header, 4 + (i << 2));
+                for (int y = 0; y < h; y++) {
+                    getRow(raster, band, y, shift);
+                    pos = rle(row, w, seg, pos);
+                }
+                if ((pos & 1) != 0)
+                    seg[pos++] = 0;
+            }
+        ios.write(header);
+        ios.write(seg, 0, pos);
+    }
+
+    private void getRow(Raster raster, int band, int y, int shift) {
+        SampleModel sm = raster.getSampleModel();
+        DataBuffer db = raster.getDataBuffer();
+        int w = raster.getWidth();
+        if (sm instanceof ComponentSampleModel) {
+            ComponentSampleModel csm = (ComponentSampleModel) sm;
+            int pixelStride = csm.getPixelStride();
+            int bank = csm.getBankIndices()[band];
+            int off = db.getOffsets()[bank] + csm.getBandOffsets()[band]
+                    + (raster.getMinY() + y - raster.getSampleModelTranslateY())
+                        * csm.getScanlineStride()
+                    + (raster.getMinX() - raster.getSampleModelTranslateX())
+                        * pixelStride;
+            switch (db.getDataType()) {
+            case DataBuffer.TYPE_BYTE:
+                byte[] b = ((DataBufferByte) db).getData(bank);
+                if (pixelStride == 1)
+                    System.arraycopy(b, off, row, 0, w);
+                else
+                    for (int x = 0; x < w; x++, off += pixelStride)
+                        row[x] = b[off];
+                return;
+            case DataBuffer.TYPE_USHORT:
+                short[] us = ((DataBufferUShort) db).getData(bank);
+                for (int x = 0; x < w; x++, off += pixelStride)
+                    row[x] = (byte) (us[off] >> shift);
+                return;
+            case DataBuffer.TYPE_SHORT:
+                short[] ss = ((DataBufferShort) db).getData(bank);
+                for (int x = 0; x < w; x++, off += pixelStride)
+                    row[x] = (byte) (ss[off] >> shift);
+                return;
+            }
+        }
+        int x0 = raster.getMinX();
+        int y0 = raster.getMinY();
+        for (int x = 0; x < w; x++)
+            row[x] = (byte) (raster.getSample(x0 + x, y0 + y, band) >> shift);
+    }
+
+    /**
+     * Encodes one row into specified array.
+     * 
+     * @return position in <code>dst</code> after the encoded row
+     */
+    static int rle(byte[] src, int len, byte[] dst, int pos) {
+        int i = 0;
+        while (i < len) {
+            byte b = src[i];
+            int run = 1;
+            while (run < 128 && i + run < len && src[i + run] == b)
+                run++;
+            if (run > 1) {
+                dst[pos++] = (byte) (1 - run);
+                dst[pos++] = b;
+                i += run;
+                continue;
+            }
+            int start = i++;
+            while (i < len && i - start < 128
+                    && !(i + 1 < len && src[i] == src[i + 1]))
+                i++;
+            int n = i - start;
+            dst[pos++] = (byte) (n - 1);
+            System.arraycopy(src, start, dst, pos, n);
+            pos += n;
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,193 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.imageio.plugins.rle;
+
+import static org.junit.Assert.*;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.junit.Test;
+
+/**
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+public class RLEImageWriterTest {
+
+    private interface Pattern {
+        int sample(int x, int y, int band);
+    }
+
+    private static final Pattern RUN2_LITERAL1 = new Pattern() {
+        @Override
+        public int sample(int x, int y, int band) {
+            return x % 3 == 2 ? 1 : 0;
+        }
+    };
+
+    private static final Pattern LITERAL = new Pattern() {
+        @Override
+        public int sample(int x, int y, int band) {
+            return x + y + band;
+        }
+    };
+
+    private static Pattern random(long seed) {
+        final Random rnd = new Random(seed);
+        return new Pattern() {
+            @Override
+            public int sample(int x, int y, int band) {
+                return rnd.nextInt(4) == 0 ? 0 : rnd.nextInt();
+            }
+        };
+    }
+
+    @Test
+    public void testByteRun2Literal1() throws Exception {
+        assertRoundTrip(createImage(DataBuffer.TYPE_BYTE, 512, 4, 1,
+                RUN2_LITERAL1));
+    }
+
+    @Test
+    public void testByteLiteral() throws Exception {
+        assertRoundTrip(createImage(DataBuffer.TYPE_BYTE, 300, 7, 1, LITERAL));
+    }
+
+    @Test
+    public void testByteRandom() throws Exception {
+        assertRoundTrip(createImage(DataBuffer.TYPE_BYTE, 257, 33, 1,
+                random(8)));
+    }
+
+    @Test
+    public void testByteRGB() throws Exception {
+        assertRoundTrip(createImage(DataBuffer.TYPE_BYTE, 130, 20, 3,
+                random(24)));
+        assertRoundTrip(createImage(DataBuffer.TYPE_BYTE, 512, 4, 3,
+                RUN2_LITERAL1));
+    }
+
+    @Test
+    public void testUShortRun2Literal1() throws Exception {
+        assertRoundTrip(createImage(DataBuffer.TYPE_USHORT, 512, 4, 1,
+                RUN2_LITERAL1));
+    }
+
+    @Test
+    public void testUShortRandom() throws Exception {
+        assertRoundTrip(createImage(DataBuffer.TYPE_USHORT, 257, 33, 1,
+                random(16)));
+    }
+
+    private static BufferedImage createImage(int dataType, int w, int h,
+            int samples, Pattern pattern) {
+        ComponentColorModel cm = new ComponentColorModel(
+                ColorSpace.getInstance(
+                        samples == 1 ? ColorSpace.CS_GRAY : ColorSpace.CS_sRGB),
+                false, false, Transparency.OPAQUE, dataType);
+        WritableRaster raster = Raster.createBandedRaster(dataType,
+                w, h, samples, null);
+        for (int y = 0; y < h; y++)
+            for (int x = 0; x < w; x++)
+                for (int band = 0; band < samples; band++)
+                    raster.setSample(x, y, band,
+                            pattern.sample(x, y, band)
+                            & (dataType == DataBuffer.TYPE_BYTE ? 0xff : 0xffff));
+        return new BufferedImage(cm, raster, false, null);
+    }
+
+    private static void assertRoundTrip(BufferedImage bi) throws IOException {
+        byte[] rle = encode(bi);
+        BufferedImage decoded = decode(rle, bi.getColorModel(),
+                bi.getRaster().createCompatibleWritableRaster());
+        Raster expected = bi.getRaster();
+        Raster actual = decoded.getRaster();
+        int[] expectedSamples = expected.getPixels(0, 0,
+                expected.getWidth(), expected.getHeight(), (int[]) null);
+        int[] actualSamples = actual.getPixels(0, 0,
+                actual.getWidth(), actual.getHeight(), (int[]) null);
+        assertArrayEquals(expectedSamples, actualSamples);
+    }
+
+    private static byte[] encode(BufferedImage bi) throws IOException {
+        ImageWriter writer = new RLEImageWriterSpi().createWriterInstance(null);
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        MemoryCacheImageOutputStream ios = new MemoryCacheImageOutputStream(bout);
+        try {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(bi, null, null), null);
+        } finally {
+            ios.close();
+            writer.dispose();
+        }
+        return bout.toByteArray();
+    }
+
+    private static BufferedImage decode(byte[] rle,
+            ColorModel cm, WritableRaster raster)
+            throws IOException {
+        ImageReader reader = new RLEImageReaderSpi().createReaderInstance(null);
+        try {
+            reader.setInput(new MemoryCacheImageInputStream(
+                    new ByteArrayInputStream(rle)));
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setDestination(new BufferedImage(cm, raster, false, null));
+            return reader.read(0, param);
+        } finally {
+            reader.dispose();
+        }
+    }
+}
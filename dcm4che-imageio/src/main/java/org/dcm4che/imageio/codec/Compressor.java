@@ -0,0 +1,326 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.imageio.codec;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.dcm4che.data.Attributes;
+import org.dcm4che.data.BulkDataLocator;
+import org.dcm4che.data.Tag;
+import org.dcm4che.data.VR;
+import org.dcm4che.data.Value;
+import org.dcm4che.io.DicomEncodingOptions;
+import org.dcm4che.io.DicomOutputStream;
+import org.dcm4che.util.ByteUtils;
+import org.dcm4che.util.SafeClose;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Encapsulated Pixel Data compressed from native Pixel Data on encoding.
+ * Frames are compressed one by one while the data set is written, so only
+ * one native and one compressed frame are held in memory. If the length of
+ * the value is required for encoding - e.g. for Group Length attributes -
+ * the frames are compressed twice.
+ * 
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ *
+ */
+public class Compressor implements Value {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Compressor.class);
+
+    private final Object pixeldata;
+    private final boolean bigEndian;
+    private final ImageWriterFactory.ImageWriterParam param;
+    private final int rows;
+    private final int cols;
+    private final int samples;
+    private final int bitsAllocated;
+    private final int bitsStored;
+    private final int planarConfiguration;
+    private final int frames;
+    private final int frameLength;
+    private int[] compressedFrameLengths;
+
+    private Compressor(Attributes dataset, String tsuid, Object pixeldata)
+            throws IOException {
+        this.param = ImageWriterFactory.getImageWriterParam(tsuid);
+        if (param == null)
+            throw new IOException("Unsupported Transfer Syntax: " + tsuid);
+
+        this.rows = dataset.getInt(Tag.Rows, 0);
+        this.cols = dataset.getInt(Tag.Columns, 0);
+        this.samples = dataset.getInt(Tag.SamplesPerPixel, 1);
+        this.bitsAllocated = dataset.getInt(Tag.BitsAllocated, 8);
+        this.bitsStored = dataset.getInt(Tag.BitsStored, bitsAllocated);
+        this.planarConfiguration = dataset.getInt(Tag.PlanarConfiguration, 0);
+        this.frames = dataset.getInt(Tag.NumberOfFrames, 1);
+        this.frameLength = rows * cols * samples * (bitsAllocated>>>3);
+        if (bitsAllocated != 8 && bitsAllocated != 16)
+            throw new IllegalArgumentException(
+                    "Unsupported Bits Allocated: " + bitsAllocated);
+        if (samples != 1 && (samples != 3 || bitsAllocated != 8))
+            throw new IllegalArgumentException(
+                    "Unsupported Samples per Pixel: " + samples);
+
+        long pixeldataLength = pixeldata instanceof byte[]
+                ? ((byte[]) pixeldata).length
+                : ((BulkDataLocator) pixeldata).length;
+        if (pixeldataLength < (long) frameLength * frames)
+            throw new IllegalArgumentException(
+                    "Length of Pixel Data: " + pixeldataLength
+                    + " does not match " + frames + " frames of "
+                    + frameLength + " bytes");
+
+        this.pixeldata = pixeldata;
+        this.bigEndian = dataset.bigEndian();
+        if (samples > 1)
+            dataset.setInt(Tag.PlanarConfiguration, VR.US, 0);
+    }
+
+    /**
+     * Replaces native Pixel Data of the specified data set by a value which
+     * compresses the frames according to the specified Transfer Syntax on
+     * encoding. The Transfer Syntax of the File Meta Information or of the
+     * Presentation Context used to encode the data set has to match.
+     * 
+     * @param dataset data set with native Pixel Data
+     * @param tsuid Transfer Syntax UID of the compressed Pixel Data
+     * @return <code>false</code> if the data set does not contain native
+     *         Pixel Data
+     * @throws IOException if the Transfer Syntax is not supported
+     */
+    public static boolean compress(Attributes dataset, String tsuid)
+            throws IOException {
+        Object pixeldata = dataset.getValue(Tag.PixelData);
+        if (!(pixeldata instanceof byte[] 
+                || pixeldata instanceof BulkDataLocator))
+            return false;
+
+        dataset.setValue(Tag.PixelData, VR.OB,
+                new Compressor(dataset, tsuid, pixeldata));
+        return true;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return false;
+    }
+
+    @Override
+    public byte[] toBytes(VR vr, boolean bigEndian) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int calcLength(DicomEncodingOptions encOpts, boolean explicitVR, VR vr) {
+        if (compressedFrameLengths == null)
+            try {
+                compressedFrameLengths = compressFrameLengths();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        int len = 8; // empty Basic Offset Table
+        for (int frameLength : compressedFrameLengths)
+            len += 8 + ((frameLength + 1) & ~1);
+        return len;
+    }
+
+    @Override
+    public int getEncodedLength(DicomEncodingOptions encOpts, VR vr) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(DicomOutputStream out, VR vr) throws IOException {
+        out.writeHeader(Tag.Item, null, 0);
+        FrameCompressor fc = new FrameCompressor();
+        try {
+            for (int i = 0; i < frames; ++i) {
+                ByteArrayOutputStream frame = fc.compress(i);
+                int len = frame.size();
+                out.writeHeader(Tag.Item, null, (len + 1) & ~1);
+                frame.writeTo(out);
+                if ((len & 1) != 0)
+                    out.write(0);
+            }
+        } finally {
+            fc.close();
+        }
+    }
+
+    private int[] compressFrameLengths() throws IOException {
+        int[] lengths = new int[frames];
+        FrameCompressor fc = new FrameCompressor();
+        try {
+            for (int i = 0; i < frames; ++i)
+                lengths[i] = fc.compress(i).size();
+        } finally {
+            fc.close();
+        }
+        return lengths;
+    }
+
+    private class FrameCompressor {
+
+        final byte[] buf = new byte[frameLength];
+        final BufferedImage bi = createImage(buf);
+        final ByteArrayOutputStream bout = new ByteArrayOutputStream(
+                frameLength >> 1);
+        final ImageWriter writer = ImageWriterFactory.getImageWriter(param);
+        final ImageWriteParam writeParam = writer.getDefaultWriteParam();
+        RandomAccessFile raf;
+
+        FrameCompressor() {
+            if (param.compressionType != null) {
+                writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                writeParam.setCompressionType(param.compressionType);
+            }
+        }
+
+        ByteArrayOutputStream compress(int frameIndex) throws IOException {
+            readFrame(frameIndex);
+            if (bitsAllocated == 16)
+                toShorts();
+            bout.reset();
+            ImageOutputStream ios = new MemoryCacheImageOutputStream(bout);
+            try {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Start compressing frame #" + (frameIndex + 1));
+                writer.setOutput(ios);
+                writer.write(null, new IIOImage(bi, null, null), writeParam);
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Finished compressing frame #" + (frameIndex + 1));
+            } finally {
+                ios.close();
+                writer.reset();
+            }
+            return bout;
+        }
+
+        private void readFrame(int frameIndex) throws IOException {
+            long offset = (long) frameIndex * frameLength;
+            if (pixeldata instanceof byte[]) {
+                System.arraycopy(pixeldata, (int) offset, buf, 0, frameLength);
+                return;
+            }
+            BulkDataLocator bdl = (BulkDataLocator) pixeldata;
+            if (raf == null)
+                raf = new RandomAccessFile(toFile(bdl), "r");
+            raf.seek(bdl.offset + offset);
+            raf.readFully(buf);
+        }
+
+        private void toShorts() {
+            short[] data = ((DataBufferUShort)
+                    bi.getRaster().getDataBuffer()).getData();
+            for (int i = 0, j = 0; i < data.length; i++, j += 2)
+                data[i] = (short) ByteUtils.bytesToUShort(buf, j, bigEndian);
+        }
+
+        void close() {
+            writer.dispose();
+            SafeClose.close(raf);
+        }
+    }
+
+    private static File toFile(BulkDataLocator bdl) {
+        try {
+            return new File(new URI(bdl.uri));
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid URI:" + bdl.uri);
+        }
+    }
+
+    private BufferedImage createImage(byte[] buf) {
+        int dataType;
+        DataBuffer db;
+        if (bitsAllocated > 8) {
+            dataType = DataBuffer.TYPE_USHORT;
+            db = new DataBufferUShort(rows * cols);
+        } else {
+            dataType = DataBuffer.TYPE_BYTE;
+            db = new DataBufferByte(buf, buf.length);
+        }
+        int[] bits = new int[samples];
+        int[] bandOffsets = new int[samples];
+        for (int i = 0; i < samples; i++) {
+            bits[i] = bitsStored;
+            bandOffsets[i] = planarConfiguration == 0 ? i : i * rows * cols;
+        }
+        SampleModel sm = planarConfiguration == 0
+                ? new ComponentSampleModel(dataType, cols, rows,
+                        samples, cols * samples, bandOffsets)
+                : new ComponentSampleModel(dataType, cols, rows,
+                        1, cols, bandOffsets);
+        ComponentColorModel cm = new ComponentColorModel(
+                ColorSpace.getInstance(
+                        samples == 1 ? ColorSpace.CS_GRAY : ColorSpace.CS_sRGB),
+                bits,
+                false, // hasAlpha
+                false, // isAlphaPremultiplied,
+                Transparency.OPAQUE,
+                dataType);
+        WritableRaster raster = Raster.createWritableRaster(sm, db, null);
+        return new BufferedImage(cm, raster, false, null);
+    }
+}
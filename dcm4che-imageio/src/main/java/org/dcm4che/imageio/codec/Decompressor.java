@@ -54,9 +54,17 @@ import java.awt.image.WritableRaster;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 import javax.imageio.ImageReadParam;
 import javax.imageio.ImageReader;
@@ -71,7 +79,7 @@ import org.dcm4che.data.UID;
 import org.dcm4che.data.VR;
 import org.dcm4che.data.Value;
 import org.dcm4che.image.PhotometricInterpretation;
-import org.dcm4che.imageio.stream.SegmentedInputImageStream;
+import org.dcm4che.imageio.stream.FrameOffsetTable;
 import org.dcm4che.io.DicomEncodingOptions;
 import org.dcm4che.io.DicomOutputStream;
 import org.slf4j.Logger;
@@ -87,16 +95,24 @@ public class Decompressor implements Value {
 
     private final Fragments pixeldataFragments;
     private final File file;
+    private final ImageReaderFactory.ImageReaderParam param;
     private final ImageReader decompressor;
+    private final int rows;
+    private final int cols;
+    private final int samples;
+    private final int bitsAllocated;
     private final int length;
     private final int frames;
     private final BufferedImage destination;
+    private final Executor executor;
+    private final int parallelism;
+    private FrameOffsetTable frameOffsetTable;
 
     private Decompressor(Attributes dataset, String tsuid,
-            Fragments pixeldataFragments, BufferedImage destination)
+            Fragments pixeldataFragments, BufferedImage destination,
+            Executor executor, int parallelism)
                     throws IOException {
-        ImageReaderFactory.ImageReaderParam param =
-                ImageReaderFactory.getImageReaderParam(tsuid);
+        this.param = ImageReaderFactory.getImageReaderParam(tsuid);
         if (param == null)
             throw new IOException("Unsupported Transfer Syntax: " + tsuid);
 
@@ -112,25 +128,26 @@ public class Decompressor implements Value {
             throw new IllegalArgumentException("Invalid URI:" + bdl.uri);
         }
         
-        int rows = dataset.getInt(Tag.Rows, 0);
-        int cols = dataset.getInt(Tag.Columns, 0);
-        int samples = dataset.getInt(Tag.SamplesPerPixel, 0);
-        int bitsAllocated = dataset.getInt(Tag.BitsAllocated, 8);
+        this.rows = dataset.getInt(Tag.Rows, 0);
+        this.cols = dataset.getInt(Tag.Columns, 0);
+        this.samples = dataset.getInt(Tag.SamplesPerPixel, 0);
+        this.bitsAllocated = dataset.getInt(Tag.BitsAllocated, 8);
         this.frames = dataset.getInt(Tag.NumberOfFrames, 1);
         this.length = rows * cols * samples * (bitsAllocated>>>3) * frames;
         
         int numFragments = pixeldataFragments.size();
-        if (frames == 1 ? (numFragments < 2)
-                        : (numFragments != frames + 1))
+        if (numFragments < frames + 1)
             throw new IllegalArgumentException(
                     "Number of Pixel Data Fragments: "
-                    + numFragments + " does not match " + frames);
+                    + numFragments + " less than " + frames + " + 1");
 
         this.pixeldataFragments = pixeldataFragments;
         this.decompressor = ImageReaderFactory.getImageReader(param);
         this.destination = (destination == null && tsuid.equals(UID.RLELossless))
                 ? createDestination(rows, cols, samples, bitsAllocated)
                 : destination;
+        this.executor = executor;
+        this.parallelism = Math.min(parallelism, frames);
 
         if (samples > 1) {
             PhotometricInterpretation pmi = PhotometricInterpretation.fromString(
@@ -172,7 +189,44 @@ public class Decompressor implements Value {
             return false;
 
         dataset.setValue(Tag.PixelData, VR.OW,
-                new Decompressor(dataset, tsuid, (Fragments) pixeldata, destination));
+                new Decompressor(dataset, tsuid, (Fragments) pixeldata,
+                        destination, null, 1));
+        return true;
+    }
+
+    /**
+     * Replaces encapsulated Pixel Data of the specified data set by a value
+     * which decompresses the frames on encoding. Frames are decompressed
+     * concurrently by up to <code>parallelism</code> tasks executed by the
+     * specified executor, each using its own {@link ImageReader}, and
+     * written in order. At most twice <code>parallelism</code> decompressed
+     * frames are buffered in memory.
+     * 
+     * @param dataset data set with encapsulated Pixel Data
+     * @param tsuid Transfer Syntax UID of the encapsulated Pixel Data
+     * @param executor executes the decompression tasks
+     * @param parallelism maximal number of concurrently decompressed frames
+     * @return <code>false</code> if the data set does not contain
+     *         encapsulated Pixel Data
+     * @throws IOException if the Transfer Syntax is not supported
+     */
+    public static boolean decompress(Attributes dataset, String tsuid,
+            Executor executor, int parallelism) throws IOException {
+        if (executor == null)
+            throw new NullPointerException("executor");
+        if (parallelism <= 0)
+            throw new IllegalArgumentException("parallelism: " + parallelism);
+
+        Object pixeldata = dataset.getValue(Tag.PixelData);
+        if (pixeldata == null)
+            return false;
+
+        if (!(pixeldata instanceof Fragments))
+            return false;
+
+        dataset.setValue(Tag.PixelData, VR.OW,
+                new Decompressor(dataset, tsuid, (Fragments) pixeldata,
+                        null, executor, parallelism));
         return true;
     }
 
@@ -204,14 +258,21 @@ public class Decompressor implements Value {
     }
     
     private void writeTo(OutputStream out) throws IOException {
+        if (parallelism > 1)
+            writeParallelTo(out);
+        else
+            writeSequentialTo(out);
+    }
+
+    private void writeSequentialTo(OutputStream out) throws IOException {
         ImageInputStream iis = new FileImageInputStream(file);
         try {
+            FrameOffsetTable fot = frameOffsetTable(iis);
             ImageReadParam param = decompressor.getDefaultReadParam();
             param.setDestination(destination);
             for (int i = 0; i < frames; ++i) {
                 decompressor.reset();
-                decompressor.setInput(
-                        new SegmentedInputImageStream(iis, pixeldataFragments, i));
+                decompressor.setInput(fot.openFrame(iis, i));
                 if (LOG.isDebugEnabled())
                     LOG.debug("Start decompressing frame #" + (i + 1));
                 BufferedImage bi = decompressor.read(0, param);
@@ -227,6 +288,155 @@ public class Decompressor implements Value {
         }
     }
 
+    /**
+     * Returns the mapping of frames to Pixel Data Fragments, built on first
+     * invocation, so each frame is read only from its own fragments.
+     */
+    private synchronized FrameOffsetTable frameOffsetTable(ImageInputStream iis)
+            throws IOException {
+        if (frameOffsetTable == null)
+            frameOffsetTable = FrameOffsetTable.valueOf(
+                    iis, pixeldataFragments, frames);
+        return frameOffsetTable;
+    }
+
+    private void writeParallelTo(OutputStream out) throws IOException {
+        FrameDecompressorPool pool = new FrameDecompressorPool();
+        ArrayDeque<FutureTask<byte[]>> pending =
+                new ArrayDeque<FutureTask<byte[]>>(parallelism << 1);
+        try {
+            int next = 0;
+            while (next < frames && pending.size() < parallelism << 1)
+                pending.add(submit(pool, next++));
+            while (!pending.isEmpty()) {
+                out.write(get(pending.poll()));
+                if (next < frames)
+                    pending.add(submit(pool, next++));
+            }
+            if ((length & 1) != 0)
+                out.write(0);
+        } finally {
+            // interrupts tasks waiting for an idle FrameDecompressor; tasks
+            // still decompressing dispose their FrameDecompressor on return
+            for (FutureTask<byte[]> task : pending)
+                task.cancel(true);
+            pool.close();
+        }
+    }
+
+    private FutureTask<byte[]> submit(
+            final FrameDecompressorPool pool, final int frameIndex) {
+        FutureTask<byte[]> task = new FutureTask<byte[]>(
+                new Callable<byte[]>() {
+
+                    @Override
+                    public byte[] call() throws Exception {
+                        FrameDecompressor fd = pool.take();
+                        try {
+                            return fd.decompress(frameIndex);
+                        } finally {
+                            pool.release(fd);
+                        }
+                    }
+                });
+        executor.execute(task);
+        return task;
+    }
+
+    private static byte[] get(FutureTask<byte[]> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    private class FrameDecompressorPool {
+
+        final BlockingQueue<FrameDecompressor> idle =
+                new ArrayBlockingQueue<FrameDecompressor>(parallelism);
+        boolean closed;
+
+        FrameDecompressorPool() {
+            try {
+                for (int i = 0; i < parallelism; i++)
+                    idle.add(new FrameDecompressor());
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        FrameDecompressor take() throws InterruptedException {
+            return idle.take();
+        }
+
+        void release(FrameDecompressor fd) {
+            synchronized (this) {
+                if (!closed) {
+                    idle.add(fd);
+                    return;
+                }
+            }
+            fd.close();
+        }
+
+        void close() {
+            synchronized (this) {
+                closed = true;
+            }
+            FrameDecompressor fd;
+            while ((fd = idle.poll()) != null)
+                fd.close();
+        }
+    }
+
+    private class FrameDecompressor {
+
+        final ImageReader reader = ImageReaderFactory.getImageReader(param);
+        final ImageReadParam readParam = reader.getDefaultReadParam();
+        final ByteArrayOutputStream bout =
+                new ByteArrayOutputStream(length / frames + 1);
+        ImageInputStream iis;
+
+        FrameDecompressor() {
+            if (destination != null)
+                readParam.setDestination(createDestination(
+                        rows, cols, samples, bitsAllocated));
+        }
+
+        byte[] decompress(int frameIndex) throws IOException {
+            if (iis == null)
+                iis = new FileImageInputStream(file);
+            reader.reset();
+            reader.setInput(frameOffsetTable(iis).openFrame(iis, frameIndex));
+            if (LOG.isDebugEnabled())
+                LOG.debug("Start decompressing frame #" + (frameIndex + 1));
+            BufferedImage bi = reader.read(0, readParam);
+            readParam.setDestination(bi); // reuse bi for next Frame
+            if (LOG.isDebugEnabled())
+                LOG.debug("Finished decompressing frame #" + (frameIndex + 1));
+            bout.reset();
+            writeTo(bi.getRaster(), bout);
+            return bout.toByteArray();
+        }
+
+        void close() {
+            reader.dispose();
+            if (iis != null)
+                try { iis.close(); } catch (IOException ignore) {}
+        }
+    }
+
     private void writeTo(Raster raster, OutputStream out) throws IOException {
         SampleModel sm = raster.getSampleModel();
         DataBuffer db = raster.getDataBuffer();
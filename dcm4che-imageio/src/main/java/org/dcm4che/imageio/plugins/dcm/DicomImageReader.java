@@ -38,6 +38,7 @@
 
 package org.dcm4che.imageio.plugins.dcm;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.DataBuffer;
@@ -46,6 +47,7 @@ import java.awt.image.DataBufferUShort;
 import java.awt.image.Raster;
 import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteOrder;
 import java.util.Collections;
@@ -56,6 +58,7 @@ import javax.imageio.ImageReader;
 import javax.imageio.ImageTypeSpecifier;
 import javax.imageio.metadata.IIOMetadata;
 import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.FileImageInputStream;
 import javax.imageio.stream.ImageInputStream;
 
 import org.dcm4che.data.Attributes;
@@ -66,12 +69,15 @@ import org.dcm4che.data.Tag;
 import org.dcm4che.data.UID;
 import org.dcm4che.data.VR;
 import org.dcm4che.image.LookupTable;
+import org.dcm4che.image.LookupTableCache;
 import org.dcm4che.image.LookupTableFactory;
 import org.dcm4che.image.Overlays;
 import org.dcm4che.image.PhotometricInterpretation;
+import org.dcm4che.image.SampledComponentSampleModel;
 import org.dcm4che.image.StoredValue;
 import org.dcm4che.imageio.codec.ImageReaderFactory;
 import org.dcm4che.imageio.codec.ImageReaderFactory.ImageReaderParam;
+import org.dcm4che.imageio.stream.FrameOffsetTable;
 import org.dcm4che.imageio.stream.ImageInputStreamAdapter;
 import org.dcm4che.imageio.stream.SegmentedInputImageStream;
 import org.dcm4che.io.DicomInputStream;
@@ -90,6 +96,8 @@ public class DicomImageReader extends ImageReader {
 
     private ImageInputStream iis;
 
+    private String uri;
+
     private DicomMetaData metadata;
 
     private int frames;
@@ -106,6 +114,12 @@ public class DicomImageReader extends ImageReader {
 
     private Fragments pixeldataFragments;
 
+    private FrameOffsetTable frameOffsetTable;
+
+    private RasterCache rasterCache;
+
+    private LookupTableCache lookupTableCache;
+
     private ImageReader decompressor;
 
     private int samples;
@@ -126,12 +140,64 @@ public class DicomImageReader extends ImageReader {
         super(originatingProvider);
     }
 
+    public final RasterCache getRasterCache() {
+        return rasterCache;
+    }
+
+    /**
+     * Set cache for decompressed frames, which may be shared with other
+     * readers. Only frames of a {@link File} input, read without destination
+     * or destination type specified by the {@link ImageReadParam}, are
+     * cached, identified by the URI of the file and the frame index.
+     * 
+     * @param rasterCache cache for decompressed frames or <code>null</code>
+     */
+    public final void setRasterCache(RasterCache rasterCache) {
+        this.rasterCache = rasterCache;
+    }
+
+    public final LookupTableCache getLookupTableCache() {
+        return lookupTableCache;
+    }
+
+    /**
+     * Set cache for LUTs applied to grayscale images, which may be shared
+     * with other readers.
+     * 
+     * @param lookupTableCache cache for LUTs or <code>null</code>
+     */
+    public final void setLookupTableCache(LookupTableCache lookupTableCache) {
+        this.lookupTableCache = lookupTableCache;
+    }
+
+    /**
+     * Set the input source. If <code>input</code> is a {@link File}, the
+     * reader opens and closes the file itself.
+     */
     @Override
     public void setInput(Object input, boolean seekForwardOnly,
             boolean ignoreMetadata) {
         super.setInput(input, seekForwardOnly, ignoreMetadata);
         resetInternalState();
-        iis = (ImageInputStream) input;
+        closeInput();
+        if (input instanceof File) {
+            File file = (File) input;
+            try {
+                iis = new FileImageInputStream(file);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(
+                        "Failed to open " + file, e);
+            }
+            uri = file.toURI().toString();
+        } else
+            iis = (ImageInputStream) input;
+    }
+
+    private void closeInput() {
+        if (uri != null)
+            try { iis.close(); } catch (IOException ignore) {}
+        iis = null;
+        uri = null;
     }
 
     @Override
@@ -167,8 +233,7 @@ public class DicomImageReader extends ImageReader {
         if (isRLELossless())
             createImageType(bitsStored, dataType, true);
         
-        decompressor.setInput(
-                new SegmentedInputImageStream(iis, pixeldataFragments, 0));
+        decompressor.setInput(openFrame(0));
         return decompressor.getRawImageType(0);
     }
 
@@ -190,8 +255,7 @@ public class DicomImageReader extends ImageReader {
         else if (isRLELossless())
             imageType = createImageType(bitsStored, dataType, true);
         else {
-            decompressor.setInput(
-                    new SegmentedInputImageStream(iis, pixeldataFragments, 0));
+            decompressor.setInput(openFrame(0));
             return decompressor.getImageTypes(0);
         }
 
@@ -225,43 +289,179 @@ public class DicomImageReader extends ImageReader {
         readMetadata();
         checkIndex(frameIndex);
 
-        if (decompressor != null) {
-            decompressor.setInput(
-                    new SegmentedInputImageStream(
-                            iis, pixeldataFragments, frameIndex));
+        if (decompressor == null)
+            return readNativeRaster(frameIndex, param);
+
+        boolean cacheable = isCacheable(param);
+        Raster wr = cacheable ? rasterCache.get(uri, frameIndex) : null;
+        if (wr == null) {
+            // clear state left by a previous read of only a source region
+            decompressor.reset();
+            decompressor.setInput(openFrame(frameIndex));
 
             if (LOG.isDebugEnabled())
                 LOG.debug("Start decompressing frame #" + (frameIndex + 1));
-            Raster wr = pmi.decompress() == pmi && decompressor.canReadRaster()
+            wr = pmi.decompress() == pmi && decompressor.canReadRaster()
                     ? decompressor.readRaster(0, decompressParam(param))
                     : decompressor.read(0, decompressParam(param)).getRaster();
             if (LOG.isDebugEnabled())
                 LOG.debug("Finished decompressing frame #" + (frameIndex + 1));
+            if (cacheable && isFullFrame(wr))
+                rasterCache.put(uri, frameIndex, wr);
+        }
+        return subsample(wr, param);
+    }
+
+    private WritableRaster readNativeRaster(int frameIndex,
+            ImageReadParam param) throws IOException {
+        long frameOffset = pixeldata.offset + (long) frameIndex * frameLength;
+        Rectangle region = getSourceRegion(param, width, height);
+        int xSubsampling = param != null ? param.getSourceXSubsampling() : 1;
+        int ySubsampling = param != null ? param.getSourceYSubsampling() : 1;
+        SampleModel sm = createSampleModel(dataType, banded);
+        if (sm instanceof SampledComponentSampleModel
+                || region.width == width && region.height == height
+                    && xSubsampling == 1 && ySubsampling == 1) {
+            iis.seek(frameOffset);
+            WritableRaster wr = Raster.createWritableRaster(sm, null);
+            DataBuffer buf = wr.getDataBuffer();
+            if (buf instanceof DataBufferByte) {
+                byte[][] data = ((DataBufferByte) buf).getBankData();
+                for (byte[] bs : data)
+                    iis.readFully(bs);
+            } else {
+                short[][] data = ((DataBufferUShort) buf).getBankData();
+                for (short[] ss : data)
+                    iis.readFully(ss, 0, ss.length);
+            }
             return wr;
         }
-        iis.seek(pixeldata.offset + frameIndex * frameLength);
+
+        // read only the rows and columns of the source region
+        int w = (region.width + xSubsampling - 1) / xSubsampling;
+        int h = (region.height + ySubsampling - 1) / ySubsampling;
         WritableRaster wr = Raster.createWritableRaster(
-                createSampleModel(dataType, banded), null);
+                pmi.createSampleModel(dataType, w, h, samples, banded), null);
         DataBuffer buf = wr.getDataBuffer();
-        if (buf instanceof DataBufferByte) {
-            byte[][] data = ((DataBufferByte) buf).getBankData();
-            for (byte[] bs : data)
-                iis.readFully(bs);
-        } else {
-            short[] data = ((DataBufferUShort) buf).getData();
-            iis.readFully(data, 0, data.length);
+        int pixelStride = banded ? 1 : samples;
+        int sampleSize = dataType == DataBuffer.TYPE_BYTE ? 1 : 2;
+        int lineLength = ((w - 1) * xSubsampling + 1) * pixelStride;
+        byte[] byteLine = null;
+        short[] shortLine = null;
+        if (xSubsampling > 1) {
+            if (sampleSize == 1)
+                byteLine = new byte[lineLength];
+            else
+                shortLine = new short[lineLength];
+        }
+        for (int bank = 0, numBanks = buf.getNumBanks(); bank < numBanks; bank++) {
+            long planeOffset = frameOffset
+                    + (long) bank * width * height * sampleSize;
+            byte[] bs = sampleSize == 1
+                    ? ((DataBufferByte) buf).getData(bank) : null;
+            short[] ss = sampleSize == 2
+                    ? ((DataBufferUShort) buf).getData(bank) : null;
+            for (int y = 0; y < h; y++) {
+                int srcY = region.y + y * ySubsampling;
+                iis.seek(planeOffset + ((long) srcY * width + region.x)
+                        * pixelStride * sampleSize);
+                int off = y * w * pixelStride;
+                if (xSubsampling == 1) {
+                    if (bs != null)
+                        iis.readFully(bs, off, lineLength);
+                    else
+                        iis.readFully(ss, off, lineLength);
+                } else if (bs != null) {
+                    iis.readFully(byteLine, 0, lineLength);
+                    for (int x = 0; x < w; x++)
+                        System.arraycopy(byteLine, x * xSubsampling * pixelStride,
+                                bs, off + x * pixelStride, pixelStride);
+                } else {
+                    iis.readFully(shortLine, 0, lineLength);
+                    for (int x = 0; x < w; x++)
+                        System.arraycopy(shortLine, x * xSubsampling * pixelStride,
+                                ss, off + x * pixelStride, pixelStride);
+                }
+            }
+        }
+        return wr;
+    }
+
+    private boolean isFullFrame(Raster raster) {
+        return raster.getWidth() == width && raster.getHeight() == height;
+    }
+
+    /**
+     * Returns the source region of the raster, sub-sampled according to
+     * <code>param</code>, if the decompressor ignored the source region or
+     * sub-sampling, or if the raster was taken from the cache.
+     */
+    private Raster subsample(Raster raster, ImageReadParam param) {
+        if (param == null || !isFullFrame(raster)
+                || raster.getSampleModel() instanceof SampledComponentSampleModel)
+            return raster;
+
+        Rectangle region = getSourceRegion(param, width, height);
+        int xSubsampling = param.getSourceXSubsampling();
+        int ySubsampling = param.getSourceYSubsampling();
+        int w = (region.width + xSubsampling - 1) / xSubsampling;
+        int h = (region.height + ySubsampling - 1) / ySubsampling;
+        if (w == width && h == height)
+            return raster;
+
+        int x0 = raster.getMinX() + region.x;
+        int y0 = raster.getMinY() + region.y;
+        WritableRaster wr = raster.createCompatibleWritableRaster(w, h);
+        Object data = null;
+        for (int y = 0; y < h; y++) {
+            int srcY = y0 + y * ySubsampling;
+            if (xSubsampling == 1) {
+                data = raster.getDataElements(x0, srcY, w, 1, data);
+                wr.setDataElements(0, y, w, 1, data);
+            } else {
+                for (int x = 0; x < w; x++) {
+                    data = raster.getDataElements(x0 + x * xSubsampling, srcY, data);
+                    wr.setDataElements(x, y, data);
+                }
+            }
         }
         return wr;
     }
 
+    private SegmentedInputImageStream openFrame(int frameIndex)
+            throws IOException {
+        if (frameOffsetTable == null)
+            frameOffsetTable = FrameOffsetTable.valueOf(
+                    iis, pixeldataFragments, frames);
+        return frameOffsetTable.openFrame(iis, frameIndex);
+    }
+
+    private boolean isCacheable(ImageReadParam param) {
+        return rasterCache != null && uri != null
+                && (param == null || param.getDestination() == null
+                        && param.getDestinationType() == null);
+    }
+
     private ImageReadParam decompressParam(ImageReadParam param) {
         ImageReadParam decompressParam = decompressor.getDefaultReadParam();
-        ImageTypeSpecifier imageType = param.getDestinationType();
-        BufferedImage dest = param.getDestination();
+        ImageTypeSpecifier imageType = null;
+        BufferedImage dest = null;
+        if (param != null) {
+            imageType = param.getDestinationType();
+            dest = param.getDestination();
+        }
         if (isRLELossless() && imageType == null && dest == null)
             imageType = createImageType(bitsStored, dataType, true);
         decompressParam.setDestinationType(imageType);
         decompressParam.setDestination(dest);
+        if (param != null) {
+            decompressParam.setSourceRegion(param.getSourceRegion());
+            decompressParam.setSourceSubsampling(
+                    param.getSourceXSubsampling(),
+                    param.getSourceYSubsampling(),
+                    param.getSubsamplingXOffset(),
+                    param.getSubsamplingYOffset());
+        }
         return decompressParam;
     }
 
@@ -273,25 +473,35 @@ public class DicomImageReader extends ImageReader {
 
         WritableRaster raster;
         if (decompressor != null) {
-            decompressor.setInput(
-                    new SegmentedInputImageStream(
-                            iis, pixeldataFragments, frameIndex));
-            if (LOG.isDebugEnabled())
-                LOG.debug("Start decompressing frame #" + (frameIndex + 1));
-            BufferedImage bi = decompressor.read(0, decompressParam(param));
-            if (LOG.isDebugEnabled())
-                LOG.debug("Finished decompressing frame #" + (frameIndex + 1));
-            if (samples > 1)
-                return bi;
-            
-            raster = bi.getRaster();
+            boolean cacheable = samples == 1 && isCacheable(param);
+            raster = cacheable ? rasterCache.get(uri, frameIndex) : null;
+            if (raster == null) {
+                decompressor.reset();
+                decompressor.setInput(openFrame(frameIndex));
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Start decompressing frame #" + (frameIndex + 1));
+                BufferedImage bi = decompressor.read(0, decompressParam(param));
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Finished decompressing frame #" + (frameIndex + 1));
+                raster = bi.getRaster();
+                if (samples > 1) {
+                    WritableRaster wr = (WritableRaster) subsample(raster, param);
+                    return wr == raster ? bi 
+                            : new BufferedImage(bi.getColorModel(), wr,
+                                    bi.isAlphaPremultiplied(), null);
+                }
+                if (cacheable && isFullFrame(raster))
+                    rasterCache.put(uri, frameIndex, raster);
+            }
+            raster = (WritableRaster) subsample(raster, param);
         } else
             raster = (WritableRaster) readRaster(frameIndex, param);
 
         ColorModel cm;
         if (pmi.isMonochrome()) {
             cm = createColorModel(8, DataBuffer.TYPE_BYTE);
-            SampleModel sm = createSampleModel(DataBuffer.TYPE_BYTE, false);
+            SampleModel sm = pmi.createSampleModel(DataBuffer.TYPE_BYTE,
+                    raster.getWidth(), raster.getHeight(), samples, false);
             raster = applyLUTs(raster, frameIndex, param, sm, 8);
             int[] overlayGroupOffsets = getActiveOverlayGroupOffsets(param);
             for (int gg0000 : overlayGroupOffsets)
@@ -317,8 +527,15 @@ public class DicomImageReader extends ImageReader {
             } else
                 grayscaleValue = dParam.getOverlayGrayscaleValue();
         }
-        Overlays.applyOverlay(frameIndex, raster, ovlyAttrs, gg0000,
-                grayscaleValue >>> (16-outBits));
+        if (param != null)
+            Overlays.applyOverlay(frameIndex, raster, ovlyAttrs, gg0000,
+                    grayscaleValue >>> (16-outBits),
+                    getSourceRegion(param, width, height),
+                    param.getSourceXSubsampling(),
+                    param.getSourceYSubsampling());
+        else
+            Overlays.applyOverlay(frameIndex, raster, ovlyAttrs, gg0000,
+                    grayscaleValue >>> (16-outBits));
     }
 
     private int[] getActiveOverlayGroupOffsets(ImageReadParam param) {
@@ -377,7 +594,7 @@ public class DicomImageReader extends ImageReader {
             lutParam.autoWindowing(imgAttrs, raster);
             lutParam.setPresentationLUT(imgAttrs);
         }
-        LookupTable lut = lutParam.createLUT(outBits);
+        LookupTable lut = lutParam.createLUT(outBits, lookupTableCache);
         lut.lookup(raster, destRaster);
         return destRaster;
     }
@@ -414,7 +631,8 @@ public class DicomImageReader extends ImageReader {
         dis = new DicomInputStream(new ImageInputStreamAdapter(iis));
         dis.setBulkDataAttributes(pixelData());
         dis.setIncludeBulkData(IncludeBulkData.LOCATOR);
-        dis.setURI("java:iis"); // avoid copy of pixeldata to temporary file
+        // avoid copy of pixeldata to temporary file
+        dis.setURI(uri != null ? uri : "java:iis");
         Attributes fmi = dis.readFileMetaInformation();
         Attributes ds = dis.readDataset(-1, -1);
         metadata = new DicomMetaData(fmi, ds);
@@ -477,6 +695,7 @@ public class DicomImageReader extends ImageReader {
         height = 0;
         pixeldata = null;
         pixeldataFragments = null;
+        frameOffsetTable = null;
         if (decompressor != null) {
             decompressor.dispose();
             decompressor = null;
@@ -492,6 +711,7 @@ public class DicomImageReader extends ImageReader {
     @Override
     public void dispose() {
         resetInternalState();
+        closeInput();
     }
 
 }
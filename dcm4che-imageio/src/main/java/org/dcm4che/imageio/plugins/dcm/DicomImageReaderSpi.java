@@ -38,11 +38,13 @@
 
 package org.dcm4che.imageio.plugins.dcm;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Locale;
 
 import javax.imageio.ImageReader;
 import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.FileImageInputStream;
 import javax.imageio.stream.ImageInputStream;
 
 import org.dcm4che.data.Implementation;
@@ -58,7 +60,8 @@ public class DicomImageReaderSpi extends ImageReaderSpi {
     private static final String[] formatNames = { "dicom", "DICOM" };
     private static final String[] suffixes = { "dcm", "dic", "dicm", "dicom" };
     private static final String[] MIMETypes = { "application/dicom" };
-    private static final Class<?>[] inputTypes = { ImageInputStream.class };
+    private static final Class<?>[] inputTypes =
+            { ImageInputStream.class, File.class };
 
     public DicomImageReaderSpi() {
         super(vendorName, version, formatNames, suffixes, MIMETypes, 
@@ -83,6 +86,14 @@ public class DicomImageReaderSpi extends ImageReaderSpi {
 
     @Override
     public boolean canDecodeInput(Object source) throws IOException {
+        if (source instanceof File) {
+            ImageInputStream iis = new FileImageInputStream((File) source);
+            try {
+                return canDecodeInput(iis);
+            } finally {
+                iis.close();
+            }
+        }
         ImageInputStream iis = (ImageInputStream) source;
         iis.mark();
         try {
@@ -0,0 +1,212 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.imageio.plugins.dcm;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Bounded cache of decompressed frames, which may be shared by several
+ * {@link DicomImageReader}s. Frames are identified by the URI of the source
+ * - e.g. of the file - containing the image and by the frame index. If the
+ * total size of the cached rasters exceeds the maximal size, least recently
+ * used rasters are evicted from the cache.
+ * 
+ * <p>
+ * Rasters are copied on {@link #put} and {@link #get}, so callers may
+ * modify returned rasters - e.g. by applying LUTs or overlays - without
+ * affecting the cached frame.
+ * 
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+public class RasterCache {
+
+    public static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+
+    private final LinkedHashMap<Key, Raster> lru =
+            new LinkedHashMap<Key, Raster>(16, 0.75f, true);
+    private long maxSize;
+    private long size;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public RasterCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public RasterCache(long maxSize) {
+        setMaxSize(maxSize);
+    }
+
+    public final synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Set maximal number of bytes of cached rasters.
+     * 
+     * @param maxSize maximal number of bytes of cached rasters
+     */
+    public final synchronized void setMaxSize(long maxSize) {
+        if (maxSize < 0)
+            throw new IllegalArgumentException("maxSize: " + maxSize);
+
+        this.maxSize = maxSize;
+        evict();
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getNumberOfRasters() {
+        return lru.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized void resetStatistics() {
+        hits = 0L;
+        misses = 0L;
+        evictions = 0L;
+    }
+
+    public WritableRaster get(String uri, int frameIndex) {
+        Raster raster;
+        synchronized (this) {
+            raster = lru.get(new Key(uri, frameIndex));
+            if (raster != null)
+                hits++;
+            else
+                misses++;
+        }
+        return raster != null ? copyOf(raster) : null;
+    }
+
+    public void put(String uri, int frameIndex, Raster raster) {
+        long rasterSize = sizeOf(raster);
+        if (rasterSize > getMaxSize())
+            return;
+
+        Raster copy = copyOf(raster);
+        synchronized (this) {
+            Raster prev = lru.put(new Key(uri, frameIndex), copy);
+            if (prev != null)
+                size -= sizeOf(prev);
+            size += rasterSize;
+            evict();
+        }
+    }
+
+    public synchronized void clear() {
+        lru.clear();
+        size = 0L;
+    }
+
+    private void evict() {
+        Iterator<Raster> iter = lru.values().iterator();
+        while (size > maxSize && iter.hasNext()) {
+            size -= sizeOf(iter.next());
+            iter.remove();
+            evictions++;
+        }
+    }
+
+    private static long sizeOf(Raster raster) {
+        DataBuffer db = raster.getDataBuffer();
+        return (long) db.getSize() * db.getNumBanks()
+                * DataBuffer.getDataTypeSize(db.getDataType()) / 8;
+    }
+
+    private static WritableRaster copyOf(Raster raster) {
+        WritableRaster copy = raster.createCompatibleWritableRaster();
+        copy.setRect(-raster.getMinX(), -raster.getMinY(), raster);
+        return copy;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "RasterCache[rasters=" + lru.size()
+                + ", size=" + size
+                + ", maxSize=" + maxSize
+                + ", hits=" + hits
+                + ", misses=" + misses
+                + ", evictions=" + evictions
+                + "]";
+    }
+
+    private static final class Key {
+        final String uri;
+        final int frameIndex;
+
+        Key(String uri, int frameIndex) {
+            this.uri = uri;
+            this.frameIndex = frameIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            return uri.hashCode() * 31 + frameIndex;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+
+            Key other = (Key) o;
+            return frameIndex == other.frameIndex
+                    && uri.equals(other.uri);
+        }
+    }
+}
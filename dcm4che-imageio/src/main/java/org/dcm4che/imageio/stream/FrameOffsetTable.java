@@ -0,0 +1,209 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.imageio.stream;
+
+import java.io.IOException;
+
+import javax.imageio.stream.ImageInputStream;
+
+import org.dcm4che.data.BulkDataLocator;
+import org.dcm4che.data.Fragments;
+import org.dcm4che.util.ByteUtils;
+
+/**
+ * Maps frames of encapsulated Pixel Data to the fragments containing their
+ * compressed bit stream. The table is built once, from the Basic Offset
+ * Table if present, otherwise by assuming one fragment per frame or - if
+ * the number of fragments does not match the number of frames - by a scan
+ * of the first bytes of each fragment for the start marker of a JPEG or
+ * JPEG 2000 code stream.
+ * 
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+public class FrameOffsetTable {
+
+    private final Fragments fragments;
+    private final int[] firstFragments;
+
+    private FrameOffsetTable(Fragments fragments, int[] firstFragments) {
+        this.fragments = fragments;
+        this.firstFragments = firstFragments;
+    }
+
+    public static FrameOffsetTable valueOf(ImageInputStream iis,
+            Fragments fragments, int frames) throws IOException {
+        int numFragments = fragments.size();
+        if (numFragments < frames + 1)
+            throw new IOException("Number of Pixel Data Fragments: "
+                    + numFragments + " less than " + frames + " + 1");
+
+        int[] firstFragments = null;
+        byte[] bot = readBasicOffsetTable(iis, fragments.get(0));
+        if (bot.length == frames * 4)
+            firstFragments = fromBasicOffsetTable(bot, fragments, frames);
+        else if (frames == 1 || numFragments == frames + 1)
+            firstFragments = oneFragmentPerFrame(numFragments, frames);
+        if (firstFragments == null)
+            firstFragments = scanFragments(iis, fragments, frames);
+        return new FrameOffsetTable(fragments, firstFragments);
+    }
+
+    public int getNumberOfFrames() {
+        return firstFragments.length - 1;
+    }
+
+    /**
+     * Returns index of the first fragment of the frame.
+     * 
+     * @param frameIndex index of the frame, starting with <code>0</code>
+     * @return index of the first fragment of the frame in
+     *         {@link Fragments}, starting with <code>1</code>
+     */
+    public int firstFragment(int frameIndex) {
+        return firstFragments[frameIndex];
+    }
+
+    /**
+     * Returns index of the fragment following the last fragment of the frame.
+     * 
+     * @param frameIndex index of the frame, starting with <code>0</code>
+     * @return index of the fragment following the last fragment of the
+     *         frame in {@link Fragments}
+     */
+    public int endFragment(int frameIndex) {
+        return firstFragments[frameIndex + 1];
+    }
+
+    public SegmentedInputImageStream openFrame(ImageInputStream iis,
+            int frameIndex) throws IOException {
+        return new SegmentedInputImageStream(iis, fragments,
+                firstFragments[frameIndex], firstFragments[frameIndex + 1]);
+    }
+
+    private static byte[] readBasicOffsetTable(ImageInputStream iis,
+            Object bot) throws IOException {
+        if (bot instanceof byte[])
+            return (byte[]) bot;
+
+        if (!(bot instanceof BulkDataLocator))
+            return ByteUtils.EMPTY_BYTES;
+
+        BulkDataLocator locator = (BulkDataLocator) bot;
+        byte[] b = new byte[locator.length];
+        iis.seek(locator.offset);
+        iis.readFully(b);
+        return b;
+    }
+
+    private static int[] fromBasicOffsetTable(byte[] bot,
+            Fragments fragments, int frames) {
+        int numFragments = fragments.size();
+        int[] firstFragments = new int[frames + 1];
+        long itemOffset = 0L;
+        for (int frame = 0, fragment = 1; frame < frames; frame++) {
+            long frameOffset = ByteUtils.bytesToIntLE(bot, frame * 4)
+                    & 0xffffffffL;
+            while (itemOffset < frameOffset && fragment < numFragments)
+                itemOffset += 8 + fragmentLength(fragments.get(fragment++));
+            if (itemOffset != frameOffset || fragment == numFragments)
+                return null;
+            firstFragments[frame] = fragment;
+        }
+        firstFragments[frames] = numFragments;
+        return firstFragments;
+    }
+
+    private static int fragmentLength(Object fragment) {
+        if (fragment instanceof BulkDataLocator)
+            return ((BulkDataLocator) fragment).length;
+        if (fragment instanceof byte[])
+            return ((byte[]) fragment).length;
+        return 0;
+    }
+
+    private static int[] oneFragmentPerFrame(int numFragments, int frames) {
+        int[] firstFragments = new int[frames + 1];
+        for (int i = 0; i < frames; i++)
+            firstFragments[i] = i + 1;
+        firstFragments[frames] = numFragments;
+        return firstFragments;
+    }
+
+    private static int[] scanFragments(ImageInputStream iis,
+            Fragments fragments, int frames) throws IOException {
+        int numFragments = fragments.size();
+        int[] firstFragments = new int[frames + 1];
+        int frame = 0;
+        for (int i = 1; i < numFragments; i++) {
+            if (startsCodeStream(iis, fragments.get(i))) {
+                if (frame == frames)
+                    break;
+                firstFragments[frame++] = i;
+            }
+        }
+        if (frame != frames || firstFragments[0] != 1)
+            throw new IOException(
+                    "Failed to locate frames in Pixel Data Fragments: found "
+                    + frame + " of " + frames);
+        firstFragments[frames] = numFragments;
+        return firstFragments;
+    }
+
+    private static boolean startsCodeStream(ImageInputStream iis,
+            Object fragment) throws IOException {
+        int b0, b1;
+        if (fragment instanceof BulkDataLocator) {
+            BulkDataLocator locator = (BulkDataLocator) fragment;
+            if (locator.length < 2)
+                return false;
+            iis.seek(locator.offset);
+            b0 = iis.read();
+            b1 = iis.read();
+        } else if (fragment instanceof byte[]) {
+            byte[] b = (byte[]) fragment;
+            if (b.length < 2)
+                return false;
+            b0 = b[0] & 0xff;
+            b1 = b[1] & 0xff;
+        } else
+            return false;
+        // JPEG SOI or JPEG 2000 SOC marker
+        return b0 == 0xff && (b1 == 0xd8 || b1 == 0x4f);
+    }
+}
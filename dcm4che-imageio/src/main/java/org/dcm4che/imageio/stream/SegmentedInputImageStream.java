@@ -61,10 +61,17 @@ public class SegmentedInputImageStream extends ImageInputStreamImpl {
 
     public SegmentedInputImageStream(ImageInputStream stream,
             Fragments pixeldataFragments, int frameIndex) throws IOException {
-        long[] offsets = new long[pixeldataFragments.size()-(frameIndex+1)];
+        this(stream, pixeldataFragments, frameIndex+1,
+                pixeldataFragments.size());
+    }
+
+    public SegmentedInputImageStream(ImageInputStream stream,
+            Fragments pixeldataFragments, int firstFragment, int endFragment)
+                    throws IOException {
+        long[] offsets = new long[endFragment-firstFragment];
         int[] length = new int[offsets.length];
         for (int i = 0; i < length.length; i++) {
-            BulkDataLocator locator = (BulkDataLocator) pixeldataFragments.get(i+frameIndex+1);
+            BulkDataLocator locator = (BulkDataLocator) pixeldataFragments.get(i+firstFragment);
             offsets[i] = locator.offset;
             length[i] = locator.length;
         }
@@ -126,11 +133,11 @@ public class SegmentedInputImageStream extends ImageInputStreamImpl {
         if (streamPos < curSegmentEnd)
             return true;
 
-        if (curSegment >= segmentPositionsList.length)
+        if (curSegment+1 >= segmentPositionsList.length)
             return false;
         
         seek(offsetOf(curSegment+1));
-        return true;
+        return curSegment >= 0;
     }
 
     @Override
@@ -0,0 +1,200 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.imageio.codec;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.dcm4che.data.Attributes;
+import org.dcm4che.data.Fragments;
+import org.dcm4che.data.Tag;
+import org.dcm4che.data.UID;
+import org.dcm4che.data.VR;
+import org.dcm4che.data.Value;
+import org.dcm4che.io.DicomEncodingOptions;
+import org.dcm4che.io.DicomInputStream;
+import org.dcm4che.io.DicomInputStream.IncludeBulkData;
+import org.dcm4che.io.DicomOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+public class CompressorTest {
+
+    private static final int ROWS = 32;
+    private static final int COLUMNS = 40;
+    private static final int FRAMES = 5;
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("rle", ".dcm");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    @Test
+    public void testRLEMonochrome8() throws Exception {
+        roundTrip(1, 8, 0, DicomEncodingOptions.DEFAULT);
+    }
+
+    @Test
+    public void testRLEMonochrome16() throws Exception {
+        roundTrip(1, 16, 0, DicomEncodingOptions.DEFAULT);
+    }
+
+    @Test
+    public void testRLERGB() throws Exception {
+        roundTrip(3, 8, 0, DicomEncodingOptions.DEFAULT);
+    }
+
+    @Test
+    public void testRLERGBPlanar() throws Exception {
+        roundTrip(3, 8, 1, DicomEncodingOptions.DEFAULT);
+    }
+
+    @Test
+    public void testRLEWithGroupLength() throws Exception {
+        roundTrip(1, 16, 0,
+                new DicomEncodingOptions(true, false, false, false, false));
+    }
+
+    private void roundTrip(int samples, int bitsAllocated,
+            int planarConfiguration, DicomEncodingOptions encOpts)
+            throws IOException {
+        byte[] pixeldata = createPixelData(samples, bitsAllocated);
+        Attributes dataset = createDataset(samples, bitsAllocated,
+                planarConfiguration, pixeldata);
+        assertTrue(Compressor.compress(dataset, UID.RLELossless));
+        DicomOutputStream out = new DicomOutputStream(
+                new FileOutputStream(file), UID.ExplicitVRLittleEndian);
+        try {
+            out.setEncodingOptions(encOpts);
+            out.writeDataset(
+                    dataset.createFileMetaInformation(UID.RLELossless),
+                    dataset);
+        } finally {
+            out.close();
+        }
+
+        Attributes parsed = read();
+        Fragments frags = (Fragments) parsed.getValue(Tag.PixelData);
+        assertEquals(FRAMES + 1, frags.size());
+        assertTrue(Decompressor.decompress(parsed, UID.RLELossless, null));
+        byte[] decompressed = ((Value) parsed.getValue(Tag.PixelData))
+                .toBytes(VR.OW, false);
+        if (samples > 1 && planarConfiguration
+                != parsed.getInt(Tag.PlanarConfiguration, 0))
+            pixeldata = changePlanarConfiguration(pixeldata, samples,
+                    planarConfiguration);
+        assertArrayEquals(pixeldata, decompressed);
+    }
+
+    private Attributes read() throws IOException {
+        DicomInputStream in = new DicomInputStream(file);
+        try {
+            in.setIncludeBulkData(IncludeBulkData.LOCATOR);
+            return in.readDataset(-1, -1);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static Attributes createDataset(int samples, int bitsAllocated,
+            int planarConfiguration, byte[] pixeldata) {
+        Attributes dataset = new Attributes();
+        dataset.setString(Tag.SOPClassUID, VR.UI,
+                UID.SecondaryCaptureImageStorage);
+        dataset.setString(Tag.SOPInstanceUID, VR.UI, "1.2.3.4");
+        dataset.setInt(Tag.Rows, VR.US, ROWS);
+        dataset.setInt(Tag.Columns, VR.US, COLUMNS);
+        dataset.setInt(Tag.SamplesPerPixel, VR.US, samples);
+        dataset.setInt(Tag.BitsAllocated, VR.US, bitsAllocated);
+        dataset.setInt(Tag.BitsStored, VR.US, bitsAllocated);
+        dataset.setInt(Tag.HighBit, VR.US, bitsAllocated - 1);
+        dataset.setInt(Tag.PixelRepresentation, VR.US, 0);
+        dataset.setInt(Tag.NumberOfFrames, VR.IS, FRAMES);
+        if (samples > 1) {
+            dataset.setInt(Tag.PlanarConfiguration, VR.US,
+                    planarConfiguration);
+            dataset.setString(Tag.PhotometricInterpretation, VR.CS, "RGB");
+        } else
+            dataset.setString(Tag.PhotometricInterpretation, VR.CS,
+                    "MONOCHROME2");
+        dataset.setBytes(Tag.PixelData, VR.OW, pixeldata);
+        return dataset;
+    }
+
+    private static byte[] createPixelData(int samples, int bitsAllocated) {
+        byte[] b = new byte[ROWS * COLUMNS * samples * (bitsAllocated >> 3)
+                            * FRAMES];
+        // runs of equal values alternating with literal values
+        for (int i = 0; i < b.length; i++)
+            b[i] = (byte) ((i / 64 & 1) == 0 ? i / 64 : i * 7);
+        return b;
+    }
+
+    private static byte[] changePlanarConfiguration(byte[] src, int samples,
+            int planarConfiguration) {
+        int frameLength = ROWS * COLUMNS * samples;
+        int planeLength = ROWS * COLUMNS;
+        byte[] b = new byte[src.length];
+        for (int f = 0; f < src.length; f += frameLength)
+            for (int i = 0; i < planeLength; i++)
+                for (int s = 0; s < samples; s++) {
+                    int planar = f + s * planeLength + i;
+                    int interleaved = f + i * samples + s;
+                    if (planarConfiguration == 0)
+                        b[planar] = src[interleaved];
+                    else
+                        b[interleaved] = src[planar];
+                }
+        return b;
+    }
+}
@@ -0,0 +1,249 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.imageio.codec;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.dcm4che.data.Attributes;
+import org.dcm4che.data.BulkDataLocator;
+import org.dcm4che.data.Fragments;
+import org.dcm4che.data.Tag;
+import org.dcm4che.data.UID;
+import org.dcm4che.data.VR;
+import org.dcm4che.data.Value;
+import org.dcm4che.util.ByteUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+public class DecompressorTest {
+
+    private static final int ROWS = 64;
+    private static final int COLUMNS = 48;
+    private static final int FRAMES = 7;
+
+    private File file;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("jpeg", ".frames");
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        file.delete();
+    }
+
+    @Test
+    public void testDecompressParallel() throws Exception {
+        byte[] expected = decompress(createDataset(-1), null, 0);
+        assertEquals(ROWS * COLUMNS * FRAMES, expected.length & ~1);
+        for (int parallelism = 2; parallelism <= FRAMES + 1; parallelism++)
+            assertArrayEquals(expected,
+                    decompress(createDataset(-1), executor, parallelism));
+    }
+
+    @Test
+    public void testDecompressParallelFailure() throws Exception {
+        Attributes dataset = createDataset(2);
+        try {
+            decompress(dataset, executor, 3);
+            fail("IOException expected");
+        } catch (IOException expected) {
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDecompressRLE() throws Exception {
+        int truncatedFrame = 3;
+        byte[] expected = new byte[ROWS * COLUMNS * FRAMES];
+        for (int i = 0; i < FRAMES; i++)
+            System.arraycopy(frame(i), 0, expected, i * ROWS * COLUMNS,
+                    i == truncatedFrame ? ROWS * COLUMNS / 2 : ROWS * COLUMNS);
+        assertArrayEquals(expected,
+                decompress(createRLEDataset(truncatedFrame), null, 0));
+        for (int parallelism = 2; parallelism <= FRAMES + 1; parallelism++)
+            assertArrayEquals(expected,
+                    decompress(createRLEDataset(truncatedFrame),
+                            executor, parallelism));
+    }
+
+    private static byte[] decompress(Attributes dataset,
+            ExecutorService executor, int parallelism) throws IOException {
+        String tsuid = dataset.getString(Tag.TransferSyntaxUID);
+        if (executor == null)
+            Decompressor.decompress(dataset, tsuid, null);
+        else
+            Decompressor.decompress(dataset, tsuid, executor, parallelism);
+        return ((Value) dataset.getValue(Tag.PixelData))
+                .toBytes(VR.OW, false);
+    }
+
+    private Attributes createDataset(int corruptFrame) throws IOException {
+        Attributes dataset = new Attributes();
+        dataset.setString(Tag.TransferSyntaxUID, VR.UI, UID.JPEGBaseline1);
+        dataset.setInt(Tag.Rows, VR.US, ROWS);
+        dataset.setInt(Tag.Columns, VR.US, COLUMNS);
+        dataset.setInt(Tag.SamplesPerPixel, VR.US, 1);
+        dataset.setInt(Tag.BitsAllocated, VR.US, 8);
+        dataset.setInt(Tag.BitsStored, VR.US, 8);
+        dataset.setInt(Tag.HighBit, VR.US, 7);
+        dataset.setInt(Tag.PixelRepresentation, VR.US, 0);
+        dataset.setInt(Tag.NumberOfFrames, VR.IS, FRAMES);
+        dataset.setString(Tag.PhotometricInterpretation, VR.CS, "MONOCHROME2");
+        Fragments frags = dataset.newFragments(Tag.PixelData, VR.OB,
+                FRAMES + 1);
+        frags.add(Value.NULL);
+        String uri = file.toURI().toString();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            long offset = 0;
+            for (int i = 0; i < FRAMES; i++) {
+                byte[] jpeg = encodeFrame(i);
+                if (i == corruptFrame)
+                    Arrays.fill(jpeg, (byte) 0);
+                out.write(jpeg);
+                frags.add(new BulkDataLocator(uri, UID.JPEGBaseline1,
+                        offset, jpeg.length));
+                offset += jpeg.length;
+            }
+        } finally {
+            out.close();
+        }
+        return dataset;
+    }
+
+    private Attributes createRLEDataset(int truncatedFrame)
+            throws IOException {
+        Attributes dataset = createDataset(-1);
+        dataset.setString(Tag.TransferSyntaxUID, VR.UI, UID.RLELossless);
+        Fragments frags = dataset.newFragments(Tag.PixelData, VR.OB,
+                FRAMES + 1);
+        frags.add(Value.NULL);
+        String uri = file.toURI().toString();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            long offset = 0;
+            for (int i = 0; i < FRAMES; i++) {
+                byte[] rle = encodeRLE(frame(i),
+                        i == truncatedFrame ? ROWS * COLUMNS / 2
+                                            : ROWS * COLUMNS);
+                out.write(rle);
+                frags.add(new BulkDataLocator(uri, UID.RLELossless,
+                        offset, rle.length));
+                offset += rle.length;
+            }
+        } finally {
+            out.close();
+        }
+        return dataset;
+    }
+
+    private static byte[] frame(int frame) {
+        byte[] b = new byte[ROWS * COLUMNS];
+        for (int y = 0, i = 0; y < ROWS; y++)
+            for (int x = 0; x < COLUMNS; x++)
+                b[i++] = (byte) (x * y + frame * 31);
+        return b;
+    }
+
+    /**
+     * Encodes the first <code>len</code> bytes of the frame as one RLE
+     * Segment of Literal Runs.
+     */
+    private static byte[] encodeRLE(byte[] frame, int len) {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        byte[] header = new byte[64];
+        ByteUtils.intToBytesLE(1, header, 0);
+        ByteUtils.intToBytesLE(64, header, 4);
+        bout.write(header, 0, 64);
+        for (int off = 0; off < len; off += 128) {
+            int n = Math.min(128, len - off);
+            bout.write(n - 1);
+            bout.write(frame, off, n);
+        }
+        if ((bout.size() & 1) != 0)
+            bout.write(0);
+        return bout.toByteArray();
+    }
+
+    private static byte[] encodeFrame(int frame) throws IOException {
+        BufferedImage bi = new BufferedImage(COLUMNS, ROWS,
+                BufferedImage.TYPE_BYTE_GRAY);
+        WritableRaster raster = bi.getRaster();
+        byte[] b = frame(frame);
+        for (int y = 0, i = 0; y < ROWS; y++)
+            for (int x = 0; x < COLUMNS; x++)
+                raster.setSample(x, y, 0, b[i++] & 0xff);
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        MemoryCacheImageOutputStream ios = new MemoryCacheImageOutputStream(bout);
+        try {
+            writer.setOutput(ios);
+            writer.write(bi);
+        } finally {
+            ios.close();
+            writer.dispose();
+        }
+        return bout.toByteArray();
+    }
+}
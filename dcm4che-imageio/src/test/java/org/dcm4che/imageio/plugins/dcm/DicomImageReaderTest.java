@@ -0,0 +1,244 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.imageio.plugins.dcm;
+
+import static org.junit.Assert.*;
+
+import java.awt.Rectangle;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageReadParam;
+
+import org.dcm4che.data.Attributes;
+import org.dcm4che.data.Tag;
+import org.dcm4che.data.UID;
+import org.dcm4che.data.VR;
+import org.dcm4che.imageio.codec.Compressor;
+import org.dcm4che.io.DicomOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+public class DicomImageReaderTest {
+
+    private static final int ROWS = 24;
+    private static final int COLUMNS = 20;
+    private static final int FRAMES = 3;
+
+    private File file1;
+    private File file2;
+
+    @Before
+    public void setUp() throws Exception {
+        file1 = File.createTempFile("img", ".dcm");
+        file2 = File.createTempFile("img", ".dcm");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file1.delete();
+        file2.delete();
+    }
+
+    @Test
+    public void testRasterCacheKeyedBySource() throws Exception {
+        // same SOP Instance UID, different pixel data
+        writeFile(file1, 1, 8, 0, UID.RLELossless, 1);
+        writeFile(file2, 1, 8, 0, UID.RLELossless, 2);
+        RasterCache cache = new RasterCache();
+        DicomImageReader reader = new DicomImageReader(
+                new DicomImageReaderSpi());
+        reader.setRasterCache(cache);
+        try {
+            for (int i = 0; i < 2; i++) {
+                reader.setInput(file1);
+                assertFrame(1, 1, reader.readRaster(1, null));
+                reader.setInput(file2);
+                assertFrame(2, 1, reader.readRaster(1, null));
+            }
+        } finally {
+            reader.dispose();
+        }
+        assertEquals(2, cache.getNumberOfRasters());
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void testReadRegionNativeMonochrome8() throws Exception {
+        testReadRegion(1, 8, 0, UID.ExplicitVRLittleEndian);
+    }
+
+    @Test
+    public void testReadRegionNativeMonochrome16() throws Exception {
+        testReadRegion(1, 16, 0, UID.ExplicitVRLittleEndian);
+    }
+
+    @Test
+    public void testReadRegionNativeRGB() throws Exception {
+        testReadRegion(3, 8, 0, UID.ExplicitVRLittleEndian);
+    }
+
+    @Test
+    public void testReadRegionNativeRGBPlanar() throws Exception {
+        testReadRegion(3, 8, 1, UID.ExplicitVRLittleEndian);
+    }
+
+    @Test
+    public void testReadRegionRLEMonochrome8() throws Exception {
+        testReadRegion(1, 8, 0, UID.RLELossless);
+    }
+
+    @Test
+    public void testReadRegionRLEMonochrome16() throws Exception {
+        testReadRegion(1, 16, 0, UID.RLELossless);
+    }
+
+    @Test
+    public void testReadRegionRLERGB() throws Exception {
+        testReadRegion(3, 8, 0, UID.RLELossless);
+    }
+
+    private void testReadRegion(int samples, int bitsAllocated,
+            int planarConfiguration, String tsuid) throws IOException {
+        writeFile(file1, samples, bitsAllocated, planarConfiguration, tsuid, 1);
+        DicomImageReader reader = new DicomImageReader(
+                new DicomImageReaderSpi());
+        try {
+            reader.setInput(file1);
+            Raster full = reader.readRaster(1, null);
+            assertEquals(COLUMNS, full.getWidth());
+            assertEquals(ROWS, full.getHeight());
+            assertRegion(full, reader, new Rectangle(3, 5, 11, 7), 1, 1, 0, 0);
+            assertRegion(full, reader, new Rectangle(3, 5, 11, 7), 2, 3, 0, 0);
+            assertRegion(full, reader, null, 3, 2, 0, 0);
+            assertRegion(full, reader, null, 1, 4, 0, 0);
+            assertRegion(full, reader, new Rectangle(0, 1, 17, 20), 4, 1, 1, 0);
+            assertRegion(full, reader, new Rectangle(2, 0, 18, 23), 2, 2, 1, 1);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * Asserts that reading the source region with the specified sub-sampling
+     * returns the same samples as cut out of the full frame.
+     */
+    private static void assertRegion(Raster full, DicomImageReader reader,
+            Rectangle region, int xSubsampling, int ySubsampling,
+            int xOffset, int yOffset) throws IOException {
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(region);
+        param.setSourceSubsampling(xSubsampling, ySubsampling,
+                xOffset, yOffset);
+        Raster raster = reader.readRaster(1, param);
+        Rectangle r = region != null ? region
+                : new Rectangle(0, 0, COLUMNS, ROWS);
+        int x0 = r.x + xOffset;
+        int y0 = r.y + yOffset;
+        int w = (r.width - xOffset + xSubsampling - 1) / xSubsampling;
+        int h = (r.height - yOffset + ySubsampling - 1) / ySubsampling;
+        String msg = "region=" + region + ", subsampling=" + xSubsampling
+                + "x" + ySubsampling + ", offset=" + xOffset + "," + yOffset;
+        assertEquals(msg, w, raster.getWidth());
+        assertEquals(msg, h, raster.getHeight());
+        assertEquals(msg, full.getNumBands(), raster.getNumBands());
+        int minX = raster.getMinX();
+        int minY = raster.getMinY();
+        for (int y = 0; y < h; y++)
+            for (int x = 0; x < w; x++)
+                for (int b = 0; b < full.getNumBands(); b++)
+                    assertEquals(msg,
+                            full.getSample(full.getMinX() + x0 + x * xSubsampling,
+                                    full.getMinY() + y0 + y * ySubsampling, b),
+                            raster.getSample(minX + x, minY + y, b));
+    }
+
+    private static void writeFile(File file, int samples, int bitsAllocated,
+            int planarConfiguration, String tsuid, int seed)
+            throws IOException {
+        Attributes dataset = new Attributes();
+        dataset.setString(Tag.SOPClassUID, VR.UI,
+                UID.SecondaryCaptureImageStorage);
+        dataset.setString(Tag.SOPInstanceUID, VR.UI, "1.2.3.4");
+        dataset.setInt(Tag.Rows, VR.US, ROWS);
+        dataset.setInt(Tag.Columns, VR.US, COLUMNS);
+        dataset.setInt(Tag.SamplesPerPixel, VR.US, samples);
+        dataset.setInt(Tag.BitsAllocated, VR.US, bitsAllocated);
+        dataset.setInt(Tag.BitsStored, VR.US, bitsAllocated);
+        dataset.setInt(Tag.HighBit, VR.US, bitsAllocated - 1);
+        dataset.setInt(Tag.PixelRepresentation, VR.US, 0);
+        dataset.setInt(Tag.NumberOfFrames, VR.IS, FRAMES);
+        if (samples > 1) {
+            dataset.setInt(Tag.PlanarConfiguration, VR.US,
+                    planarConfiguration);
+            dataset.setString(Tag.PhotometricInterpretation, VR.CS, "RGB");
+        } else
+            dataset.setString(Tag.PhotometricInterpretation, VR.CS,
+                    "MONOCHROME2");
+        int frameLength = ROWS * COLUMNS * samples * (bitsAllocated >> 3);
+        byte[] pixeldata = new byte[frameLength * FRAMES];
+        for (int i = 0; i < pixeldata.length; i++)
+            pixeldata[i] = (byte) (seed * (i / frameLength + 1) + i);
+        dataset.setBytes(Tag.PixelData, VR.OW, pixeldata);
+        if (!tsuid.equals(UID.ExplicitVRLittleEndian))
+            Compressor.compress(dataset, tsuid);
+        DicomOutputStream out = new DicomOutputStream(file);
+        try {
+            out.writeDataset(dataset.createFileMetaInformation(tsuid),
+                    dataset);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void assertFrame(int seed, int frame, Raster raster) {
+        byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+        assertEquals(ROWS * COLUMNS, data.length);
+        for (int i = 0; i < data.length; i++)
+            assertEquals((byte) (seed * (frame + 1) + i + frame * ROWS * COLUMNS),
+                    data[i]);
+    }
+}
@@ -0,0 +1,177 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.imageio.plugins.dcm;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+import org.junit.Test;
+
+/**
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+public class RasterCacheTest {
+
+    private static final int WIDTH = 16;
+    private static final int HEIGHT = 8;
+    private static final int SIZE = WIDTH * HEIGHT;
+
+    private static final String URI1 = "file:/a.dcm";
+    private static final String URI2 = "file:/b.dcm";
+
+    @Test
+    public void testGetPut() {
+        RasterCache cache = new RasterCache(SIZE * 4);
+        assertNull(cache.get(URI1, 0));
+        cache.put(URI1, 0, createRaster(1));
+        cache.put(URI1, 1, createRaster(2));
+        cache.put(URI2, 0, createRaster(3));
+        assertRaster(1, cache.get(URI1, 0));
+        assertRaster(2, cache.get(URI1, 1));
+        assertRaster(3, cache.get(URI2, 0));
+        assertNull(cache.get(URI2, 1));
+        assertEquals(3, cache.getNumberOfRasters());
+        assertEquals(SIZE * 3, cache.getSize());
+    }
+
+    @Test
+    public void testReturnedRasterIsCopy() {
+        RasterCache cache = new RasterCache(SIZE * 4);
+        WritableRaster raster = createRaster(1);
+        cache.put(URI1, 0, raster);
+        raster.setSample(0, 0, 0, 99);
+        WritableRaster cached = cache.get(URI1, 0);
+        assertRaster(1, cached);
+        cached.setSample(0, 0, 0, 99);
+        assertRaster(1, cache.get(URI1, 0));
+    }
+
+    @Test
+    public void testReplace() {
+        RasterCache cache = new RasterCache(SIZE * 4);
+        cache.put(URI1, 0, createRaster(1));
+        cache.put(URI1, 0, createRaster(2));
+        assertRaster(2, cache.get(URI1, 0));
+        assertEquals(1, cache.getNumberOfRasters());
+        assertEquals(SIZE, cache.getSize());
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() {
+        RasterCache cache = new RasterCache(SIZE * 3);
+        cache.put(URI1, 0, createRaster(1));
+        cache.put(URI1, 1, createRaster(2));
+        cache.put(URI1, 2, createRaster(3));
+        cache.get(URI1, 0);
+        cache.put(URI1, 3, createRaster(4));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(3, cache.getNumberOfRasters());
+        assertEquals(SIZE * 3, cache.getSize());
+        assertNull(cache.get(URI1, 1));
+        assertRaster(1, cache.get(URI1, 0));
+        assertRaster(3, cache.get(URI1, 2));
+        assertRaster(4, cache.get(URI1, 3));
+    }
+
+    @Test
+    public void testSetMaxSizeEvicts() {
+        RasterCache cache = new RasterCache(SIZE * 3);
+        cache.put(URI1, 0, createRaster(1));
+        cache.put(URI1, 1, createRaster(2));
+        cache.put(URI1, 2, createRaster(3));
+        cache.setMaxSize(SIZE);
+        assertEquals(2, cache.getEvictions());
+        assertEquals(1, cache.getNumberOfRasters());
+        assertRaster(3, cache.get(URI1, 2));
+    }
+
+    @Test
+    public void testRasterExceedingMaxSizeNotCached() {
+        RasterCache cache = new RasterCache(SIZE - 1);
+        cache.put(URI1, 0, createRaster(1));
+        assertEquals(0, cache.getNumberOfRasters());
+        assertEquals(0, cache.getEvictions());
+        assertNull(cache.get(URI1, 0));
+    }
+
+    @Test
+    public void testStatistics() {
+        RasterCache cache = new RasterCache(SIZE * 2);
+        cache.get(URI1, 0);
+        cache.put(URI1, 0, createRaster(1));
+        cache.get(URI1, 0);
+        cache.get(URI1, 0);
+        cache.put(URI1, 1, createRaster(2));
+        cache.put(URI1, 2, createRaster(3));
+        cache.get(URI1, 0);
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.getEvictions());
+        cache.resetStatistics();
+        assertEquals(0, cache.getHits());
+        assertEquals(0, cache.getMisses());
+        assertEquals(0, cache.getEvictions());
+        assertEquals(2, cache.getNumberOfRasters());
+        cache.clear();
+        assertEquals(0, cache.getNumberOfRasters());
+        assertEquals(0, cache.getSize());
+    }
+
+    private static WritableRaster createRaster(int val) {
+        WritableRaster raster = Raster.createBandedRaster(
+                DataBuffer.TYPE_BYTE, WIDTH, HEIGHT, 1, null);
+        byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) (val + i);
+        return raster;
+    }
+
+    private static void assertRaster(int val, Raster raster) {
+        assertNotNull(raster);
+        assertEquals(WIDTH, raster.getWidth());
+        assertEquals(HEIGHT, raster.getHeight());
+        for (int y = 0, i = 0; y < HEIGHT; y++)
+            for (int x = 0; x < WIDTH; x++, i++)
+                assertEquals((val + i) & 0xff, raster.getSample(x, y, 0));
+    }
+}
@@ -0,0 +1,253 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.imageio.stream;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+import org.dcm4che.data.BulkDataLocator;
+import org.dcm4che.data.Fragments;
+import org.dcm4che.data.UID;
+import org.dcm4che.data.VR;
+import org.dcm4che.data.Value;
+import org.dcm4che.util.ByteUtils;
+import org.junit.Test;
+
+/**
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+public class FrameOffsetTableTest {
+
+    private static final byte[] SOI = { (byte) 0xff, (byte) 0xd8 };
+    private static final byte[] SOC = { (byte) 0xff, (byte) 0x4f };
+    private static final byte[] NO_MARKER = { 0x11, 0x22 };
+
+    private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+    @Test
+    public void testBasicOffsetTable() throws Exception {
+        // fragments do not start with a marker, so only the BOT can tell
+        Fragments frags = newFragments();
+        addFragment(frags, NO_MARKER, 10);
+        addFragment(frags, NO_MARKER, 6);
+        addFragment(frags, NO_MARKER, 4);
+        addFragment(frags, NO_MARKER, 8);
+        addFragment(frags, NO_MARKER, 2);
+        frags.set(0, basicOffsetTable(0, 8 + 10 + 8 + 6, 8 + 10 + 8 + 6 + 8 + 4));
+        FrameOffsetTable fot = valueOf(frags, 3);
+        assertEquals(3, fot.getNumberOfFrames());
+        assertFragments(fot, 1, 3, 4, 6);
+        assertFrame(fot, frags, 0, 1, 3);
+        assertFrame(fot, frags, 1, 3, 4);
+        assertFrame(fot, frags, 2, 4, 6);
+    }
+
+    @Test
+    public void testBasicOffsetTableAsBulkData() throws Exception {
+        Fragments frags = newFragments();
+        byte[] bot = basicOffsetTable(0, 8 + 10);
+        frags.set(0, new BulkDataLocator("java:iis", UID.JPEGBaseline1,
+                data.size(), bot.length));
+        data.write(bot);
+        addFragment(frags, NO_MARKER, 10);
+        addFragment(frags, NO_MARKER, 6);
+        addFragment(frags, NO_MARKER, 4);
+        FrameOffsetTable fot = valueOf(frags, 2);
+        assertFragments(fot, 1, 2, 4);
+    }
+
+    @Test
+    public void testOneFragmentPerFrame() throws Exception {
+        Fragments frags = newFragments();
+        addFragment(frags, NO_MARKER, 10);
+        addFragment(frags, NO_MARKER, 6);
+        addFragment(frags, NO_MARKER, 4);
+        FrameOffsetTable fot = valueOf(frags, 3);
+        assertFragments(fot, 1, 2, 3, 4);
+        assertFrame(fot, frags, 1, 2, 3);
+    }
+
+    @Test
+    public void testSingleFrame() throws Exception {
+        Fragments frags = newFragments();
+        addFragment(frags, NO_MARKER, 10);
+        addFragment(frags, NO_MARKER, 6);
+        FrameOffsetTable fot = valueOf(frags, 1);
+        assertFragments(fot, 1, 3);
+        assertFrame(fot, frags, 0, 1, 3);
+    }
+
+    @Test
+    public void testScanFragments() throws Exception {
+        Fragments frags = newFragments();
+        addFragment(frags, SOI, 10);
+        addFragment(frags, NO_MARKER, 6);
+        addFragment(frags, SOC, 4);
+        addFragment(frags, SOI, 8);
+        addFragment(frags, NO_MARKER, 2);
+        FrameOffsetTable fot = valueOf(frags, 3);
+        assertFragments(fot, 1, 3, 4, 6);
+        assertFrame(fot, frags, 2, 4, 6);
+    }
+
+    @Test
+    public void testScanFragmentsOnInvalidBasicOffsetTable() throws Exception {
+        Fragments frags = newFragments();
+        addFragment(frags, SOI, 10);
+        addFragment(frags, NO_MARKER, 6);
+        addFragment(frags, SOI, 4);
+        // offset of 2nd frame points into the 1st fragment
+        frags.set(0, basicOffsetTable(0, 4));
+        FrameOffsetTable fot = valueOf(frags, 2);
+        assertFragments(fot, 1, 3, 4);
+    }
+
+    @Test
+    public void testTooFewFragments() throws Exception {
+        Fragments frags = newFragments();
+        addFragment(frags, SOI, 10);
+        addFragment(frags, SOI, 6);
+        try {
+            valueOf(frags, 3);
+            fail("IOException expected");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testScanFragmentsFailed() throws Exception {
+        Fragments frags = newFragments();
+        addFragment(frags, SOI, 10);
+        addFragment(frags, NO_MARKER, 6);
+        addFragment(frags, NO_MARKER, 4);
+        addFragment(frags, SOI, 8);
+        try {
+            valueOf(frags, 3);
+            fail("IOException expected");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testScanFragmentsFirstFragmentWithoutMarker()
+            throws Exception {
+        Fragments frags = newFragments();
+        addFragment(frags, NO_MARKER, 10);
+        addFragment(frags, SOI, 6);
+        addFragment(frags, SOI, 4);
+        addFragment(frags, NO_MARKER, 8);
+        try {
+            valueOf(frags, 2);
+            fail("IOException expected");
+        } catch (IOException expected) {
+        }
+    }
+
+    private static Fragments newFragments() {
+        Fragments frags = new Fragments(VR.OB, false, 8);
+        frags.add(Value.NULL);
+        return frags;
+    }
+
+    private void addFragment(Fragments frags, byte[] marker, int length) {
+        int offset = data.size();
+        data.write(marker, 0, marker.length);
+        for (int i = marker.length; i < length; i++)
+            data.write(frags.size() * 16 + i);
+        frags.add(new BulkDataLocator("java:iis", UID.JPEGBaseline1,
+                offset, length));
+    }
+
+    private static byte[] basicOffsetTable(int... offsets) {
+        byte[] b = new byte[offsets.length * 4];
+        for (int i = 0; i < offsets.length; i++)
+            ByteUtils.intToBytesLE(offsets[i], b, i * 4);
+        return b;
+    }
+
+    private ImageInputStream iis() {
+        return new MemoryCacheImageInputStream(
+                new ByteArrayInputStream(data.toByteArray()));
+    }
+
+    private FrameOffsetTable valueOf(Fragments frags, int frames)
+            throws IOException {
+        ImageInputStream iis = iis();
+        try {
+            return FrameOffsetTable.valueOf(iis, frags, frames);
+        } finally {
+            iis.close();
+        }
+    }
+
+    private static void assertFragments(FrameOffsetTable fot,
+            int... firstFragments) {
+        for (int i = 0; i < firstFragments.length - 1; i++) {
+            assertEquals(firstFragments[i], fot.firstFragment(i));
+            assertEquals(firstFragments[i + 1], fot.endFragment(i));
+        }
+    }
+
+    private void assertFrame(FrameOffsetTable fot, Fragments frags,
+            int frameIndex, int firstFragment, int endFragment)
+            throws IOException {
+        byte[] src = data.toByteArray();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = firstFragment; i < endFragment; i++) {
+            BulkDataLocator bdl = (BulkDataLocator) frags.get(i);
+            expected.write(src, (int) bdl.offset, bdl.length);
+        }
+        ImageInputStream iis = iis();
+        try {
+            SegmentedInputImageStream frame = fot.openFrame(iis, frameIndex);
+            byte[] b = new byte[expected.size()];
+            frame.readFully(b);
+            assertArrayEquals(expected.toByteArray(), b);
+            assertEquals(-1, frame.read());
+        } finally {
+            iis.close();
+        }
+    }
+}
@@ -42,11 +42,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.dcm4che.data.Attributes;
 import org.dcm4che.data.Tag;
@@ -61,6 +64,7 @@ import org.dcm4che.net.pdu.PresentationContext;
 import org.dcm4che.net.pdu.RoleSelection;
 import org.dcm4che.util.IntHashMap;
 import org.dcm4che.util.SafeClose;
+import org.dcm4che.util.StripedIntHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -92,13 +96,16 @@ public class Association {
 
     private HashMap<String, Object> properties;
     private int maxOpsInvoked;
+    private volatile Semaphore window;
+    private final AtomicLong windowWaits = new AtomicLong();
     private int maxPDULength;
     private int performing;
     private Timeout timeout;
-    private final IntHashMap<DimseRSPHandler> rspHandlerForMsgId =
-            new IntHashMap<DimseRSPHandler>();
-    private final IntHashMap<CancelRQHandler> cancelHandlerForMsgId =
-            new IntHashMap<CancelRQHandler>();
+    private final StripedIntHashMap<DimseRSPHandler> rspHandlerForMsgId =
+            new StripedIntHashMap<DimseRSPHandler>();
+    private final StripedIntHashMap<CancelRQHandler> cancelHandlerForMsgId =
+            new StripedIntHashMap<CancelRQHandler>();
+    private final Object outstandingRSPMonitor = new Object();
     private final HashMap<String,HashMap<String,PresentationContext>> pcMap =
             new HashMap<String,HashMap<String,PresentationContext>>();
 
@@ -113,7 +120,7 @@ public class Association {
         this.sock = sock;
         this.in = sock.getInputStream();
         this.out = sock.getOutputStream();
-        this.encoder = new PDUEncoder(this, out);
+        this.encoder = new PDUEncoder(this, out, device.getBufferPool());
         if (requestor) {
             enterState(State.Sta4);
         } else {
@@ -252,6 +259,14 @@ public class Association {
         return conn.isPackPDV();
     }
 
+    boolean isPackPDU() {
+        return conn.isPackPDV() && conn.isPackPDU();
+    }
+
+    void schedulePackedPDU(Runnable flush) {
+        device.schedule(flush, conn.getPackPDUDelay(), TimeUnit.MILLISECONDS);
+    }
+
     public void release() throws IOException {
         state.writeAReleaseRQ(this);
     }
@@ -316,6 +331,7 @@ public class Association {
     }
 
     void writeAReleaseRQ() throws IOException {
+        encoder.flushBeforeRelease();
         LOG.info("{} << A-RELEASE-RQ", name);
         enterState(State.Sta7);
         stopTimeout();
@@ -366,15 +382,16 @@ public class Association {
 
     private void startTimeout(final int msgID, int timeout) {
         if (timeout > 0) {
-            synchronized (rspHandlerForMsgId) {
-                DimseRSPHandler rspHandler = rspHandlerForMsgId.get(msgID);
-                if (rspHandler != null) {
-                    rspHandler.setTimeout(Timeout.start(this,
-                        "{}: start " + msgID + ":DIMSE-RSP timeout of {}ms",
-                        "{}: " + msgID + ":DIMSE-RSP timeout expired",
-                        "{}: stop " + msgID + ":DIMSE-RSP timeout",
-                        timeout));
-                }
+            DimseRSPHandler rspHandler = rspHandlerForMsgId.get(msgID);
+            if (rspHandler != null) {
+                rspHandler.setTimeout(Timeout.start(this,
+                    "{}: start " + msgID + ":DIMSE-RSP timeout of {}ms",
+                    "{}: " + msgID + ":DIMSE-RSP timeout expired",
+                    "{}: stop " + msgID + ":DIMSE-RSP timeout",
+                    timeout));
+                // final RSP may be received concurrently
+                if (rspHandlerForMsgId.get(msgID) != rspHandler)
+                    rspHandler.stopTimeout(this);
             }
         }
     }
@@ -387,12 +404,54 @@ public class Association {
     }
 
     public void waitForOutstandingRSP() throws InterruptedException {
-        synchronized (rspHandlerForMsgId) {
+        synchronized (outstandingRSPMonitor) {
             while (!rspHandlerForMsgId.isEmpty())
-                rspHandlerForMsgId.wait();
+                outstandingRSPMonitor.wait();
         }
     }
 
+    /**
+     * Returns the maximal number of outstanding DIMSE RQs invoked by this
+     * Association, as negotiated on Association establishment, or 0 if
+     * unlimited.
+     * 
+     * @return maximal number of outstanding DIMSE RQs or 0 if unlimited
+     */
+    public final int getMaxOpsInvoked() {
+        return maxOpsInvoked;
+    }
+
+    /**
+     * Returns the number of DIMSE RQs invoked by this Association, for which
+     * the final DIMSE RSP was not yet received.
+     * 
+     * @return number of outstanding DIMSE RSPs
+     */
+    public int getNumberOfOutstandingRSP() {
+        return rspHandlerForMsgId.size();
+    }
+
+    /**
+     * Returns the number of times a thread had to wait for the lock of the
+     * registry of DIMSE RSP handlers, which was held by another thread.
+     * 
+     * @return number of lock contentions
+     */
+    public long getNumberOfRSPHandlerContentions() {
+        return rspHandlerForMsgId.getContentions();
+    }
+
+    /**
+     * Returns the number of times the invocation of a DIMSE RQ was blocked
+     * because the number of outstanding DIMSE RSPs reached the negotiated
+     * maximal number of outstanding operations.
+     * 
+     * @return number of blocked invocations
+     */
+    public long getNumberOfWindowWaits() {
+        return windowWaits.get();
+    }
+
     void write(AAssociateRQ rq) throws IOException {
         name = rq.getCalledAET() + delim() + serialNo;
         this.rq = rq;
@@ -456,7 +515,8 @@ public class Association {
 
             @Override
             public void run() {
-                decoder = new PDUDecoder(Association.this, in);
+                decoder = new PDUDecoder(Association.this, in,
+                        device.getBufferPool());
                 device.incrementNumberOfOpenAssociations();
                 try {
                     while (!(state == State.Sta1 || state == State.Sta13))
@@ -467,6 +527,8 @@ public class Association {
                     onIOException(e);
                 } finally {
                     onClose();
+                    decoder.releaseBuffer();
+                    encoder.releaseBuffer();
                     device.decrementNumberOfOpenAssociations();
                 }
             }
@@ -475,20 +537,23 @@ public class Association {
 
     private void onClose() {
         stopTimeout();
-        synchronized (rspHandlerForMsgId) {
-            IntHashMap.Visitor<DimseRSPHandler> visitor =
-                    new IntHashMap.Visitor<DimseRSPHandler>() {
+        final ArrayList<DimseRSPHandler> rspHandlers =
+                new ArrayList<DimseRSPHandler>(rspHandlerForMsgId.size());
+        rspHandlerForMsgId.accept(new IntHashMap.Visitor<DimseRSPHandler>() {
 
-                @Override
-                public boolean visit(int key, DimseRSPHandler value) {
-                    value.onClose(Association.this);
-                    return true;
-                }
-            };
-            rspHandlerForMsgId.accept(visitor);
-            rspHandlerForMsgId.clear();
-            rspHandlerForMsgId.notifyAll();
+            @Override
+            public boolean visit(int key, DimseRSPHandler value) {
+                rspHandlers.add(value);
+                return true;
+            }
+        });
+        for (DimseRSPHandler rspHandler : rspHandlers) {
+            rspHandler.onClose(this);
+            removeDimseRSPHandler(rspHandler.getMessageID());
         }
+        LOG.debug("{}: {} RSP handler contentions, {} window waits",
+                new Object[] { name, rspHandlerForMsgId.getContentions(),
+                    windowWaits.get() });
         if (ae != null)
             ae.getDevice().getAssociationHandler().onClose(this);
     }
@@ -508,7 +573,7 @@ public class Association {
             ae = device.getApplicationEntity(rq.getCalledAET());
             ac = device.getAssociationHandler().negotiate(this, rq);
             initPCMap();
-            maxOpsInvoked = ac.getMaxOpsPerformed();
+            setMaxOpsInvoked(ac.getMaxOpsPerformed());
             maxPDULength = Association.minZeroAsMax(
                     rq.getMaxPDULength(), conn.getSendPDULength());
             write(ac);
@@ -527,7 +592,7 @@ public class Association {
     void handle(AAssociateAC ac) throws IOException {
         this.ac = ac;
         initPCMap();
-        maxOpsInvoked = ac.getMaxOpsInvoked();
+        setMaxOpsInvoked(ac.getMaxOpsInvoked());
         maxPDULength = Association.minZeroAsMax(
                 ac.getMaxPDULength(), conn.getSendPDULength());
         enterState(State.Sta6);
@@ -553,6 +618,7 @@ public class Association {
     void handleAReleaseRQ() throws IOException {
         enterState(State.Sta8);
         waitForPerformingOps();
+        encoder.flushBeforeRelease();
         LOG.info("{} << A-RELEASE-RP", name);
         encoder.writeAReleaseRP();
         closeSocketDelayed();
@@ -671,28 +737,40 @@ public class Association {
             startReleaseTimeout();
     }
 
+    private void setMaxOpsInvoked(int maxOpsInvoked) {
+        this.maxOpsInvoked = maxOpsInvoked;
+        this.window = maxOpsInvoked > 0 ? new Semaphore(maxOpsInvoked) : null;
+    }
+
     private void addDimseRSPHandler(DimseRSPHandler rspHandler)
             throws InterruptedException {
-        synchronized (rspHandlerForMsgId) {
-            while (maxOpsInvoked > 0
-                    && rspHandlerForMsgId.size() >= maxOpsInvoked)
-                rspHandlerForMsgId.wait();
-            rspHandlerForMsgId.put(rspHandler.getMessageID(), rspHandler);
+        Semaphore window = this.window;
+        if (window != null && !window.tryAcquire()) {
+            windowWaits.incrementAndGet();
+            window.acquire();
         }
+        if (rspHandlerForMsgId.put(rspHandler.getMessageID(), rspHandler)
+                != null && window != null)
+            window.release();
     }
 
     private DimseRSPHandler getDimseRSPHandler(int msgId) {
-        synchronized (rspHandlerForMsgId ) {
-            return rspHandlerForMsgId.get(msgId);
-        }
+        return rspHandlerForMsgId.get(msgId);
     }
 
     private DimseRSPHandler removeDimseRSPHandler(int msgId) {
-        synchronized (rspHandlerForMsgId ) {
-            DimseRSPHandler tmp = rspHandlerForMsgId.remove(msgId);
-            rspHandlerForMsgId.notifyAll();
-            return tmp;
+        DimseRSPHandler tmp = rspHandlerForMsgId.remove(msgId);
+        if (tmp != null) {
+            tmp.stopTimeout(this);
+            Semaphore window = this.window;
+            if (window != null)
+                window.release();
+            if (rspHandlerForMsgId.isEmpty())
+                synchronized (outstandingRSPMonitor) {
+                    outstandingRSPMonitor.notifyAll();
+                }
         }
+        return tmp;
     }
 
     void cancel(PresentationContext pc, int msgId) throws IOException {
@@ -729,15 +807,11 @@ public class Association {
     }
 
     public void addCancelRQHandler(int msgId, CancelRQHandler handler) {
-        synchronized (cancelHandlerForMsgId) {
-            cancelHandlerForMsgId.put(msgId, handler);
-        }
+        cancelHandlerForMsgId.put(msgId, handler);
     }
 
     public CancelRQHandler removeCancelRQHandler(int msgId) {
-        synchronized (cancelHandlerForMsgId) {
-            return cancelHandlerForMsgId.remove(msgId);
-        }
+        return cancelHandlerForMsgId.remove(msgId);
     }
 
     private void initPCMap() {
@@ -0,0 +1,249 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2011
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.net;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Pool of byte arrays used as PDU buffers by the {@link Association}s of a
+ * {@link Device}. Buffers are leased on first use by the PDU encoder and
+ * decoder of an Association and returned on close of the Association, so
+ * consecutive Associations reuse the buffers instead of allocating new ones
+ * of the size of the maximal PDU length.
+ * 
+ * A leased buffer may be larger than requested, but not more than twice the
+ * requested length. Returned buffers are kept until the total size of pooled
+ * buffers exceeds {@link #getMaxPooledBytes()}; further returned buffers are
+ * discarded.
+ * 
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+public class BufferPool {
+
+    public static final int DEF_MAX_POOLED_BYTES = 64 * 1024 * 1024;
+
+    private final TreeMap<Integer, ArrayDeque<byte[]>> pooled =
+            new TreeMap<Integer, ArrayDeque<byte[]>>();
+    private final IdentityHashMap<byte[], Boolean> leased =
+            new IdentityHashMap<byte[], Boolean>();
+    private int maxPooledBytes;
+    private long pooledBytes;
+    private long leasedBytes;
+    private int pooledBuffers;
+    private long leases;
+    private long allocations;
+    private long releases;
+    private long discards;
+    private long invalidReleases;
+
+    public BufferPool() {
+        this(DEF_MAX_POOLED_BYTES);
+    }
+
+    public BufferPool(int maxPooledBytes) {
+        setMaxPooledBytes(maxPooledBytes);
+    }
+
+    public final synchronized int getMaxPooledBytes() {
+        return maxPooledBytes;
+    }
+
+    public final synchronized void setMaxPooledBytes(int maxPooledBytes) {
+        if (maxPooledBytes < 0)
+            throw new IllegalArgumentException("maxPooledBytes: "
+                    + maxPooledBytes);
+        this.maxPooledBytes = maxPooledBytes;
+        trim();
+    }
+
+    /**
+     * Lease buffer with at least the specified length.
+     * 
+     * @param minLength minimal length of the buffer
+     * @return pooled or new allocated buffer
+     */
+    public synchronized byte[] lease(int minLength) {
+        byte[] b = poll(minLength);
+        if (b == null) {
+            b = new byte[minLength];
+            allocations++;
+        }
+        leased.put(b, Boolean.TRUE);
+        leasedBytes += b.length;
+        leases++;
+        return b;
+    }
+
+    private byte[] poll(int minLength) {
+        Map.Entry<Integer, ArrayDeque<byte[]>> entry =
+                pooled.ceilingEntry(minLength);
+        if (entry == null || entry.getKey() > minLength << 1)
+            return null;
+
+        ArrayDeque<byte[]> buffers = entry.getValue();
+        byte[] b = buffers.poll();
+        if (buffers.isEmpty())
+            pooled.remove(entry.getKey());
+        pooledBytes -= b.length;
+        pooledBuffers--;
+        return b;
+    }
+
+    /**
+     * Return buffer previously leased by {@link #lease(int)} to the pool.
+     * Buffers not leased from this pool or already returned are ignored and
+     * counted as {@link #getInvalidReleases() invalid releases}.
+     * 
+     * @param b leased buffer
+     */
+    public synchronized void release(byte[] b) {
+        if (leased.remove(b) == null) {
+            invalidReleases++;
+            return;
+        }
+        leasedBytes -= b.length;
+        releases++;
+        if (pooledBytes + b.length > maxPooledBytes) {
+            discards++;
+            return;
+        }
+        ArrayDeque<byte[]> buffers = pooled.get(b.length);
+        if (buffers == null)
+            pooled.put(b.length, buffers = new ArrayDeque<byte[]>());
+        buffers.push(b);
+        pooledBytes += b.length;
+        pooledBuffers++;
+    }
+
+    private void trim() {
+        while (pooledBytes > maxPooledBytes) {
+            Map.Entry<Integer, ArrayDeque<byte[]>> entry = pooled.lastEntry();
+            ArrayDeque<byte[]> buffers = entry.getValue();
+            byte[] b = buffers.poll();
+            if (buffers.isEmpty())
+                pooled.remove(entry.getKey());
+            pooledBytes -= b.length;
+            pooledBuffers--;
+            discards++;
+        }
+    }
+
+    /**
+     * Discard all pooled buffers. Leased buffers are not affected.
+     */
+    public synchronized void clear() {
+        discards += pooledBuffers;
+        pooled.clear();
+        pooledBytes = 0;
+        pooledBuffers = 0;
+    }
+
+    public synchronized int getPooledBuffers() {
+        return pooledBuffers;
+    }
+
+    public synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    /**
+     * Returns the number of currently leased buffers. A number exceeding
+     * twice the number of open Associations indicates leaked buffers.
+     * 
+     * @return number of currently leased buffers
+     */
+    public synchronized int getLeasedBuffers() {
+        return leased.size();
+    }
+
+    public synchronized long getLeasedBytes() {
+        return leasedBytes;
+    }
+
+    public synchronized long getLeases() {
+        return leases;
+    }
+
+    /**
+     * Returns the number of leases which could not be satisfied by a pooled
+     * buffer and required the allocation of a new buffer.
+     * 
+     * @return number of allocated buffers
+     */
+    public synchronized long getAllocations() {
+        return allocations;
+    }
+
+    public synchronized long getReleases() {
+        return releases;
+    }
+
+    public synchronized long getDiscards() {
+        return discards;
+    }
+
+    public synchronized long getInvalidReleases() {
+        return invalidReleases;
+    }
+
+    public synchronized void resetStatistics() {
+        leases = 0;
+        allocations = 0;
+        releases = 0;
+        discards = 0;
+        invalidReleases = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BufferPool[pooled=" + pooledBuffers
+                + ", pooledBytes=" + pooledBytes
+                + ", leased=" + leased.size()
+                + ", leasedBytes=" + leasedBytes
+                + ", leases=" + leases
+                + ", allocations=" + allocations
+                + ", releases=" + releases
+                + ", discards=" + discards
+                + ", invalidReleases=" + invalidReleases
+                + "]";
+    }
+}
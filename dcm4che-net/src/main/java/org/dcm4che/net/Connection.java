@@ -99,6 +99,7 @@ public class Connection implements Serializable {
     public static final int NOT_LISTENING = -1;
     public static final int DEF_BACKLOG = 50;
     public static final int DEF_SOCKETDELAY = 50;
+    public static final int DEF_PACK_PDU_DELAY = 10;
     public static final int DEF_BUFFERSIZE = 0;
     public static final int DEF_MAX_PDU_LENGTH = 16378;
     // to fit into SunJSSE TLS Application Data Length 16408
@@ -128,6 +129,8 @@ public class Connection implements Serializable {
     private int maxOpsPerformed = SYNCHRONOUS_MODE;
     private int maxOpsInvoked = SYNCHRONOUS_MODE;
     private boolean packPDV = true;
+    private boolean packPDU;
+    private int packPDUDelay = DEF_PACK_PDU_DELAY;
     private boolean tcpNoDelay = true;
     private boolean tlsNeedClientAuth = true;
     private String[] tlsCipherSuites = {};
@@ -570,6 +573,46 @@ public class Connection implements Serializable {
         this.packPDV = packPDV;
     }
 
+    /**
+     * Determine if PDVs of consecutive DIMSE messages are packed into one
+     * P-DATA-TF PDU, up to the maximal PDU length.
+     * 
+     * @return boolean True if PDVs of several DIMSE messages are packed in
+     *         one P-DATA-TF PDU.
+     */
+    public final boolean isPackPDU() {
+        return packPDU;
+    }
+
+    /**
+     * Set if PDVs of consecutive DIMSE messages shall be packed into one
+     * P-DATA-TF PDU, up to the maximal PDU length. Takes only effect, if
+     * also command and data PDV are packed in one PDU.
+     * 
+     * @param packPDU
+     *            True if PDVs of several DIMSE messages shall be packed in
+     *            one P-DATA-TF PDU.
+     */
+    public final void setPackPDU(boolean packPDU) {
+        this.packPDU = packPDU;
+    }
+
+    /**
+     * Get the maximal delay in ms, a packed P-DATA-TF PDU containing pending
+     * DIMSE responses is held back for further DIMSE messages.
+     * 
+     * @return int maximal delay in ms
+     */
+    public final int getPackPDUDelay() {
+        return packPDUDelay;
+    }
+
+    public final void setPackPDUDelay(int packPDUDelay) {
+        if (packPDUDelay < 0)
+            throw new IllegalArgumentException("packPDUDelay: " + packPDUDelay);
+        this.packPDUDelay = packPDUDelay;
+    }
+
     /**
      * Determine if this network connection is using Nagle's algorithm as part
      * of its network communication.
@@ -1065,6 +1108,8 @@ public class Connection implements Serializable {
         setMaxOpsPerformed(from.maxOpsPerformed);
         setMaxOpsPerformed(from.maxOpsInvoked);
         setPackPDV(from.packPDV);
+        setPackPDU(from.packPDU);
+        setPackPDUDelay(from.packPDUDelay);
         setTcpNoDelay(from.tcpNoDelay);
         setTlsNeedClientAuth(from.tlsNeedClientAuth);
         setTlsCipherSuites(from.tlsCipherSuites);
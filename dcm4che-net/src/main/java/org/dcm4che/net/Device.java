@@ -130,6 +130,7 @@ public class Device implements Serializable {
 
     private transient Executor executor;
     private transient ScheduledExecutorService scheduledExecutor;
+    private transient BufferPool bufferPool;
     private transient volatile SSLContext sslContext;
     private transient volatile KeyManager km;
     private transient volatile TrustManager tm;
@@ -732,6 +733,20 @@ public class Device implements Serializable {
         this.scheduledExecutor = executor;
     }
 
+    public final BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Set pool from which the PDU buffers of Associations are leased. If no
+     * pool is set, each Association allocates its own buffers.
+     * 
+     * @param bufferPool pool of PDU buffers or <code>null</code>
+     */
+    public final void setBufferPool(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
     public void addConnection(Connection conn) {
         conn.setDevice(this);
         conns.add(conn);
@@ -0,0 +1,98 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2011
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.net;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Factory methods for {@link ExecutorService}s to be used as
+ * {@link Device#setExecutor(java.util.concurrent.Executor) Device Executor}.
+ * 
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+public class DeviceExecutors {
+
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR =
+            newVirtualThreadPerTaskExecutorMethod();
+
+    private DeviceExecutors() {}
+
+    private static Method newVirtualThreadPerTaskExecutorMethod() {
+        try {
+            return java.util.concurrent.Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns if the Java Runtime supports virtual threads.
+     * 
+     * @return <code>true</code> if virtual threads are supported, otherwise
+     *         <code>false</code>
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Creates an Executor that starts a new virtual thread for each task.
+     * Used as Device Executor, the accept loop of each listening
+     * {@link Connection} and the PDU reader of each {@link Association}
+     * runs on a virtual thread, so the number of open Associations is not
+     * limited by the number of platform threads.
+     * 
+     * @return Executor that starts a new virtual thread for each task
+     * @throws UnsupportedOperationException
+     *             if the Java Runtime does not support virtual threads
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null)
+            throw new UnsupportedOperationException(
+                    "Virtual threads require Java 21 or later");
+        try {
+            return (ExecutorService)
+                    NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+        } catch (Exception e) {
+            throw new UnsupportedOperationException(e);
+        }
+    }
+}
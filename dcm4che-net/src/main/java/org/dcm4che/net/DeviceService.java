@@ -51,6 +51,7 @@ public class DeviceService {
     protected Device device;
     protected ExecutorService executor;
     protected ScheduledExecutorService scheduledExecutor;
+    private boolean virtualThreads;
 
     protected void init(Device device) {
         this.device = device;
@@ -60,6 +61,23 @@ public class DeviceService {
         return device;
     }
 
+    public final boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Run tasks of the device - in particular the accept loops of listening
+     * Connections and the PDU readers of Associations - on virtual threads
+     * instead of a pool of platform threads. Requires Java 21 or later.
+     * Effective on next {@link #start()}.
+     * 
+     * @param virtualThreads
+     *            <code>true</code> to use virtual threads
+     */
+    public final void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
     public boolean isRunning() {
         return executor != null;
     }
@@ -93,7 +111,9 @@ public class DeviceService {
     }
 
     protected ExecutorService executerService() {
-        return Executors.newCachedThreadPool();
+        return virtualThreads
+                ? DeviceExecutors.newVirtualThreadPerTaskExecutor()
+                : Executors.newCachedThreadPool();
     }
 
     protected ScheduledExecutorService scheduledExecuterService() {
@@ -65,7 +65,7 @@ public class DimseRSPHandler {
         return msgId;
     }
 
-    final void setTimeout(Timeout timeout) {
+    final synchronized void setTimeout(Timeout timeout) {
         this.timeout = timeout;
     }
 
@@ -81,7 +81,7 @@ public class DimseRSPHandler {
         stopTimeout(as);
     }
 
-    private void stopTimeout(Association as) {
+    final synchronized void stopTimeout(Association as) {
         if (timeout != null) {
             timeout.stop();
             timeout = null;
@@ -42,8 +42,9 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
-import java.util.Arrays;
 
 import org.dcm4che.data.Attributes;
 import org.dcm4che.data.Tag;
@@ -90,7 +91,8 @@ class PDUDecoder extends PDVInputStream {
     private final Association as;
     private final InputStream in;
     private final Thread th;
-    private byte[] buf = new byte[6 + Connection.DEF_MAX_PDU_LENGTH];
+    private final BufferPool pool;
+    private byte[] buf;
     private int pos;
     private int pdutype;
     private int pdulen;
@@ -98,10 +100,24 @@ class PDUDecoder extends PDVInputStream {
     private int pdvmch;
     private int pdvend;
 
-    public PDUDecoder(Association as, InputStream in) {
+    public PDUDecoder(Association as, InputStream in, BufferPool pool) {
         this.as = as;
         this.in = in;
         this.th = Thread.currentThread();
+        this.pool = pool;
+        this.buf = allocate(6 + Connection.DEF_MAX_PDU_LENGTH);
+    }
+
+    private byte[] allocate(int length) {
+        return pool != null ? pool.lease(length) : new byte[length];
+    }
+
+    void releaseBuffer() {
+        checkThread();
+        if (pool != null && buf != null) {
+            pool.release(buf);
+            buf = null;
+        }
     }
 
     private int remaining() {
@@ -214,8 +230,13 @@ class PDUDecoder extends PDVInputStream {
         if (pdulen < 4 || pdulen > MAX_PDU_LEN)
             abort(AAbort.INVALID_PDU_PARAMETER_VALUE, INVALID_PDU_LENGTH);
 
-        if (6 + pdulen > buf.length)
-            buf = Arrays.copyOf(buf, 6 + pdulen);
+        if (6 + pdulen > buf.length) {
+            byte[] b = allocate(6 + pdulen);
+            System.arraycopy(buf, 0, b, 0, 10);
+            if (pool != null)
+                pool.release(buf);
+            buf = b;
+        }
 
         readFully(10, pdulen - 4);
     }
@@ -423,6 +444,13 @@ class PDUDecoder extends PDVInputStream {
         if (pcid != - 1)
             return; // already inside decodeDIMSE
 
+        // P-DATA-TF may contain PDVs of several DIMSE messages
+        do
+            decodeNextDIMSE();
+        while (hasRemaining());
+    }
+
+    private void decodeNextDIMSE() throws IOException {
         nextPDV(PDVType.COMMAND, -1);
 
         PresentationContext pc = as.getPresentationContext(pcid);
@@ -623,4 +651,16 @@ class PDUDecoder extends PDVInputStream {
             pos = pdvend;
         }
     }
+
+    @Override
+    public void copyTo(WritableByteChannel ch) throws IOException {
+        if (th != Thread.currentThread())
+            throw new IllegalStateException("Entered by wrong thread");
+        while (!isLastPDV()) {
+            ByteBuffer bb = ByteBuffer.wrap(buf, pos, pdvend - pos);
+            while (bb.hasRemaining())
+                ch.write(bb);
+            pos = pdvend;
+        }
+    }
 }
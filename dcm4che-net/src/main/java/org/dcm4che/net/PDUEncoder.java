@@ -42,6 +42,7 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.dcm4che.data.Attributes;
 import org.dcm4che.data.Tag;
@@ -67,7 +68,9 @@ class PDUEncoder extends PDVOutputStream {
 
     private Association as;
     private OutputStream out;
-    private byte[] buf = new byte[Connection.DEF_MAX_PDU_LENGTH + 6];
+    private final BufferPool pool;
+    private byte[] buf;
+    private boolean released;
     private int pos;
     private int pdvpcid;
     private int pdvcmd;
@@ -75,10 +78,66 @@ class PDUEncoder extends PDVOutputStream {
     private int maxpdulen;
     private Thread th;
     private Object dimseLock = new Object();
+    private final AtomicInteger waitingForDimseLock = new AtomicInteger();
+    private boolean deferred;
+    private boolean flushScheduled;
+    private boolean releasing;
+    private final Runnable flushDeferred = new Runnable() {
+
+        @Override
+        public void run() {
+            synchronized (dimseLock) {
+                flushScheduled = false;
+                try {
+                    flushDeferred();
+                } catch (IOException e) {
+                    // deferred PDVs are lost - abort the association, so
+                    // the failure is reported to all users of it
+                    as.onIOException(e);
+                }
+            }
+        }
+    };
 
-    public PDUEncoder(Association as, OutputStream out) {
+    public PDUEncoder(Association as, OutputStream out, BufferPool pool) {
         this.as = as;
         this.out = out;
+        this.pool = pool;
+        this.buf = pool != null ? null
+                : new byte[Connection.DEF_MAX_PDU_LENGTH + 6];
+    }
+
+    private void ensureCapacity(int minLength) throws IOException {
+        if (buf != null && buf.length >= minLength)
+            return;
+
+        if (pool == null) {
+            buf = new byte[minLength];
+            return;
+        }
+
+        if (released)
+            throw new IOException("Association closed");
+
+        byte[] old = buf;
+        buf = pool.lease(Math.max(minLength, Connection.DEF_MAX_PDU_LENGTH + 6));
+        if (old != null)
+            pool.release(old);
+    }
+
+    void releaseBuffer() {
+        if (pool == null)
+            return;
+
+        synchronized (dimseLock) {
+            synchronized (this) {
+                if (buf != null)
+                    pool.release(buf);
+                buf = null;
+                released = true;
+                deferred = false;
+            }
+        }
     }
 
     public void write(AAssociateRQ rq) throws IOException {
@@ -96,12 +155,28 @@ class PDUEncoder extends PDVOutputStream {
                 rj.getReason());
     }
 
+    /**
+     * Sends a deferred P-DATA-TF and stops deferring further ones. Must be
+     * invoked before entering a state in which P-DATA-TF may no longer be
+     * sent, i.e. before sending A-RELEASE-RQ or A-RELEASE-RP.
+     */
+    public void flushBeforeRelease() throws IOException {
+        synchronized (dimseLock) {
+            releasing = true;
+            flushDeferred();
+        }
+    }
+
     public void writeAReleaseRQ() throws IOException {
-        write(PDUType.A_RELEASE_RQ, 0, 0, 0);
+        synchronized (dimseLock) {
+            write(PDUType.A_RELEASE_RQ, 0, 0, 0);
+        }
     }
 
     public void writeAReleaseRP() throws IOException {
-        write(PDUType.A_RELEASE_RP, 0, 0, 0);
+        synchronized (dimseLock) {
+            write(PDUType.A_RELEASE_RP, 0, 0, 0);
+        }
     }
 
     public void write(AAbort aa) throws IOException {
@@ -133,15 +208,16 @@ class PDUEncoder extends PDVOutputStream {
         }
         pdvpos = 6;
         pos = 12;
+        deferred = false;
     }
 
-    private void encode(AAssociateRQAC rqac, int pduType, int pcItemType) {
+    private void encode(AAssociateRQAC rqac, int pduType, int pcItemType)
+            throws IOException {
         rqac.checkCallingAET();
         rqac.checkCalledAET();
 
         int pdulen = rqac.length();
-        if (buf.length < 6 + pdulen)
-            buf = new byte[6 + pdulen];
+        ensureCapacity(6 + pdulen);
         pos = 0;
         put(pduType);
         put(0);
@@ -396,7 +472,9 @@ class PDUEncoder extends PDVOutputStream {
 
     public void writeDIMSE(PresentationContext pc, Attributes cmd,
             DataWriter dataWriter) throws IOException {
+        waitingForDimseLock.incrementAndGet();
         synchronized (dimseLock) {
+            waitingForDimseLock.decrementAndGet();
             int pcid = pc.getPCID();
             String tsuid = pc.getTransferSyntax();
             if (Dimse.LOG.isInfoEnabled()) {
@@ -409,8 +487,9 @@ class PDUEncoder extends PDVOutputStream {
             }
             this.th = Thread.currentThread();
             maxpdulen = as.getMaxPDULengthSend();
-            if (buf.length < maxpdulen + 6)
-                buf = new byte[maxpdulen + 6];
+            ensureCapacity(maxpdulen + 6);
+            if (deferred)
+                startPDV(); // append PDVs to deferred P-DATA-TF
 
             pdvpcid = pcid;
             pdvcmd = PDVType.COMMAND;
@@ -422,15 +501,50 @@ class PDUEncoder extends PDVOutputStream {
                 if (!as.isPackPDV()) {
                     as.writePDataTF();
                 } else {
-                    pdvpos = pos;
-                    pos += 6;
+                    startPDV();
                 }
                 pdvcmd = PDVType.DATA;
                 dataWriter.writeTo(this, tsuid);
                 close();
             }
-            as.writePDataTF();
             this.th = null;
+            if (!releasing && as.isPackPDU() && free() > 6
+                    && (waitingForDimseLock.get() > 0 || isPendingRSP(cmd)))
+                deferFlush();
+            else
+                as.writePDataTF();
         }
     }
+
+    private void startPDV() throws IOException {
+        if (free() > 6) {
+            pdvpos = pos;
+            pos += 6;
+        } else {
+            as.writePDataTF();
+        }
+    }
+
+    private static boolean isPendingRSP(Attributes cmd) {
+        return (cmd.getInt(Tag.CommandField, 0) & 0x8000) != 0
+                && Status.isPending(cmd.getInt(Tag.Status, 0));
+    }
+
+    /**
+     * Defers sending of the current P-DATA-TF, so PDVs of following DIMSE
+     * messages can be appended. It is sent by the next DIMSE message which
+     * does not defer it again, or after the configured delay at the latest.
+     */
+    private void deferFlush() {
+        deferred = true;
+        if (!flushScheduled) {
+            flushScheduled = true;
+            as.schedulePackedPDU(flushDeferred);
+        }
+    }
+
+    private void flushDeferred() throws IOException {
+        if (deferred)
+            as.writePDataTF();
+    }
 }
@@ -41,6 +41,7 @@ package org.dcm4che.net;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
 
 import org.dcm4che.data.Attributes;
 
@@ -57,6 +58,8 @@ public abstract class PDVInputStream extends InputStream {
 
     public abstract void copyTo(OutputStream out) throws IOException;
 
+    public abstract void copyTo(WritableByteChannel ch) throws IOException;
+
     public abstract long skipAll() throws IOException;
 
 }
@@ -52,10 +52,36 @@ import org.dcm4che.net.pdu.PresentationContext;
  */
 public class BasicCFindSCP extends DicomService {
 
+    private int prefetch;
+
     public BasicCFindSCP(String... sopClasses) {
         super(sopClasses);
     }
 
+    /**
+     * Get the number of matches, which are fetched ahead by a separate thread
+     * while pending C-FIND-RSPs are written. 0 by default.
+     * 
+     * @return number of matches fetched ahead or 0
+     */
+    public final int getPrefetch() {
+        return prefetch;
+    }
+
+    /**
+     * Set the number of matches, which are fetched ahead by a separate thread
+     * while pending C-FIND-RSPs are written. Requires that the executor of
+     * the Device is capable to run the additional task. 0 fetches and writes
+     * each match by the same thread.
+     * 
+     * @param prefetch number of matches fetched ahead or 0
+     */
+    public final void setPrefetch(int prefetch) {
+        if (prefetch < 0)
+            throw new IllegalArgumentException("prefetch: " + prefetch);
+        this.prefetch = prefetch;
+    }
+
     @Override
     public void onDimseRQ(Association as, PresentationContext pc, Dimse dimse,
             Attributes rq, Attributes keys) throws IOException {
@@ -63,6 +89,8 @@ public class BasicCFindSCP extends DicomService {
             throw new DicomServiceException(Status.UnrecognizedOperation);
 
         QueryTask queryTask = calculateMatches(as, pc, rq, keys);
+        if (queryTask instanceof BasicQueryTask)
+            ((BasicQueryTask) queryTask).setPrefetch(getPrefetch());
         as.getApplicationEntity().getDevice().execute(queryTask);
     }
 
@@ -41,7 +41,10 @@ package org.dcm4che.net.service;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 
@@ -67,10 +70,32 @@ import org.dcm4che.util.SafeClose;
  */
 public class BasicCStoreSCP extends DicomService {
 
+    private boolean parseWhileSpooling;
+
     public BasicCStoreSCP(String... sopClasses) {
         super(sopClasses);
     }
 
+    public final boolean isParseWhileSpooling() {
+        return parseWhileSpooling;
+    }
+
+    /**
+     * Sets if the received data set is parsed while it is spooled to the
+     * spool file, instead of parsing the spool file after it was written.
+     * The attributes up to the Pixel Data are decoded from the received
+     * data stream, the remaining data - typically the Pixel Data - is
+     * written to the spool file without decoding.
+     * 
+     * <p>If enabled, {@link #parse(Association, File)} is not invoked.
+     * 
+     * @param parseWhileSpooling <code>true</code> to parse the received
+     *        data set while it is spooled
+     */
+    public final void setParseWhileSpooling(boolean parseWhileSpooling) {
+        this.parseWhileSpooling = parseWhileSpooling;
+    }
+
     @Override
     public void onDimseRQ(Association as, PresentationContext pc, Dimse dimse,
             Attributes rq, PDVInputStream data) throws IOException {
@@ -93,8 +118,13 @@ public class BasicCStoreSCP extends DicomService {
         File finalFile = null;
         try {
             MessageDigest digest = getMessageDigest(as);
-            spool(as, fmi, data, spoolFile, digest);
-            Attributes attrs = parse(as, spoolFile);
+            Attributes attrs;
+            if (parseWhileSpooling) {
+                attrs = spoolAndParse(as, fmi, data, spoolFile, digest);
+            } else {
+                spool(as, fmi, data, spoolFile, digest);
+                attrs = parse(as, spoolFile);
+            }
             finalFile = getFinalFile(as, fmi, attrs, spoolFile);
             if (!finalFile.equals(spoolFile)) {
                 finalFile.getParentFile().mkdirs();
@@ -155,6 +185,42 @@ public class BasicCStoreSCP extends DicomService {
         }
     }
 
+    private Attributes spoolAndParse(Association as, Attributes fmi,
+            PDVInputStream data, File file, MessageDigest digest)
+            throws IOException {
+        LOG.info("{}: M-WRITE {}", as, file);
+        file.getParentFile().mkdirs();
+        FileOutputStream fout = new FileOutputStream(file);
+        try {
+            OutputStream out = digest == null ? fout
+                    : new DigestOutputStream(fout, digest);
+            BufferedOutputStream bout = new BufferedOutputStream(out);
+            new DicomOutputStream(bout, UID.ExplicitVRLittleEndian)
+                    .writeFileMetaInformation(fmi);
+            SpoolInputStream spool = new SpoolInputStream(data, bout);
+            Attributes attrs;
+            try {
+                DicomInputStream in = new DicomInputStream(spool,
+                        fmi.getString(Tag.TransferSyntaxUID));
+                in.setIncludeBulkData(IncludeBulkData.NO);
+                attrs = in.readDataset(-1, Tag.PixelData);
+            } catch (IOException e) {
+                if (spool.failed)
+                    throw e;
+                LOG.warn(as + ": Failed to decode dataset:", e);
+                throw new DicomServiceException(Status.CannotUnderstand);
+            }
+            bout.flush();
+            if (digest == null)
+                data.copyTo(fout.getChannel());
+            else
+                data.copyTo(out);
+            return attrs;
+        } finally {
+            fout.close();
+        }
+    }
+
     protected Attributes parse(Association as, File file)
             throws DicomServiceException {
         DicomInputStream in = null;
@@ -181,4 +247,68 @@ public class BasicCStoreSCP extends DicomService {
         else
             delete(as, spoolFile);
     }
+
+    /**
+     * Writes all data read from the received data stream to the spool file,
+     * including skipped data.
+     */
+    private static class SpoolInputStream extends FilterInputStream {
+
+        private final OutputStream out;
+        private boolean failed;
+
+        SpoolInputStream(InputStream in, OutputStream out) {
+            super(in);
+            this.out = out;
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                int b = in.read();
+                if (b >= 0)
+                    out.write(b);
+                return b;
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                int read = in.read(b, off, len);
+                if (read > 0)
+                    out.write(b, off, read);
+                return read;
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (n <= 0)
+                return 0;
+            byte[] b = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            int read;
+            while (skipped < n && (read = read(b, 0,
+                    (int) Math.min(n - skipped, b.length))) > 0)
+                skipped += read;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // keep received data stream open
+        }
+    }
 }
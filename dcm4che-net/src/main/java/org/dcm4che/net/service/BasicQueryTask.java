@@ -39,7 +39,14 @@
 package org.dcm4che.net.service;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 
 import org.dcm4che.data.Attributes;
 import org.dcm4che.data.Tag;
@@ -50,15 +57,28 @@ import org.dcm4che.net.Status;
 import org.dcm4che.net.pdu.PresentationContext;
 
 /**
+ * Query task, which writes a pending C-FIND-RSP for each match returned by
+ * {@link #hasMoreMatches()} and {@link #nextMatch()}.
+ * <p>
+ * If a prefetch size is set, matches are fetched by a separate thread into
+ * a bounded queue, from which the thread running the task writes the
+ * pending C-FIND-RSPs. The producer waits if the queue is full, so it
+ * follows the pace of the peer. {@link #close()} is invoked after the
+ * producer has terminated.
+ * 
  * @author Gunter Zeilinger <gunterze@gmail.com>
  */
 public class BasicQueryTask implements QueryTask {
 
+    private static final PendingRSP END = new PendingRSP(null, null);
+
     protected final Association as;
     protected final PresentationContext pc;
     protected final Attributes rq;
     protected final Attributes keys;
     protected volatile boolean canceled;
+    private volatile boolean stopped;
+    private int prefetch;
 
     public BasicQueryTask(Association as, PresentationContext pc, Attributes rq, Attributes keys) {
         this.as = as;
@@ -67,6 +87,23 @@ public class BasicQueryTask implements QueryTask {
         this.keys = keys;
     }
 
+    public final int getPrefetch() {
+        return prefetch;
+    }
+
+    /**
+     * Set the number of matches, which are fetched ahead by a separate thread
+     * while pending C-FIND-RSPs are written. 0 fetches and writes each match
+     * by the thread running the task.
+     * 
+     * @param prefetch number of matches fetched ahead or 0
+     */
+    public final void setPrefetch(int prefetch) {
+        if (prefetch < 0)
+            throw new IllegalArgumentException("prefetch: " + prefetch);
+        this.prefetch = prefetch;
+    }
+
     @Override
     public void onCancelRQ(Association as) {
         canceled = true;
@@ -78,15 +115,10 @@ public class BasicQueryTask implements QueryTask {
             int msgId = rq.getInt(Tag.MessageID, -1);
             as.addCancelRQHandler(msgId, this);
             try {
-                while (!canceled && hasMoreMatches()) {
-                    Attributes match = adjust(nextMatch());
-                    if (match != null) {
-                        int status = optionalKeyNotSupported(match)
-                                ? Status.PendingWarning
-                                : Status.Pending;
-                        as.writeDimseRSP(pc, Commands.mkCFindRSP(rq, status), match);
-                    }
-                }
+                if (prefetch > 0)
+                    writePrefetchedMatches();
+                else
+                    writeMatches();
                 int status = canceled ? Status.Cancel : Status.Success;
                 as.writeDimseRSP(pc, Commands.mkCFindRSP(rq, status));
             } catch (DicomServiceException e) {
@@ -101,6 +133,116 @@ public class BasicQueryTask implements QueryTask {
         }
     }
 
+    private void writeMatches() throws IOException {
+        while (!canceled && hasMoreMatches()) {
+            PendingRSP rsp = nextPendingRSP();
+            if (rsp != null)
+                as.writeDimseRSP(pc, rsp.cmd, rsp.match);
+        }
+    }
+
+    private PendingRSP nextPendingRSP() throws DicomServiceException {
+        Attributes match = adjust(nextMatch());
+        if (match == null)
+            return null;
+
+        int status = optionalKeyNotSupported(match)
+                ? Status.PendingWarning
+                : Status.Pending;
+        return new PendingRSP(Commands.mkCFindRSP(rq, status), match);
+    }
+
+    private void writePrefetchedMatches() throws IOException {
+        final BlockingQueue<PendingRSP> queue =
+                new ArrayBlockingQueue<PendingRSP>(prefetch);
+        FutureTask<Void> producer = new FutureTask<Void>(new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                prefetchMatches(queue);
+                return null;
+            }
+        });
+        as.getApplicationEntity().getDevice().execute(producer);
+        boolean completed = false;
+        try {
+            PendingRSP rsp;
+            while (!canceled && (rsp = nextPrefetched(queue, producer)) != END)
+                as.writeDimseRSP(pc, rsp.cmd, rsp.match);
+            completed = true;
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } finally {
+            stopped = true;
+            queue.clear(); // releases producer waiting for free space
+            // do not hide the failure of writing the responses
+            awaitTermination(producer, completed);
+        }
+    }
+
+    /**
+     * Returns the next prefetched match or {@link #END}, also if the producer
+     * terminated without queuing {@link #END} - e.g. because it was
+     * interrupted.
+     */
+    private static PendingRSP nextPrefetched(BlockingQueue<PendingRSP> queue,
+            FutureTask<Void> producer) throws InterruptedException {
+        PendingRSP rsp;
+        while ((rsp = queue.poll(100, TimeUnit.MILLISECONDS)) == null)
+            if (producer.isDone()) {
+                rsp = queue.poll();
+                return rsp != null ? rsp : END;
+            }
+        return rsp;
+    }
+
+    private void prefetchMatches(BlockingQueue<PendingRSP> queue)
+            throws DicomServiceException, InterruptedException {
+        try {
+            while (!canceled && !stopped && hasMoreMatches()) {
+                PendingRSP rsp = nextPendingRSP();
+                if (rsp != null)
+                    queue.put(rsp);
+            }
+        } finally {
+            if (!stopped)
+                queue.put(END);
+        }
+    }
+
+    /**
+     * Waits until the producer terminated and rethrows its failure, if
+     * <code>rethrow</code> is <code>true</code>.
+     */
+    private static void awaitTermination(FutureTask<Void> producer,
+            boolean rethrow) throws DicomServiceException {
+        boolean interrupted = false;
+        try {
+            for (;;) {
+                try {
+                    producer.get();
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (!rethrow)
+                        return;
+                    Throwable cause = e.getCause();
+                    if (cause instanceof DicomServiceException)
+                        throw (DicomServiceException) cause;
+                    if (cause instanceof RuntimeException)
+                        throw (RuntimeException) cause;
+                    if (cause instanceof Error)
+                        throw (Error) cause;
+                    return; // interrupted while waiting for free space
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
     protected void close() {
     }
 
@@ -137,4 +279,14 @@ public class BasicQueryTask implements QueryTask {
     protected DicomServiceException wrapException(int status, Throwable e) {
         return new DicomServiceException(status, e);
     }
+
+    private static final class PendingRSP {
+        final Attributes cmd;
+        final Attributes match;
+
+        PendingRSP(Attributes cmd, Attributes match) {
+            this.cmd = cmd;
+            this.match = match;
+        }
+    }
 }
@@ -0,0 +1,378 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.net;
+
+import static org.junit.Assert.*;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.dcm4che.data.Attributes;
+import org.dcm4che.data.Tag;
+import org.dcm4che.data.UID;
+import org.dcm4che.data.VR;
+import org.dcm4che.net.pdu.AAssociateRQ;
+import org.dcm4che.net.pdu.PresentationContext;
+import org.dcm4che.net.service.BasicCEchoSCP;
+import org.dcm4che.net.service.BasicCFindSCP;
+import org.dcm4che.net.service.BasicCStoreSCP;
+import org.dcm4che.net.service.BasicQueryTask;
+import org.dcm4che.net.service.DicomServiceException;
+import org.dcm4che.net.service.DicomServiceRegistry;
+import org.dcm4che.net.service.QueryTask;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+public class PDUEncoderTest {
+
+    private static final String CUID =
+            UID.StudyRootQueryRetrieveInformationModelFIND;
+    private static final int MATCHES = 100;
+
+    private ExecutorService executor;
+    private ScheduledExecutorService scheduledExecutor;
+    private Device scp;
+    private Connection scpConn;
+    private ApplicationEntity scuAE;
+    private Connection scuConn;
+    private PDataTFCounter counter;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newCachedThreadPool();
+        scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+
+        scp = new Device("scp");
+        scpConn = new Connection("dicom", "localhost", freePort());
+        scpConn.setMaxOpsPerformed(0);
+        ApplicationEntity scpAE = new ApplicationEntity("SCP");
+        scpAE.setAssociationAcceptor(true);
+        scpAE.addTransferCapability(new TransferCapability(null,
+                UID.VerificationSOPClass, TransferCapability.Role.SCP,
+                UID.ImplicitVRLittleEndian));
+        scpAE.addTransferCapability(new TransferCapability(null,
+                CUID, TransferCapability.Role.SCP,
+                UID.ImplicitVRLittleEndian));
+        scpAE.addTransferCapability(new TransferCapability(null,
+                UID.SecondaryCaptureImageStorage, TransferCapability.Role.SCP,
+                UID.ImplicitVRLittleEndian));
+        scp.addConnection(scpConn);
+        scp.addApplicationEntity(scpAE);
+        scpAE.addConnection(scpConn);
+        DicomServiceRegistry services = new DicomServiceRegistry();
+        services.addDicomService(new BasicCEchoSCP());
+        services.addDicomService(
+                new BasicCStoreSCP(UID.SecondaryCaptureImageStorage) {
+
+            @Override
+            protected void store(Association as, PresentationContext pc,
+                    Attributes rq, PDVInputStream data, Attributes rsp)
+                    throws IOException {
+                data.skipAll();
+            }
+        });
+        services.addDicomService(new BasicCFindSCP(CUID) {
+
+            @Override
+            protected QueryTask calculateMatches(Association as,
+                    PresentationContext pc, Attributes rq, Attributes keys) {
+                return new BasicQueryTask(as, pc, rq, keys) {
+                    int i;
+
+                    @Override
+                    protected boolean hasMoreMatches() {
+                        return i < MATCHES;
+                    }
+
+                    @Override
+                    protected Attributes nextMatch()
+                            throws DicomServiceException {
+                        return match(++i);
+                    }
+                };
+            }
+        });
+        scp.setDimseRQHandler(services);
+        scp.setExecutor(executor);
+        scp.setScheduledExecutor(scheduledExecutor);
+        scp.bindConnections();
+        counter = new PDataTFCounter(scpConn.getPort());
+
+        Device scu = new Device("scu");
+        scuConn = new Connection();
+        scuConn.setMaxOpsInvoked(0);
+        scuAE = new ApplicationEntity("SCU");
+        scu.addConnection(scuConn);
+        scu.addApplicationEntity(scuAE);
+        scuAE.addConnection(scuConn);
+        scu.setExecutor(executor);
+        scu.setScheduledExecutor(scheduledExecutor);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scp.unbindConnections();
+        counter.close();
+        executor.shutdownNow();
+        scheduledExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testPendingResponsesNotPacked() throws Exception {
+        assertEquals(MATCHES, query());
+        assertEquals(MATCHES + 1, counter.fromSCP.get());
+    }
+
+    @Test
+    public void testPackPendingResponses() throws Exception {
+        scpConn.setPackPDU(true);
+        // only the final response or a full PDU shall send the P-DATA-TF
+        scpConn.setPackPDUDelay(60000);
+        assertEquals(MATCHES, query());
+        int pdus = counter.fromSCP.get();
+        assertTrue("P-DATA-TF PDUs: " + pdus, pdus < MATCHES / 10);
+    }
+
+    @Test
+    public void testReleaseSendsDeferredPDU() throws Exception {
+        scuConn.setPackPDU(true);
+        // deferred C-STORE-RQ shall only be sent by A-RELEASE-RQ
+        scuConn.setPackPDUDelay(60000);
+        final Association as = connect(UID.VerificationSOPClass,
+                UID.SecondaryCaptureImageStorage);
+        final Thread echo = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    as.cecho();
+                } catch (Exception e) {
+                    // may be invoked after A-RELEASE-RQ
+                }
+            }
+        };
+        final AtomicReference<Exception> releaseFailed =
+                new AtomicReference<Exception>();
+        final Thread release = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    as.release();
+                } catch (Exception e) {
+                    releaseFailed.set(e);
+                }
+            }
+        };
+        FutureDimseRSP rsp = new FutureDimseRSP(as.nextMessageID());
+        final Attributes data = match(1);
+        as.cstore(UID.SecondaryCaptureImageStorage, "1.2.3.1", Priority.NORMAL,
+                new DataWriter() {
+
+                    @Override
+                    public void writeTo(PDVOutputStream out, String tsuid)
+                            throws IOException {
+                        // let the C-ECHO-RQ wait for the C-STORE-RQ, which
+                        // therefore is deferred, and A-RELEASE-RQ wait for
+                        // the deferred C-STORE-RQ
+                        waitForBlocked(echo);
+                        waitForBlocked(release);
+                        new DataWriterAdapter(data).writeTo(out, tsuid);
+                    }
+                }, UID.ImplicitVRLittleEndian, rsp);
+        release.join();
+        assertNull(releaseFailed.get());
+        rsp.next();
+        assertEquals(Status.Success, rsp.getCommand().getInt(Tag.Status, -1));
+        as.waitForSocketClose();
+        echo.join();
+    }
+
+    private static void waitForBlocked(Thread th) {
+        th.start();
+        while (th.getState() != Thread.State.BLOCKED)
+            Thread.yield();
+    }
+
+    private int query() throws Exception {
+        Association as = connect(CUID);
+        Attributes keys = new Attributes();
+        keys.setString(Tag.QueryRetrieveLevel, VR.CS, "STUDY");
+        keys.setNull(Tag.StudyInstanceUID, VR.UI);
+        DimseRSP rsp = as.cfind(CUID, Priority.NORMAL, keys, null, 0);
+        int pending = 0;
+        while (rsp.next()) {
+            if (rsp.getDataset() != null)
+                assertEquals(match(++pending), rsp.getDataset());
+        }
+        assertEquals(Status.Success, rsp.getCommand().getInt(Tag.Status, -1));
+        as.release();
+        as.waitForSocketClose();
+        return pending;
+    }
+
+    private Association connect(String... cuids) throws Exception {
+        AAssociateRQ rq = new AAssociateRQ();
+        rq.setCalledAET("SCP");
+        for (int i = 0; i < cuids.length; i++)
+            rq.addPresentationContext(new PresentationContext(i * 2 + 1,
+                    cuids[i], UID.ImplicitVRLittleEndian));
+        return scuAE.connect(scuConn,
+                new Connection("proxy", "localhost", counter.getPort()), rq);
+    }
+
+    private static Attributes match(int i) {
+        Attributes match = new Attributes(2);
+        match.setString(Tag.QueryRetrieveLevel, VR.CS, "STUDY");
+        match.setString(Tag.StudyInstanceUID, VR.UI, "1.2.3." + i);
+        return match;
+    }
+
+    private static int freePort() throws IOException {
+        ServerSocket ss = new ServerSocket(0);
+        try {
+            return ss.getLocalPort();
+        } finally {
+            ss.close();
+        }
+    }
+
+    /**
+     * Forwards one connection to the SCP, counting the forwarded P-DATA-TF
+     * PDUs in each direction.
+     */
+    private static class PDataTFCounter {
+
+        final ServerSocket ss = new ServerSocket(0);
+        final List<Socket> socks = new ArrayList<Socket>();
+        final AtomicInteger fromSCU = new AtomicInteger();
+        final AtomicInteger fromSCP = new AtomicInteger();
+
+        PDataTFCounter(final int scpPort) throws IOException {
+            new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        Socket scu = ss.accept();
+                        Socket scp = new Socket("localhost", scpPort);
+                        synchronized (socks) {
+                            socks.add(scu);
+                            socks.add(scp);
+                        }
+                        forward(scu, scp, fromSCU).start();
+                        forward(scp, scu, fromSCP).start();
+                    } catch (IOException e) {
+                        // closed
+                    }
+                }
+            }.start();
+        }
+
+        int getPort() {
+            return ss.getLocalPort();
+        }
+
+        void close() throws IOException {
+            ss.close();
+            synchronized (socks) {
+                for (Socket sock : socks)
+                    sock.close();
+            }
+        }
+
+        private static Thread forward(final Socket from, final Socket to,
+                final AtomicInteger count) {
+            return new Thread() {
+
+                @Override
+                public void run() {
+                    byte[] b = new byte[0x10000];
+                    try {
+                        DataInputStream in =
+                                new DataInputStream(from.getInputStream());
+                        OutputStream out = to.getOutputStream();
+                        for (;;) {
+                            in.readFully(b, 0, 6);
+                            if (b[0] == PDUType.P_DATA_TF)
+                                count.incrementAndGet();
+                            out.write(b, 0, 6);
+                            copy(in, out, b, ((b[2] & 0xff) << 24)
+                                    | ((b[3] & 0xff) << 16)
+                                    | ((b[4] & 0xff) << 8)
+                                    | (b[5] & 0xff));
+                        }
+                    } catch (IOException e) {
+                        // connection closed
+                    } finally {
+                        try {
+                            to.shutdownOutput();
+                        } catch (IOException ignore) {}
+                    }
+                }
+            };
+        }
+
+        private static void copy(InputStream in, OutputStream out, byte[] b,
+                int len) throws IOException {
+            while (len > 0) {
+                int read = in.read(b, 0, Math.min(len, b.length));
+                if (read < 0)
+                    throw new IOException("EOF");
+                out.write(b, 0, read);
+                len -= read;
+            }
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.net.service;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dcm4che.data.Attributes;
+import org.dcm4che.data.Tag;
+import org.dcm4che.data.UID;
+import org.dcm4che.data.VR;
+import org.dcm4che.net.ApplicationEntity;
+import org.dcm4che.net.Association;
+import org.dcm4che.net.Connection;
+import org.dcm4che.net.Device;
+import org.dcm4che.net.DimseRSPHandler;
+import org.dcm4che.net.Priority;
+import org.dcm4che.net.Status;
+import org.dcm4che.net.TransferCapability;
+import org.dcm4che.net.pdu.AAssociateRQ;
+import org.dcm4che.net.pdu.PresentationContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+public class BasicQueryTaskTest {
+
+    private static final String CUID =
+            UID.StudyRootQueryRetrieveInformationModelFIND;
+
+    private ExecutorService executor;
+    private ScheduledExecutorService scheduledExecutor;
+    private Device scp;
+    private Connection scpConn;
+    private BasicCFindSCP cfindSCP;
+    private ApplicationEntity scuAE;
+    private Connection scuConn;
+
+    private int matches;
+    private int failAt = -1;
+    private int commentsLength;
+    private final AtomicInteger closed = new AtomicInteger();
+    private final CountDownLatch noMoreMatches = new CountDownLatch(1);
+    private final CountDownLatch cancelRQ = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newCachedThreadPool();
+        scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+
+        scp = new Device("scp");
+        scpConn = new Connection("dicom", "localhost", freePort());
+        ApplicationEntity scpAE = new ApplicationEntity("SCP");
+        scpAE.setAssociationAcceptor(true);
+        scpAE.addTransferCapability(new TransferCapability(null,
+                CUID, TransferCapability.Role.SCP,
+                UID.ImplicitVRLittleEndian));
+        scp.addConnection(scpConn);
+        scp.addApplicationEntity(scpAE);
+        scpAE.addConnection(scpConn);
+        cfindSCP = new BasicCFindSCP(CUID) {
+
+            @Override
+            protected QueryTask calculateMatches(Association as,
+                    PresentationContext pc, Attributes rq, Attributes keys) {
+                return new BasicQueryTask(as, pc, rq, keys) {
+                    int i;
+
+                    @Override
+                    public void onCancelRQ(Association as) {
+                        super.onCancelRQ(as);
+                        cancelRQ.countDown();
+                    }
+
+                    @Override
+                    protected boolean hasMoreMatches() {
+                        if (i < matches)
+                            return true;
+                        noMoreMatches.countDown();
+                        return false;
+                    }
+
+                    @Override
+                    protected Attributes nextMatch()
+                            throws DicomServiceException {
+                        if (i == failAt)
+                            throw new DicomServiceException(
+                                    Status.UnableToProcess, "Failed");
+                        return match(++i);
+                    }
+
+                    @Override
+                    protected void close() {
+                        closed.incrementAndGet();
+                    }
+                };
+            }
+        };
+        DicomServiceRegistry services = new DicomServiceRegistry();
+        services.addDicomService(cfindSCP);
+        scp.setDimseRQHandler(services);
+        scp.setExecutor(executor);
+        scp.setScheduledExecutor(scheduledExecutor);
+        scp.bindConnections();
+
+        Device scu = new Device("scu");
+        scuConn = new Connection();
+        scuConn.setResponseTimeout(10000);
+        scuAE = new ApplicationEntity("SCU");
+        scu.addConnection(scuConn);
+        scu.addApplicationEntity(scuAE);
+        scuAE.addConnection(scuConn);
+        scu.setExecutor(executor);
+        scu.setScheduledExecutor(scheduledExecutor);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scp.unbindConnections();
+        executor.shutdownNow();
+        scheduledExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        cfindSCP.setPrefetch(3);
+        matches = 10;
+        QueryResult result = query(-1);
+        assertEquals(Status.Success, result.status);
+        assertEquals(10, result.pending);
+        assertEquals(1, closed.get());
+    }
+
+    @Test
+    public void testProducerError() throws Exception {
+        cfindSCP.setPrefetch(3);
+        matches = 10;
+        failAt = 5;
+        QueryResult result = query(-1);
+        assertEquals(Status.UnableToProcess, result.status);
+        assertEquals(5, result.pending);
+        assertEquals(1, closed.get());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        // the producer queues all matches and the end of the matches, while
+        // the writer of the pending responses is blocked by the SCU
+        cfindSCP.setPrefetch(100);
+        matches = 20;
+        commentsLength = 0x100000;
+        QueryResult result = query(1);
+        assertEquals(Status.Cancel, result.status);
+        assertTrue("pending: " + result.pending, result.pending < matches);
+        assertEquals(1, closed.get());
+    }
+
+    private QueryResult query(final int cancelAfter) throws Exception {
+        AAssociateRQ rq = new AAssociateRQ();
+        rq.setCalledAET("SCP");
+        rq.addPresentationContext(
+                new PresentationContext(1, CUID, UID.ImplicitVRLittleEndian));
+        Association as = scuAE.connect(scuConn,
+                new Connection("scp", "localhost", scpConn.getPort()), rq);
+        Attributes keys = new Attributes();
+        keys.setString(Tag.QueryRetrieveLevel, VR.CS, "STUDY");
+        keys.setNull(Tag.StudyInstanceUID, VR.UI);
+        keys.setNull(Tag.PatientComments, VR.LT);
+        final QueryResult result = new QueryResult();
+        as.cfind(CUID, Priority.NORMAL, keys, null,
+                new DimseRSPHandler(as.nextMessageID()) {
+
+            @Override
+            public void onDimseRSP(Association as, Attributes cmd,
+                    Attributes data) {
+                super.onDimseRSP(as, cmd, data);
+                int status = cmd.getInt(Tag.Status, -1);
+                if (!Status.isPending(status)) {
+                    result.status = status;
+                    return;
+                }
+                if (!("1.2.3." + ++result.pending).equals(
+                        data.getString(Tag.StudyInstanceUID)))
+                    result.outOfOrder = true;
+                if (result.pending == cancelAfter) {
+                    try {
+                        noMoreMatches.await(5, TimeUnit.SECONDS);
+                        cancel(as);
+                        // stop reading further responses, until the SCP
+                        // received the C-CANCEL-RQ
+                        cancelRQ.await(5, TimeUnit.SECONDS);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }
+        });
+        as.waitForOutstandingRSP();
+        as.release();
+        as.waitForSocketClose();
+        // close() is invoked after the final response was written
+        for (int i = 0; closed.get() == 0 && i < 100; i++)
+            Thread.sleep(10);
+        assertFalse(result.outOfOrder);
+        return result;
+    }
+
+    private Attributes match(int i) {
+        Attributes match = new Attributes(3);
+        match.setString(Tag.QueryRetrieveLevel, VR.CS, "STUDY");
+        match.setString(Tag.StudyInstanceUID, VR.UI, "1.2.3." + i);
+        if (commentsLength > 0) {
+            char[] comments = new char[commentsLength];
+            Arrays.fill(comments, 'X');
+            match.setString(Tag.PatientComments, VR.LT,
+                    new String(comments));
+        }
+        return match;
+    }
+
+    private static int freePort() throws IOException {
+        ServerSocket ss = new ServerSocket(0);
+        try {
+            return ss.getLocalPort();
+        } finally {
+            ss.close();
+        }
+    }
+
+    private static class QueryResult {
+        int status = -1;
+        int pending;
+        boolean outOfOrder;
+    }
+}
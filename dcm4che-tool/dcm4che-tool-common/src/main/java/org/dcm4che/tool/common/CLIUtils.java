@@ -45,6 +45,9 @@ import java.security.GeneralSecurityException;
 import java.text.MessageFormat;
 import java.util.Properties;
 import java.util.ResourceBundle;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -65,6 +68,7 @@ import org.dcm4che.io.DicomEncodingOptions;
 import org.dcm4che.net.ApplicationEntity;
 import org.dcm4che.net.Connection;
 import org.dcm4che.net.Device;
+import org.dcm4che.net.DeviceExecutors;
 import org.dcm4che.net.Priority;
 import org.dcm4che.net.SSLManagerFactory;
 import org.dcm4che.net.pdu.AAssociateRQ;
@@ -168,6 +172,13 @@ public class CLIUtils {
                 .create(null));
         opts.addOption(null, "not-async", false, rb.getString("not-async"));
         opts.addOption(null, "not-pack-pdv", false, rb.getString("not-pack-pdv"));
+        opts.addOption(null, "pack-pdu", false, rb.getString("pack-pdu"));
+        opts.addOption(OptionBuilder
+                .hasArg()
+                .withArgName("ms")
+                .withDescription(rb.getString("pack-pdu-delay"))
+                .withLongOpt("pack-pdu-delay")
+                .create(null));
         opts.addOption(OptionBuilder
                 .hasArg()
                 .withArgName("ms")
@@ -227,6 +238,35 @@ public class CLIUtils {
         opts.addOption(null, "tcp-delay", false, rb.getString("tcp-delay"));
     }
 
+    public static void addVirtualThreadsOption(Options opts) {
+        opts.addOption(null, "virtual-threads", false,
+                rb.getString("virtual-threads"));
+    }
+
+    public static ExecutorService newExecutorService(CommandLine cl) {
+        if (!cl.hasOption("virtual-threads"))
+            return Executors.newCachedThreadPool();
+
+        final ExecutorService executor =
+                DeviceExecutors.newVirtualThreadPerTaskExecutor();
+        // virtual threads are daemon threads, so keep the JVM alive
+        // until the executor is shut down and all tasks are completed
+        Thread keepAlive = new Thread("keep-alive") {
+
+            @Override
+            public void run() {
+                try {
+                    while (!executor.awaitTermination(1, TimeUnit.DAYS))
+                        ;
+                } catch (InterruptedException e) {
+                    // exit
+                }
+            }
+        };
+        keepAlive.start();
+        return executor;
+    }
+
     @SuppressWarnings("static-access")
     public static void addConnectTimeoutOption(Options opts) {
         opts.addOption(OptionBuilder
@@ -470,6 +510,10 @@ public class CLIUtils {
             conn.setMaxOpsPerformed(maxOpsPerformed);
         }
         conn.setPackPDV(!cl.hasOption("not-pack-pdv"));
+        conn.setPackPDU(cl.hasOption("pack-pdu"));
+        if (cl.hasOption("pack-pdu-delay"))
+            conn.setPackPDUDelay(
+                    Integer.parseInt(cl.getOptionValue("pack-pdu-delay")));
         if (cl.hasOption("connect-timeout"))
             conn.setConnectTimeout(
                     Integer.parseInt(cl.getOptionValue("connect-timeout")));
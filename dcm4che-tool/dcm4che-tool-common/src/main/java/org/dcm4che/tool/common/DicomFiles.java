@@ -39,7 +39,15 @@
 package org.dcm4che.tool.common;
 
 import java.io.File;
+import java.util.ArrayDeque;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
@@ -58,65 +66,237 @@ import org.dcm4che.util.SafeClose;
  */
 public abstract class DicomFiles {
 
-    private static SAXParser saxParser;
+    private static final ThreadLocal<SAXParser> saxParser =
+            new ThreadLocal<SAXParser>();
 
     public interface Callback {
         boolean dicomFile(File f, Attributes fmi, long dsPos, Attributes ds)
                 throws Exception;
     }
 
+    private static final class Scanned {
+        final File f;
+        final boolean xml;
+        Attributes fmi;
+        long dsPos = -1;
+        Attributes ds;
+        Exception ex;
+
+        Scanned(File f) {
+            this.f = f;
+            this.xml = f.getName().endsWith(".xml");
+        }
+    }
+
     public static void scan(List<String> fnames, Callback scb) {
         for (String fname : fnames)
             scan(new File(fname), scb);
     }
 
+    /**
+     * Scan specified files and directories, parsing the headers of found
+     * files by up to <code>parallelism</code> tasks executed by
+     * <code>executor</code>. Directories are traversed while headers of
+     * already found files are parsed. <code>scb</code> is always invoked
+     * by the calling thread - in the order the files were found, if
+     * <code>ordered</code> is <code>true</code>, otherwise in the order
+     * their parsing completed.
+     * 
+     * @param fnames paths of files or directories
+     * @param scb invoked for each successfully parsed file
+     * @param executor executes the parsing or <code>null</code>
+     * @param parallelism maximal number of files parsed in parallel
+     * @param ordered if <code>scb</code> shall be invoked in order
+     */
+    public static void scan(List<String> fnames, Callback scb,
+            Executor executor, int parallelism, boolean ordered) {
+        if (executor == null || parallelism <= 1) {
+            scan(fnames, scb);
+            return;
+        }
+        ParallelScan scan = new ParallelScan(scb, executor, parallelism, ordered);
+        try {
+            for (String fname : fnames)
+                if (!scan.scan(new File(fname)))
+                    return;
+            scan.drain();
+        } finally {
+            scan.cancel();
+        }
+    }
+
     private static void scan(File f, Callback scb) {
         if (f.isDirectory()) {
-            for (String s : f.list())
-                scan(new File(f, s), scb);
+            File[] files = f.listFiles();
+            if (files == null) {
+                System.out.println();
+                System.out.println("Failed to list directory " + f);
+                return;
+            }
+            for (File file : files)
+                scan(file, scb);
             return;
         }
-        if (f.getName().endsWith(".xml")) {
+        deliver(parse(f), scb);
+    }
+
+    private static final class ParallelScan {
+        final Callback scb;
+        final int window;
+        final Executor executor;
+        final ArrayDeque<Future<Scanned>> pending;
+        final CompletionService<Scanned> completed;
+        int outstanding;
+
+        ParallelScan(Callback scb, Executor executor, int parallelism,
+                boolean ordered) {
+            this.scb = scb;
+            this.executor = executor;
+            // let workers proceed while waiting for the head in order
+            this.window = parallelism * 2;
+            this.pending = new ArrayDeque<Future<Scanned>>(window);
+            this.completed = ordered
+                    ? null
+                    : new ExecutorCompletionService<Scanned>(executor);
+        }
+
+        boolean scan(File f) {
+            if (f.isDirectory()) {
+                File[] files = f.listFiles();
+                if (files == null) {
+                    System.out.println();
+                    System.out.println("Failed to list directory " + f);
+                    return true;
+                }
+                for (File file : files)
+                    if (!scan(file))
+                        return false;
+                return true;
+            }
+            if (outstanding == window && !deliverNext())
+                return false;
+            submit(f);
+            return true;
+        }
+
+        void submit(final File f) {
+            Callable<Scanned> task = new Callable<Scanned>() {
+
+                @Override
+                public Scanned call() {
+                    return parse(f);
+                }
+            };
+            if (completed != null) {
+                pending.add(completed.submit(task));
+            } else {
+                FutureTask<Scanned> future = new FutureTask<Scanned>(task);
+                executor.execute(future);
+                pending.add(future);
+            }
+            outstanding++;
+        }
+
+        void drain() {
+            while (outstanding > 0)
+                if (!deliverNext())
+                    return;
+        }
+
+        boolean deliverNext() {
+            Future<Scanned> future;
             try {
-                SAXParser p = saxParser;
-                if (p == null)
-                    saxParser = p = SAXParserFactory.newInstance().newSAXParser();
-                Attributes ds = new Attributes();
-                ContentHandlerAdapter ch = new ContentHandlerAdapter(ds);
-                p.parse(f, ch);
-                Attributes fmi = ch.getFileMetaInformation();
-                if (fmi == null)
-                    fmi = ds.createFileMetaInformation(UID.ExplicitVRLittleEndian);
-                boolean b = scb.dicomFile(f, fmi, -1, ds);
-                System.out.print(b ? '.' : 'I');
-            } catch (Exception e) {
-                System.out.println();
-                System.out.println("Failed to parse file " + f + ": " + e.getMessage());
-                e.printStackTrace(System.out);
+                if (completed != null) {
+                    future = completed.take();
+                    pending.remove(future);
+                } else
+                    future = pending.poll();
+                outstanding--;
+                deliver(future.get(), scb);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                throw new RuntimeException(cause);
             }
-        } else {
-            DicomInputStream in = null;
+        }
+
+        void cancel() {
+            for (Future<Scanned> future : pending)
+                future.cancel(false);
+        }
+    }
+
+    private static Scanned parse(File f) {
+        Scanned scanned = new Scanned(f);
+        try {
+            if (scanned.xml)
+                parseXML(scanned);
+            else
+                parseDicom(scanned);
+        } catch (Exception e) {
+            scanned.ex = e;
+        }
+        return scanned;
+    }
+
+    private static void parseXML(Scanned scanned) throws Exception {
+        SAXParser p = saxParser.get();
+        if (p == null)
+            saxParser.set(p = SAXParserFactory.newInstance().newSAXParser());
+        Attributes ds = new Attributes();
+        ContentHandlerAdapter ch = new ContentHandlerAdapter(ds);
+        p.parse(scanned.f, ch);
+        Attributes fmi = ch.getFileMetaInformation();
+        if (fmi == null)
+            fmi = ds.createFileMetaInformation(UID.ExplicitVRLittleEndian);
+        scanned.fmi = fmi;
+        scanned.ds = ds;
+    }
+
+    private static void parseDicom(Scanned scanned) throws Exception {
+        DicomInputStream in = null;
+        try {
+            in = new DicomInputStream(scanned.f);
+            in.setIncludeBulkData(IncludeBulkData.NO);
+            Attributes fmi = in.readFileMetaInformation();
+            long dsPos = in.getPosition();
+            Attributes ds = in.readDataset(-1, Tag.PixelData);
+            if (fmi == null)
+                fmi = ds.createFileMetaInformation(!in.explicitVR() 
+                            ? UID.ImplicitVRLittleEndian
+                            : in.bigEndian()
+                                    ? UID.ExplicitVRBigEndian
+                                    : UID.ExplicitVRLittleEndian);
+            scanned.fmi = fmi;
+            scanned.dsPos = dsPos;
+            scanned.ds = ds;
+        } finally {
+            SafeClose.close(in);
+        }
+    }
+
+    private static void deliver(Scanned scanned, Callback scb) {
+        Exception ex = scanned.ex;
+        if (ex == null)
             try {
-                in = new DicomInputStream(f);
-                in.setIncludeBulkData(IncludeBulkData.NO);
-                Attributes fmi = in.readFileMetaInformation();
-                long dsPos = in.getPosition();
-                Attributes ds = in.readDataset(-1, Tag.PixelData);
-                if (fmi == null)
-                    fmi = ds.createFileMetaInformation(!in.explicitVR() 
-                                ? UID.ImplicitVRLittleEndian
-                                : in.bigEndian()
-                                        ? UID.ExplicitVRBigEndian
-                                        : UID.ExplicitVRLittleEndian);
-                boolean b = scb.dicomFile(f, fmi, dsPos, ds);
+                boolean b = scb.dicomFile(scanned.f, scanned.fmi,
+                        scanned.dsPos, scanned.ds);
                 System.out.print(b ? '.' : 'I');
+                return;
             } catch (Exception e) {
-                System.out.println();
-                System.out.println("Failed to scan file " + f + ": " + e.getMessage());
-                e.printStackTrace(System.out);
-            } finally {
-                SafeClose.close(in);
+                ex = e;
             }
-        }
+        System.out.println();
+        System.out.println((scanned.xml ? "Failed to parse file "
+                                        : "Failed to scan file ")
+                + scanned.f + ": " + ex.getMessage());
+        ex.printStackTrace(System.out);
     }
 }
@@ -43,10 +43,17 @@ import java.awt.image.ColorModel;
 import java.io.File;
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
@@ -63,8 +70,10 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.cli.PatternOptionBuilder;
 import org.dcm4che.data.Attributes;
+import org.dcm4che.image.LookupTableCache;
 import org.dcm4che.image.PaletteColorModel;
 import org.dcm4che.imageio.plugins.dcm.DicomImageReadParam;
+import org.dcm4che.imageio.plugins.dcm.DicomImageReader;
 import org.dcm4che.io.DicomInputStream;
 import org.dcm4che.tool.common.CLIUtils;
 import org.dcm4che.util.SafeClose;
@@ -90,8 +99,13 @@ public class Dcm2Jpg {
             ImageIO.getImageReadersByFormatName("DICOM").next();
     private ImageWriter imageWriter;
     private ImageWriteParam imageWriteParam;
+    private String compressionType;
+    private Number quality;
     private int overlayActivationMask = 0xffff;
     private int overlayGrayscaleValue = 0xffff;
+    private int decodeThreads = 1;
+    private int encodeThreads = 1;
+    private int queueSize;
 
     public void initImageWriter(String formatName, String suffix,
             String clazz, String compressionType, Number quality) {
@@ -111,7 +125,13 @@ public class Dcm2Jpg {
                     throw new IllegalArgumentException(
                             MessageFormat.format(rb.getString("noSuchImageWriter"),
                                     clazz, formatName));
-        imageWriteParam = imageWriter.getDefaultWriteParam();
+        this.compressionType = compressionType;
+        this.quality = quality;
+        imageWriteParam = createWriteParam(imageWriter);
+    }
+
+    private ImageWriteParam createWriteParam(ImageWriter imageWriter) {
+        ImageWriteParam imageWriteParam = imageWriter.getDefaultWriteParam();
         if (compressionType != null || quality != null) {
             imageWriteParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
             if (compressionType != null)
@@ -119,6 +139,7 @@ public class Dcm2Jpg {
             if (quality != null)
                 imageWriteParam.setCompressionQuality(quality.floatValue());
         }
+        return imageWriteParam;
     }
 
     public final void setFrame(int frame) {
@@ -161,6 +182,43 @@ public class Dcm2Jpg {
         this.overlayGrayscaleValue = overlayGrayscaleValue;
     }
 
+    /**
+     * Set number of threads reading, decompressing and rendering images,
+     * if several images are converted by {@link #pconvert}.
+     */
+    public final void setDecodeThreads(int decodeThreads) {
+        if (decodeThreads <= 0)
+            throw new IllegalArgumentException(
+                    "decodeThreads: " + decodeThreads);
+        this.decodeThreads = decodeThreads;
+    }
+
+    /**
+     * Set number of threads encoding and writing images, if several images
+     * are converted by {@link #pconvert}.
+     */
+    public final void setEncodeThreads(int encodeThreads) {
+        if (encodeThreads <= 0)
+            throw new IllegalArgumentException(
+                    "encodeThreads: " + encodeThreads);
+        this.encodeThreads = encodeThreads;
+    }
+
+    /**
+     * Set maximal number of images waiting to be rendered or encoded by
+     * {@link #pconvert}. If <code>0</code>, twice the number of threads of
+     * the following stage is used.
+     */
+    public final void setQueueSize(int queueSize) {
+        if (queueSize < 0)
+            throw new IllegalArgumentException("queueSize: " + queueSize);
+        this.queueSize = queueSize;
+    }
+
+    private boolean isPipelined() {
+        return decodeThreads > 1 || encodeThreads > 1 || queueSize > 0;
+    }
+
     @SuppressWarnings("static-access")
     private static CommandLine parseComandLine(String[] args)
             throws ParseException {
@@ -247,6 +305,27 @@ public class Dcm2Jpg {
                 .withDescription(rb.getString("ovlygray"))
                 .withLongOpt("ovlygray")
                 .create());
+        opts.addOption(OptionBuilder
+                .hasArg()
+                .withArgName("number")
+                .withType(PatternOptionBuilder.NUMBER_VALUE)
+                .withDescription(rb.getString("decode-threads"))
+                .withLongOpt("decode-threads")
+                .create());
+        opts.addOption(OptionBuilder
+                .hasArg()
+                .withArgName("number")
+                .withType(PatternOptionBuilder.NUMBER_VALUE)
+                .withDescription(rb.getString("encode-threads"))
+                .withLongOpt("encode-threads")
+                .create());
+        opts.addOption(OptionBuilder
+                .hasArg()
+                .withArgName("size")
+                .withType(PatternOptionBuilder.NUMBER_VALUE)
+                .withDescription(rb.getString("queue-size"))
+                .withLongOpt("queue-size")
+                .create());
         opts.addOption(null, "uselut", false, rb.getString("uselut"));
         opts.addOption(null, "noauto", false, rb.getString("noauto"));
         opts.addOption(null, "lsE", false, rb.getString("lsencoders"));
@@ -295,6 +374,15 @@ public class Dcm2Jpg {
             if (cl.hasOption("ovlygray"))
                 main.setOverlayGrayscaleValue(
                         parseHex(cl.getOptionValue("ovlygray")));
+            if (cl.hasOption("decode-threads"))
+                main.setDecodeThreads(((Number)
+                        cl.getParsedOptionValue("decode-threads")).intValue());
+            if (cl.hasOption("encode-threads"))
+                main.setEncodeThreads(((Number)
+                        cl.getParsedOptionValue("encode-threads")).intValue());
+            if (cl.hasOption("queue-size"))
+                main.setQueueSize(((Number)
+                        cl.getParsedOptionValue("queue-size")).intValue());
             main.setPreferWindow(!cl.hasOption("uselut"));
             main.setAutoWindowing(!cl.hasOption("noauto"));
             main.setPresentationState(
@@ -309,8 +397,14 @@ public class Dcm2Jpg {
                     && !dest.isDirectory())
                 throw new ParseException(
                         MessageFormat.format(rb.getString("nodestdir"), dest));
-            for (String src : argList.subList(0, argc-1))
-                main.mconvert(new File(src), dest);
+            if (main.isPipelined()) {
+                List<File> srcs = new ArrayList<File>(argc-1);
+                for (String src : argList.subList(0, argc-1))
+                    srcs.add(new File(src));
+                main.pconvert(srcs, dest);
+            } else
+                for (String src : argList.subList(0, argc-1))
+                    main.mconvert(new File(src), dest);
         } catch (ParseException e) {
             System.err.println("dcm2jpg: " + e.getMessage());
             System.err.println(rb.getString("try"));
@@ -354,22 +448,238 @@ public class Dcm2Jpg {
     }
 
     public void convert(File src, File dest) throws IOException {
+        writeImage(imageWriter, imageWriteParam, dest,
+                readImage(imageReader, src));
+    }
+
+    private BufferedImage readImage(ImageReader imageReader, File src)
+            throws IOException {
         ImageInputStream iis = ImageIO.createImageInputStream(src);
         try {
-            BufferedImage bi = readImage(iis);
-            bi = convert(bi);
-            dest.delete();
-            ImageOutputStream ios = ImageIO.createImageOutputStream(dest);
-            try {
-                writeImage(ios, bi);
-            } finally {
-                try { ios.close(); } catch (IOException ignore) {}
-            }
+            return convert(readImage(imageReader, iis));
         } finally {
             try { iis.close(); } catch (IOException ignore) {}
         }
     }
 
+    private void writeImage(ImageWriter imageWriter,
+            ImageWriteParam imageWriteParam, File dest, BufferedImage bi)
+            throws IOException {
+        dest.delete();
+        ImageOutputStream ios = ImageIO.createImageOutputStream(dest);
+        try {
+            writeImage(imageWriter, imageWriteParam, ios, bi);
+        } finally {
+            try { ios.close(); } catch (IOException ignore) {}
+        }
+    }
+
+    private static class Job {
+        final File src;
+        final File dest;
+        BufferedImage image;
+
+        Job(File src, File dest) {
+            this.src = src;
+            this.dest = dest;
+        }
+    }
+
+    private static final Job END_OF_JOBS = new Job(null, null);
+
+    private static final long OFFER_TIMEOUT = 100L;
+
+    /**
+     * Puts the job into the queue, unless all consumers of the queue
+     * terminated - e.g. by an {@link Error} - and would never take it.
+     * 
+     * @return <code>false</code> if no consumer is running
+     */
+    private static boolean offer(BlockingQueue<Job> queue, Job job,
+            AtomicInteger consumers) throws InterruptedException {
+        while (!queue.offer(job, OFFER_TIMEOUT, TimeUnit.MILLISECONDS))
+            if (consumers.get() == 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * Puts <code>n</code> {@link #END_OF_JOBS} into the queue, even if the
+     * current thread is interrupted, so no consumer waits forever. Gives
+     * up, if all consumers terminated.
+     */
+    private static void putEndOfJobs(BlockingQueue<Job> queue, int n,
+            AtomicInteger consumers) {
+        boolean interrupted = false;
+        try {
+            for (int i = 0; i < n; i++)
+                for (;;)
+                    try {
+                        if (!offer(queue, END_OF_JOBS, consumers))
+                            return;
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Convert files or directories to <code>dest</code> in a pipeline of
+     * three stages, connected by bounded queues: the calling thread scans
+     * the source files, {@link #setDecodeThreads decode threads} read,
+     * decompress and render the images - applying LUTs and overlays - and
+     * {@link #setEncodeThreads encode threads} encode and write them.
+     * Reports the throughput when all images are converted.
+     */
+    public void pconvert(List<File> srcs, File dest)
+            throws InterruptedException {
+        final BlockingQueue<Job> decodeQueue = new ArrayBlockingQueue<Job>(
+                queueSize > 0 ? queueSize : decodeThreads * 2);
+        final BlockingQueue<Job> encodeQueue = new ArrayBlockingQueue<Job>(
+                queueSize > 0 ? queueSize : encodeThreads * 2);
+        final AtomicInteger runningDecoders = new AtomicInteger(decodeThreads);
+        final AtomicInteger runningEncoders = new AtomicInteger(encodeThreads);
+        final AtomicInteger converted = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        ExecutorService executor =
+                Executors.newFixedThreadPool(decodeThreads + encodeThreads);
+        LookupTableCache lutCache = new LookupTableCache();
+        long t1 = System.currentTimeMillis();
+        for (int i = 0; i < decodeThreads; i++) {
+            final ImageReader imageReader = createImageReader();
+            if (imageReader instanceof DicomImageReader)
+                ((DicomImageReader) imageReader).setLookupTableCache(lutCache);
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        decode(imageReader, decodeQueue, encodeQueue, failed);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        imageReader.dispose();
+                        if (runningDecoders.decrementAndGet() == 0)
+                            putEndOfJobs(encodeQueue, encodeThreads,
+                                    runningEncoders);
+                    }
+                }
+            });
+        }
+        for (int i = 0; i < encodeThreads; i++) {
+            final ImageWriter imageWriter = createImageWriter();
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        encode(imageWriter, createWriteParam(imageWriter),
+                                encodeQueue, converted, failed);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        imageWriter.dispose();
+                        runningEncoders.decrementAndGet();
+                    }
+                }
+            });
+        }
+        try {
+            for (File src : srcs)
+                if (!scan(src, dest, decodeQueue, runningDecoders))
+                    break;
+        } finally {
+            putEndOfJobs(decodeQueue, decodeThreads, runningDecoders);
+            executor.shutdown();
+        }
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        long t2 = System.currentTimeMillis();
+        int n = converted.get();
+        System.out.println(MessageFormat.format(rb.getString("throughput"),
+                n, failed.get(), (t2 - t1) / 1000F,
+                n * 1000F / Math.max(1L, t2 - t1)));
+    }
+
+    /**
+     * Returns <code>false</code> if all decode threads terminated, so
+     * scanning has to be aborted.
+     */
+    private boolean scan(File src, File dest, BlockingQueue<Job> queue,
+            AtomicInteger decoders) throws InterruptedException {
+        if (src.isDirectory()) {
+            dest.mkdir();
+            for (File file : src.listFiles())
+                if (!scan(file, new File(dest, 
+                        file.isFile() ? suffix(file) : file.getName()),
+                        queue, decoders))
+                    return false;
+            return true;
+        }
+        return offer(queue, new Job(src, dest.isDirectory()
+                ? new File(dest, suffix(src))
+                : dest), decoders);
+    }
+
+    private void decode(ImageReader imageReader, BlockingQueue<Job> in,
+            BlockingQueue<Job> out, AtomicInteger failed)
+            throws InterruptedException {
+        Job job;
+        while ((job = in.take()) != END_OF_JOBS) {
+            try {
+                job.image = readImage(imageReader, job.src);
+                out.put(job);
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                System.out.println(
+                        MessageFormat.format(rb.getString("failed"),
+                                job.src, e.getMessage()));
+            }
+        }
+    }
+
+    private void encode(ImageWriter imageWriter,
+            ImageWriteParam imageWriteParam, BlockingQueue<Job> in,
+            AtomicInteger converted, AtomicInteger failed)
+            throws InterruptedException {
+        Job job;
+        while ((job = in.take()) != END_OF_JOBS) {
+            try {
+                writeImage(imageWriter, imageWriteParam, job.dest, job.image);
+                converted.incrementAndGet();
+                System.out.println(
+                        MessageFormat.format(rb.getString("converted"),
+                                job.src, job.dest));
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                System.out.println(
+                        MessageFormat.format(rb.getString("failed"),
+                                job.src, e.getMessage()));
+            }
+        }
+    }
+
+    private ImageReader createImageReader() {
+        try {
+            return imageReader.getOriginatingProvider()
+                    .createReaderInstance();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private ImageWriter createImageWriter() {
+        try {
+            return imageWriter.getOriginatingProvider()
+                    .createWriterInstance();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private BufferedImage convert(BufferedImage bi) {
         ColorModel cm = bi.getColorModel();
         if (cm instanceof PaletteColorModel)
@@ -377,12 +687,13 @@ public class Dcm2Jpg {
         return bi;
     }
 
-    private BufferedImage readImage(ImageInputStream iis) throws IOException {
+    private BufferedImage readImage(ImageReader imageReader,
+            ImageInputStream iis) throws IOException {
         imageReader.setInput(iis);
-        return imageReader.read(frame-1, readParam());
+        return imageReader.read(frame-1, readParam(imageReader));
     }
 
-    private ImageReadParam readParam() {
+    private ImageReadParam readParam(ImageReader imageReader) {
         DicomImageReadParam param =
                 (DicomImageReadParam) imageReader.getDefaultReadParam();
         param.setWindowCenter(windowCenter);
@@ -397,8 +708,9 @@ public class Dcm2Jpg {
         return param;
     }
 
-    private void writeImage(ImageOutputStream ios, BufferedImage bi)
-            throws IOException {
+    private void writeImage(ImageWriter imageWriter,
+            ImageWriteParam imageWriteParam, ImageOutputStream ios,
+            BufferedImage bi) throws IOException {
         imageWriter.setOutput(ios);
         imageWriter.write(null, new IIOImage(bi, null, null), imageWriteParam);
     }
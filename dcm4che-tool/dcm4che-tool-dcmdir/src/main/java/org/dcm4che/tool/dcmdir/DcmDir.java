@@ -86,6 +86,7 @@ public class DcmDir {
     private File file;
     private DicomDirReader in;
     private DicomDirWriter out;
+    private DicomDirWriter.Builder builder;
     private RecordFactory recFact;
 
     @SuppressWarnings("static-access")
@@ -209,6 +210,7 @@ public class DcmDir {
                     int num = 0;
                     for (String arg : argList)
                         num += main.addReferenceTo(new File(arg));
+                    main.commit();
                     main.close();
                     long end = System.currentTimeMillis();
                     System.out.println();
@@ -311,6 +313,7 @@ public class DcmDir {
         SafeClose.close(in);
         in = null;
         out = null;
+        builder = null;
     }
 
     public void openForReadOnly(File file) throws IOException {
@@ -327,6 +330,7 @@ public class DcmDir {
                 fsInfo.getDescriptorFileCharset());
         in = out = DicomDirWriter.open(file);
         out.setEncodingOptions(encOpts);
+        builder = out.builder();
         setCheckDuplicate(false);
     }
 
@@ -335,6 +339,7 @@ public class DcmDir {
         in = out = DicomDirWriter.open(file);
         if (!origSeqLength)
             out.setEncodingOptions(encOpts);
+        builder = out.builder();
         setCheckDuplicate(true);
     }
 
@@ -433,47 +438,47 @@ public class DcmDir {
                 dataset.setString(Tag.PatientID, VR.LO, pid = styuid);
                 prompt = prompt == 'F' ? 'P' : 'p';
             }
-            Attributes patRec = in.findPatientRecord(pid);
+            Attributes patRec = builder.findPatientRecord(pid);
             if (patRec == null) {
                 patRec = recFact.createRecord(RecordType.PATIENT, null,
                         dataset, null, null);
-                out.addRootDirectoryRecord(patRec);
+                builder.addRootDirectoryRecord(patRec);
                 n++;
             }
-            Attributes studyRec = in.findStudyRecord(patRec, styuid);
+            Attributes studyRec = builder.findStudyRecord(patRec, styuid);
             if (studyRec == null) {
                 studyRec = recFact.createRecord(RecordType.STUDY, null,
                         dataset, null, null);
-                out.addLowerDirectoryRecord(patRec, studyRec);
+                builder.addLowerDirectoryRecord(patRec, studyRec);
                 n++;
             }
-            Attributes seriesRec = in.findSeriesRecord(studyRec, seruid);
+            Attributes seriesRec = builder.findSeriesRecord(studyRec, seruid);
             if (seriesRec == null) {
                 seriesRec = recFact.createRecord(RecordType.SERIES, null,
                         dataset, null, null);
-                out.addLowerDirectoryRecord(studyRec, seriesRec);
+                builder.addLowerDirectoryRecord(studyRec, seriesRec);
                 n++;
             }
             Attributes instRec;
             if (checkDuplicate) {
-                instRec = in.findLowerInstanceRecord(seriesRec, false, iuid);
+                instRec = builder.findLowerInstanceRecord(seriesRec, iuid);
                 if (instRec != null) {
                     System.out.print('-');
                     return 0;
                 }
             }
             instRec = recFact.createRecord(dataset, fmi, out.toFileIDs(f));
-            out.addLowerDirectoryRecord(seriesRec, instRec);
+            builder.addLowerDirectoryRecord(seriesRec, instRec);
         } else {
             if (checkDuplicate) {
-                if (in.findRootInstanceRecord(false, iuid) != null) {
+                if (builder.findRootInstanceRecord(iuid) != null) {
                     System.out.print('-');
                     return 0;
                 }
             }
             Attributes instRec = recFact.createRecord(dataset, fmi, 
                     out.toFileIDs(f));
-            out.addRootDirectoryRecord(instRec);
+            builder.addRootDirectoryRecord(instRec);
             prompt = prompt == 'F' ? 'R' : 'r';
         }
         System.out.print(prompt);
@@ -549,7 +554,7 @@ public class DcmDir {
 
     public void commit() throws IOException {
         checkOut();
-        out.commit();
+        builder.commit();
     }
 
     public int purge() throws IOException {
@@ -129,15 +129,21 @@ public class DcmQRSCP {
     private boolean stgCmtOnSameAssoc;
     private boolean sendPendingCGet;
     private int sendPendingCMoveInterval;
+    private int queryPrefetch;
+    private final ArrayList<CFindSCPImpl> cfindSCPs =
+            new ArrayList<CFindSCPImpl>();
     private final FilesetInfo fsInfo = new FilesetInfo();
     private DicomDirReader ddReader;
     private DicomDirWriter ddWriter;
+    private int recordCacheSize;
+    private final DicomDirIndex ddIndex = new DicomDirIndex();
     private HashMap<String, Connection> remoteConnections = new HashMap<String, Connection>();
 
     private final class CStoreSCPImpl extends BasicCStoreSCP {
 
         CStoreSCPImpl() {
             super("*");
+            setParseWhileSpooling(true);
         }
 
         @Override
@@ -229,16 +235,21 @@ public class DcmQRSCP {
             level.validateQueryKeys(keys, rootLevel,
                     rootLevel == QueryRetrieveLevel.IMAGE || relational(as, rq));
             DicomDirReader ddr = getDicomDirReader();
+            DicomDirIndex index = getDicomDirIndex();
             String availability =  getInstanceAvailability();
             switch(level) {
             case PATIENT:
-                return new PatientQueryTask(as, pc, rq, keys, ddr, availability);
+                return new PatientQueryTask(as, pc, rq, keys, ddr, index,
+                        availability);
             case STUDY:
-                return new StudyQueryTask(as, pc, rq, keys, ddr, availability);
+                return new StudyQueryTask(as, pc, rq, keys, ddr, index,
+                        availability);
             case SERIES:
-                return new SeriesQueryTask(as, pc, rq, keys, ddr, availability);
+                return new SeriesQueryTask(as, pc, rq, keys, ddr, index,
+                        availability);
             case IMAGE:
-                return new InstanceQueryTask(as, pc, rq, keys, ddr, availability);
+                return new InstanceQueryTask(as, pc, rq, keys, ddr, index,
+                        availability);
             default:
                 assert true;
             }
@@ -349,21 +360,28 @@ public class DcmQRSCP {
         device.setDimseRQHandler(createServiceRegistry());
     }
 
+    private CFindSCPImpl newCFindSCP(String sopClass, String... qrLevels) {
+        CFindSCPImpl cfindSCP = new CFindSCPImpl(sopClass, qrLevels);
+        cfindSCP.setPrefetch(queryPrefetch);
+        cfindSCPs.add(cfindSCP);
+        return cfindSCP;
+    }
+
     private DicomServiceRegistry createServiceRegistry() {
         DicomServiceRegistry serviceRegistry = new DicomServiceRegistry();
         serviceRegistry.addDicomService(new BasicCEchoSCP());
         serviceRegistry.addDicomService(new CStoreSCPImpl());
         serviceRegistry.addDicomService(new StgCmtSCPImpl());
         serviceRegistry.addDicomService(
-                new CFindSCPImpl(
+                newCFindSCP(
                         UID.PatientRootQueryRetrieveInformationModelFIND,
                         PATIENT_ROOT_LEVELS));
         serviceRegistry.addDicomService(
-                new CFindSCPImpl(
+                newCFindSCP(
                         UID.StudyRootQueryRetrieveInformationModelFIND,
                         STUDY_ROOT_LEVELS));
         serviceRegistry.addDicomService(
-                new CFindSCPImpl(
+                newCFindSCP(
                         UID.PatientStudyOnlyQueryRetrieveInformationModelFINDRetired,
                         PATIENT_STUDY_ONLY_LEVELS));
         serviceRegistry.addDicomService(
@@ -460,6 +478,24 @@ public class DcmQRSCP {
         return sendPendingCMoveInterval;
     }
 
+    public final void setQueryPrefetch(int queryPrefetch) {
+        for (CFindSCPImpl cfindSCP : cfindSCPs)
+            cfindSCP.setPrefetch(queryPrefetch);
+        this.queryPrefetch = queryPrefetch;
+    }
+
+    public final int getQueryPrefetch() {
+        return queryPrefetch;
+    }
+
+    public final int getRecordCacheSize() {
+        return recordCacheSize;
+    }
+
+    public final void setRecordCacheSize(int recordCacheSize) {
+        this.recordCacheSize = recordCacheSize;
+    }
+
     public final void setRecordFactory(RecordFactory recFact) {
         this.recFact = recFact;
     }
@@ -476,6 +512,7 @@ public class DcmQRSCP {
         CLIUtils.addConnectTimeoutOption(opts);
         CLIUtils.addAcceptTimeoutOption(opts);
         CLIUtils.addAEOptions(opts);
+        CLIUtils.addVirtualThreadsOption(opts);
         CLIUtils.addCommonOptions(opts);
         CLIUtils.addResponseTimeoutOption(opts);
         addDicomDirOption(opts);
@@ -483,6 +520,7 @@ public class DcmQRSCP {
         addInstanceAvailabilityOption(opts);
         addStgCmtOptions(opts);
         addSendingPendingOptions(opts);
+        addQueryPrefetchOption(opts);
         addRemoteConnectionsOption(opts);
         return CLIUtils.parseComandLine(args, opts, rb, DcmQRSCP.class);
     }
@@ -512,6 +550,16 @@ public class DcmQRSCP {
                 .create());
    }
 
+    @SuppressWarnings("static-access")
+    private static void addQueryPrefetchOption(Options opts) {
+        opts.addOption(OptionBuilder
+                .hasArg()
+                .withArgName("no")
+                .withDescription(rb.getString("query-prefetch"))
+                .withLongOpt("query-prefetch")
+                .create());
+    }
+
     @SuppressWarnings("static-access")
     private static void addDicomDirOption(Options opts) {
         opts.addOption(OptionBuilder
@@ -526,6 +574,12 @@ public class DcmQRSCP {
                 .withDescription(rb.getString("filepath"))
                 .withLongOpt("filepath")
                 .create(null));
+        opts.addOption(OptionBuilder
+                .hasArg()
+                .withArgName("size")
+                .withDescription(rb.getString("record-cache-size"))
+                .withLongOpt("record-cache-size")
+                .create(null));
     }
 
     @SuppressWarnings("static-access")
@@ -577,8 +631,9 @@ public class DcmQRSCP {
             configureInstanceAvailability(main, cl);
             configureStgCmt(main, cl);
             configureSendPending(main, cl);
+            configureQueryPrefetch(main, cl);
             configureRemoteConnections(main, cl);
-            ExecutorService executorService = Executors.newCachedThreadPool();
+            ExecutorService executorService = CLIUtils.newExecutorService(cl);
             ScheduledExecutorService scheduledExecutorService = 
                     Executors.newSingleThreadScheduledExecutor();
             main.device.setScheduledExecutor(scheduledExecutorService);
@@ -603,6 +658,8 @@ public class DcmQRSCP {
         main.setFilePathFormat(cl.getOptionValue("filepath", 
                         "DICOM/{0020000D,hash}/{0020000E,hash}/{00080018,hash}"));
         main.setRecordFactory(new RecordFactory());
+        main.setRecordCacheSize(
+                CLIUtils.getIntOption(cl, "record-cache-size", 0));
     }
 
     private static void configureInstanceAvailability(DcmQRSCP main, CommandLine cl) {
@@ -620,6 +677,10 @@ public class DcmQRSCP {
                         Integer.parseInt(cl.getOptionValue("pending-cmove")));
     }
 
+    private static void configureQueryPrefetch(DcmQRSCP main, CommandLine cl) {
+        main.setQueryPrefetch(CLIUtils.getIntOption(cl, "query-prefetch", 0));
+    }
+
     private static void configureTransferCapability(DcmQRSCP main, CommandLine cl)
             throws IOException {
         ApplicationEntity ae = main.ae;
@@ -722,6 +783,10 @@ public class DcmQRSCP {
          return ddWriter;
     }
 
+    final DicomDirIndex getDicomDirIndex() {
+         return ddIndex;
+    }
+
     private void openDicomDir() throws IOException {
         if (!dicomDir.exists())
             DicomDirWriter.createEmptyDirectory(dicomDir,
@@ -730,10 +795,14 @@ public class DcmQRSCP {
                     fsInfo.getDescriptorFile(), 
                     fsInfo.getDescriptorFileCharset());
         ddReader = ddWriter = DicomDirWriter.open(dicomDir);
+        ddReader.setRecordCacheSize(recordCacheSize);
+        ddIndex.load(ddReader);
     }
 
     private void openDicomDirForReadOnly() throws IOException {
         ddReader = new DicomDirReader(dicomDir);
+        ddReader.setRecordCacheSize(recordCacheSize);
+        ddIndex.load(ddReader);
     }
 
     public void addRemoteConnection(String aet, Connection remote) {
@@ -748,44 +817,22 @@ public class DcmQRSCP {
             throws DicomServiceException {
         try {
             List<InstanceLocator> list = new ArrayList<InstanceLocator>();
-            String[] patIDs = keys.getStrings(Tag.PatientID);
-            String[] studyIUIDs = keys.getStrings(Tag.StudyInstanceUID);
-            String[] seriesIUIDs = keys.getStrings(Tag.SeriesInstanceUID);
             String[] sopIUIDs = keys.getStrings(Tag.SOPInstanceUID);
             DicomDirReader ddr = ddReader;
-            Attributes patRec = ddr.findPatientRecord(patIDs);
-            while (patRec != null) {
-                Attributes studyRec = ddr.findStudyRecord(patRec, studyIUIDs);
-                while (studyRec != null) {
-                    Attributes seriesRec = ddr.findSeriesRecord(studyRec, seriesIUIDs);
-                    while (seriesRec != null) {
-                        Attributes instRec = ddr.findLowerInstanceRecord(seriesRec, true, sopIUIDs);
-                        while (instRec != null) {
-                            String cuid = instRec.getString(Tag.ReferencedSOPClassUIDInFile);
-                            String iuid = instRec.getString(Tag.ReferencedSOPInstanceUIDInFile);
-                            String tsuid = instRec.getString(Tag.ReferencedTransferSyntaxUIDInFile);
-                            String[] fileIDs = instRec.getStrings(Tag.ReferencedFileID);
-                            String uri = ddr.toFile(fileIDs).toURI().toString();
-                            list.add(new InstanceLocator(cuid, iuid, tsuid, uri));
-                            if (sopIUIDs != null && sopIUIDs.length == 1)
-                                break;
-    
-                            instRec = ddr.findNextInstanceRecord(instRec, true, sopIUIDs);
-                        }
-                        if (seriesIUIDs != null && seriesIUIDs.length == 1)
-                            break;
-    
-                        seriesRec = ddr.findNextSeriesRecord(seriesRec, seriesIUIDs);
-                    }
-                    if (studyIUIDs != null && studyIUIDs.length == 1)
+            for (DicomDirIndex.Record series : ddIndex.findSeries(keys)) {
+                Attributes instRec = ddr.findLowerInstanceRecord(series.rec, true, sopIUIDs);
+                while (instRec != null) {
+                    String cuid = instRec.getString(Tag.ReferencedSOPClassUIDInFile);
+                    String iuid = instRec.getString(Tag.ReferencedSOPInstanceUIDInFile);
+                    String tsuid = instRec.getString(Tag.ReferencedTransferSyntaxUIDInFile);
+                    String[] fileIDs = instRec.getStrings(Tag.ReferencedFileID);
+                    String uri = ddr.toFile(fileIDs).toURI().toString();
+                    list.add(new InstanceLocator(cuid, iuid, tsuid, uri));
+                    if (sopIUIDs != null && sopIUIDs.length == 1)
                         break;
-    
-                    studyRec = ddr.findNextStudyRecord(studyRec, studyIUIDs);
+
+                    instRec = ddr.findNextInstanceRecord(instRec, true, sopIUIDs);
                 }
-                if (patIDs != null && patIDs.length == 1)
-                    break;
-    
-                    patRec = ddr.findNextPatientRecord(patRec, patIDs);
             }
             return list;
         } catch (IOException e) {
@@ -859,32 +906,36 @@ public class DcmQRSCP {
         if (pid == null)
             ds.setString(Tag.PatientID, VR.LO, pid = styuid);
     
-        Attributes patRec = ddWriter.findPatientRecord(pid);
-        if (patRec == null) {
-            patRec = recFact.createRecord(RecordType.PATIENT, null,
-                    ds, null, null);
-            ddWriter.addRootDirectoryRecord(patRec);
-        }
-        Attributes studyRec = ddWriter.findStudyRecord(patRec, styuid);
-        if (studyRec == null) {
-            studyRec = recFact.createRecord(RecordType.STUDY, null,
-                    ds, null, null);
-            ddWriter.addLowerDirectoryRecord(patRec, studyRec);
-        }
-        Attributes seriesRec = ddWriter.findSeriesRecord(studyRec, seruid);
-        if (seriesRec == null) {
-            seriesRec = recFact.createRecord(RecordType.SERIES, null,
-                    ds, null, null);
-            ddWriter.addLowerDirectoryRecord(studyRec, seriesRec);
+        // serialize writers; queries read records concurrently
+        synchronized (ddWriter) {
+            Attributes patRec = ddWriter.findPatientRecord(pid);
+            if (patRec == null) {
+                patRec = recFact.createRecord(RecordType.PATIENT, null,
+                        ds, null, null);
+                ddWriter.addRootDirectoryRecord(patRec);
+            }
+            Attributes studyRec = ddWriter.findStudyRecord(patRec, styuid);
+            if (studyRec == null) {
+                studyRec = recFact.createRecord(RecordType.STUDY, null,
+                        ds, null, null);
+                ddWriter.addLowerDirectoryRecord(patRec, studyRec);
+            }
+            Attributes seriesRec = ddWriter.findSeriesRecord(studyRec, seruid);
+            if (seriesRec == null) {
+                seriesRec = recFact.createRecord(RecordType.SERIES, null,
+                        ds, null, null);
+                ddWriter.addLowerDirectoryRecord(studyRec, seriesRec);
+            }
+            Attributes instRec = 
+                    ddWriter.findLowerInstanceRecord(seriesRec, false, iuid);
+            if (instRec != null)
+                return false;
+        
+            instRec = recFact.createRecord(ds, fmi, ddWriter.toFileIDs(f));
+            ddWriter.addLowerDirectoryRecord(seriesRec, instRec);
+            ddWriter.commit();
+            ddIndex.add(patRec, studyRec, seriesRec);
         }
-        Attributes instRec = 
-                ddWriter.findLowerInstanceRecord(seriesRec, false, iuid);
-        if (instRec != null)
-            return false;
-    
-        instRec = recFact.createRecord(ds, fmi, ddWriter.toFileIDs(f));
-        ddWriter.addLowerDirectoryRecord(seriesRec, instRec);
-        ddWriter.commit();
         return true;
     }
 
@@ -0,0 +1,446 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2011
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.tool.dcmqrscp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import org.dcm4che.data.Attributes;
+import org.dcm4che.data.Tag;
+import org.dcm4che.media.DicomDirReader;
+import org.dcm4che.util.StringUtils;
+
+/**
+ * In-memory index of the Patient, Study and Series Directory Records of a
+ * DICOMDIR. Lookups by Patient ID, Study, Series Instance UID,
+ * Accession Number and Modality are hashed, Study Date ranges are resolved
+ * by a sorted index. The DICOMDIR itself remains the persistent store; the
+ * index is loaded on startup and updated on each added record.
+ *
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+class DicomDirIndex {
+
+    static final class Record {
+
+        final Record parent;
+        final Attributes rec;
+        final ArrayList<Record> children = new ArrayList<Record>();
+
+        Record(Record parent, Attributes rec) {
+            this.parent = parent;
+            this.rec = rec;
+            if (parent != null)
+                parent.children.add(this);
+        }
+    }
+
+    /**
+     * Values of one matching key, with patterns of values containing wild
+     * cards compiled once per query.
+     */
+    private static final class Key {
+
+        final String[] values;
+        final Pattern[] patterns;
+        final boolean hashable;
+
+        Key(String[] values) {
+            this.values = values;
+            this.patterns = new Pattern[values.length];
+            boolean hashable = true;
+            for (int i = 0; i < values.length; i++) {
+                String value = values[i];
+                if (value == null)
+                    hashable = false;
+                else if (StringUtils.containsWildCard(value)) {
+                    patterns[i] = StringUtils.compilePattern(value, false);
+                    hashable = false;
+                }
+            }
+            this.hashable = hashable;
+        }
+
+        boolean matches(String val) {
+            if (val == null)
+                return false;
+
+            for (int i = 0; i < values.length; i++)
+                if (patterns[i] != null
+                        ? patterns[i].matcher(val).matches()
+                        : val.equals(values[i]))
+                    return true;
+            return false;
+        }
+    }
+
+    private static final class Keys {
+
+        final Key patIDs;
+        final Key studyIUIDs;
+        final Key accNos;
+        final String studyDate;
+        final Key modalitiesInStudy;
+        final Key seriesIUIDs;
+        final Key modalities;
+
+        Keys(Attributes keys) {
+            patIDs = keyOf(keys, Tag.PatientID);
+            studyIUIDs = keyOf(keys, Tag.StudyInstanceUID);
+            accNos = keyOf(keys, Tag.AccessionNumber);
+            studyDate = dateRangeOf(keys, Tag.StudyDate);
+            modalitiesInStudy = keyOf(keys, Tag.ModalitiesInStudy);
+            seriesIUIDs = keyOf(keys, Tag.SeriesInstanceUID);
+            modalities = keyOf(keys, Tag.Modality);
+        }
+    }
+
+    private final LinkedHashMap<String, Record> patients =
+            new LinkedHashMap<String, Record>();
+    private final HashMap<String, Record> studies =
+            new HashMap<String, Record>();
+    private final HashMap<String, List<Record>> studiesByAccNo =
+            new HashMap<String, List<Record>>();
+    private final TreeMap<String, List<Record>> studiesByDate =
+            new TreeMap<String, List<Record>>();
+    private final HashMap<String, Record> series =
+            new HashMap<String, Record>();
+    private final HashMap<String, List<Record>> seriesByModality =
+            new HashMap<String, List<Record>>();
+
+    public synchronized void clear() {
+        patients.clear();
+        studies.clear();
+        studiesByAccNo.clear();
+        studiesByDate.clear();
+        series.clear();
+        seriesByModality.clear();
+    }
+
+    public synchronized int getNumberOfPatients() {
+        return patients.size();
+    }
+
+    public synchronized int getNumberOfStudies() {
+        return studies.size();
+    }
+
+    public synchronized int getNumberOfSeries() {
+        return series.size();
+    }
+
+    public void load(DicomDirReader ddr) throws IOException {
+        clear();
+        for (Attributes patRec = ddr.findPatientRecord(); patRec != null;
+                patRec = ddr.findNextPatientRecord(patRec)) {
+            add(patRec, null, null);
+            for (Attributes studyRec = ddr.findStudyRecord(patRec);
+                    studyRec != null;
+                    studyRec = ddr.findNextStudyRecord(studyRec)) {
+                add(patRec, studyRec, null);
+                for (Attributes seriesRec = ddr.findSeriesRecord(studyRec);
+                        seriesRec != null;
+                        seriesRec = ddr.findNextSeriesRecord(seriesRec))
+                    add(patRec, studyRec, seriesRec);
+            }
+        }
+    }
+
+    /**
+     * Add Patient, Study and Series Directory Records to the index, if not
+     * already contained.
+     * 
+     * @param patRec Patient Directory Record
+     * @param studyRec Study Directory Record or <code>null</code>
+     * @param seriesRec Series Directory Record or <code>null</code>
+     */
+    public synchronized void add(Attributes patRec, Attributes studyRec,
+            Attributes seriesRec) {
+        String pid = patRec.getString(Tag.PatientID);
+        Record patient = patients.get(pid);
+        if (patient == null)
+            patients.put(pid, patient = new Record(null, patRec));
+
+        if (studyRec == null)
+            return;
+
+        String studyIUID = studyRec.getString(Tag.StudyInstanceUID);
+        Record study = studies.get(studyIUID);
+        if (study == null) {
+            studies.put(studyIUID, study = new Record(patient, studyRec));
+            put(studiesByAccNo, studyRec.getString(Tag.AccessionNumber), study);
+            put(studiesByDate, studyRec.getString(Tag.StudyDate), study);
+        }
+
+        if (seriesRec == null)
+            return;
+
+        String seriesIUID = seriesRec.getString(Tag.SeriesInstanceUID);
+        if (!series.containsKey(seriesIUID)) {
+            Record ser = new Record(study, seriesRec);
+            series.put(seriesIUID, ser);
+            put(seriesByModality, seriesRec.getString(Tag.Modality), ser);
+        }
+    }
+
+    public synchronized List<Record> findPatients(Attributes keys) {
+        Keys k = new Keys(keys);
+        Collection<Record> candidates = isHashable(k.patIDs)
+                ? lookup(patients, k.patIDs)
+                : patients.values();
+        ArrayList<Record> result = new ArrayList<Record>(candidates.size());
+        for (Record patient : candidates)
+            if (matchesPatient(patient, k))
+                result.add(patient);
+        return result;
+    }
+
+    public synchronized List<Record> findStudies(Attributes keys) {
+        return findStudies(new Keys(keys));
+    }
+
+    private List<Record> findStudies(Keys k) {
+        Collection<Record> candidates;
+        if (isHashable(k.studyIUIDs))
+            candidates = lookup(studies, k.studyIUIDs);
+        else if (isHashable(k.accNos))
+            candidates = lookupAll(studiesByAccNo, k.accNos);
+        else if (k.studyDate != null)
+            candidates = studiesInDateRange(k.studyDate);
+        else if (isHashable(k.patIDs))
+            candidates = childrenOf(lookup(patients, k.patIDs));
+        else
+            candidates = childrenOf(patients.values());
+        ArrayList<Record> result = new ArrayList<Record>(candidates.size());
+        for (Record study : candidates)
+            if (matchesStudy(study, k) && matchesPatient(study.parent, k))
+                result.add(study);
+        return result;
+    }
+
+    public synchronized List<Record> findSeries(Attributes keys) {
+        Keys k = new Keys(keys);
+        if (!isHashable(k.seriesIUIDs) && !isHashable(k.modalities))
+            return findSeriesOf(findStudies(k), k);
+
+        Collection<Record> candidates = isHashable(k.seriesIUIDs)
+                ? lookup(series, k.seriesIUIDs)
+                : lookupAll(seriesByModality, k.modalities);
+        ArrayList<Record> result = new ArrayList<Record>(candidates.size());
+        for (Record ser : candidates)
+            if (matchesSeries(ser, k)
+                    && matchesStudy(ser.parent, k)
+                    && matchesPatient(ser.parent.parent, k))
+                result.add(ser);
+        return result;
+    }
+
+    private List<Record> findSeriesOf(List<Record> studies, Keys k) {
+        ArrayList<Record> result = new ArrayList<Record>();
+        for (Record study : studies)
+            for (Record ser : study.children)
+                if (matchesSeries(ser, k))
+                    result.add(ser);
+        return result;
+    }
+
+    private static boolean matchesPatient(Record patient, Keys k) {
+        return matches(k.patIDs, patient.rec.getString(Tag.PatientID));
+    }
+
+    private static boolean matchesStudy(Record study, Keys k) {
+        Attributes rec = study.rec;
+        return matches(k.studyIUIDs, rec.getString(Tag.StudyInstanceUID))
+            && matches(k.accNos, rec.getString(Tag.AccessionNumber))
+            && matchesDate(k.studyDate, rec.getString(Tag.StudyDate))
+            && matchesModalitiesInStudy(study, k.modalitiesInStudy);
+    }
+
+    private static boolean matchesSeries(Record ser, Keys k) {
+        Attributes rec = ser.rec;
+        return matches(k.seriesIUIDs, rec.getString(Tag.SeriesInstanceUID))
+            && matches(k.modalities, rec.getString(Tag.Modality));
+    }
+
+    private static boolean matchesModalitiesInStudy(Record study,
+            Key modalities) {
+        if (modalities == null)
+            return true;
+
+        for (Record ser : study.children)
+            if (matches(modalities, ser.rec.getString(Tag.Modality)))
+                return true;
+        return false;
+    }
+
+    private static boolean matches(Key key, String val) {
+        return key == null || key.matches(val);
+    }
+
+    private static boolean matchesDate(String range, String date) {
+        if (range == null)
+            return true;
+
+        if (date == null)
+            return false;
+
+        int dash = range.indexOf('-');
+        if (dash < 0)
+            return range.equals(date);
+
+        String start = range.substring(0, dash);
+        String end = range.substring(dash + 1);
+        return (start.length() == 0 || start.compareTo(date) <= 0)
+            && (end.length() == 0 || end.compareTo(date) >= 0);
+    }
+
+    private Collection<Record> studiesInDateRange(String range) {
+        int dash = range.indexOf('-');
+        if (dash < 0)
+            return listOf(studiesByDate.get(range));
+
+        String start = range.substring(0, dash);
+        String end = range.substring(dash + 1);
+        Collection<List<Record>> lists;
+        if (start.length() == 0)
+            lists = end.length() == 0
+                    ? studiesByDate.values()
+                    : studiesByDate.headMap(end, true).values();
+        else
+            lists = end.length() == 0
+                    ? studiesByDate.tailMap(start, true).values()
+                    : studiesByDate.subMap(start, true, end, true).values();
+        ArrayList<Record> result = new ArrayList<Record>();
+        for (List<Record> list : lists)
+            result.addAll(list);
+        return result;
+    }
+
+    /**
+     * Returns the matching key for the specified attribute, or
+     * <code>null</code> if the key is empty or contains a value consisting
+     * only of <code>*</code>, which matches any value, even no value.
+     */
+    private static Key keyOf(Attributes keys, int tag) {
+        String[] ss = keys.getStrings(tag);
+        if (ss == null || ss.length == 0
+                || ss.length == 1 && (ss[0] == null || ss[0].length() == 0))
+            return null;
+        for (String s : ss)
+            if (isUniversal(s))
+                return null;
+        return new Key(ss);
+    }
+
+    private static boolean isUniversal(String s) {
+        if (s == null || s.length() == 0)
+            return false;
+
+        for (int i = 0; i < s.length(); i++)
+            if (s.charAt(i) != '*')
+                return false;
+        return true;
+    }
+
+    private static String dateRangeOf(Attributes keys, int tag) {
+        String range = keys.getString(tag);
+        return range == null || range.equals("-") ? null : range;
+    }
+
+    private static boolean isHashable(Key key) {
+        return key != null && key.hashable;
+    }
+
+    private static Collection<Record> lookup(HashMap<String, Record> map,
+            Key key) {
+        String[] keyVals = key.values;
+        ArrayList<Record> result = new ArrayList<Record>(keyVals.length);
+        for (String keyVal : keyVals) {
+            Record rec = map.get(keyVal);
+            if (rec != null)
+                result.add(rec);
+        }
+        return result;
+    }
+
+    private static Collection<Record> lookupAll(
+            HashMap<String, List<Record>> map, Key key) {
+        String[] keyVals = key.values;
+        if (keyVals.length == 1)
+            return listOf(map.get(keyVals[0]));
+
+        ArrayList<Record> result = new ArrayList<Record>();
+        for (String keyVal : keyVals) {
+            List<Record> list = map.get(keyVal);
+            if (list != null)
+                result.addAll(list);
+        }
+        return result;
+    }
+
+    private static Collection<Record> childrenOf(Collection<Record> parents) {
+        ArrayList<Record> result = new ArrayList<Record>();
+        for (Record parent : parents)
+            result.addAll(parent.children);
+        return result;
+    }
+
+    private static List<Record> listOf(List<Record> list) {
+        return list != null ? list : Collections.<Record>emptyList();
+    }
+
+    private static void put(Map<String, List<Record>> map,
+            String key, Record rec) {
+        if (key == null)
+            return;
+
+        List<Record> list = map.get(key);
+        if (list == null)
+            map.put(key, list = new ArrayList<Record>(1));
+        list.add(rec);
+    }
+}
@@ -52,31 +52,30 @@ import org.dcm4che.util.StringUtils;
 class InstanceQueryTask extends SeriesQueryTask {
 
     protected final String[] sopIUIDs;
+    protected DicomDirIndex.Record series;
     protected Attributes instRec;
+    private Attributes prevInstRec;
 
     public InstanceQueryTask(Association as, PresentationContext pc, Attributes rq, Attributes keys,
-            DicomDirReader ddr, String availability) throws DicomServiceException {
-        super(as, pc, rq, keys, ddr, availability);
+            DicomDirReader ddr, DicomDirIndex index, String availability)
+            throws DicomServiceException {
+        super(as, pc, rq, keys, ddr, index, availability);
         sopIUIDs = StringUtils.maskNull(keys.getStrings(Tag.SOPInstanceUID));
-        wrappedFindNextInstance();
     }
 
     @Override
     public boolean hasMoreMatches() throws DicomServiceException {
+        if (instRec == null)
+            wrappedFindNextInstance();
         return instRec != null;
     }
 
     @Override
     public Attributes nextMatch() throws DicomServiceException {
-        Attributes ret = new Attributes(patRec.size()
-                + studyRec.size()
-                + seriesRec.size()
-                + instRec.size());
-        ret.addAll(patRec);
-        ret.addAll(studyRec);
-        ret.addAll(seriesRec);
+        Attributes ret = toMatch(series);
         ret.addAll(instRec);
-        wrappedFindNextInstance();
+        prevInstRec = instRec;
+        instRec = null;
         return ret;
     }
 
@@ -88,20 +87,16 @@ class InstanceQueryTask extends SeriesQueryTask {
         }
     }
 
-    protected boolean findNextInstance() throws IOException {
-        if (seriesRec == null)
-            return false;
-
-        if (instRec == null)
-            instRec = ddr.findLowerInstanceRecord(seriesRec, true, sopIUIDs);
-        else if (sopIUIDs != null && sopIUIDs.length == 1)
-            instRec = null;
-        else
-            instRec = ddr.findNextInstanceRecord(instRec, true, sopIUIDs);
-
-        while (instRec == null && super.findNextSeries())
-            instRec = ddr.findLowerInstanceRecord(seriesRec, true, sopIUIDs);
+    protected boolean findNextInstance() throws IOException,
+            DicomServiceException {
+        if (prevInstRec != null && !(sopIUIDs != null && sopIUIDs.length == 1))
+            instRec = ddr.findNextInstanceRecord(prevInstRec, true, sopIUIDs);
+        prevInstRec = null;
 
+        while (instRec == null && super.hasMoreMatches()) {
+            series = nextRecord();
+            instRec = ddr.findLowerInstanceRecord(series.rec, true, sopIUIDs);
+        }
         return instRec != null;
     }
-}
\ No newline at end of file
+}
@@ -38,14 +38,14 @@
 
 package org.dcm4che.tool.dcmqrscp;
 
-import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
 
 import org.dcm4che.data.Attributes;
 import org.dcm4che.data.Tag;
 import org.dcm4che.data.VR;
 import org.dcm4che.media.DicomDirReader;
 import org.dcm4che.net.Association;
-import org.dcm4che.net.Status;
 import org.dcm4che.net.pdu.PresentationContext;
 import org.dcm4che.net.service.BasicQueryTask;
 import org.dcm4che.net.service.DicomServiceException;
@@ -53,29 +53,41 @@ import org.dcm4che.net.service.DicomServiceException;
 class PatientQueryTask extends BasicQueryTask {
 
     protected final DicomDirReader ddr;
+    protected final DicomDirIndex index;
     protected final String availability;
-    protected final String[] patIDs;
-    protected Attributes patRec;
+    private Iterator<DicomDirIndex.Record> matches;
 
     public PatientQueryTask(Association as, PresentationContext pc, Attributes rq, Attributes keys,
-            DicomDirReader ddr, String availability) throws DicomServiceException {
+            DicomDirReader ddr, DicomDirIndex index, String availability)
+            throws DicomServiceException {
         super(as, pc, rq, keys);
         this.ddr = ddr;
+        this.index = index;
         this.availability = availability;
-        this.patIDs = keys.getStrings(Tag.PatientID);
-        wrappedFindNextPatient();
     }
 
     @Override
     public boolean hasMoreMatches() throws DicomServiceException {
-        return patRec != null;
+        if (matches == null)
+            matches = findMatches().iterator();
+        return matches.hasNext();
     }
 
     @Override
     public Attributes nextMatch() throws DicomServiceException {
-        Attributes tmp = patRec;
-        wrappedFindNextPatient();
-        return tmp;
+        return toMatch(nextRecord());
+    }
+
+    protected DicomDirIndex.Record nextRecord() {
+        return matches.next();
+    }
+
+    protected List<DicomDirIndex.Record> findMatches() {
+        return index.findPatients(keys);
+    }
+
+    protected Attributes toMatch(DicomDirIndex.Record patient) {
+        return new Attributes(patient.rec);
     }
 
     @Override
@@ -102,23 +114,4 @@ class PatientQueryTask extends BasicQueryTask {
 
         return adjust;
     }
-
-    private void wrappedFindNextPatient() throws DicomServiceException {
-        try {
-            findNextPatient();
-        } catch (IOException e) {
-            throw wrapException(Status.UnableToProcess, e);
-        }
-    }
-
-    protected boolean findNextPatient() throws IOException {
-        if (patRec == null)
-            patRec = ddr.findPatientRecord(patIDs);
-        else if (patIDs != null && patIDs.length == 1)
-            patRec = null;
-        else
-            patRec = ddr.findNextPatientRecord(patRec, patIDs);
-
-        return patRec != null;
-    }
 }
\ No newline at end of file
@@ -38,69 +38,38 @@
 
 package org.dcm4che.tool.dcmqrscp;
 
-import java.io.IOException;
+import java.util.List;
 
 import org.dcm4che.data.Attributes;
-import org.dcm4che.data.Tag;
 import org.dcm4che.media.DicomDirReader;
 import org.dcm4che.net.Association;
-import org.dcm4che.net.Status;
 import org.dcm4che.net.pdu.PresentationContext;
 import org.dcm4che.net.service.DicomServiceException;
-import org.dcm4che.util.StringUtils;
 
 class SeriesQueryTask extends StudyQueryTask {
 
-    protected final String[] seriesIUIDs;
-    protected Attributes seriesRec;
-
     public SeriesQueryTask(Association as, PresentationContext pc, Attributes rq, Attributes keys,
-            DicomDirReader ddr, String availability) throws DicomServiceException {
-        super(as, pc, rq, keys, ddr, availability);
-        seriesIUIDs = StringUtils.maskNull(
-                keys.getStrings(Tag.SeriesInstanceUID));
-        wrappedFindNextSeries();
-   }
+            DicomDirReader ddr, DicomDirIndex index, String availability)
+            throws DicomServiceException {
+        super(as, pc, rq, keys, ddr, index, availability);
+    }
 
     @Override
-    public boolean hasMoreMatches() throws DicomServiceException {
-        return seriesRec != null;
+    protected List<DicomDirIndex.Record> findMatches() {
+        return index.findSeries(keys);
     }
 
     @Override
-    public Attributes nextMatch() throws DicomServiceException {
+    protected Attributes toMatch(DicomDirIndex.Record series) {
+        Attributes patRec = series.parent.parent.rec;
+        Attributes studyRec = series.parent.rec;
+        Attributes seriesRec = series.rec;
         Attributes ret = new Attributes(patRec.size()
                 + studyRec.size()
                 + seriesRec.size());
         ret.addAll(patRec);
         ret.addAll(studyRec);
         ret.addAll(seriesRec);
-        wrappedFindNextSeries();
         return ret;
     }
-
-    private void wrappedFindNextSeries() throws DicomServiceException {
-        try {
-            findNextSeries();
-        } catch (IOException e) {
-            throw wrapException(Status.UnableToProcess, e);
-        }
-    }
-
-    protected boolean findNextSeries() throws IOException {
-        if (studyRec == null)
-            return false;
-
-        if (seriesRec == null)
-            seriesRec = ddr.findSeriesRecord(studyRec, seriesIUIDs);
-        else if (seriesIUIDs != null && seriesIUIDs.length == 1)
-            seriesRec = null;
-        else
-            seriesRec = ddr.findNextSeriesRecord(seriesRec, seriesIUIDs);
-
-        while (seriesRec == null && super.findNextStudy())
-            seriesRec = ddr.findSeriesRecord(studyRec, seriesIUIDs);
-
-        return seriesRec != null;
-    }
-}
\ No newline at end of file
+}
@@ -38,65 +38,34 @@
 
 package org.dcm4che.tool.dcmqrscp;
 
-import java.io.IOException;
+import java.util.List;
 
 import org.dcm4che.data.Attributes;
-import org.dcm4che.data.Tag;
 import org.dcm4che.media.DicomDirReader;
 import org.dcm4che.net.Association;
-import org.dcm4che.net.Status;
 import org.dcm4che.net.pdu.PresentationContext;
 import org.dcm4che.net.service.DicomServiceException;
-import org.dcm4che.util.StringUtils;
 
 class StudyQueryTask extends PatientQueryTask {
 
-    protected final String[] studyIUIDs;
-    protected Attributes studyRec;
-
     public StudyQueryTask(Association as, PresentationContext pc, Attributes rq, Attributes keys,
-            DicomDirReader ddr, String availability) throws DicomServiceException {
-        super(as, pc, rq, keys, ddr, availability);
-        studyIUIDs = StringUtils.maskNull(keys.getStrings(Tag.StudyInstanceUID));
-        wrappedFindNextStudy();
+            DicomDirReader ddr, DicomDirIndex index, String availability)
+            throws DicomServiceException {
+        super(as, pc, rq, keys, ddr, index, availability);
     }
 
     @Override
-    public boolean hasMoreMatches() throws DicomServiceException {
-        return studyRec != null;
+    protected List<DicomDirIndex.Record> findMatches() {
+        return index.findStudies(keys);
     }
 
     @Override
-    public Attributes nextMatch() throws DicomServiceException {
+    protected Attributes toMatch(DicomDirIndex.Record study) {
+        Attributes patRec = study.parent.rec;
+        Attributes studyRec = study.rec;
         Attributes ret = new Attributes(patRec.size() + studyRec.size());
         ret.addAll(patRec);
         ret.addAll(studyRec);
-        wrappedFindNextStudy();
         return ret;
     }
-
-    private void wrappedFindNextStudy() throws DicomServiceException {
-        try {
-            findNextStudy();
-        } catch (IOException e) {
-            throw wrapException(Status.UnableToProcess, e);
-        }
-    }
-
-    protected boolean findNextStudy() throws IOException {
-        if (patRec == null)
-            return false;
-
-        if (studyRec == null)
-            studyRec = ddr.findStudyRecord(patRec, studyIUIDs);
-        else if (studyIUIDs != null && studyIUIDs.length == 1)
-            studyRec = null;
-        else
-            studyRec = ddr.findNextStudyRecord(studyRec, studyIUIDs);
-
-        while (studyRec == null && super.findNextPatient())
-            studyRec = ddr.findStudyRecord(patRec, studyIUIDs);
-
-        return studyRec != null;
-    }
-}
\ No newline at end of file
+}
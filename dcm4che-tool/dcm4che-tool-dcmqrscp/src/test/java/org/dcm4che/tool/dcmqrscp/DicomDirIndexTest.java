@@ -0,0 +1,186 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.tool.dcmqrscp;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.dcm4che.data.Attributes;
+import org.dcm4che.data.Tag;
+import org.dcm4che.data.VR;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+public class DicomDirIndexTest {
+
+    private DicomDirIndex index;
+
+    @Before
+    public void setUp() {
+        index = new DicomDirIndex();
+        Attributes pat1 = patient("P1");
+        Attributes pat2 = patient("P2");
+        Attributes study11 = study("1.1", "A11", "20120101");
+        Attributes study12 = study("1.2", null, "20120615");
+        Attributes study21 = study("2.1", "A21", null);
+        index.add(pat1, study11, series("1.1.1", "CT"));
+        index.add(pat1, study11, series("1.1.2", "SR"));
+        index.add(pat1, study12, series("1.2.1", "MR"));
+        index.add(pat2, study21, series("2.1.1", "CT"));
+        index.add(pat2, study21, series("2.1.1", "CT"));
+    }
+
+    private static Attributes patient(String pid) {
+        Attributes rec = new Attributes(1);
+        rec.setString(Tag.PatientID, VR.LO, pid);
+        return rec;
+    }
+
+    private static Attributes study(String iuid, String accNo, String date) {
+        Attributes rec = new Attributes(3);
+        rec.setString(Tag.StudyInstanceUID, VR.UI, iuid);
+        if (accNo != null)
+            rec.setString(Tag.AccessionNumber, VR.SH, accNo);
+        if (date != null)
+            rec.setString(Tag.StudyDate, VR.DA, date);
+        return rec;
+    }
+
+    private static Attributes series(String iuid, String modality) {
+        Attributes rec = new Attributes(2);
+        rec.setString(Tag.SeriesInstanceUID, VR.UI, iuid);
+        rec.setString(Tag.Modality, VR.CS, modality);
+        return rec;
+    }
+
+    private static Attributes keys(int tag, VR vr, String... values) {
+        Attributes keys = new Attributes(1);
+        keys.setString(tag, vr, values);
+        return keys;
+    }
+
+    private static String[] valuesOf(List<DicomDirIndex.Record> recs,
+            int tag) {
+        String[] ss = new String[recs.size()];
+        for (int i = 0; i < ss.length; i++)
+            ss[i] = recs.get(i).rec.getString(tag);
+        return ss;
+    }
+
+    @Test
+    public void testAdd() {
+        assertEquals(2, index.getNumberOfPatients());
+        assertEquals(3, index.getNumberOfStudies());
+        assertEquals(4, index.getNumberOfSeries());
+    }
+
+    @Test
+    public void testFindPatients() {
+        assertArrayEquals(new String[] { "P2" }, valuesOf(
+                index.findPatients(keys(Tag.PatientID, VR.LO, "P2")),
+                Tag.PatientID));
+        assertArrayEquals(new String[] { "P1", "P2" }, valuesOf(
+                index.findPatients(keys(Tag.PatientID, VR.LO, "P?")),
+                Tag.PatientID));
+        assertEquals(0, index.findPatients(
+                keys(Tag.PatientID, VR.LO, "X*")).size());
+    }
+
+    @Test
+    public void testFindStudiesByAccessionNumber() {
+        assertArrayEquals(new String[] { "1.1" }, valuesOf(
+                index.findStudies(keys(Tag.AccessionNumber, VR.SH, "A11")),
+                Tag.StudyInstanceUID));
+        assertArrayEquals(new String[] { "1.1", "2.1" }, valuesOf(
+                index.findStudies(keys(Tag.AccessionNumber, VR.SH, "A*")),
+                Tag.StudyInstanceUID));
+    }
+
+    @Test
+    public void testUniversalMatchingOfMissingValue() {
+        assertArrayEquals(new String[] { "1.1", "1.2", "2.1" }, valuesOf(
+                index.findStudies(keys(Tag.AccessionNumber, VR.SH, "*")),
+                Tag.StudyInstanceUID));
+        assertArrayEquals(new String[] { "1.1", "1.2", "2.1" }, valuesOf(
+                index.findStudies(keys(Tag.StudyDate, VR.DA, "-")),
+                Tag.StudyInstanceUID));
+    }
+
+    @Test
+    public void testFindStudiesByDateRange() {
+        assertArrayEquals(new String[] { "1.2" }, valuesOf(
+                index.findStudies(keys(Tag.StudyDate, VR.DA, "20120601-")),
+                Tag.StudyInstanceUID));
+        assertArrayEquals(new String[] { "1.1" }, valuesOf(
+                index.findStudies(keys(Tag.StudyDate, VR.DA, "-20120531")),
+                Tag.StudyInstanceUID));
+        assertArrayEquals(new String[] { "1.1" }, valuesOf(
+                index.findStudies(keys(Tag.StudyDate, VR.DA, "20120101")),
+                Tag.StudyInstanceUID));
+    }
+
+    @Test
+    public void testFindStudiesByModalitiesInStudy() {
+        assertArrayEquals(new String[] { "1.1", "2.1" }, valuesOf(
+                index.findStudies(keys(Tag.ModalitiesInStudy, VR.CS, "CT")),
+                Tag.StudyInstanceUID));
+        assertArrayEquals(new String[] { "1.1", "1.2" }, valuesOf(
+                index.findStudies(
+                        keys(Tag.ModalitiesInStudy, VR.CS, "SR", "MR")),
+                Tag.StudyInstanceUID));
+    }
+
+    @Test
+    public void testFindSeries() {
+        assertArrayEquals(new String[] { "1.1.1", "2.1.1" }, valuesOf(
+                index.findSeries(keys(Tag.Modality, VR.CS, "CT")),
+                Tag.SeriesInstanceUID));
+        assertArrayEquals(new String[] { "1.2.1" }, valuesOf(
+                index.findSeries(keys(Tag.SeriesInstanceUID, VR.UI, "1.2.1")),
+                Tag.SeriesInstanceUID));
+        Attributes keys = keys(Tag.PatientID, VR.LO, "P1");
+        keys.setString(Tag.Modality, VR.CS, "?R");
+        assertArrayEquals(new String[] { "1.1.2", "1.2.1" }, valuesOf(
+                index.findSeries(keys), Tag.SeriesInstanceUID));
+    }
+}
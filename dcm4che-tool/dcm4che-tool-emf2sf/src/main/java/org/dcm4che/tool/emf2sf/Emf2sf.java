@@ -44,6 +44,8 @@ import java.text.DecimalFormat;
 import java.text.MessageFormat;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.OptionBuilder;
@@ -52,6 +54,7 @@ import org.apache.commons.cli.ParseException;
 import org.dcm4che.data.Attributes;
 import org.dcm4che.data.Tag;
 import org.dcm4che.emf.MultiframeExtractor;
+import org.dcm4che.emf.SingleFrameSink;
 import org.dcm4che.io.DicomInputStream;
 import org.dcm4che.io.DicomInputStream.IncludeBulkData;
 import org.dcm4che.io.DicomOutputStream;
@@ -71,6 +74,7 @@ public class Emf2sf {
     private int[] frames;
     private DecimalFormat outFileFormat;
     private File outDir;
+    private int threads = 1;
 
     public final void setOutputDirectory(File outDir) {
         outDir.mkdirs();
@@ -92,6 +96,12 @@ public class Emf2sf {
     public void setInstanceNumberFormat(String instanceNumberFormat) {
         extractor.setInstanceNumberFormat(instanceNumberFormat);
     }
+
+    public final void setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads: " + threads);
+        this.threads = threads;
+    }
     
     
     @SuppressWarnings("unchecked")
@@ -105,6 +115,8 @@ public class Emf2sf {
             main.setOutputDirectory(new File(cl.getOptionValue("out-dir", ".")));
             if (cl.hasOption("out-file"))
                 main.setOutputFileFormat(cl.getOptionValue("out-file"));
+            if (cl.hasOption("threads"))
+                main.setThreads(parseInt(cl.getOptionValue("threads")));
             long start = System.currentTimeMillis();
             int n = main.extract(new File(fname(cl.getArgList())));
             long end = System.currentTimeMillis();
@@ -139,6 +151,15 @@ public class Emf2sf {
         return is;
     }
 
+    private static int parseInt(String s) throws ParseException {
+        try {
+            int i = Integer.parseInt(s);
+            if (i > 0)
+                return i;
+        } catch (NumberFormatException e) {}
+        throw new ParseException("Invalid argument of option --threads: " + s);
+    }
+
     private String fname(File srcFile, int frame) {
         if (outFileFormat != null)
             synchronized (outFileFormat) {
@@ -156,22 +177,31 @@ public class Emf2sf {
         } finally {
             SafeClose.close(dis);
         }
-        Attributes fmi = dis.getFileMetaInformation();
-        if (frames == null) {
-            int n = src.getInt(Tag.NumberOfFrames, 1);
-            for (int frame = 0; frame < n; ++frame)
-                extract(file, fmi, src, frame);
-            return n;
+        final File srcFile = file;
+        final Attributes fmi = dis.getFileMetaInformation();
+        SingleFrameSink sink = new SingleFrameSink() {
+
+            @Override
+            public void write(Attributes sf, int frame) throws IOException {
+                Emf2sf.this.write(srcFile, fmi, sf, frame);
+            }
+        };
+        if (threads == 1) {
+            extractor.extract(src, frames, sink);
         } else {
-            for (int frame : frames)
-                extract(file, fmi, src, frame);
-            return frames.length;
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                extractor.extract(src, frames, sink, executor, threads);
+            } finally {
+                executor.shutdown();
+            }
         }
+        return frames != null ? frames.length
+                              : src.getInt(Tag.NumberOfFrames, 1);
     }
 
-    private void extract(File file, Attributes fmi, Attributes src, int frame)
+    private void write(File file, Attributes fmi, Attributes sf, int frame)
             throws IOException {
-        Attributes sf = extractor.extract(src, frame);
         DicomOutputStream out = new DicomOutputStream(
                 new File(outDir, fname(file, frame+1)));
         try {
@@ -179,7 +209,9 @@ public class Emf2sf {
                     ? sf.createFileMetaInformation(
                             fmi.getString(Tag.TransferSyntaxUID))
                     : null, sf);
-            System.out.print('.');
+            synchronized (System.out) {
+                System.out.print('.');
+            }
         } finally {
             SafeClose.close(out);
         }
@@ -216,6 +248,12 @@ public class Emf2sf {
                 .withArgName("name")
                 .withDescription(rb.getString("out-file"))
                 .create());
+        opts.addOption(OptionBuilder
+                .withLongOpt("threads")
+                .hasArg()
+                .withArgName("number")
+                .withDescription(rb.getString("threads"))
+                .create());
         return CLIUtils.parseComandLine(args, opts, rb, Emf2sf.class);
     }
 
@@ -140,7 +140,7 @@ public class IanSCP extends Device {
            configureTransferCapability(main.ae, cl);
            main.setStatus(CLIUtils.getIntOption(cl, "status", 0));
            main.setStorageDirectory(getStorageDirectory(cl));
-           ExecutorService executorService = Executors.newCachedThreadPool();
+           ExecutorService executorService = CLIUtils.newExecutorService(cl);
            ScheduledExecutorService scheduledExecutorService = 
                    Executors.newSingleThreadScheduledExecutor();
            main.setScheduledExecutor(scheduledExecutorService);
@@ -161,6 +161,7 @@ public class IanSCP extends Device {
         Options opts = new Options();
         CLIUtils.addBindServerOption(opts);
         CLIUtils.addAEOptions(opts);
+        CLIUtils.addVirtualThreadsOption(opts);
         CLIUtils.addCommonOptions(opts);
         addStorageDirectoryOptions(opts);
         addTransferCapabilityOptions(opts);
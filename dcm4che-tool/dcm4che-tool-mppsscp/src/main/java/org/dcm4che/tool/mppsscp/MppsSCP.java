@@ -140,7 +140,7 @@ public class MppsSCP {
            configureTransferCapability(main.ae, cl);
            configureStorageDirectory(main, cl);
            configureIODs(main, cl);
-           ExecutorService executorService = Executors.newCachedThreadPool();
+           ExecutorService executorService = CLIUtils.newExecutorService(cl);
            ScheduledExecutorService scheduledExecutorService = 
                    Executors.newSingleThreadScheduledExecutor();
            main.device.setScheduledExecutor(scheduledExecutorService);
@@ -161,6 +161,7 @@ public class MppsSCP {
         Options opts = new Options();
         CLIUtils.addBindServerOption(opts);
         CLIUtils.addAEOptions(opts);
+        CLIUtils.addVirtualThreadsOption(opts);
         CLIUtils.addCommonOptions(opts);
         addStorageDirectoryOptions(opts);
         addTransferCapabilityOptions(opts);
@@ -152,6 +152,7 @@ public class StoreSCP {
         Options opts = new Options();
         CLIUtils.addBindServerOption(opts);
         CLIUtils.addAEOptions(opts);
+        CLIUtils.addVirtualThreadsOption(opts);
         CLIUtils.addCommonOptions(opts);
         addStatusOption(opts);
         addStorageDirectoryOptions(opts);
@@ -208,7 +209,7 @@ public class StoreSCP {
             main.setStatus(CLIUtils.getIntOption(cl, "status", 0));
             configureTransferCapability(main.ae, cl);
             configureStorageDirectory(main, cl);
-            ExecutorService executorService = Executors.newCachedThreadPool();
+            ExecutorService executorService = CLIUtils.newExecutorService(cl);
             ScheduledExecutorService scheduledExecutorService = 
                     Executors.newSingleThreadScheduledExecutor();
             main.device.setScheduledExecutor(scheduledExecutorService);
@@ -0,0 +1,366 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * Agfa Healthcare.
+ * Portions created by the Initial Developer are Copyright (C) 2011
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.tool.storescu;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.dcm4che.data.Attributes;
+import org.dcm4che.data.Tag;
+import org.dcm4che.net.ApplicationEntity;
+import org.dcm4che.net.Association;
+import org.dcm4che.net.Connection;
+import org.dcm4che.net.DimseRSPHandler;
+import org.dcm4che.net.InputStreamDataWriter;
+import org.dcm4che.net.Status;
+import org.dcm4che.net.pdu.AAssociateRQ;
+import org.dcm4che.util.SafeClose;
+import org.dcm4che.util.StreamUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends DICOM files over several associations in parallel. The files are
+ * taken from a shared queue by one sender per association, so faster
+ * associations send more files. Each sender invokes further C-STORE
+ * requests without waiting for the responses of previous ones, limited
+ * by the Asynchronous Operations Window negotiated by the A-ASSOCIATE-RQ
+ * (see {@link Connection#setMaxOpsInvoked(int)}). Failed files are queued
+ * again up to the configured number of retries.
+ * 
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ */
+public class PipelinedStoreSCU {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(PipelinedStoreSCU.class);
+
+    private static final long POLL_INTERVAL = 100L;
+
+    public static class Instance {
+
+        public final File file;
+        public final long fmiEndPos;
+        public final String cuid;
+        public final String iuid;
+        public final String tsuid;
+        private int attempts;
+
+        public Instance(File file, long fmiEndPos, String cuid, String iuid,
+                String tsuid) {
+            this.file = file;
+            this.fmiEndPos = fmiEndPos;
+            this.cuid = cuid;
+            this.iuid = iuid;
+            this.tsuid = tsuid;
+        }
+
+        public final int getAttempts() {
+            return attempts;
+        }
+
+        @Override
+        public String toString() {
+            return file.toString();
+        }
+    }
+
+    private final ApplicationEntity ae;
+    private final Connection remote;
+    private final AAssociateRQ rq;
+    private int numAssociations = 1;
+    private int maxRetries;
+    private int priority;
+
+    private final LinkedBlockingQueue<Instance> queue =
+            new LinkedBlockingQueue<Instance>();
+    private final AtomicInteger remaining = new AtomicInteger();
+    private final AtomicInteger sent = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger retries = new AtomicInteger();
+    private final AtomicLong sentBytes = new AtomicLong();
+    private long startTime;
+    private long endTime;
+
+    public PipelinedStoreSCU(ApplicationEntity ae, Connection remote,
+            AAssociateRQ rq) {
+        this.ae = ae;
+        this.remote = remote;
+        this.rq = rq;
+    }
+
+    public final int getNumberOfAssociations() {
+        return numAssociations;
+    }
+
+    public final void setNumberOfAssociations(int numAssociations) {
+        if (numAssociations <= 0)
+            throw new IllegalArgumentException(
+                    "numAssociations: " + numAssociations);
+        this.numAssociations = numAssociations;
+    }
+
+    public final int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public final void setMaxRetries(int maxRetries) {
+        if (maxRetries < 0)
+            throw new IllegalArgumentException("maxRetries: " + maxRetries);
+        this.maxRetries = maxRetries;
+    }
+
+    public final int getPriority() {
+        return priority;
+    }
+
+    public final void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public void add(Instance inst) {
+        remaining.incrementAndGet();
+        queue.add(inst);
+    }
+
+    public final int getNumberOfSentInstances() {
+        return sent.get();
+    }
+
+    public final int getNumberOfFailedInstances() {
+        return failed.get();
+    }
+
+    public final int getNumberOfRetries() {
+        return retries.get();
+    }
+
+    public final long getSentBytes() {
+        return sentBytes.get();
+    }
+
+    public final long getElapsedTimeMillis() {
+        return (endTime != 0L ? endTime : System.currentTimeMillis())
+                - startTime;
+    }
+
+    public float getMegaBytesPerSecond() {
+        long ms = getElapsedTimeMillis();
+        return ms > 0 ? sentBytes.get() / 1048.576F / ms : 0F;
+    }
+
+    public float getInstancesPerSecond() {
+        long ms = getElapsedTimeMillis();
+        return ms > 0 ? sent.get() * 1000F / ms : 0F;
+    }
+
+    /**
+     * Sends all added instances and returns, after all instances were
+     * either sent successfully or failed finally.
+     * 
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    public void sendAll() throws InterruptedException {
+        final CountDownLatch finished = new CountDownLatch(numAssociations);
+        startTime = System.currentTimeMillis();
+        endTime = 0L;
+        for (int i = 0; i < numAssociations; i++)
+            ae.getDevice().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        sendOverAssociation();
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            });
+        finished.await();
+        endTime = System.currentTimeMillis();
+        Instance inst;
+        while ((inst = queue.poll()) != null) {
+            failed.incrementAndGet();
+            remaining.decrementAndGet();
+            onFailed(inst, null);
+        }
+    }
+
+    private void sendOverAssociation() {
+        Association as;
+        try {
+            as = ae.connect(remote, rq);
+        } catch (Exception e) {
+            LOG.warn("Failed to open association to " + remote, e);
+            return;
+        }
+        try {
+            while (remaining.get() > 0 && as.isReadyForDataTransfer()) {
+                Instance inst = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (inst == null)
+                    continue;
+
+                RSPHandler rspHandler = new RSPHandler(as.nextMessageID(), inst);
+                try {
+                    send(as, inst, rspHandler);
+                } catch (IOException e) {
+                    LOG.warn(as + ": Failed to send " + inst, e);
+                    rspHandler.complete(null);
+                }
+            }
+            as.waitForOutstandingRSP();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                if (as.isReadyForDataTransfer())
+                    as.release();
+                as.waitForSocketClose();
+            } catch (Exception e) {
+                LOG.info("{}: Failed to release association: {}",
+                        as, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Invokes the C-STORE request for the specified instance over the
+     * specified association. Overwrite to modify the sent data set.
+     * 
+     * @param as association
+     * @param inst instance to send
+     * @param rspHandler handler of the C-STORE response
+     * @throws IOException if an I/O error occurs
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    protected void send(Association as, Instance inst,
+            DimseRSPHandler rspHandler)
+            throws IOException, InterruptedException {
+        FileInputStream in = new FileInputStream(inst.file);
+        try {
+            StreamUtils.skipFully(in, inst.fmiEndPos);
+            as.cstore(inst.cuid, inst.iuid, priority,
+                    new InputStreamDataWriter(in), inst.tsuid, rspHandler);
+        } finally {
+            SafeClose.close(in);
+        }
+    }
+
+    /**
+     * Invoked if the instance was sent successfully.
+     * 
+     * @param inst the sent instance
+     * @param cmd C-STORE response command
+     */
+    protected void onSent(Instance inst, Attributes cmd) {
+    }
+
+    /**
+     * Invoked if the sending of the instance failed and no retry
+     * is left.
+     * 
+     * @param inst the failed instance
+     * @param cmd C-STORE response command or <code>null</code>, if no
+     *        response was received
+     */
+    protected void onFailed(Instance inst, Attributes cmd) {
+    }
+
+    private static boolean isSuccess(int status) {
+        switch (status) {
+        case Status.Success:
+        case Status.CoercionOfDataElements:
+        case Status.ElementsDiscarded:
+        case Status.DataSetDoesNotMatchSOPClassWarning:
+            return true;
+        }
+        return false;
+    }
+
+    private class RSPHandler extends DimseRSPHandler {
+
+        private final Instance inst;
+        private boolean completed;
+
+        RSPHandler(int msgId, Instance inst) {
+            super(msgId);
+            this.inst = inst;
+        }
+
+        @Override
+        public void onDimseRSP(Association as, Attributes cmd,
+                Attributes data) {
+            super.onDimseRSP(as, cmd, data);
+            complete(cmd);
+        }
+
+        @Override
+        public void onClose(Association as) {
+            super.onClose(as);
+            complete(null);
+        }
+
+        void complete(Attributes cmd) {
+            synchronized (this) {
+                if (completed)
+                    return;
+                completed = true;
+            }
+            if (cmd != null && isSuccess(cmd.getInt(Tag.Status, -1))) {
+                sent.incrementAndGet();
+                sentBytes.addAndGet(inst.file.length() - inst.fmiEndPos);
+                remaining.decrementAndGet();
+                onSent(inst, cmd);
+            } else if (++inst.attempts <= maxRetries) {
+                retries.incrementAndGet();
+                queue.add(inst);
+            } else {
+                failed.incrementAndGet();
+                remaining.decrementAndGet();
+                onFailed(inst, cmd);
+            }
+        }
+    }
+}
@@ -99,10 +99,14 @@ public class StoreSCU {
     private String uidSuffix;
     private boolean relExtNeg;
     private int priority;
+    private int numAssociations = 1;
+    private int maxRetries;
     private String tmpPrefix = "storescu-";
     private String tmpSuffix;
     private File tmpDir;
     private File tmpFile;
+    private int scanThreads = 1;
+    private boolean scanOrdered = true;
     private Association as;
 
     private long totalSize;
@@ -141,6 +145,18 @@ public class StoreSCU {
         this.priority = priority;
     }
 
+    public final void setNumberOfAssociations(int numAssociations) {
+        this.numAssociations = numAssociations;
+    }
+
+    public final void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public final boolean isPipelined() {
+        return numAssociations > 1 || maxRetries > 0;
+    }
+
     public final void setUIDSuffix(String uidSuffix) {
         this.uidSuffix = uidSuffix;
     }
@@ -157,12 +173,21 @@ public class StoreSCU {
         this.tmpDir = tmpDir;
     }
 
+    public final void setScanThreads(int scanThreads) {
+        this.scanThreads = scanThreads;
+    }
+
+    public final void setScanOrdered(boolean scanOrdered) {
+        this.scanOrdered = scanOrdered;
+    }
+
     private static CommandLine parseComandLine(String[] args)
             throws ParseException{
         Options opts = new Options();
         CLIUtils.addConnectOption(opts);
         CLIUtils.addBindOption(opts, "STORESCU");
         CLIUtils.addAEOptions(opts);
+        CLIUtils.addVirtualThreadsOption(opts);
         CLIUtils.addResponseTimeoutOption(opts);
         CLIUtils.addPriorityOption(opts);
         CLIUtils.addCommonOptions(opts);
@@ -170,6 +195,8 @@ public class StoreSCU {
         addRelatedSOPClassOptions(opts);
         addAttributesOption(opts);
         addUIDSuffixOption(opts);
+        addPipelineOptions(opts);
+        addScanOptions(opts);
         return CLIUtils.parseComandLine(args, opts, rb, StoreSCU.class);
     }
 
@@ -193,6 +220,34 @@ public class StoreSCU {
                 .create(null));
     }
 
+    @SuppressWarnings("static-access")
+    public static void addPipelineOptions(Options opts) {
+        opts.addOption(OptionBuilder
+                .hasArg()
+                .withArgName("no")
+                .withDescription(rb.getString("num-assocs"))
+                .withLongOpt("num-assocs")
+                .create(null));
+        opts.addOption(OptionBuilder
+                .hasArg()
+                .withArgName("no")
+                .withDescription(rb.getString("max-retries"))
+                .withLongOpt("max-retries")
+                .create(null));
+    }
+
+    @SuppressWarnings("static-access")
+    public static void addScanOptions(Options opts) {
+        opts.addOption(OptionBuilder
+                .hasArg()
+                .withArgName("no")
+                .withDescription(rb.getString("scan-threads"))
+                .withLongOpt("scan-threads")
+                .create(null));
+        opts.addOption(null, "scan-unordered", false,
+                rb.getString("scan-unordered"));
+    }
+
     @SuppressWarnings("static-access")
     public static void addTmpFileOptions(Options opts) {
         opts.addOption(OptionBuilder
@@ -250,6 +305,11 @@ public class StoreSCU {
             CLIUtils.addAttributes(main.attrs, cl.getOptionValues("s"));
             main.setUIDSuffix(cl.getOptionValue("uid-suffix"));
             main.setPriority(CLIUtils.priorityOf(cl));
+            main.setNumberOfAssociations(
+                    CLIUtils.getIntOption(cl, "num-assocs", 1));
+            main.setMaxRetries(CLIUtils.getIntOption(cl, "max-retries", 0));
+            main.setScanThreads(CLIUtils.getIntOption(cl, "scan-threads", 1));
+            main.setScanOrdered(!cl.hasOption("scan-unordered"));
             List<String> argList = cl.getArgList();
             boolean echo = argList.isEmpty();
             if (!echo) {
@@ -266,31 +326,38 @@ public class StoreSCU {
                         (t2 - t1) / 1000F, (t2 - t1) / n));
             }
             ExecutorService executorService =
-                    Executors.newSingleThreadExecutor();
+                    CLIUtils.newExecutorService(cl);
             ScheduledExecutorService scheduledExecutorService =
                     Executors.newSingleThreadScheduledExecutor();
             device.setExecutor(executorService);
             device.setScheduledExecutor(scheduledExecutorService);
+            boolean pipelined = !echo && main.isPipelined();
             try {
-                t1 = System.currentTimeMillis();
-                main.open();
-                t2 = System.currentTimeMillis();
-                System.out.println(MessageFormat.format(
-                        rb.getString("connected"),
-                        main.as.getRemoteAET(), t2 - t1));
-                if (echo)
-                    main.echo();
-                else {
+                if (pipelined) {
                     t1 = System.currentTimeMillis();
-                    main.sendFiles();
+                    main.sendFilesPipelined();
                     t2 = System.currentTimeMillis();
+                } else {
+                    t1 = System.currentTimeMillis();
+                    main.open();
+                    t2 = System.currentTimeMillis();
+                    System.out.println(MessageFormat.format(
+                            rb.getString("connected"),
+                            main.as.getRemoteAET(), t2 - t1));
+                    if (echo)
+                        main.echo();
+                    else {
+                        t1 = System.currentTimeMillis();
+                        main.sendFiles();
+                        t2 = System.currentTimeMillis();
+                    }
                 }
             } finally {
                 main.close();
                 executorService.shutdown();
                 scheduledExecutorService.shutdown();
             }
-            if (main.filesScanned > 0) {
+            if (!pipelined && main.filesScanned > 0) {
                 float s = (t2 - t1) / 1000F;
                 float mb = main.totalSize / 1048576F;
                 System.out.println(MessageFormat.format(rb.getString("sent"),
@@ -341,6 +408,9 @@ public class StoreSCU {
         tmpFile.deleteOnExit();
         final BufferedWriter fileInfos = new BufferedWriter(
                 new OutputStreamWriter(new FileOutputStream(tmpFile)));
+        ExecutorService executor = scanThreads > 1
+                ? Executors.newFixedThreadPool(scanThreads)
+                : null;
         try {
             DicomFiles.scan(fnames, new DicomFiles.Callback() {
                 
@@ -353,8 +423,10 @@ public class StoreSCU {
                     filesScanned++;
                     return true;
                 }
-            });
+            }, executor, scanThreads, scanOrdered);
         } finally {
+            if (executor != null)
+                executor.shutdown();
             fileInfos.close();
         }
     }
@@ -384,6 +456,57 @@ public class StoreSCU {
         }
     }
 
+    public void sendFilesPipelined() throws IOException, InterruptedException {
+        PipelinedStoreSCU sender = new PipelinedStoreSCU(ae, remote, rq) {
+
+            @Override
+            protected void send(Association as, Instance inst,
+                    DimseRSPHandler rspHandler)
+                    throws IOException, InterruptedException {
+                if (uidSuffix == null && attrs.isEmpty())
+                    super.send(as, inst, rspHandler);
+                else
+                    sendWithUpdatedAttributes(as, inst.file, inst.cuid,
+                            inst.iuid, inst.tsuid, rspHandler);
+            }
+
+            @Override
+            protected void onSent(Instance inst, Attributes cmd) {
+                onCStoreRSP(cmd, inst.file);
+            }
+
+            @Override
+            protected void onFailed(Instance inst, Attributes cmd) {
+                onCStoreRSP(cmd, inst.file);
+            }
+        };
+        sender.setNumberOfAssociations(numAssociations);
+        sender.setMaxRetries(maxRetries);
+        sender.setPriority(priority);
+        BufferedReader fileInfos = new BufferedReader(
+                new InputStreamReader(
+                        new FileInputStream(tmpFile)));
+        try {
+            String line;
+            while ((line = fileInfos.readLine()) != null) {
+                String[] ss = StringUtils.split(line, '\t');
+                sender.add(new PipelinedStoreSCU.Instance(new File(ss[4]),
+                        Long.parseLong(ss[3]), ss[1], ss[0], ss[2]));
+            }
+        } finally {
+            SafeClose.close(fileInfos);
+        }
+        sender.sendAll();
+        System.out.println(MessageFormat.format(rb.getString("sent-pipelined"),
+                sender.getNumberOfSentInstances(),
+                sender.getSentBytes() / 1048576F,
+                sender.getElapsedTimeMillis() / 1000F,
+                sender.getMegaBytesPerSecond(),
+                sender.getInstancesPerSecond(),
+                sender.getNumberOfRetries(),
+                sender.getNumberOfFailedInstances()));
+    }
+
     public boolean addFile(BufferedWriter fileInfos, File f, long endFmi,
             Attributes fmi, Attributes ds) throws IOException {
         String cuid = fmi.getString(Tag.MediaStorageSOPClassUID);
@@ -439,20 +562,26 @@ public class StoreSCU {
                 SafeClose.close(in);
             }
         } else {
-            DicomInputStream in = new DicomInputStream(f);
-            try {
-                in.setIncludeBulkData(IncludeBulkData.LOCATOR);
-                Attributes data = in.readDataset(-1, -1);
-                if (CLIUtils.updateAttributes(data, attrs, uidSuffix))
-                    iuid = data.getString(Tag.SOPInstanceUID);
-                as.cstore(cuid, iuid, priority, new DataWriterAdapter(data), ts,
-                        rspHandler(f));
-            } finally {
-                SafeClose.close(in);
-            }
+            sendWithUpdatedAttributes(as, f, cuid, iuid, ts, rspHandler(f));
          }
     }
 
+    private void sendWithUpdatedAttributes(Association as, File f,
+            String cuid, String iuid, String ts, DimseRSPHandler rspHandler)
+            throws IOException, InterruptedException {
+        DicomInputStream in = new DicomInputStream(f);
+        try {
+            in.setIncludeBulkData(IncludeBulkData.LOCATOR);
+            Attributes data = in.readDataset(-1, -1);
+            if (CLIUtils.updateAttributes(data, attrs, uidSuffix))
+                iuid = data.getString(Tag.SOPInstanceUID);
+            as.cstore(cuid, iuid, priority, new DataWriterAdapter(data), ts,
+                    rspHandler);
+        } finally {
+            SafeClose.close(in);
+        }
+    }
+
     private DimseRSPHandler rspHandler(final File f) {
         return new DimseRSPHandler(as.nextMessageID()) {
    
@@ -477,7 +606,12 @@ public class StoreSCU {
         as = ae.connect(remote, rq);
     }
 
-    private void onCStoreRSP(Attributes cmd, File f) {
+    private synchronized void onCStoreRSP(Attributes cmd, File f) {
+        if (cmd == null) {
+            System.out.print('E');
+            System.err.println(MessageFormat.format(rb.getString("no-rsp"), f));
+            return;
+        }
         int status = cmd.getInt(Tag.Status, -1);
         switch (status) {
         case Status.Success: